@@ -0,0 +1,9 @@
+CREATE TABLE StepVariable
+(
+	trace_id TEXT NOT NULL,
+	step_order INTEGER NOT NULL,
+	vars MEDIUMBLOB,
+	PRIMARY KEY (trace_id, step_order),
+	FOREIGN KEY (trace_id) REFERENCES Trace(trace_id)
+) 
+;
@@ -13,6 +13,7 @@ import org.eclipse.jdi.TimeoutException;
 
 import microbat.Activator;
 import microbat.codeanalysis.bytecode.BPVariableRetriever;
+import microbat.codeanalysis.bytecode.ClassFileRepository;
 import microbat.codeanalysis.runtime.ProgramExecutor;
 import microbat.model.BreakPoint;
 import microbat.model.trace.Trace;
@@ -39,6 +40,7 @@ public class TraceModelConstructor {
 		/** 1. clear some static common variables **/
 		clearOldData();
 		Repository.clearCache();
+		ClassFileRepository.clearAll();
 		
 		
 		/** 2. parse read/written variables**/
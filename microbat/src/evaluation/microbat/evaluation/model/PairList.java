@@ -1,6 +1,8 @@
 package microbat.evaluation.model;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import microbat.model.trace.TraceNode;
@@ -8,41 +10,93 @@ import microbat.model.trace.TraceNode;
 public class PairList {
 	private List<TraceNodePair> pairList = new ArrayList<>();
 
+	/**
+	 * the pairs indexed by the orders of their mutated/original nodes, the first
+	 * pair is kept if several pairs have a node of the same order. The pairs are
+	 * only changed by {@link #add(TraceNodePair)} and {@link #setPairList(List)},
+	 * which keep the indexes up to date.
+	 */
+	private TraceNodePair[] mutatedIndex = new TraceNodePair[0];
+	private TraceNodePair[] originalIndex = new TraceNodePair[0];
+
 	public PairList(List<TraceNodePair> pairList) {
 		super();
-		this.pairList = pairList;
+		setPairList(pairList);
 	}
 
+	/**
+	 * @return an unmodifiable view of the pairs, use {@link #add(TraceNodePair)}
+	 *         or {@link #setPairList(List)} to change them.
+	 */
 	public List<TraceNodePair> getPairList() {
-		return pairList;
+		return Collections.unmodifiableList(pairList);
 	}
 
+	/**
+	 * the pairs are copied, so that later changes of the given list do not
+	 * affect the indexes.
+	 */
 	public void setPairList(List<TraceNodePair> pairList) {
-		this.pairList = pairList;
+		this.pairList = new ArrayList<>(pairList);
+		buildIndex();
 	}
 	
 	public void add(TraceNodePair pair){
 		this.pairList.add(pair);
+		index(pair);
 	}
 
 	public TraceNodePair findByMutatedNode(TraceNode node) {
-		for(TraceNodePair pair: pairList){
-			if(pair.getMutatedNode().equals(node)){
-				return pair;
-			}
+		TraceNodePair pair = find(mutatedIndex, node);
+		if(pair != null && pair.getMutatedNode().equals(node)){
+			return pair;
 		}
 		return null;
 	}
-	
+
 	public TraceNodePair findByOriginalNode(TraceNode node) {
-		for(TraceNodePair pair: pairList){
-			if(pair.getOriginalNode().equals(node)){
-				return pair;
-			}
+		TraceNodePair pair = find(originalIndex, node);
+		if(pair != null && pair.getOriginalNode().equals(node)){
+			return pair;
 		}
 		return null;
 	}
-	
+
+	private TraceNodePair find(TraceNodePair[] index, TraceNode node) {
+		if(node == null){
+			return null;
+		}
+		int order = node.getOrder();
+		return (order >= 0 && order < index.length) ? index[order] : null;
+	}
+
+	private void buildIndex() {
+		mutatedIndex = new TraceNodePair[0];
+		originalIndex = new TraceNodePair[0];
+		for(TraceNodePair pair: pairList){
+			index(pair);
+		}
+	}
+
+	private void index(TraceNodePair pair) {
+		mutatedIndex = index(mutatedIndex, pair.getMutatedNode(), pair);
+		originalIndex = index(originalIndex, pair.getOriginalNode(), pair);
+	}
+
+	private TraceNodePair[] index(TraceNodePair[] index, TraceNode node, TraceNodePair pair) {
+		if(node == null || node.getOrder() < 0){
+			return index;
+		}
+		int order = node.getOrder();
+		if(order >= index.length){
+			index = Arrays.copyOf(index, Math.max(order + 1, index.length * 2));
+		}
+		if(index[order] == null){
+			index[order] = pair;
+		}
+		return index;
+	}
+
 	public int size(){
 		return pairList.size();
 	}
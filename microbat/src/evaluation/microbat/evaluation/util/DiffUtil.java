@@ -1,6 +1,5 @@
 package microbat.evaluation.util;
 
-import java.util.ArrayList;
 import java.util.List;
 
 import microbat.evaluation.model.PairList;
@@ -25,50 +24,13 @@ public class DiffUtil {
 		return generateMatchedTraceNodeList(mutatedTraceArray, correctTraceArray, new TraceNodeComprehensiveSimilarityComparator());
 	}
 	
+	/**
+	 * match the steps of the same locations with the largest total similarity,
+	 * see {@link TraceAligner}.
+	 */
 	public static PairList generateMatchedTraceNodeList(TraceNode[] mutatedTraceArray, TraceNode[] correctTraceArray,
 			TraceNodeSimilarityComparator sc){
-		
-		List<TraceNodePair> pairList = new ArrayList<>();
-		double[][] scoreTable = buildScoreTable(mutatedTraceArray, correctTraceArray, sc);
-
-		for (int i = mutatedTraceArray.length, j = correctTraceArray.length; (i > 0 && j > 0);) {
-			if (mutatedTraceArray[i - 1].hasSameLocation(correctTraceArray[j - 1])) {
-				
-				double sim = sc.compute(mutatedTraceArray[i - 1], correctTraceArray[j - 1]);
-				double increase = scoreTable[i][j]-scoreTable[i-1][j-1];
-				
-				if(Math.abs(sim - increase) < 0.01){
-					TraceNodePair pair = new TraceNodePair(mutatedTraceArray[i - 1], correctTraceArray[j - 1]);
-					pairList.add(pair);
-					
-					pair.setExactSame(sim > 0.99);
-					
-					i--;
-					j--;
-				}
-				else{
-					if (scoreTable[i - 1][j] >= scoreTable[i][j - 1]){
-						i--;					
-					}
-					else{
-						j--;					
-					}
-				}
-				
-			} else {
-				if (scoreTable[i - 1][j] >= scoreTable[i][j - 1]){
-					i--;					
-				}
-				else{
-					j--;					
-				}
-			}
-		}
-
-		reverseOrder(pairList);
-		PairList list = new PairList(pairList);
-		
-		return list;
+		return new TraceAligner(sc).align(mutatedTraceArray, correctTraceArray);
 	}
 	
 	public static void reverseOrder(List<TraceNodePair> pairList){
@@ -82,37 +44,6 @@ public class DiffUtil {
 		
 	}
 	
-	private static double[][] buildScoreTable(TraceNode[] nodeList1, TraceNode[] nodeList2, TraceNodeSimilarityComparator comparator){
-		double[][] similarityTable = new double[nodeList1.length + 1][nodeList2.length + 1];
-		for (int i = 0; i < nodeList1.length + 1; i++)
-			similarityTable[i][0] = 0;
-		for (int j = 0; j < nodeList2.length + 1; j++)
-			similarityTable[0][j] = 0;
-
-		for (int i = 1; i < nodeList1.length + 1; i++){
-			for (int j = 1; j < nodeList2.length + 1; j++) {
-				if (nodeList1[i - 1].hasSameLocation(nodeList2[j - 1])){
-					if(nodeList1[i - 1].getOrder() == 103 && nodeList2[j-1].getOrder()== 95){
-						System.currentTimeMillis();
-					}
-					if(nodeList1[i - 1].getOrder() == 103 && nodeList2[j-1].getOrder()==194){
-						System.currentTimeMillis();
-					}
-					
-					double value = similarityTable[i - 1][j - 1] + comparator.compute(nodeList1[i - 1], nodeList2[j - 1]);
-					similarityTable[i][j] = getLargestValue(value, similarityTable[i-1][j], similarityTable[i][j-1]);
-				}
-				else {
-					similarityTable[i][j] = (similarityTable[i - 1][j] >= similarityTable[i][j - 1]) ? 
-							similarityTable[i - 1][j] : similarityTable[i][j - 1];
-				}
-			}
-		}
-		
-		return similarityTable;
-	}
-	
-	
 	public static double getLargestValue(double entry1, double entry2, double entry3){
 		double value = (entry1 > entry2)? entry1 : entry2;
 		return (value > entry3)? value : entry3;
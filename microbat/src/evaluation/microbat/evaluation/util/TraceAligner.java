@@ -0,0 +1,396 @@
+package microbat.evaluation.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+import microbat.evaluation.model.PairList;
+import microbat.evaluation.model.TraceNodePair;
+import microbat.model.trace.TraceNode;
+
+/**
+ * Aligns two traces, i.e., finds the matched steps of the same locations with
+ * the largest total similarity, in linear space:
+ * <ul>
+ * <li>the runs of consecutive steps of the locations executed exactly once in
+ * both traces are matched first as anchors, if they are in the same order;</li>
+ * <li>the segments between the anchors are aligned independently, in
+ * parallel;</li>
+ * <li>a segment is split in the Hirschberg way, by the rows of the score table
+ * computed forwards for its first half and backwards for its second half,
+ * until its table is small enough to be kept, which is backtracked the same
+ * way as the full table of {@link DiffUtil} used to be.</li>
+ * </ul>
+ * Traces whose full table is small enough are aligned with the full table
+ * directly.
+ */
+public class TraceAligner {
+	/**
+	 * the default maximum number of cells of the score table of a segment, 8MB.
+	 */
+	private static final int MAX_TABLE_CELLS = 1 << 20;
+	/**
+	 * segments smaller than this are not split in parallel.
+	 */
+	private static final int MIN_PARALLEL_CELLS = 1 << 16;
+	/**
+	 * a step of a location executed once in each trace may still be matched to
+	 * an unrelated step, e.g., an inserted one, so that only the runs of such
+	 * steps executed consecutively in both traces are anchored.
+	 */
+	private static final int MIN_ANCHOR_RUN = 3;
+
+	private TraceNodeSimilarityComparator comparator;
+	private long maxTableCells;
+	private TraceNode[] mutatedTrace;
+	private TraceNode[] correctTrace;
+	/* the index of the location of each step, the same in both traces */
+	private int[] mutatedLocations;
+	private int[] correctLocations;
+
+	public TraceAligner(TraceNodeSimilarityComparator comparator) {
+		this(comparator, MAX_TABLE_CELLS);
+	}
+
+	/**
+	 * @param maxTableCells
+	 *            the maximum number of cells of the score table of a segment, the
+	 *            larger segments are split, e.g., small ones to test the splitting.
+	 */
+	TraceAligner(TraceNodeSimilarityComparator comparator, long maxTableCells) {
+		this.comparator = comparator;
+		this.maxTableCells = maxTableCells;
+	}
+
+	public PairList align(TraceNode[] mutatedTrace, TraceNode[] correctTrace) {
+		this.mutatedTrace = mutatedTrace;
+		this.correctTrace = correctTrace;
+		indexLocations();
+
+		List<TraceNodePair> pairList;
+		if (isSmall(mutatedTrace.length, correctTrace.length)) {
+			pairList = new ArrayList<>();
+			alignByTable(0, mutatedTrace.length, 0, correctTrace.length, pairList);
+		} else {
+			pairList = alignBetweenAnchors(findAnchors());
+		}
+		return new PairList(pairList);
+	}
+
+	private boolean isSmall(int rows, int columns) {
+		return rows <= 1 || (long) (rows + 1) * (columns + 1) <= maxTableCells;
+	}
+
+	private void indexLocations() {
+		Map<String, Integer> locationIndexes = new HashMap<>();
+		mutatedLocations = indexLocations(mutatedTrace, locationIndexes);
+		correctLocations = indexLocations(correctTrace, locationIndexes);
+	}
+
+	private int[] indexLocations(TraceNode[] trace, Map<String, Integer> locationIndexes) {
+		int[] locations = new int[trace.length];
+		for (int i = 0; i < trace.length; i++) {
+			String location = trace[i].getDeclaringCompilationUnitName() + ":" + trace[i].getLineNumber();
+			Integer index = locationIndexes.get(location);
+			if (index == null) {
+				index = locationIndexes.size();
+				locationIndexes.put(location, index);
+			}
+			locations[i] = index;
+		}
+		return locations;
+	}
+
+	private boolean hasSameLocation(int i, int j) {
+		return mutatedLocations[i] == correctLocations[j];
+	}
+
+	/**
+	 * @return the matched steps whose location is executed exactly once in each
+	 *         trace, the longest sequence of them in the same order in both
+	 *         traces, in runs of consecutive steps, and similar.
+	 */
+	private List<Anchor> findAnchors() {
+		int locationSize = 0;
+		for (int location : mutatedLocations) {
+			locationSize = Math.max(locationSize, location + 1);
+		}
+		for (int location : correctLocations) {
+			locationSize = Math.max(locationSize, location + 1);
+		}
+		int[] mutatedCounts = new int[locationSize];
+		int[] correctCounts = new int[locationSize];
+		int[] correctIndexes = new int[locationSize];
+		for (int location : mutatedLocations) {
+			mutatedCounts[location]++;
+		}
+		for (int j = 0; j < correctLocations.length; j++) {
+			correctCounts[correctLocations[j]]++;
+			correctIndexes[correctLocations[j]] = j;
+		}
+
+		List<int[]> candidates = new ArrayList<>();
+		for (int i = 0; i < mutatedLocations.length; i++) {
+			int location = mutatedLocations[i];
+			if (mutatedCounts[location] == 1 && correctCounts[location] == 1) {
+				candidates.add(new int[] { i, correctIndexes[location] });
+			}
+		}
+
+		List<int[]> sequence = findLongestIncreasingSequence(candidates);
+		List<Anchor> anchors = new ArrayList<>();
+		for (int start = 0, end; start < sequence.size(); start = end) {
+			end = start + 1;
+			while (end < sequence.size() && sequence.get(end)[0] == sequence.get(end - 1)[0] + 1
+					&& sequence.get(end)[1] == sequence.get(end - 1)[1] + 1) {
+				end++;
+			}
+			if (end - start >= MIN_ANCHOR_RUN) {
+				addAnchors(sequence.subList(start, end), anchors);
+			}
+		}
+		return anchors;
+	}
+
+	private void addAnchors(List<int[]> run, List<Anchor> anchors) {
+		for (int[] candidate : run) {
+			TraceNode mutatedNode = mutatedTrace[candidate[0]];
+			TraceNode correctNode = correctTrace[candidate[1]];
+			double sim = comparator.compute(mutatedNode, correctNode);
+			if (sim > 0) {
+				TraceNodePair pair = new TraceNodePair(mutatedNode, correctNode);
+				pair.setExactSame(sim > 0.99);
+				anchors.add(new Anchor(candidate[0], candidate[1], pair));
+			}
+		}
+	}
+
+	/**
+	 * patience sorting on the indexes in the correct trace, the candidates are
+	 * sorted by their indexes in the mutated trace.
+	 */
+	private List<int[]> findLongestIncreasingSequence(List<int[]> candidates) {
+		int[] tails = new int[candidates.size()];
+		int[] previous = new int[candidates.size()];
+		int length = 0;
+		for (int k = 0; k < candidates.size(); k++) {
+			int j = candidates.get(k)[1];
+			int low = 0;
+			int high = length;
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (candidates.get(tails[mid])[1] < j) {
+					low = mid + 1;
+				} else {
+					high = mid;
+				}
+			}
+			previous[k] = (low > 0) ? tails[low - 1] : -1;
+			tails[low] = k;
+			if (low == length) {
+				length++;
+			}
+		}
+
+		int[][] sequence = new int[length][];
+		for (int k = (length > 0) ? tails[length - 1] : -1, idx = length - 1; k >= 0; k = previous[k], idx--) {
+			sequence[idx] = candidates.get(k);
+		}
+		return Arrays.asList(sequence);
+	}
+
+	private List<TraceNodePair> alignBetweenAnchors(List<Anchor> anchors) {
+		List<SegmentAlignment> segments = new ArrayList<>(anchors.size() + 1);
+		int i = 0;
+		int j = 0;
+		for (Anchor anchor : anchors) {
+			segments.add(new SegmentAlignment(i, anchor.mutatedIdx, j, anchor.correctIdx));
+			i = anchor.mutatedIdx + 1;
+			j = anchor.correctIdx + 1;
+		}
+		segments.add(new SegmentAlignment(i, mutatedTrace.length, j, correctTrace.length));
+		ForkJoinTask.invokeAll(segments);
+
+		List<TraceNodePair> pairList = new ArrayList<>();
+		for (int k = 0; k < segments.size(); k++) {
+			pairList.addAll(segments.get(k).join());
+			if (k < anchors.size()) {
+				pairList.add(anchors.get(k).pair);
+			}
+		}
+		return pairList;
+	}
+
+	private static class Anchor {
+		private int mutatedIdx;
+		private int correctIdx;
+		private TraceNodePair pair;
+
+		public Anchor(int mutatedIdx, int correctIdx, TraceNodePair pair) {
+			this.mutatedIdx = mutatedIdx;
+			this.correctIdx = correctIdx;
+			this.pair = pair;
+		}
+	}
+
+	/**
+	 * aligns mutatedTrace[mutatedStart, mutatedEnd) with correctTrace[correctStart,
+	 * correctEnd).
+	 */
+	private class SegmentAlignment extends RecursiveTask<List<TraceNodePair>> {
+		private static final long serialVersionUID = -5066402727566513245L;
+		private int mutatedStart;
+		private int mutatedEnd;
+		private int correctStart;
+		private int correctEnd;
+
+		public SegmentAlignment(int mutatedStart, int mutatedEnd, int correctStart, int correctEnd) {
+			this.mutatedStart = mutatedStart;
+			this.mutatedEnd = mutatedEnd;
+			this.correctStart = correctStart;
+			this.correctEnd = correctEnd;
+		}
+
+		@Override
+		protected List<TraceNodePair> compute() {
+			List<TraceNodePair> pairList = new ArrayList<>();
+			int rows = mutatedEnd - mutatedStart;
+			int columns = correctEnd - correctStart;
+			if (rows == 0 || columns == 0) {
+				return pairList;
+			}
+			if (isSmall(rows, columns)) {
+				alignByTable(mutatedStart, mutatedEnd, correctStart, correctEnd, pairList);
+				return pairList;
+			}
+
+			int mutatedMid = (mutatedStart + mutatedEnd) >>> 1;
+			double[] forward = scoreForward(mutatedStart, mutatedMid, correctStart, correctEnd);
+			double[] backward = scoreBackward(mutatedMid, mutatedEnd, correctStart, correctEnd);
+			int split = 0;
+			for (int k = 1; k <= columns; k++) {
+				if (forward[k] + backward[k] > forward[split] + backward[split]) {
+					split = k;
+				}
+			}
+			int correctMid = correctStart + split;
+
+			SegmentAlignment first = new SegmentAlignment(mutatedStart, mutatedMid, correctStart, correctMid);
+			SegmentAlignment second = new SegmentAlignment(mutatedMid, mutatedEnd, correctMid, correctEnd);
+			if ((long) rows * columns >= MIN_PARALLEL_CELLS) {
+				first.fork();
+				pairList.addAll(second.compute());
+				pairList.addAll(0, first.join());
+			} else {
+				pairList.addAll(first.compute());
+				pairList.addAll(second.compute());
+			}
+			return pairList;
+		}
+	}
+
+	/**
+	 * @return the last row of the score table of mutatedTrace[mutatedStart,
+	 *         mutatedEnd) and correctTrace[correctStart, correctEnd), i.e., the
+	 *         score of the whole mutated segment against each prefix of the
+	 *         correct segment.
+	 */
+	private double[] scoreForward(int mutatedStart, int mutatedEnd, int correctStart, int correctEnd) {
+		int columns = correctEnd - correctStart;
+		double[] previous = new double[columns + 1];
+		double[] current = new double[columns + 1];
+		for (int i = mutatedStart; i < mutatedEnd; i++) {
+			for (int k = 1; k <= columns; k++) {
+				int j = correctStart + k - 1;
+				double value = Math.max(previous[k], current[k - 1]);
+				if (hasSameLocation(i, j)) {
+					value = Math.max(value, previous[k - 1] + comparator.compute(mutatedTrace[i], correctTrace[j]));
+				}
+				current[k] = value;
+			}
+			double[] tmp = previous;
+			previous = current;
+			current = tmp;
+		}
+		return previous;
+	}
+
+	/**
+	 * @return the score of the whole mutated segment against each suffix of the
+	 *         correct segment, the k-th score is of the suffix starting from
+	 *         correctStart+k.
+	 */
+	private double[] scoreBackward(int mutatedStart, int mutatedEnd, int correctStart, int correctEnd) {
+		int columns = correctEnd - correctStart;
+		double[] previous = new double[columns + 1];
+		double[] current = new double[columns + 1];
+		for (int i = mutatedEnd - 1; i >= mutatedStart; i--) {
+			for (int k = columns - 1; k >= 0; k--) {
+				int j = correctStart + k;
+				double value = Math.max(previous[k], current[k + 1]);
+				if (hasSameLocation(i, j)) {
+					value = Math.max(value, previous[k + 1] + comparator.compute(mutatedTrace[i], correctTrace[j]));
+				}
+				current[k] = value;
+			}
+			double[] tmp = previous;
+			previous = current;
+			current = tmp;
+		}
+		return previous;
+	}
+
+	/**
+	 * build the full score table of the segments and backtrack it.
+	 */
+	private void alignByTable(int mutatedStart, int mutatedEnd, int correctStart, int correctEnd,
+			List<TraceNodePair> pairList) {
+		int rows = mutatedEnd - mutatedStart;
+		int columns = correctEnd - correctStart;
+		double[][] scoreTable = new double[rows + 1][columns + 1];
+		for (int i = 1; i < rows + 1; i++) {
+			for (int j = 1; j < columns + 1; j++) {
+				int mutatedIdx = mutatedStart + i - 1;
+				int correctIdx = correctStart + j - 1;
+				if (hasSameLocation(mutatedIdx, correctIdx)) {
+					double value = scoreTable[i - 1][j - 1]
+							+ comparator.compute(mutatedTrace[mutatedIdx], correctTrace[correctIdx]);
+					scoreTable[i][j] = DiffUtil.getLargestValue(value, scoreTable[i - 1][j], scoreTable[i][j - 1]);
+				} else {
+					scoreTable[i][j] = (scoreTable[i - 1][j] >= scoreTable[i][j - 1]) ? scoreTable[i - 1][j]
+							: scoreTable[i][j - 1];
+				}
+			}
+		}
+
+		List<TraceNodePair> reversedPairs = new ArrayList<>();
+		for (int i = rows, j = columns; (i > 0 && j > 0);) {
+			int mutatedIdx = mutatedStart + i - 1;
+			int correctIdx = correctStart + j - 1;
+			if (hasSameLocation(mutatedIdx, correctIdx)) {
+				double sim = comparator.compute(mutatedTrace[mutatedIdx], correctTrace[correctIdx]);
+				double increase = scoreTable[i][j] - scoreTable[i - 1][j - 1];
+				if (Math.abs(sim - increase) < 0.01) {
+					TraceNodePair pair = new TraceNodePair(mutatedTrace[mutatedIdx], correctTrace[correctIdx]);
+					reversedPairs.add(pair);
+					pair.setExactSame(sim > 0.99);
+					i--;
+					j--;
+					continue;
+				}
+			}
+			if (scoreTable[i - 1][j] >= scoreTable[i][j - 1]) {
+				i--;
+			} else {
+				j--;
+			}
+		}
+
+		DiffUtil.reverseOrder(reversedPairs);
+		pairList.addAll(reversedPairs);
+	}
+}
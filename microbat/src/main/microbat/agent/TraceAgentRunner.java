@@ -2,7 +2,6 @@ package microbat.agent;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.util.Collection;
@@ -12,7 +11,7 @@ import java.util.UUID;
 import microbat.instrumentation.AgentConstants;
 import microbat.instrumentation.AgentParams;
 import microbat.instrumentation.output.RunningInfo;
-import microbat.instrumentation.output.TraceOutputReader;
+import microbat.instrumentation.output.tcp.TraceStreamReader;
 import microbat.instrumentation.precheck.PrecheckInfo;
 import microbat.model.trace.Trace;
 import microbat.preference.DatabasePreference;
@@ -41,6 +40,7 @@ public class TraceAgentRunner extends AgentVmRunner {
 	private boolean enableSettingHeapSize = true;
 	
 	private List<Trace> traces;
+	private int lastProgressSize = 0;
 
 	public TraceAgentRunner(String agentJar, VMConfiguration vmConfig) {
 		super(agentJar, AgentConstants.AGENT_OPTION_SEPARATOR, AgentConstants.AGENT_PARAMS_SEPARATOR);
@@ -204,14 +204,16 @@ public class TraceAgentRunner extends AgentVmRunner {
 		}
 		super.startVm(getConfig());
 		// System.out.println(super.getCommandLinesString(config));
-		TraceOutputReader reader = null;
+		TraceStreamReader reader = null;
 		try {
 			Socket client = serverSocket.accept();
-			InputStream inputStream = client.getInputStream();
-			reader = new TraceOutputReader(inputStream);
-			String msg = reader.readString();
+			reader = new TraceStreamReader(client.getInputStream(), client.getOutputStream());
+			String msg = reader.readHeader();
 			updateTestResult(msg);
-			List<Trace> traces = reader.readTrace();
+			/* traces are built while the agent is still sending them */
+			List<Trace> traces = reader.readTraces((trace, readSteps, totalSteps) -> {
+				printProgress(readSteps, totalSteps);
+			});
 			int collected = traces.stream()
 					.mapToInt(trace -> trace.size())
 					.sum();
@@ -240,6 +242,10 @@ public class TraceAgentRunner extends AgentVmRunner {
 		}
 	};
 
+	/**
+	 * the progress is reported step by step by the agent, or batch by batch when
+	 * the traces are received, so the last reported size is kept.
+	 */
 	private void printProgress(int size, int stepNum) {
 		
 		if(stepNum == 0) {
@@ -248,12 +254,17 @@ public class TraceAgentRunner extends AgentVmRunner {
 		
 		double progress = ((double) size) / stepNum;
 
+		if (size <= lastProgressSize) {
+			/* a new progress, e.g., the trace of another thread */
+			lastProgressSize = 0;
+		}
 		double preProgr = 0;
-		if (size == 1) {
+		if (lastProgressSize == 0) {
 			System.out.print("progress: ");
 		} else {
-			preProgr = ((double) (size - 1)) / stepNum;
+			preProgr = ((double) lastProgressSize) / stepNum;
 		}
+		lastProgressSize = size;
 
 		int prog = (int) (progress * 100);
 		int preP = (int) (preProgr * 100);
@@ -1,7 +1,9 @@
 package microbat.algorithm.graphdiff;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import microbat.model.value.GraphNode;
 
@@ -11,6 +13,12 @@ public class HierarchyGraphDiffer {
 	
 	private List<GraphDiff> commons = new ArrayList<>();
 	
+	/**
+	 * the pairs of nodes already in {@code diffs} or {@code commons}, compared by
+	 * identity.
+	 */
+	private Set<NodePair> parsedPairs = new HashSet<>();
+	
 	/**
 	 * the depth for hierarchical differencing, -1 means compare all the levels.
 	 */
@@ -32,6 +40,7 @@ public class HierarchyGraphDiffer {
 			if(!rootBefore.isTheSameWith(rootAfter)){
 				GraphDiff diff = new GraphDiff(rootBefore, rootAfter);
 				this.diffs.add(diff);
+				parsedPairs.add(new NodePair(rootBefore, rootAfter));
 			}
 		}
 		
@@ -57,10 +66,9 @@ public class HierarchyGraphDiffer {
 			GraphNode nodeAfter = pair.getNodeAfter();
 			
 			if(nodeBefore != null && nodeAfter != null){
-				GraphDiff diff = new GraphDiff(nodeBefore, nodeAfter);
-				
-				boolean isParsed = isParsed(diff);
+				boolean isParsed = !parsedPairs.add(new NodePair(nodeBefore, nodeAfter));
 				if(!isParsed){
+					GraphDiff diff = new GraphDiff(nodeBefore, nodeAfter);
 					if(!nodeBefore.isTheSameWith(nodeAfter)){
 						this.diffs.add(diff);
 					}
@@ -82,27 +90,6 @@ public class HierarchyGraphDiffer {
 		
 	}
 	
-	private boolean isParsed(GraphDiff diff) {
-		if(!diff.getNodeBefore().isTheSameWith(diff.getNodeAfter())){
-			for(GraphDiff gd: this.diffs){
-				if(gd.getNodeBefore()==diff.getNodeBefore() &&
-						gd.getNodeAfter()==diff.getNodeAfter()){
-					return true;
-				}
-			}
-		}
-		else{
-			for(GraphDiff common: this.commons){
-				if(common.getNodeBefore()==diff.getNodeBefore() &&
-						common.getNodeAfter()==diff.getNodeAfter()){
-					return true;
-				}
-			}
-		}
-		
-		return false;
-	}
-
 	public List<GraphDiff> getDiffs(){
 		return this.diffs;
 	}
@@ -122,4 +109,33 @@ public class HierarchyGraphDiffer {
 	public void setDepth(int depth) {
 		this.depth = depth;
 	}
+	
+	/**
+	 * A matched pair of nodes, equal to another pair of the same node instances.
+	 * The nodes are not compared with their equals, which a VarValue bases on its
+	 * variable id.
+	 */
+	private static class NodePair {
+		private GraphNode nodeBefore;
+		private GraphNode nodeAfter;
+		
+		public NodePair(GraphNode nodeBefore, GraphNode nodeAfter) {
+			this.nodeBefore = nodeBefore;
+			this.nodeAfter = nodeAfter;
+		}
+		
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(nodeBefore) * 31 + System.identityHashCode(nodeAfter);
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			if(!(obj instanceof NodePair)){
+				return false;
+			}
+			NodePair that = (NodePair) obj;
+			return nodeBefore == that.nodeBefore && nodeAfter == that.nodeAfter;
+		}
+	}
 }
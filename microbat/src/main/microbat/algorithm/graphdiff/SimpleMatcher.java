@@ -1,12 +1,27 @@
 package microbat.algorithm.graphdiff;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import microbat.model.value.GraphNode;
+import microbat.model.value.VarValue;
 
+/**
+ * Matches a child before with the first child after which matches it and is
+ * not visited yet. A visited {@link VarValue} is kept by its variable id, as
+ * its equals compares the ids, and the other nodes (including the values
+ * without an id) by identity.
+ */
 public class SimpleMatcher implements Matcher{
-	private List<GraphNode> visitedPool = new ArrayList<>();
+	private Set<String> visitedIDs = new HashSet<>();
+	private Set<GraphNode> visitedNodes = Collections.newSetFromMap(new IdentityHashMap<GraphNode, Boolean>());
 	
 	/**
 	 * find a matchable node in <code>childrenAfter</code>
@@ -28,16 +43,67 @@ public class SimpleMatcher implements Matcher{
 		return node;
 	}
 	
+	/**
+	 * the same as {@link #findTheBestMatch(GraphNode, List)} with the children after
+	 * grouped by the name and type compared by {@link VarValue#match(GraphNode)}.
+	 */
+	private GraphNode findTheBestMatch(VarValue childBefore, Map<List<String>, Candidates> candidateMap){
+		Candidates candidates = candidateMap.get(getLabel(childBefore));
+		if(candidates == null){
+			return null;
+		}
+		/* a node is never unvisited, so the visited candidates are skipped once */
+		while(candidates.cursor < candidates.nodes.size()){
+			GraphNode childAfter = candidates.nodes.get(candidates.cursor);
+			if(!isVisited(childAfter)){
+				return childAfter;
+			}
+			candidates.cursor++;
+		}
+		return null;
+	}
+	
+	/**
+	 * @return the children after by their labels, in their order, or null if
+	 *         they are not all {@link VarValue}s.
+	 */
+	private Map<List<String>, Candidates> indexByLabel(List<? extends GraphNode> childrenAfter){
+		Map<List<String>, Candidates> candidateMap = new HashMap<>();
+		for(GraphNode childAfter: childrenAfter){
+			if(!(childAfter instanceof VarValue)){
+				return null;
+			}
+			List<String> label = getLabel((VarValue) childAfter);
+			Candidates candidates = candidateMap.get(label);
+			if(candidates == null){
+				candidates = new Candidates();
+				candidateMap.put(label, candidates);
+			}
+			candidates.nodes.add(childAfter);
+		}
+		return candidateMap;
+	}
+	
+	private List<String> getLabel(VarValue value){
+		return Arrays.asList(value.getVarName(), value.getType());
+	}
+	
 	@Override
 	public List<MatchingGraphPair> matchList(List<? extends GraphNode> childrenBefore,
 			List<? extends GraphNode> childrenAfter) {
 		List<MatchingGraphPair> pairs = new ArrayList<>();
+		Map<List<String>, Candidates> candidateMap = indexByLabel(childrenAfter);
 		
 		for(GraphNode childBefore: childrenBefore){
 			if(!isVisited(childBefore)){
 				
-				GraphNode node = findTheBestMatch(childBefore, childrenAfter);
-				System.currentTimeMillis();
+				GraphNode node;
+				if(candidateMap != null && childBefore instanceof VarValue){
+					node = findTheBestMatch((VarValue) childBefore, candidateMap);
+				}
+				else{
+					node = findTheBestMatch(childBefore, childrenAfter);
+				}
 				
 				setVisited(childBefore);
 				if(node != null){
@@ -61,10 +127,29 @@ public class SimpleMatcher implements Matcher{
 	}
 
 	private boolean isVisited(GraphNode node){
-		return this.visitedPool.contains(node);
+		String varID = getVarID(node);
+		return (varID != null) ? this.visitedIDs.contains(varID) : this.visitedNodes.contains(node);
 	}
 	
 	private void setVisited(GraphNode node){
-		this.visitedPool.add(node);
+		String varID = getVarID(node);
+		if(varID != null){
+			this.visitedIDs.add(varID);
+		}
+		else{
+			this.visitedNodes.add(node);
+		}
+	}
+	
+	private String getVarID(GraphNode node){
+		if(node instanceof VarValue && ((VarValue) node).getVariable() != null){
+			return ((VarValue) node).getVarID();
+		}
+		return null;
+	}
+	
+	private static class Candidates {
+		private List<GraphNode> nodes = new ArrayList<>();
+		private int cursor = 0;
 	}
 }
@@ -8,6 +8,7 @@ import java.util.List;
 import org.apache.bcel.classfile.Code;
 import org.apache.bcel.classfile.CodeException;
 import org.apache.bcel.generic.BranchInstruction;
+import org.apache.bcel.generic.ConstantPoolGen;
 import org.apache.bcel.generic.Instruction;
 import org.apache.bcel.generic.InstructionHandle;
 import org.apache.bcel.generic.InstructionList;
@@ -45,13 +46,29 @@ public class CFGConstructor {
 		return cfg;
 	}
 	
+	/**
+	 * Compute the reaching definitions of {@code cfg} with {@link ReachingDefinitionSolver},
+	 * and link each node to the nodes defining the variables it reads.
+	 * 
+	 * @param cfg
+	 */
 	public void constructDataDependency(CFG cfg) {
-		for(CFGNode node: cfg.getNodeList()){
-			node.parseReadWrittenVariable(code);
-			node.intializeGenSet();
-		}
+		parseReadWrittenVariables(cfg);
 		
-		System.currentTimeMillis();
+		ReachingDefinitionSolver solver = new ReachingDefinitionSolver(cfg);
+		solver.solve();
+		solver.buildDefUseChains();
+	}
+	
+	/**
+	 * The former round-robin solver of {@link #constructDataDependency(CFG)}, which keeps
+	 * the sets as lists. It gives the same define and use nodes, and is kept as a reference
+	 * for testing and benchmarking the new solver.
+	 * 
+	 * @param cfg
+	 */
+	public void constructDataDependencyByIteration(CFG cfg) {
+		parseReadWrittenVariables(cfg);
 		
 		boolean change = true;
 		while(change){
@@ -87,6 +104,14 @@ public class CFGConstructor {
 		}
 	}
 	
+	private void parseReadWrittenVariables(CFG cfg) {
+		ConstantPoolGen pool = new ConstantPoolGen(code.getConstantPool());
+		for(CFGNode node: cfg.getNodeList()){
+			node.parseReadWrittenVariable(code, pool);
+			node.intializeGenSet();
+		}
+	}
+	
 	private boolean isRDChain(CFGNode defNode, CFGNode useNode) {
 		for(Variable var1: defNode.getWrittenVars()){
 			for(Variable var2: useNode.getReadVars()){
@@ -171,6 +196,7 @@ public class CFGConstructor {
 
 	@SuppressWarnings("rawtypes")
 	public CFG constructCFG(Code code){
+		this.code = code;
 		CFG cfg = new CFG(code);
 		CFGNode previousNode = null;
 		
@@ -49,8 +49,13 @@ public class CFGNode {
 	}
 	
 	public void parseReadWrittenVariable(Code code) {
-
-		ConstantPoolGen pool = new ConstantPoolGen(code.getConstantPool()); 
+		parseReadWrittenVariable(code, new ConstantPoolGen(code.getConstantPool()));
+	}
+	
+	/**
+	 * @param pool the constant pool of {@code code}, which can be shared by the nodes of a CFG.
+	 */
+	public void parseReadWrittenVariable(Code code, ConstantPoolGen pool) {
 		InstructionHandle insHandle = getInstructionHandle();
 		
 		if(insHandle.getInstruction() instanceof FieldInstruction){
@@ -0,0 +1,204 @@
+package microbat.codeanalysis.bytecode;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.bcel.classfile.ClassParser;
+import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.classfile.Method;
+import org.apache.bcel.util.ClassPath;
+import org.apache.bcel.util.Repository;
+
+import sav.strategies.dto.AppJavaClassPath;
+
+/**
+ * A long-lived repository of the class files of an application, which caches
+ * the parsed classes and the CFGs of their methods, with a bound on the number
+ * of entries of each cache.
+ *
+ * Unlike the global bcel {@link org.apache.bcel.Repository}, a repository reads
+ * its own class path and never touches the system properties, so it can be
+ * used by several threads and several analyses at the same time. There is one
+ * repository per class path, see {@link #getInstance(AppJavaClassPath)}.
+ */
+public class ClassFileRepository implements Repository {
+	public static final int MAX_REPOSITORIES = 4;
+	public static final int MAX_CACHED_CLASSES = 2000;
+	public static final int MAX_CACHED_CFGS = 5000;
+
+	private static final Map<String, ClassFileRepository> repositories = createLruCache(MAX_REPOSITORIES);
+
+	private ClassPath classPath;
+	private Map<String, JavaClass> classes = createLruCache(MAX_CACHED_CLASSES);
+	private Map<String, CFG> cfgs = createLruCache(MAX_CACHED_CFGS);
+
+	ClassFileRepository(String classPath) {
+		this.classPath = new ClassPath0(classPath);
+	}
+
+	/**
+	 * @return the repository of the system class path extended with the class
+	 *         path of the application and the rt.jar of its jdk.
+	 */
+	public static ClassFileRepository getInstance(AppJavaClassPath appClassPath) {
+		String classPath = buildClassPath(appClassPath);
+		synchronized (repositories) {
+			ClassFileRepository repository = repositories.get(classPath);
+			if (repository == null) {
+				repository = new ClassFileRepository(classPath);
+				repositories.put(classPath, repository);
+			}
+			return repository;
+		}
+	}
+
+	/**
+	 * drop the cached classes and CFGs of all class paths, e.g. when the classes
+	 * may have been recompiled.
+	 */
+	public static void clearAll() {
+		synchronized (repositories) {
+			for (ClassFileRepository repository : repositories.values()) {
+				repository.clear();
+			}
+			repositories.clear();
+		}
+	}
+
+	private static String buildClassPath(AppJavaClassPath appClassPath) {
+		String systemClassPath = System.getProperty("java.class.path");
+		List<String> pathList = new ArrayList<>(Arrays.asList(systemClassPath.split(File.pathSeparator)));
+		StringBuilder sb = new StringBuilder(systemClassPath);
+		for (String path : appClassPath.getClasspaths()) {
+			if (!pathList.contains(path)) {
+				sb.append(File.pathSeparator).append(path);
+			}
+		}
+		String jdkPath = appClassPath.getJavaHome() + File.separator + "jre" + File.separator + "lib"
+				+ File.separator + "rt.jar";
+		sb.append(File.pathSeparator).append(jdkPath);
+		return sb.toString();
+	}
+
+	private static <K, V> Map<K, V> createLruCache(final int cacheSize) {
+		return new LinkedHashMap<K, V>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+				return size() > cacheSize;
+			}
+		};
+	}
+
+	/**
+	 * @return the parsed class, or null if it cannot be found or parsed.
+	 */
+	public JavaClass lookupClass(String className) {
+		try {
+			return loadClass(className);
+		} catch (ClassNotFoundException e) {
+			return null;
+		}
+	}
+
+	@Override
+	public JavaClass loadClass(String className) throws ClassNotFoundException {
+		if (className == null || className.isEmpty()) {
+			throw new IllegalArgumentException("Invalid class name " + className);
+		}
+		className = className.replace('/', '.');
+		JavaClass clazz = findClass(className);
+		if (clazz != null) {
+			return clazz;
+		}
+		/* parse out of the lock, a class parsed twice concurrently is cached once */
+		try (InputStream in = classPath.getInputStream(className.replace('.', '/'), ".class")) {
+			clazz = new ClassParser(in, className).parse();
+		} catch (IOException e) {
+			throw new ClassNotFoundException("Exception while looking for class " + className + ": " + e.toString(), e);
+		}
+		clazz.setRepository(this);
+		synchronized (classes) {
+			JavaClass cached = classes.get(className);
+			if (cached != null) {
+				return cached;
+			}
+			classes.put(className, clazz);
+		}
+		return clazz;
+	}
+
+	@Override
+	public JavaClass loadClass(Class<?> clazz) throws ClassNotFoundException {
+		return loadClass(clazz.getName());
+	}
+
+	@Override
+	public JavaClass findClass(String className) {
+		synchronized (classes) {
+			return classes.get(className);
+		}
+	}
+
+	@Override
+	public void storeClass(JavaClass clazz) {
+		synchronized (classes) {
+			classes.put(clazz.getClassName(), clazz);
+		}
+		clazz.setRepository(this);
+	}
+
+	@Override
+	public void removeClass(JavaClass clazz) {
+		synchronized (classes) {
+			classes.remove(clazz.getClassName());
+		}
+	}
+
+	/**
+	 * @return the CFG of the method with its control dependencies, built by
+	 *         {@link CFGConstructor#buildCFGWithControlDomiance(org.apache.bcel.classfile.Code)}.
+	 *         The CFG is shared, it must not be modified, e.g. by
+	 *         {@link CFGConstructor#constructDataDependency(CFG)}.
+	 */
+	public CFG getCFG(String className, Method method) {
+		String key = className + "#" + method.getName() + method.getSignature();
+		synchronized (cfgs) {
+			CFG cfg = cfgs.get(key);
+			if (cfg != null) {
+				return cfg;
+			}
+		}
+		CFG cfg = new CFGConstructor().buildCFGWithControlDomiance(method.getCode());
+		synchronized (cfgs) {
+			CFG cached = cfgs.get(key);
+			if (cached != null) {
+				return cached;
+			}
+			cfgs.put(key, cfg);
+		}
+		return cfg;
+	}
+
+	@Override
+	public void clear() {
+		synchronized (classes) {
+			classes.clear();
+		}
+		synchronized (cfgs) {
+			cfgs.clear();
+		}
+	}
+
+	@Override
+	public ClassPath getClassPath() {
+		return classPath;
+	}
+}
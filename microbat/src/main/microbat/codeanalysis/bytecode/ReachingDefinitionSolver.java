@@ -0,0 +1,249 @@
+package microbat.codeanalysis.bytecode;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import microbat.model.variable.ArrayElementVar;
+import microbat.model.variable.FieldVar;
+import microbat.model.variable.LocalVar;
+import microbat.model.variable.Variable;
+
+/**
+ * Reaching definition analysis on the CFG of a method. The nodes are numbered
+ * by their index in {@link CFG#getNodeList()}, and the gen, kill and out sets
+ * are kept as {@link BitSet}s over these numbers. The out sets are computed by a
+ * worklist which visits the nodes in reverse postorder, so that most nodes are
+ * visited after their parents and the fixpoint is reached in a few passes.
+ *
+ * Two definitions kill each other if they write the same variable in the sense
+ * of {@link #getVarKey(Variable)}, i.e. the same field of the same declaring
+ * type, the same local variable slot, or an element of an array of the same
+ * type.
+ *
+ * The node's read and written variables must be parsed before the analysis.
+ */
+public class ReachingDefinitionSolver {
+	private List<CFGNode> nodes;
+	private int[][] parents;
+	private int[][] children;
+
+	private BitSet[] genSets;
+	private BitSet[] killSets;
+	private BitSet[] outSets;
+
+	/**
+	 * definitions (by node index) of each variable key.
+	 */
+	private Map<String, BitSet> varDefinitions = new HashMap<>();
+
+	public ReachingDefinitionSolver(CFG cfg) {
+		this.nodes = cfg.getNodeList();
+		int size = nodes.size();
+
+		Map<Integer, Integer> indexes = new HashMap<>();
+		for(int i=0; i<size; i++){
+			indexes.put(nodes.get(i).getInstructionHandle().getPosition(), i);
+		}
+		parents = new int[size][];
+		children = new int[size][];
+		for(int i=0; i<size; i++){
+			CFGNode node = nodes.get(i);
+			parents[i] = toIndexes(node.getParents(), indexes);
+			children[i] = toIndexes(node.getChildren(), indexes);
+		}
+	}
+
+	private int[] toIndexes(List<CFGNode> list, Map<Integer, Integer> indexes) {
+		int[] result = new int[list.size()];
+		for(int i=0; i<result.length; i++){
+			result[i] = indexes.get(list.get(i).getInstructionHandle().getPosition());
+		}
+		return result;
+	}
+
+	/**
+	 * compute the out set of each node, and set it to the node as a list
+	 * following the order of {@link CFG#getNodeList()}.
+	 */
+	public void solve() {
+		int size = nodes.size();
+		initializeGenKillSets();
+
+		outSets = new BitSet[size];
+		for(int i=0; i<size; i++){
+			outSets[i] = (BitSet) genSets[i].clone();
+		}
+
+		int[] order = computeReversePostOrder();
+		int[] rank = new int[size];
+		for(int r=0; r<size; r++){
+			rank[order[r]] = r;
+		}
+
+		/* pending nodes, by their rank in reverse postorder */
+		BitSet worklist = new BitSet(size);
+		worklist.set(0, size);
+		BitSet inSet = new BitSet(size);
+		int r = 0;
+		while(!worklist.isEmpty()){
+			r = worklist.nextSetBit(r);
+			if(r < 0){
+				r = worklist.nextSetBit(0);
+			}
+			worklist.clear(r);
+			int node = order[r];
+
+			inSet.clear();
+			for(int parent: parents[node]){
+				inSet.or(outSets[parent]);
+			}
+			inSet.andNot(killSets[node]);
+			inSet.or(genSets[node]);
+
+			/* out sets only grow, so only the new definitions are checked */
+			inSet.andNot(outSets[node]);
+			if(!inSet.isEmpty()){
+				outSets[node].or(inSet);
+				for(int child: children[node]){
+					worklist.set(rank[child]);
+				}
+			}
+		}
+
+		for(int i=0; i<size; i++){
+			nodes.get(i).setOutSet(toNodeList(outSets[i]));
+		}
+	}
+
+	/**
+	 * link each node reading a variable to the definitions of the variable in
+	 * its out set, with {@link CFGNode#addDefineNode(CFGNode)} and
+	 * {@link CFGNode#addUseNode(CFGNode)}. This method can only be called after
+	 * {@link #solve()}.
+	 */
+	public void buildDefUseChains() {
+		BitSet defs = new BitSet(nodes.size());
+		for(int i=0; i<nodes.size(); i++){
+			CFGNode useNode = nodes.get(i);
+			defs.clear();
+			for(Variable var: useNode.getReadVars()){
+				BitSet varDefs = varDefinitions.get(getVarKey(var));
+				if(varDefs != null){
+					defs.or(varDefs);
+				}
+			}
+			defs.and(outSets[i]);
+			for(int d=defs.nextSetBit(0); d>=0; d=defs.nextSetBit(d+1)){
+				CFGNode defNode = nodes.get(d);
+				useNode.addDefineNode(defNode);
+				defNode.addUseNode(useNode);
+			}
+		}
+	}
+
+	private void initializeGenKillSets() {
+		int size = nodes.size();
+		genSets = new BitSet[size];
+		killSets = new BitSet[size];
+		varDefinitions.clear();
+		for(int i=0; i<size; i++){
+			genSets[i] = new BitSet(size);
+			for(Variable var: nodes.get(i).getWrittenVars()){
+				String key = getVarKey(var);
+				if(key != null){
+					BitSet varDefs = varDefinitions.get(key);
+					if(varDefs == null){
+						varDefs = new BitSet(size);
+						varDefinitions.put(key, varDefs);
+					}
+					varDefs.set(i);
+				}
+			}
+			if(!nodes.get(i).getWrittenVars().isEmpty()){
+				genSets[i].set(i);
+			}
+		}
+
+		for(int i=0; i<size; i++){
+			killSets[i] = new BitSet(size);
+			for(Variable var: nodes.get(i).getWrittenVars()){
+				BitSet varDefs = varDefinitions.get(getVarKey(var));
+				if(varDefs != null){
+					killSets[i].or(varDefs);
+				}
+			}
+			killSets[i].andNot(genSets[i]);
+		}
+	}
+
+	/**
+	 * @return the node indexes in reverse postorder of a depth first traversal
+	 *         from the start node, preceded by the nodes which are not reachable
+	 *         from it.
+	 */
+	private int[] computeReversePostOrder() {
+		int size = nodes.size();
+		int[] order = new int[size];
+		int count = size;
+		boolean[] visited = new boolean[size];
+
+		int[] stack = new int[size];
+		int[] nextChild = new int[size];
+		for(int root=0; root<size; root++){
+			/* the first node is the start node, the others are roots of unreachable code */
+			if(visited[root]){
+				continue;
+			}
+			int top = 0;
+			stack[0] = root;
+			visited[root] = true;
+			while(top >= 0){
+				int node = stack[top];
+				if(nextChild[node] < children[node].length){
+					int child = children[node][nextChild[node]++];
+					if(!visited[child]){
+						visited[child] = true;
+						stack[++top] = child;
+					}
+				}
+				else{
+					order[--count] = node;
+					top--;
+				}
+			}
+		}
+
+		return order;
+	}
+
+	private List<CFGNode> toNodeList(BitSet set) {
+		List<CFGNode> list = new ArrayList<>(set.cardinality());
+		for(int i=set.nextSetBit(0); i>=0; i=set.nextSetBit(i+1)){
+			list.add(nodes.get(i));
+		}
+		return list;
+	}
+
+	/**
+	 * @return a key which is equal for two variables if and only if they are
+	 *         the same variable for data dependency, null if the variable never
+	 *         defines or uses one.
+	 */
+	public static String getVarKey(Variable var) {
+		if(var instanceof FieldVar){
+			FieldVar fVar = (FieldVar)var;
+			return "F:" + fVar.getDeclaringType() + "#" + fVar.getName();
+		}
+		else if(var instanceof LocalVar){
+			return "L:" + ((LocalVar)var).getByteCodeIndex();
+		}
+		else if(var instanceof ArrayElementVar){
+			return "A:" + var.getType();
+		}
+
+		return null;
+	}
+}
@@ -7,8 +7,12 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
 
 import org.apache.commons.io.FileUtils;
 import org.eclipse.jdt.core.dom.ASTNode;
@@ -43,6 +47,12 @@ import sav.strategies.vm.VMRunner;
 
 public class InstrumentationExecutor {
 	public final static String TRACE_DUMP_FILE_SUFFIX = ".exec";
+	/**
+	 * the phases of constructing a trace, see {@link Trace#getConstructTimeBreakdown()}.
+	 */
+	public final static String RUNNING_PHASE = "running";
+	public final static String SOURCE_RESOLUTION_PHASE = "source resolution";
+	public final static String READ_VARIABLE_PHASE = "read variable completion";
 	
 	private AppJavaClassPath appPath;
 	private PreCheckInformation precheckInfo;
@@ -194,6 +204,7 @@ public class InstrumentationExecutor {
 //			agentRunner.getConfig().setPort(8888);
 			agentRunner.addAgentParam(AgentParams.OPT_EXPECTED_STEP, info.getStepNum());
 			agentRunner.run(DatabasePreference.getReader());
+			long runningTime = System.currentTimeMillis() - start;
 			// agentRunner.runWithSocket();
 			RunningInfo result = agentRunner.getRunningInfo();
 //			System.out.println(result);
@@ -208,6 +219,7 @@ public class InstrumentationExecutor {
 			trace.setAppJavaClassPath(appPath);
 //			trace.setMultiThread(info.getThreadNum()!=1);
 			
+			trace.setConstructTime(RUNNING_PHASE, (int) runningTime);
 			appendMissingInfo(trace, appPath);
 			trace.setConstructTime((int) (System.currentTimeMillis() - start));
 			
@@ -246,55 +258,125 @@ public class InstrumentationExecutor {
 //		return null;
 //	}
 
+	/**
+	 * attach the source paths of the steps, and complete the read variables of the steps
+	 * invoking methods but reading no variable with the read variables of the steps before
+	 * them in the same statement. It is done in two phases:
+	 * <ol>
+	 * <li>the source paths are resolved through a {@link SourceFolderIndex}, and the
+	 * compilation units of the steps to complete are parsed once each;</li>
+	 * <li>the steps to complete are partitioned by their invocation parents, as a step only
+	 * looks back along its step-over chain, i.e., in the same method invocation. The
+	 * partitions are completed in parallel, the steps of a partition in order.</li>
+	 * </ol>
+	 * The time of the phases is recorded in the construct time breakdown of the trace.
+	 */
 	public static void appendMissingInfo(Trace trace, AppJavaClassPath appPath) {
+		long start = System.currentTimeMillis();
 		Map<String, String> classNameMap = new HashMap<>();
 		Map<String, String> pathMap = new HashMap<>();
+		SourceFolderIndex sourceFolderIndex = new SourceFolderIndex();
 		
+		Map<Integer, List<TraceNode>> partitions = new LinkedHashMap<>();
+		Map<String, CompilationUnit> units = new HashMap<>();
 		for(TraceNode node: trace.getExecutionList()){
 			BreakPoint point = node.getBreakPoint();
 			if(point.getFullJavaFilePath()==null){
-				attachFullPathInfo(point, appPath, classNameMap, pathMap);				
+				attachFullPathInfo(point, appPath, classNameMap, pathMap, sourceFolderIndex);
 			}
 			
 			if(!node.getInvocationChildren().isEmpty() && 
 					node.getReadVariables().isEmpty()) {
-				//check AST completeness
-				CompilationUnit cu = JavaUtil.findCompilationUnitInProject(
-						node.getDeclaringCompilationUnitName(), appPath);
-				MinimumASTNodeFinder finder = new MinimumASTNodeFinder(
-						node.getLineNumber(), cu);
-				cu.accept(finder);
-				ASTNode astNode = finder.getMinimumNode();
-				
-				if(astNode!=null) {
-					int start = cu.getLineNumber(astNode.getStartPosition());
-					int end = cu.getLineNumber(astNode.getStartPosition()+astNode.getLength());
-					
-					TraceNode stepOverPrev = node.getStepOverPrevious();
-					while(stepOverPrev!=null && 
-							start<=stepOverPrev.getLineNumber() &&
-							stepOverPrev.getLineNumber()<=end) {
-						List<VarValue> readVars = stepOverPrev.getReadVariables();
-						for(VarValue readVar: readVars) {
-							if(!node.getReadVariables().contains(readVar)) {
-								node.getReadVariables().add(readVar);
-							}
-						}
-						stepOverPrev = stepOverPrev.getStepOverPrevious();
-					}
+				String cuName = node.getDeclaringCompilationUnitName();
+				if(cuName == null) {
+					continue;
 				}
-				
+				if(!units.containsKey(cuName)) {
+					units.put(cuName, JavaUtil.findCompilationUnitInProject(cuName, appPath));
+				}
+				TraceNode invocationParent = node.getInvocationParent();
+				Integer partition = (invocationParent == null) ? 0 : invocationParent.getOrder();
+				List<TraceNode> nodes = partitions.get(partition);
+				if(nodes == null) {
+					nodes = new ArrayList<>();
+					partitions.put(partition, nodes);
+				}
+				nodes.add(node);
 			}
 		}
+		long resolved = System.currentTimeMillis();
+		trace.setConstructTime(SOURCE_RESOLUTION_PHASE, (int) (resolved - start));
+		
+		appendMissingReadVariables(partitions.values(), units, true);
+		trace.setConstructTime(READ_VARIABLE_PHASE, (int) (System.currentTimeMillis() - resolved));
+	}
+	
+	/**
+	 * the steps of a partition are of the same invocation parent, in order, so a step
+	 * only reads the variables of the steps of its own partition, including the ones
+	 * appended to them before. The partitions are independent of each other and may be
+	 * handled in parallel.
+	 */
+	static void appendMissingReadVariables(Collection<List<TraceNode>> partitions,
+			Map<String, CompilationUnit> units, boolean parallel) {
+		Stream<List<TraceNode>> stream = parallel ? partitions.parallelStream() : partitions.stream();
+		stream.forEach(nodes -> {
+			for(TraceNode node: nodes) {
+				appendMissingReadVariables(node, units.get(node.getDeclaringCompilationUnitName()));
+			}
+		});
+	}
+	
+	/**
+	 * check AST completeness: add the read variables of the steps before the node in the
+	 * same minimum AST node.
+	 */
+	private static void appendMissingReadVariables(TraceNode node, CompilationUnit cu) {
+		if(cu == null) {
+			return;
+		}
+		ASTNode astNode = MinimumASTNodeFinder.findMinimumNode(cu, node.getLineNumber());
+		if(astNode == null) {
+			return;
+		}
+		
+		int start = cu.getLineNumber(astNode.getStartPosition());
+		int end = cu.getLineNumber(astNode.getStartPosition()+astNode.getLength());
+		
+		/* the node reads no variable before its completion */
+		List<VarValue> nodeReadVars = new ArrayList<>();
+		Set<VarValue> nodeReadVarSet = new HashSet<>();
+		TraceNode stepOverPrev = node.getStepOverPrevious();
+		while(stepOverPrev!=null && 
+				start<=stepOverPrev.getLineNumber() &&
+				stepOverPrev.getLineNumber()<=end) {
+			List<VarValue> readVars = stepOverPrev.getReadVariables();
+			for(VarValue readVar: readVars) {
+				/* a value without variable equals to no value */
+				if(readVar.getVariable() == null || nodeReadVarSet.add(readVar)) {
+					nodeReadVars.add(readVar);
+				}
+			}
+			stepOverPrev = stepOverPrev.getStepOverPrevious();
+		}
+		if(!nodeReadVars.isEmpty()) {
+			/* through the trace, so that its variable index is updated */
+			node.addReadVariables(nodeReadVars);
+		}
 	}
 	
 	public static void attachFullPathInfo(BreakPoint point, AppJavaClassPath appClassPath, 
 			Map<String, String> classNameMap, Map<String, String> pathMap){
+		attachFullPathInfo(point, appClassPath, classNameMap, pathMap, new SourceFolderIndex());
+	}
+	
+	private static void attachFullPathInfo(BreakPoint point, AppJavaClassPath appClassPath, 
+			Map<String, String> classNameMap, Map<String, String> pathMap, SourceFolderIndex sourceFolderIndex){
 		String relativePath = point.getDeclaringCompilationUnitName().replace(".", File.separator) + ".java";
 		List<String> candidateSourceFolders = appClassPath.getAllSourceFolders();
 		for(String candidateSourceFolder: candidateSourceFolders){
 			String filePath = candidateSourceFolder + File.separator + relativePath;
-			if(new File(filePath).exists()){
+			if(sourceFolderIndex.exists(filePath)){
 				point.setFullJavaFilePath(filePath);
 			}
 		}
@@ -316,7 +398,7 @@ public class InstrumentationExecutor {
 				String packageRelativePath = packageName.replace(".", File.separator);
 				for(String candidateSourceFolder: candidateSourceFolders){
 					String packageFullPath = candidateSourceFolder + File.separator + packageRelativePath;
-					declaringCompilationUnitName = findDeclaringCompilationUnitName(packageFullPath, canonicalClassName);
+					declaringCompilationUnitName = sourceFolderIndex.findDeclaringCompilationUnitName(packageFullPath, canonicalClassName);
 					if(declaringCompilationUnitName!=null){
 						fullPath = candidateSourceFolder + File.separator + 
 								declaringCompilationUnitName.replace(".", File.separator) + ".java";
@@ -338,7 +420,7 @@ public class InstrumentationExecutor {
 	}
 
 	@SuppressWarnings("rawtypes")
-	private static String findDeclaringCompilationUnitName(String packagePath, String canonicalClassName) {
+	static String findDeclaringCompilationUnitName(String packagePath, String canonicalClassName) {
 		File packageFolder = new File(packagePath);
 		
 		if(!packageFolder.exists()){
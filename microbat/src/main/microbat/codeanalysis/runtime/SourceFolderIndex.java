@@ -0,0 +1,38 @@
+package microbat.codeanalysis.runtime;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The source files found in the source folders during the post-processing of a
+ * trace, so that each file is probed and each package is searched for the
+ * declaring compilation unit of a class only once, however many steps are in
+ * the file or class.
+ */
+class SourceFolderIndex {
+	/* file path -> whether the file exists */
+	private Map<String, Boolean> existingFiles = new HashMap<>();
+	/* package path#canonical class name -> declaring compilation unit name, or null */
+	private Map<String, String> declaringCompilationUnits = new HashMap<>();
+
+	public boolean exists(String filePath) {
+		Boolean exists = existingFiles.get(filePath);
+		if (exists == null) {
+			exists = new File(filePath).exists();
+			existingFiles.put(filePath, exists);
+		}
+		return exists;
+	}
+
+	public String findDeclaringCompilationUnitName(String packagePath, String canonicalClassName) {
+		String key = packagePath + "#" + canonicalClassName;
+		if (declaringCompilationUnits.containsKey(key)) {
+			return declaringCompilationUnits.get(key);
+		}
+		String declaringCompilationUnitName = InstrumentationExecutor.findDeclaringCompilationUnitName(packagePath,
+				canonicalClassName);
+		declaringCompilationUnits.put(key, declaringCompilationUnitName);
+		return declaringCompilationUnitName;
+	}
+}
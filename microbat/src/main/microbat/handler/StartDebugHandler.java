@@ -21,6 +21,7 @@ import microbat.behavior.Behavior;
 import microbat.behavior.BehaviorData;
 import microbat.behavior.BehaviorReader;
 import microbat.behavior.BehaviorReporter;
+import microbat.codeanalysis.bytecode.ClassFileRepository;
 import microbat.codeanalysis.runtime.InstrumentationExecutor;
 import microbat.codeanalysis.runtime.RunningInformation;
 import microbat.codeanalysis.runtime.StepLimitException;
@@ -97,6 +98,8 @@ public class StartDebugHandler extends AbstractHandler {
 				protected IStatus run(IProgressMonitor monitor) {
 					Settings.interestedVariables.clear();
 					Settings.potentialCorrectPatterns.clear();
+					/* the classes may have been recompiled since the last run */
+					ClassFileRepository.clearAll();
 					
 					try{
 						monitor.beginTask("Construct Trace Model", 100);
@@ -23,6 +23,7 @@ import microbat.behavior.BehaviorData;
 import microbat.behavior.BehaviorReader;
 import microbat.behavior.BehaviorReporter;
 import microbat.codeanalysis.bytecode.BPVariableRetriever;
+import microbat.codeanalysis.bytecode.ClassFileRepository;
 import microbat.codeanalysis.runtime.ExecutionStatementCollector;
 import microbat.codeanalysis.runtime.InstrumentationExecutor;
 import microbat.codeanalysis.runtime.ProgramExecutor;
@@ -94,6 +95,7 @@ public class StartDebugHandler0 extends AbstractHandler {
 					/** 0. clear some static common variables **/
 					clearOldData();
 					Repository.clearCache();
+					ClassFileRepository.clearAll();
 					
 					int stepNum = -1;
 					boolean isMultiThread = false;
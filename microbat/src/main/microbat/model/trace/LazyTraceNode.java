@@ -1,5 +1,6 @@
 package microbat.model.trace;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.function.Function;
 import microbat.model.BreakPoint;
@@ -7,8 +8,17 @@ import microbat.model.BreakPointValue;
 import microbat.model.value.VarValue;
 import sav.common.core.Pair;
 
+/**
+ * A step whose read/written variables are loaded from the database when they are
+ * accessed. The loaded variables are not kept by the step, they stay in the cache of
+ * the supplier as long as they are used, so that walking a long trace does not keep
+ * all its variables in memory. Once the variables of the step are changed, they are
+ * kept by the step.
+ */
 public class LazyTraceNode extends TraceNode{
 	private Function<TraceNode, Pair<List<VarValue>, List<VarValue>>> supplier;
+	/* the variables are changed on the step, so they are kept in its fields */
+	private boolean held = false;
 	public LazyTraceNode(
 			BreakPoint breakPoint, 
 			BreakPointValue programState, 
@@ -21,23 +31,65 @@ public class LazyTraceNode extends TraceNode{
 	
 	@Override
 	public List<VarValue> getReadVariables() {
-		if (this.readVariables.isEmpty()) {
-			this.populateRWVars();
+		if (held) {
+			return readVariables;
 		}
-		return readVariables;
+		Pair<List<VarValue>, List<VarValue>> pair = supplier.apply(this);
+		return pair == null ? readVariables : pair.first();
 	}
 
 	@Override
 	public List<VarValue> getWrittenVariables() {
-		if (this.writtenVariables.isEmpty()) {
-			this.populateRWVars();
+		if (held) {
+			return writtenVariables;
 		}
-		return writtenVariables;
+		Pair<List<VarValue>, List<VarValue>> pair = supplier.apply(this);
+		return pair == null ? writtenVariables : pair.second();
+	}
+	
+	@Override
+	public void setReadVariables(List<VarValue> readVariables) {
+		hold();
+		super.setReadVariables(readVariables);
 	}
 	
-	private void populateRWVars() {
+	@Override
+	public void addReadVariable(VarValue var) {
+		hold();
+		super.addReadVariable(var);
+	}
+	
+	@Override
+	public void addReadVariables(List<VarValue> vars) {
+		hold();
+		super.addReadVariables(vars);
+	}
+	
+	@Override
+	public void setWrittenVariables(List<VarValue> writtenVariables) {
+		hold();
+		super.setWrittenVariables(writtenVariables);
+	}
+	
+	@Override
+	public void addWrittenVariable(VarValue var) {
+		hold();
+		super.addWrittenVariable(var);
+	}
+	
+	/**
+	 * copy the loaded variables into the step before they are changed, the lists of
+	 * the supplier are shared with its cache.
+	 */
+	private void hold() {
+		if (held) {
+			return;
+		}
 		Pair<List<VarValue>, List<VarValue>> pair = supplier.apply(this);
-		this.setReadVariables(pair.first());
-		this.setWrittenVariables(pair.second());
+		if (pair != null) {
+			this.readVariables = new ArrayList<>(pair.first());
+			this.writtenVariables = new ArrayList<>(pair.second());
+		}
+		held = true;
 	}
 }
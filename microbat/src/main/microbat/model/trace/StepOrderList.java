@@ -0,0 +1,95 @@
+package microbat.model.trace;
+
+import java.util.Arrays;
+
+/**
+ * a growable sorted array of step orders, for the step indexes of a trace.
+ */
+class StepOrderList {
+	private int[] orders = new int[2];
+	private int size;
+
+	/**
+	 * add the order of a step, which is not smaller than the orders already added.
+	 */
+	public void add(int order) {
+		if (size > 0 && orders[size - 1] >= order) {
+			/* the step is indexed more than once */
+			return;
+		}
+		append(order);
+	}
+
+	/**
+	 * add the order of a step at its place, e.g., when the variables of an indexed
+	 * step are changed.
+	 */
+	public void insert(int order) {
+		int idx = findFirstNotBefore(order);
+		if (idx < size && orders[idx] == order) {
+			return;
+		}
+		if (size == orders.length) {
+			orders = Arrays.copyOf(orders, size * 2);
+		}
+		System.arraycopy(orders, idx, orders, idx + 1, size - idx);
+		orders[idx] = order;
+		size++;
+	}
+
+	public void remove(int order) {
+		int idx = findFirstNotBefore(order);
+		if (idx < size && orders[idx] == order) {
+			System.arraycopy(orders, idx + 1, orders, idx, size - idx - 1);
+			size--;
+		}
+	}
+
+	public void append(int order) {
+		if (size == orders.length) {
+			orders = Arrays.copyOf(orders, size * 2);
+		}
+		orders[size++] = order;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int get(int index) {
+		return orders[index];
+	}
+
+	public int[] toArray() {
+		return Arrays.copyOf(orders, size);
+	}
+
+	public int findLastBefore(int order) {
+		int idx = findFirstNotBefore(order) - 1;
+		return idx >= 0 ? orders[idx] : -1;
+	}
+
+	/**
+	 * @return the index of the first order which is bigger than the given order.
+	 */
+	public int findFirstAfter(int order) {
+		return findFirstNotBefore(order + 1);
+	}
+
+	/**
+	 * @return the index of the first order which is not smaller than the given order.
+	 */
+	private int findFirstNotBefore(int order) {
+		int low = 0;
+		int high = size;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (orders[mid] < order) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+}
@@ -0,0 +1,194 @@
+package microbat.model.trace;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import microbat.model.value.VarValue;
+import microbat.model.variable.Variable;
+
+/**
+ * An index from variables to the orders of the steps accessing (i.e., reading or
+ * writing) them. Steps are expected to be added in ascending order, so that the
+ * orders of each variable stay sorted and can be binary searched.
+ *
+ * A step accessing a value is indexed by
+ * <ul>
+ * <li>the truncated var ID of the value,</li>
+ * <li>the truncated alias ID of the value,</li>
+ * <li>the var IDs of all (grand)children of the value.</li>
+ * </ul>
+ * which is the same matching as {@link Trace#findProducer(VarValue, TraceNode)}.
+ */
+public class StepVariableIndex {
+	private Map<String, StepOrderList> varIDIndex = new HashMap<>();
+	private Map<String, StepOrderList> aliasIDIndex = new HashMap<>();
+	private Map<String, StepOrderList> childIDIndex = new HashMap<>();
+
+	public void addStep(int order, Collection<VarValue> values) {
+		if (values == null) {
+			return;
+		}
+		for (VarValue value : values) {
+			add(varIDIndex, Variable.truncateSimpleID(value.getVarID()), order);
+			add(aliasIDIndex, Variable.truncateSimpleID(value.getAliasVarID()), order);
+			addChildren(value, order, new HashSet<String>());
+		}
+	}
+
+	/**
+	 * re-index a step which is already indexed after its variables are changed.
+	 * 
+	 * @param removedValues
+	 *            the values the step no longer accesses, can be null.
+	 * @param values
+	 *            the values added to the step, all its values if some are
+	 *            removed.
+	 */
+	public void updateStep(int order, Collection<VarValue> removedValues, Collection<VarValue> values) {
+		if (removedValues != null) {
+			for (VarValue value : removedValues) {
+				remove(varIDIndex, Variable.truncateSimpleID(value.getVarID()), order);
+				remove(aliasIDIndex, Variable.truncateSimpleID(value.getAliasVarID()), order);
+				removeChildren(value, order, new HashSet<String>());
+			}
+		}
+		/* the keys shared with the removed values are added back */
+		if (values != null) {
+			for (VarValue value : values) {
+				insert(varIDIndex, Variable.truncateSimpleID(value.getVarID()), order);
+				insert(aliasIDIndex, Variable.truncateSimpleID(value.getAliasVarID()), order);
+				insertChildren(value, order, new HashSet<String>());
+			}
+		}
+	}
+
+	private void addChildren(VarValue value, int order, Set<String> visitedIDs) {
+		for (VarValue child : value.getChildren()) {
+			String childID = child.getVarID();
+			if (childID == null || !visitedIDs.add(childID)) {
+				continue;
+			}
+			add(childIDIndex, childID, order);
+			addChildren(child, order, visitedIDs);
+		}
+	}
+
+	private void insertChildren(VarValue value, int order, Set<String> visitedIDs) {
+		for (VarValue child : value.getChildren()) {
+			String childID = child.getVarID();
+			if (childID == null || !visitedIDs.add(childID)) {
+				continue;
+			}
+			insert(childIDIndex, childID, order);
+			insertChildren(child, order, visitedIDs);
+		}
+	}
+
+	private void removeChildren(VarValue value, int order, Set<String> visitedIDs) {
+		for (VarValue child : value.getChildren()) {
+			String childID = child.getVarID();
+			if (childID == null || !visitedIDs.add(childID)) {
+				continue;
+			}
+			remove(childIDIndex, childID, order);
+			removeChildren(child, order, visitedIDs);
+		}
+	}
+
+	private void add(Map<String, StepOrderList> index, String key, int order) {
+		if (key == null) {
+			return;
+		}
+		getOrders(index, key).add(order);
+	}
+
+	private void insert(Map<String, StepOrderList> index, String key, int order) {
+		if (key == null) {
+			return;
+		}
+		getOrders(index, key).insert(order);
+	}
+
+	private StepOrderList getOrders(Map<String, StepOrderList> index, String key) {
+		StepOrderList orders = index.get(key);
+		if (orders == null) {
+			orders = new StepOrderList();
+			index.put(key, orders);
+		}
+		return orders;
+	}
+
+	private void remove(Map<String, StepOrderList> index, String key, int order) {
+		if (key == null) {
+			return;
+		}
+		StepOrderList orders = index.get(key);
+		if (orders != null) {
+			orders.remove(order);
+		}
+	}
+
+	/**
+	 * @param varID truncated var ID of the variable
+	 * @param aliasID truncated alias ID of the variable
+	 * @return the latest step before the given order accessing the variable, or -1
+	 * if there is no such step.
+	 */
+	public int findLastBefore(String varID, String aliasID, int order) {
+		int last = findLastBefore(varIDIndex, varID, order);
+		last = Math.max(last, findLastBefore(aliasIDIndex, aliasID, order));
+		last = Math.max(last, findLastBefore(childIDIndex, varID, order));
+		last = Math.max(last, findLastBefore(childIDIndex, aliasID, order));
+		return last;
+	}
+
+	private int findLastBefore(Map<String, StepOrderList> index, String key, int order) {
+		if (key == null) {
+			return -1;
+		}
+		StepOrderList orders = index.get(key);
+		if (orders == null) {
+			return -1;
+		}
+		return orders.findLastBefore(order);
+	}
+
+	/**
+	 * @param varID truncated var ID of the variable
+	 * @param aliasID truncated alias ID of the variable
+	 * @return the sorted orders of all steps after the given order accessing the variable.
+	 */
+	public int[] findAllAfter(String varID, String aliasID, int order) {
+		StepOrderList result = new StepOrderList();
+		collectAfter(varIDIndex, varID, order, result);
+		collectAfter(aliasIDIndex, aliasID, order, result);
+		collectAfter(childIDIndex, varID, order, result);
+		collectAfter(childIDIndex, aliasID, order, result);
+		int[] orders = result.toArray();
+		Arrays.sort(orders);
+		int size = 0;
+		for (int i = 0; i < orders.length; i++) {
+			if (size == 0 || orders[size - 1] != orders[i]) {
+				orders[size++] = orders[i];
+			}
+		}
+		return Arrays.copyOf(orders, size);
+	}
+
+	private void collectAfter(Map<String, StepOrderList> index, String key, int order, StepOrderList result) {
+		if (key == null) {
+			return;
+		}
+		StepOrderList orders = index.get(key);
+		if (orders == null) {
+			return;
+		}
+		for (int i = orders.findFirstAfter(order); i < orders.size(); i++) {
+			result.append(orders.get(i));
+		}
+	}
+}
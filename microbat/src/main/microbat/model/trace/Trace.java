@@ -1,12 +1,16 @@
 package microbat.model.trace;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Stack;
 
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.jdt.core.dom.ASTVisitor;
 import org.eclipse.jdt.core.dom.CatchClause;
 import org.eclipse.jdt.core.dom.CompilationUnit;
@@ -71,8 +75,38 @@ public class Trace {
 	 * the time used to construct the trace, which is used for evaluation.
 	 */
 	private int constructTime = 0;
+	/**
+	 * the time of the phases of constructing the trace, e.g., running the program and
+	 * post-processing the steps, in the order they are recorded.
+	 */
+	private Map<String, Integer> constructTimeBreakdown = new LinkedHashMap<>();
 	
 	private long threadId;
+	
+	/**
+	 * indexes of the steps writing/reading each variable, they are built incrementally
+	 * on the first query after new steps are added, see {@link #updateVariableIndex()}.
+	 * The steps whose variables are loaded on demand (see LazyTraceNode) are indexed as
+	 * they are loaded, the indexes keep only the ids and the orders.
+	 * The indexes, the slicer and the search index are guarded by {@link #indexLock}
+	 * as the variables of the steps can be changed by other threads.
+	 */
+	private final Object indexLock = new Object();
+	private StepVariableIndex definitionIndex = new StepVariableIndex();
+	private StepVariableIndex useIndex = new StepVariableIndex();
+	private int indexedSize = 0;
+	private TraceSlicer slicer = new TraceSlicer(this);
+	/**
+	 * indexes of the steps by location and read variables for the search views.
+	 */
+	private TraceSearchIndex searchIndex = new TraceSearchIndex(this);
+	private TraceSearchIndex.Query searchQuery;
+	/**
+	 * the tree of the steps by their abstraction parents for the trace view, built
+	 * on the first query after the steps are set or added, or the loops are
+	 * reconstructed. The variables of the steps do not change the tree.
+	 */
+	private TraceAbstractionTree abstractionTree;
 
 	public void resetCheckTime(){
 		this.checkTime = -1;
@@ -87,10 +121,15 @@ public class Trace {
 
 	public void setExecutionList(List<TraceNode> exectionList) {
 		this.executionList = exectionList;
+		this.abstractionTree = null;
+		synchronized (indexLock) {
+			resetVariableIndex();
+		}
 	}
-	
+
 	public void addTraceNode(TraceNode node){
 		this.executionList.add(node);
+		this.abstractionTree = null;
 	}
 	
 	public int size(){
@@ -120,14 +159,14 @@ public class Trace {
 	}
 	
 	public List<TraceNode> getTopAbstractionLevelNodes(){
-		List<TraceNode> topList = new ArrayList<>();
-		for(TraceNode node: this.executionList){
-			if(node.getAbstractionParent() == null){
-				topList.add(node);
-			}
+		return new ArrayList<>(getAbstractionTree().getTopNodes());
+	}
+	
+	public TraceAbstractionTree getAbstractionTree(){
+		if(abstractionTree == null){
+			abstractionTree = new TraceAbstractionTree(this.executionList);
 		}
-		
-		return topList;
+		return abstractionTree;
 	}
 	
 	public TraceNode getLatestNode(){
@@ -157,14 +196,11 @@ public class Trace {
 	}
 	
 	public int searchBackwardTraceNode(String expression){
-		int resultIndex = -1;
-		
-		for(int i=observingIndex-1; i>=0; i--){
-			resultIndex = searchTraceNode(expression, i);
-			if(resultIndex != -1){
-				break;
-			}
+		int order;
+		synchronized (indexLock) {
+			order = searchIndex.findPrevious(parseSearchQuery(expression), observingIndex+1);
 		}
+		int resultIndex = (order == -1) ? -1 : order-1;
 		
 		if(resultIndex != -1){
 			this.observingIndex = resultIndex;
@@ -173,14 +209,11 @@ public class Trace {
 	}
 
 	public int searchForwardTraceNode(String expression){
-		int resultIndex = -1;
-		
-		for(int i=observingIndex+1; i<executionList.size(); i++){
-			resultIndex = searchTraceNode(expression, i);
-			if(resultIndex != -1){
-				break;
-			}
+		int order;
+		synchronized (indexLock) {
+			order = searchIndex.findNext(parseSearchQuery(expression), observingIndex+1);
 		}
+		int resultIndex = (order == -1) ? -1 : order-1;
 		
 		if(resultIndex != -1){
 			this.observingIndex = resultIndex;			
@@ -188,48 +221,15 @@ public class Trace {
 		return resultIndex;
 	}
 
-	private int searchTraceNode(String expression, int i) {
-		int resultIndex = -1;
-		TraceNode node = executionList.get(i);
-		BreakPoint breakPoint = node.getBreakPoint();
-		String className = breakPoint.getDeclaringCompilationUnitName();
-		int lineNumber = breakPoint.getLineNumber();
-		
-		String simpleClassName = className.substring(className.lastIndexOf(".")+1, className.length());
-		
-		try{
-			int order = Integer.valueOf(expression);
-			if(node.getOrder()==order){
-				resultIndex = i;
-			}
-		}
-		catch(Exception e){
-//			if(expression.matches("id=(\\w|\\W)+:\\d+")){
-			if(expression.matches("id=(\\w|\\W)+")){
-				String id = expression.replace("id=", "");
-				for(VarValue readVar: node.getReadVariables()){
-					if(readVar.getVarID().contains(id)){
-						resultIndex = i;
-					}
-					else if(readVar.getAliasVarID()!=null && readVar.getAliasVarID().equals(id)){
-						resultIndex = i;
-					}
-				}
-			}
-			else{
-				String exp = combineTraceNodeExpression(className, lineNumber);
-				if(exp.equals(expression)){
-					resultIndex = i;
-				}
-				else if(simpleClassName.equals(expression)){
-					if (resultIndex==-1) {
-						resultIndex = i;					
-					}
-				}
-			}
+	/**
+	 * the search views keep searching with the same expression, so the last
+	 * parsed query is reused.
+	 */
+	private TraceSearchIndex.Query parseSearchQuery(String expression) {
+		if(searchQuery == null || !searchQuery.getExpression().equals(expression)) {
+			searchQuery = TraceSearchIndex.Query.parse(expression);
 		}
-		
-		return resultIndex;
+		return searchQuery;
 	}
 	
 	public static String combineTraceNodeExpression(String className, int lineNumber){
@@ -240,6 +240,23 @@ public class Trace {
 	}
 
 	public void conductStateDiff() {
+		conductStateDiff(false);
+	}
+	
+	/**
+	 * @param parallel
+	 *            whether to diff the states of the steps in parallel. The diff of a
+	 *            step only reads its program state and its state after (which can be
+	 *            the program state of another step) and only writes its own
+	 *            consequences, with a differ of its own, so the steps do not share
+	 *            any mutable state.
+	 */
+	public void conductStateDiff(boolean parallel) {
+		if(parallel){
+			this.executionList.parallelStream().forEach(node -> node.conductStateDiff());
+			return;
+		}
+		
 		for(int i=0; i<this.executionList.size(); i++){
 			TraceNode node = this.executionList.get(i);
 			node.conductStateDiff();
@@ -262,36 +279,137 @@ public class Trace {
 	}
 	
 	private List<TraceNode> findConsumer(VarValue writtenVar, TraceNode startNode) {
-		List<TraceNode> consumers = new ArrayList<TraceNode>();
-		
 		String varID = Variable.truncateSimpleID(writtenVar.getVarID());
 		String headID = Variable.truncateSimpleID(writtenVar.getAliasVarID());
 		
-		for(int i=startNode.getOrder()+1; i>=this.getExecutionList().size(); i++) {
-			TraceNode node = this.getTraceNode(i);
-			for(VarValue readVar: node.getReadVariables()) {
-				
-				String rVarID = Variable.truncateSimpleID(readVar.getVarID());
-				String rHeadID = Variable.truncateSimpleID(readVar.getAliasVarID());
-				
-				if(rVarID != null && rVarID.equals(varID)) {
-					consumers.add(node);						
-				}
-				
-				if(rHeadID != null && rHeadID.equals(headID)) {
-					consumers.add(node);
-				}
-				
-				VarValue childValue = readVar.findVarValue(varID, headID);
-				if(childValue != null) {
-					consumers.add(node);
-				}
-				
-			}
+		int[] orders;
+		synchronized (indexLock) {
+			updateVariableIndex();
+			orders = useIndex.findAllAfter(varID, headID, startNode.getOrder());
+		}
+		List<TraceNode> consumers = new ArrayList<TraceNode>(orders.length);
+		for(int order: orders) {
+			consumers.add(this.getTraceNode(order));
 		}
 		
 		return consumers;
 	}
+	
+	/**
+	 * index the read/written variables of the steps added since the last query,
+	 * the caller holds {@link #indexLock}. The lazy steps are loaded in order here,
+	 * so their variables are read from the database once per window of steps.
+	 */
+	private void updateVariableIndex() {
+		if(indexedSize < this.executionList.size()) {
+			/* the new steps may read the variables written by the indexed steps */
+			slicer.resetDataDominatees();
+		}
+		for(int i=indexedSize; i<this.executionList.size(); i++) {
+			TraceNode node = this.executionList.get(i);
+			definitionIndex.addStep(node.getOrder(), node.getWrittenVariables());
+			useIndex.addStep(node.getOrder(), node.getReadVariables());
+			indexedSize = i + 1;
+		}
+	}
+	
+	private void resetVariableIndex() {
+		definitionIndex = new StepVariableIndex();
+		useIndex = new StepVariableIndex();
+		indexedSize = 0;
+		slicer.reset();
+		searchIndex = new TraceSearchIndex(this);
+	}
+	
+	/**
+	 * The backward slice of a step: the steps it depends on transitively, through
+	 * its data dominators and control dominators.
+	 * 
+	 * @param step
+	 * @param maxDepth
+	 *            the number of dependency levels to follow, negative for no bound.
+	 * @param maxSteps
+	 *            the maximum number of steps in the slice, not counting the step,
+	 *            negative for no bound.
+	 * @param monitor
+	 *            to cancel the slicing from the UI, can be null.
+	 * @return the orders of the steps in the slice, not including the step.
+	 * @throws OperationCanceledException
+	 *             if the monitor is cancelled.
+	 */
+	public BitSet sliceBackward(TraceNode step, int maxDepth, int maxSteps, IProgressMonitor monitor) {
+		return slice(step, false, true, maxDepth, maxSteps, monitor);
+	}
+	
+	/**
+	 * The forward slice of a step: the steps depending on it transitively, through
+	 * their data dominators and control dominators. See
+	 * {@link #sliceBackward(TraceNode, int, int, IProgressMonitor)} for the
+	 * parameters.
+	 */
+	public BitSet sliceForward(TraceNode step, int maxDepth, int maxSteps, IProgressMonitor monitor) {
+		return slice(step, true, true, maxDepth, maxSteps, monitor);
+	}
+	
+	/**
+	 * Compute the data dominators (forward is false) or the data dominatees of all
+	 * the steps ahead, e.g., in a background job, so that the slices only look them
+	 * up. The variables of the steps loaded on demand are loaded window by window.
+	 * 
+	 * @param monitor
+	 *            to cancel the computation from the UI, can be null.
+	 * @throws OperationCanceledException
+	 *             if the monitor is cancelled.
+	 */
+	public void precomputeDataDependencies(boolean forward, IProgressMonitor monitor) {
+		synchronized (indexLock) {
+			updateVariableIndex();
+			slicer.precompute(forward, monitor);
+		}
+	}
+	
+	BitSet slice(TraceNode step, boolean forward, boolean followControl, int maxDepth, int maxSteps,
+			IProgressMonitor monitor) {
+		synchronized (indexLock) {
+			updateVariableIndex();
+			return slicer.slice(step, forward, followControl, maxDepth, maxSteps, monitor);
+		}
+	}
+	
+	/**
+	 * called when the read/written variables of a step are changed, the step is
+	 * re-indexed if it is already indexed, and only the cached dependencies which
+	 * can be affected by the step are dropped.
+	 * 
+	 * @param removedVariables
+	 *            the variables no longer accessed by the step, can be null.
+	 * @param addedVariables
+	 *            the variables added to the step, all its variables if some are
+	 *            removed.
+	 */
+	void onStepVariablesChanged(TraceNode node, boolean isRead, List<VarValue> removedVariables,
+			List<VarValue> addedVariables) {
+		synchronized (indexLock) {
+			int order = node.getOrder();
+			if(order > indexedSize) {
+				if(isRead) {
+					searchIndex.updateStep(order, removedVariables, addedVariables);
+				}
+				return;
+			}
+			if(isRead) {
+				useIndex.updateStep(order, removedVariables, addedVariables);
+				searchIndex.updateStep(order, removedVariables, addedVariables);
+				slicer.resetDataDominators(order);
+			}
+			else {
+				definitionIndex.updateStep(order, removedVariables, addedVariables);
+				/* the steps after it may read the variables it writes */
+				slicer.resetDataDominatorsAfter(order);
+			}
+			slicer.resetDataDominatees();
+		}
+	}
 
 	public List<TraceNode> findNextReadingTraceNodes(VarValue value, int startOrder){
 		String varID = value.getAliasVarID();
@@ -371,6 +489,7 @@ public class Trace {
 				loopParentStack.push(node);
 			}
 		}
+		abstractionTree = null;
 	}
 
 	private boolean loopParentHaveNotLoopChildOfSomeInvocationParentOfNode(TraceNode currentLoopParent, TraceNode node) {
@@ -917,30 +1036,16 @@ public class Trace {
 		String varID = Variable.truncateSimpleID(varValue.getVarID());
 		String headID = Variable.truncateSimpleID(varValue.getAliasVarID());
 		
-		for(int i=startNode.getOrder()-1; i>=1; i--) {
-			TraceNode node = this.getTraceNode(i);
-			for(VarValue writtenValue: node.getWrittenVariables()) {
-				
-				String wVarID = Variable.truncateSimpleID(writtenValue.getVarID());
-				String wHeadID = Variable.truncateSimpleID(writtenValue.getAliasVarID());
-				
-				if(wVarID != null && wVarID.equals(varID)) {
-					return node;						
-				}
-				
-				if(wHeadID != null && wHeadID.equals(headID)) {
-					return node;
-				}
-				
-				VarValue childValue = writtenValue.findVarValue(varID, headID);
-				if(childValue != null) {
-					return node;
-				}
-				
-			}
+		int order;
+		synchronized (indexLock) {
+			updateVariableIndex();
+			order = definitionIndex.findLastBefore(varID, headID, startNode.getOrder());
+		}
+		if(order < 1) {
+			return null;
 		}
 		
-		return null;
+		return this.getTraceNode(order);
 	}
 
 	public int getConstructTime() {
@@ -950,6 +1055,14 @@ public class Trace {
 	public void setConstructTime(int constructTime) {
 		this.constructTime = constructTime;
 	}
+	
+	public void setConstructTime(String phase, int time) {
+		this.constructTimeBreakdown.put(phase, time);
+	}
+	
+	public Map<String, Integer> getConstructTimeBreakdown() {
+		return constructTimeBreakdown;
+	}
 
 	public TraceNode getLatestWrongNode() {
 		for(TraceNode node: this.executionList){
@@ -0,0 +1,203 @@
+package microbat.model.trace;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The steps of a trace organized as the tree of the trace view: the top steps
+ * are the ones without an abstraction parent, and the children of a step are
+ * its {@link TraceNode#getAbstractChildren()}. The children of all the steps are
+ * computed at once in a single pass over the trace, so that a viewer can ask
+ * for any row of the tree in constant time.
+ */
+public class TraceAbstractionTree {
+	private int size;
+	private List<TraceNode> topNodes = new ArrayList<>();
+	/* step order -> abstraction children */
+	private TraceNode[][] children;
+	/* step order -> the step under which it is shown */
+	private TraceNode[] parents;
+
+	/* the marks of the step being visited, stamped with its position in the trace */
+	private OrderMarks invocationChildMarks;
+	private OrderMarks abstractChildMarks;
+	private OrderMarks loopContainedMarks;
+	private List<TraceNode> loopPath = new ArrayList<>();
+
+	TraceAbstractionTree(List<TraceNode> executionList) {
+		this.size = executionList.size();
+		this.children = new TraceNode[size + 1][];
+		this.parents = new TraceNode[size + 1];
+		this.invocationChildMarks = new OrderMarks(size + 1);
+		this.abstractChildMarks = new OrderMarks(size + 1);
+		this.loopContainedMarks = new OrderMarks(size + 1);
+
+		for (int i = 0; i < size; i++) {
+			TraceNode node = executionList.get(i);
+			if (node.getAbstractionParent() == null) {
+				topNodes.add(node);
+			}
+			List<TraceNode> abstractChildren = findAbstractChildren(node, i + 1);
+			if (!abstractChildren.isEmpty() && node.getOrder() >= 0) {
+				setChildren(node, abstractChildren.toArray(new TraceNode[abstractChildren.size()]));
+			}
+		}
+		invocationChildMarks = null;
+		abstractChildMarks = null;
+		loopContainedMarks = null;
+		loopPath = null;
+	}
+
+	/**
+	 * the same as {@link TraceNode#getAbstractChildren()}: the invocation children
+	 * not contained by the loops of another invocation child, then the loop
+	 * children not listed yet.
+	 */
+	private List<TraceNode> findAbstractChildren(TraceNode node, int stamp) {
+		List<TraceNode> abstractChildren = new ArrayList<>();
+		for (TraceNode child : node.getInvocationChildren()) {
+			invocationChildMarks.mark(child, stamp, true);
+		}
+		for (TraceNode child : node.getInvocationChildren()) {
+			if (!isIndirectlyLoopContained(child, stamp)) {
+				abstractChildren.add(child);
+				abstractChildMarks.mark(child, stamp, true);
+			}
+		}
+		for (TraceNode loopChild : node.getLoopChildren()) {
+			if (!abstractChildMarks.isMarked(loopChild, stamp)) {
+				abstractChildren.add(loopChild);
+				abstractChildMarks.mark(loopChild, stamp, true);
+			}
+		}
+		return abstractChildren;
+	}
+
+	/**
+	 * whether a loop ancestor of the step is an invocation child of the step being
+	 * visited, the result is kept for the loop ancestors passed by, so the loop
+	 * chains shared by the children are only walked once.
+	 */
+	private boolean isIndirectlyLoopContained(TraceNode node, int stamp) {
+		boolean contained = false;
+		TraceNode current = node;
+		while (true) {
+			if (loopContainedMarks.isMarked(current, stamp)) {
+				contained = loopContainedMarks.getValue(current);
+				break;
+			}
+			loopPath.add(current);
+			TraceNode loopParent = current.getLoopParent();
+			if (loopParent == null) {
+				break;
+			}
+			if (invocationChildMarks.isMarked(loopParent, stamp)) {
+				contained = true;
+				break;
+			}
+			current = loopParent;
+		}
+		for (TraceNode passed : loopPath) {
+			loopContainedMarks.mark(passed, stamp, contained);
+		}
+		loopPath.clear();
+		return contained;
+	}
+
+	private void setChildren(TraceNode node, TraceNode[] nodeChildren) {
+		int order = node.getOrder();
+		if (order >= children.length) {
+			children = Arrays.copyOf(children, Math.max(order + 1, children.length * 2));
+		}
+		children[order] = nodeChildren;
+		for (TraceNode child : nodeChildren) {
+			int childOrder = child.getOrder();
+			if (childOrder < 0) {
+				continue;
+			}
+			if (childOrder >= parents.length) {
+				parents = Arrays.copyOf(parents, Math.max(childOrder + 1, parents.length * 2));
+			}
+			if (parents[childOrder] == null) {
+				parents[childOrder] = node;
+			}
+		}
+	}
+
+	/**
+	 * @return the number of steps of the trace when the tree is built.
+	 */
+	public int size() {
+		return size;
+	}
+
+	public List<TraceNode> getTopNodes() {
+		return Collections.unmodifiableList(topNodes);
+	}
+
+	public List<TraceNode> getChildren(TraceNode node) {
+		TraceNode[] nodeChildren = getChildArray(node);
+		if (nodeChildren == null) {
+			return Collections.emptyList();
+		}
+		return Collections.unmodifiableList(Arrays.asList(nodeChildren));
+	}
+
+	public int getChildCount(TraceNode node) {
+		TraceNode[] nodeChildren = getChildArray(node);
+		return nodeChildren == null ? 0 : nodeChildren.length;
+	}
+
+	private TraceNode[] getChildArray(TraceNode node) {
+		int order = node.getOrder();
+		return (order >= 0 && order < children.length) ? children[order] : null;
+	}
+
+	/**
+	 * @return the step under which the given step is shown, or null if it is a top
+	 *         step or not shown at all.
+	 */
+	public TraceNode getParent(TraceNode node) {
+		int order = node.getOrder();
+		return (order >= 0 && order < parents.length) ? parents[order] : null;
+	}
+
+	/**
+	 * marks on the steps by their orders, a mark is only valid for the stamp it is
+	 * made with, so that the marks need not be cleared between the visited steps.
+	 */
+	private static class OrderMarks {
+		private int[] stamps;
+		private boolean[] values;
+
+		OrderMarks(int capacity) {
+			stamps = new int[capacity];
+			values = new boolean[capacity];
+		}
+
+		void mark(TraceNode node, int stamp, boolean value) {
+			int order = node.getOrder();
+			if (order < 0) {
+				return;
+			}
+			if (order >= stamps.length) {
+				int capacity = Math.max(order + 1, stamps.length * 2);
+				stamps = Arrays.copyOf(stamps, capacity);
+				values = Arrays.copyOf(values, capacity);
+			}
+			stamps[order] = stamp;
+			values[order] = value;
+		}
+
+		boolean isMarked(TraceNode node, int stamp) {
+			int order = node.getOrder();
+			return order >= 0 && order < stamps.length && stamps[order] == stamp;
+		}
+
+		boolean getValue(TraceNode node) {
+			return values[node.getOrder()];
+		}
+	}
+}
@@ -1,6 +1,8 @@
 package microbat.model.trace;
 
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -9,6 +11,8 @@ import java.util.Map;
 import java.util.Set;
 import java.util.Stack;
 
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.jdt.core.dom.ASTVisitor;
 import org.eclipse.jdt.core.dom.CatchClause;
 import org.eclipse.jdt.core.dom.CompilationUnit;
@@ -113,7 +117,7 @@ public class TraceNode{
 	// TODO: change all this.access to this.get()
 	public List<VarValue> findMarkedReadVariable(){
 		List<VarValue> markedReadVars = new ArrayList<>();
-		for(VarValue readVarValue: this.readVariables){
+		for(VarValue readVarValue: getReadVariables()){
 			if(Settings.interestedVariables.contains(readVarValue)){
 				markedReadVars.add(readVarValue);
 			}
@@ -471,6 +475,11 @@ public class TraceNode{
 		this.consequences = consequences;
 	}
 
+	/**
+	 * diff the program states before and after the step into its consequences. The
+	 * states are only read, and the differ is not shared, so that the steps of a
+	 * trace can be diffed in parallel, see {@link Trace#conductStateDiff(boolean)}.
+	 */
 	public void conductStateDiff() {
 		BreakPointValue nodeBefore = getProgramState();
 		BreakPointValue nodeAfter = getAfterState();
@@ -526,11 +535,19 @@ public class TraceNode{
 	}
 
 	public void setReadVariables(List<VarValue> readVariables) {
+		List<VarValue> removedVariables = getReadVariables();
 		this.readVariables = readVariables;
+		notifyVariablesChanged(true, removedVariables, readVariables);
 	}
 	
 	public void addReadVariable(VarValue var){
 		this.readVariables.add(var);
+		notifyVariablesChanged(true, null, Collections.singletonList(var));
+	}
+	
+	public void addReadVariables(List<VarValue> vars){
+		this.readVariables.addAll(vars);
+		notifyVariablesChanged(true, null, vars);
 	}
 	
 	public List<VarValue> getWrittenVariables() {
@@ -538,11 +555,20 @@ public class TraceNode{
 	}
 
 	public void setWrittenVariables(List<VarValue> writtenVariables) {
+		List<VarValue> removedVariables = getWrittenVariables();
 		this.writtenVariables = writtenVariables;
+		notifyVariablesChanged(false, removedVariables, writtenVariables);
 	}
 	
 	public void addWrittenVariable(VarValue var){
 		this.writtenVariables.add(var);
+		notifyVariablesChanged(false, null, Collections.singletonList(var));
+	}
+	
+	private void notifyVariablesChanged(boolean isRead, List<VarValue> removedVariables, List<VarValue> addedVariables) {
+		if(this.trace != null) {
+			this.trace.onStepVariablesChanged(this, isRead, removedVariables, addedVariables);
+		}
 	}
 
 	public Double getSuspicousScore(AttributionVar var) {
@@ -601,58 +627,56 @@ public class TraceNode{
 		this.suspicousScoreMap = suspicousScoreMap;
 	}
 
+	/**
+	 * @return the transitive data dominators of this step, and its control
+	 *         dominator, by their orders.
+	 */
 	public Map<Integer, TraceNode> findAllDominators() {
-		Map<Integer, TraceNode> dominators = new HashMap<>();
-		
-		findDominators(this, dominators);
-		
-		return dominators;
+		return findAllDominators(null);
 	}
-
-	private void findDominators(TraceNode node, Map<Integer, TraceNode> dominators) {
-		for(TraceNode dominator: node.getDataDominators().keySet()){
-			if(!dominators.containsKey(dominator.getOrder())){
-				dominators.put(dominator.getOrder(), dominator);		
-				findDominators(dominator, dominators);				
-			}
-		}
+	
+	/**
+	 * the same as {@link #findAllDominators()}, which can be cancelled.
+	 * 
+	 * @param monitor
+	 *            to cancel the search from the UI, can be null.
+	 * @throws OperationCanceledException
+	 *             if the monitor is cancelled.
+	 */
+	public Map<Integer, TraceNode> findAllDominators(IProgressMonitor monitor) {
+		BitSet slice = this.trace.slice(this, false, false, -1, -1, monitor);
+		Map<Integer, TraceNode> dominators = toStepMap(slice);
 		
 		if(this.controlDominator != null){
 			dominators.put(this.controlDominator.getOrder(), this.controlDominator);
 		}
 		
+		return dominators;
 	}
 	
+	/**
+	 * @return the transitive data and control dominatees of this step, by their
+	 *         orders.
+	 */
 	public Map<Integer, TraceNode> findAllDominatees() {
-		Map<Integer, TraceNode> dominatees = new HashMap<>();
-		
-		findDominatees(this, dominatees);
-		
-		return dominatees;
+		return findAllDominatees(null);
+	}
+	
+	/**
+	 * the same as {@link #findAllDominatees()}, which can be cancelled, see
+	 * {@link #findAllDominators(IProgressMonitor)}.
+	 */
+	public Map<Integer, TraceNode> findAllDominatees(IProgressMonitor monitor) {
+		BitSet slice = this.trace.slice(this, true, true, -1, -1, monitor);
+		return toStepMap(slice);
 	}
 
-	private void findDominatees(TraceNode node, Map<Integer, TraceNode> dominatees) {
-		for(TraceNode dominatee: node.getDataDominatee().keySet()){
-			if(!dominatees.containsKey(dominatee.getOrder())){
-				if(dominatee.getOrder() == 1){
-					System.currentTimeMillis();
-				}
-				
-				dominatees.put(dominatee.getOrder(), dominatee);		
-				findDominatees(dominatee, dominatees);				
-			}
-		}
-		
-		for(TraceNode controlDominatee: node.getControlDominatees()){
-			if(!dominatees.containsKey(controlDominatee.getOrder())){
-				if(controlDominatee.getOrder() == 1){
-					System.currentTimeMillis();
-				}
-				
-				dominatees.put(controlDominatee.getOrder(), controlDominatee);
-				findDominatees(controlDominatee, dominatees);				
-			}
+	private Map<Integer, TraceNode> toStepMap(BitSet slice) {
+		Map<Integer, TraceNode> steps = new HashMap<>();
+		for(int order = slice.nextSetBit(0); order >= 0; order = slice.nextSetBit(order + 1)){
+			steps.put(order, this.trace.getTraceNode(order));
 		}
+		return steps;
 	}
 	
 	public void setControlDominator(TraceNode controlDominator){
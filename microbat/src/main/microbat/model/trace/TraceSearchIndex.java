@@ -0,0 +1,275 @@
+package microbat.model.trace;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import microbat.model.BreakPoint;
+import microbat.model.value.VarValue;
+
+/**
+ * Answers the step searches of a trace, e.g., from the search box of the trace
+ * view, with inverted indexes from the locations and the read variables to the
+ * sorted orders of the steps. The indexes are built incrementally on the first
+ * search after new steps are added, the read variables are only indexed for the
+ * searches by id. A step already indexed is re-indexed when its read variables
+ * are changed, see {@link #updateStep(int, Collection, Collection)}.
+ */
+class TraceSearchIndex {
+	private Trace trace;
+	/* declaring compilation unit name -> line number -> orders */
+	private Map<String, Map<Integer, StepOrderList>> locationIndex = new HashMap<>();
+	private int locationIndexedSize = 0;
+	private Map<String, StepOrderList> readVarIDIndex = new HashMap<>();
+	private Map<String, StepOrderList> readAliasIDIndex = new HashMap<>();
+	private int variableIndexedSize = 0;
+	/* increased when an indexed step is changed, so that the queries are done again */
+	private int version = 0;
+
+	public TraceSearchIndex(Trace trace) {
+		this.trace = trace;
+	}
+
+	/**
+	 * @return the order of the first step after the given order matching the
+	 *         query, or -1 if there is no such step.
+	 */
+	public int findNext(Query query, int order) {
+		int[] orders = getOrders(query);
+		int idx = Arrays.binarySearch(orders, order + 1);
+		if (idx < 0) {
+			idx = -idx - 1;
+		}
+		return idx < orders.length ? orders[idx] : -1;
+	}
+
+	/**
+	 * @return the order of the last step before the given order matching the
+	 *         query, or -1 if there is no such step.
+	 */
+	public int findPrevious(Query query, int order) {
+		int[] orders = getOrders(query);
+		int idx = Arrays.binarySearch(orders, order);
+		if (idx < 0) {
+			idx = -idx - 1;
+		}
+		return idx > 0 ? orders[idx - 1] : -1;
+	}
+
+	/**
+	 * the matching orders are kept in the query until the trace is changed.
+	 */
+	private int[] getOrders(Query query) {
+		int size = trace.size();
+		if (query.orders == null || query.index != this || query.indexedSize != size
+				|| query.indexVersion != version) {
+			query.orders = findOrders(query);
+			query.index = this;
+			query.indexedSize = size;
+			query.indexVersion = version;
+		}
+		return query.orders;
+	}
+
+	private int[] findOrders(Query query) {
+		if (query.order != null) {
+			int order = query.order;
+			return (order >= 1 && order <= trace.size()) ? new int[] { order } : new int[0];
+		}
+
+		List<StepOrderList> matches = new ArrayList<>();
+		if (query.id != null) {
+			updateVariableIndex();
+			for (Map.Entry<String, StepOrderList> entry : readVarIDIndex.entrySet()) {
+				if (entry.getKey().contains(query.id)) {
+					matches.add(entry.getValue());
+				}
+			}
+			StepOrderList aliasOrders = readAliasIDIndex.get(query.id);
+			if (aliasOrders != null) {
+				matches.add(aliasOrders);
+			}
+		} else {
+			updateLocationIndex();
+			for (Map.Entry<String, Map<Integer, StepOrderList>> entry : locationIndex.entrySet()) {
+				String className = entry.getKey();
+				String simpleClassName = className.substring(className.lastIndexOf(".") + 1, className.length());
+				if (simpleClassName.equals(query.expression)) {
+					matches.addAll(entry.getValue().values());
+				} else if (simpleClassName.equals(query.simpleClassName)) {
+					StepOrderList lineOrders = entry.getValue().get(query.lineNumber);
+					if (lineOrders != null) {
+						matches.add(lineOrders);
+					}
+				}
+			}
+		}
+		return merge(matches);
+	}
+
+	private int[] merge(List<StepOrderList> matches) {
+		if (matches.size() == 1) {
+			return matches.get(0).toArray();
+		}
+		StepOrderList all = new StepOrderList();
+		for (StepOrderList orders : matches) {
+			for (int i = 0; i < orders.size(); i++) {
+				all.append(orders.get(i));
+			}
+		}
+		int[] orders = all.toArray();
+		Arrays.sort(orders);
+		int size = 0;
+		for (int i = 0; i < orders.length; i++) {
+			if (size == 0 || orders[size - 1] != orders[i]) {
+				orders[size++] = orders[i];
+			}
+		}
+		return Arrays.copyOf(orders, size);
+	}
+
+	private void updateLocationIndex() {
+		List<TraceNode> executionList = trace.getExecutionList();
+		for (int i = locationIndexedSize; i < executionList.size(); i++) {
+			TraceNode node = executionList.get(i);
+			BreakPoint breakPoint = node.getBreakPoint();
+			Map<Integer, StepOrderList> lines = locationIndex.get(breakPoint.getDeclaringCompilationUnitName());
+			if (lines == null) {
+				lines = new HashMap<>();
+				locationIndex.put(breakPoint.getDeclaringCompilationUnitName(), lines);
+			}
+			add(lines, breakPoint.getLineNumber(), node.getOrder());
+			locationIndexedSize = i + 1;
+		}
+	}
+
+	private void updateVariableIndex() {
+		List<TraceNode> executionList = trace.getExecutionList();
+		for (int i = variableIndexedSize; i < executionList.size(); i++) {
+			TraceNode node = executionList.get(i);
+			for (VarValue readVar : node.getReadVariables()) {
+				if (readVar.getVarID() != null) {
+					add(readVarIDIndex, readVar.getVarID(), node.getOrder());
+				}
+				if (readVar.getAliasVarID() != null) {
+					add(readAliasIDIndex, readVar.getAliasVarID(), node.getOrder());
+				}
+			}
+			variableIndexedSize = i + 1;
+		}
+	}
+
+	/**
+	 * re-index the read variables of a step after they are changed, see
+	 * {@link StepVariableIndex#updateStep(int, Collection, Collection)}.
+	 */
+	public void updateStep(int order, Collection<VarValue> removedReadVars, Collection<VarValue> readVars) {
+		if (order > variableIndexedSize) {
+			return;
+		}
+		if (removedReadVars != null) {
+			for (VarValue readVar : removedReadVars) {
+				remove(readVarIDIndex, readVar.getVarID(), order);
+				remove(readAliasIDIndex, readVar.getAliasVarID(), order);
+			}
+		}
+		for (VarValue readVar : readVars) {
+			if (readVar.getVarID() != null) {
+				getOrderList(readVarIDIndex, readVar.getVarID()).insert(order);
+			}
+			if (readVar.getAliasVarID() != null) {
+				getOrderList(readAliasIDIndex, readVar.getAliasVarID()).insert(order);
+			}
+		}
+		version++;
+	}
+
+	private void remove(Map<String, StepOrderList> index, String key, int order) {
+		StepOrderList orders = (key == null) ? null : index.get(key);
+		if (orders != null) {
+			orders.remove(order);
+		}
+	}
+
+	private <K> StepOrderList getOrderList(Map<K, StepOrderList> index, K key) {
+		StepOrderList orders = index.get(key);
+		if (orders == null) {
+			orders = new StepOrderList();
+			index.put(key, orders);
+		}
+		return orders;
+	}
+
+	private <K> void add(Map<K, StepOrderList> index, K key, int order) {
+		getOrderList(index, key).add(order);
+	}
+
+	/**
+	 * A search expression parsed once, it is one of
+	 * <ul>
+	 * <li>the order of a step,</li>
+	 * <li>"id=" followed by (a part of) the id of a variable read by the step, or
+	 * its alias id,</li>
+	 * <li>the simple name of the class of the step, with " line:" and the line
+	 * number of the step optionally, see
+	 * {@link Trace#combineTraceNodeExpression(String, int)}.</li>
+	 * </ul>
+	 */
+	public static class Query {
+		private static final Pattern LINE_EXPRESSION = Pattern.compile("(.*) line:(-?\\d+)");
+
+		private String expression;
+		private Integer order;
+		private String id;
+		private String simpleClassName;
+		private int lineNumber;
+
+		/* the matching orders of the last search */
+		private TraceSearchIndex index;
+		private int indexedSize;
+		private int indexVersion;
+		private int[] orders;
+
+		private Query(String expression) {
+			this.expression = expression;
+		}
+
+		public static Query parse(String expression) {
+			Query query = new Query(expression);
+			try {
+				query.order = Integer.valueOf(expression);
+				return query;
+			} catch (NumberFormatException e) {
+				// not an order
+			}
+
+			if (expression.matches("id=(\\w|\\W)+")) {
+				query.id = expression.replace("id=", "");
+				return query;
+			}
+
+			Matcher matcher = LINE_EXPRESSION.matcher(expression);
+			if (matcher.matches()) {
+				try {
+					int lineNumber = Integer.parseInt(matcher.group(2));
+					if (String.valueOf(lineNumber).equals(matcher.group(2))) {
+						query.simpleClassName = matcher.group(1);
+						query.lineNumber = lineNumber;
+					}
+				} catch (NumberFormatException e) {
+					// too big to be a line number
+				}
+			}
+			return query;
+		}
+
+		public String getExpression() {
+			return expression;
+		}
+	}
+}
@@ -0,0 +1,214 @@
+package microbat.model.trace;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+
+/**
+ * Computes the transitive closures of the dependencies of the steps of a
+ * trace, i.e., its slices, with an iterative traversal over bit sets indexed by
+ * step order. The data dominators and dominatees of a step are looked up once
+ * through the variable indexes of the trace and kept as arrays of step orders.
+ */
+class TraceSlicer {
+	private static final int CANCEL_CHECK_INTERVAL = 1024;
+
+	private Trace trace;
+	private int[][] dataDominators = new int[0][];
+	private int[][] dataDominatees = new int[0][];
+
+	public TraceSlicer(Trace trace) {
+		this.trace = trace;
+	}
+
+	/**
+	 * drop all the data dependencies, e.g., when the read/written variables of a
+	 * step are changed.
+	 */
+	public void reset() {
+		dataDominators = new int[0][];
+		dataDominatees = new int[0][];
+	}
+
+	/**
+	 * drop the data dominatees only, when new steps are added, as they may read
+	 * the variables written by the former steps. The data dominators of the
+	 * former steps are not changed.
+	 */
+	public void resetDataDominatees() {
+		dataDominatees = new int[0][];
+	}
+
+	/**
+	 * drop the data dominators of a step, when the variables read by it are
+	 * changed.
+	 */
+	public void resetDataDominators(int order) {
+		if(order < dataDominators.length) {
+			dataDominators[order] = null;
+		}
+	}
+
+	/**
+	 * drop the data dominators of the steps after the given order, when the
+	 * variables written by the step of the order are changed.
+	 */
+	public void resetDataDominatorsAfter(int order) {
+		if(order + 1 < dataDominators.length) {
+			dataDominators = Arrays.copyOf(dataDominators, order + 1);
+		}
+	}
+
+	public int[] getDataDominatorOrders(TraceNode node) {
+		int order = node.getOrder();
+		if(order >= dataDominators.length) {
+			dataDominators = Arrays.copyOf(dataDominators, Math.max(order, trace.size()) + 1);
+		}
+		int[] orders = dataDominators[order];
+		if(orders == null) {
+			orders = toOrders(node.getDataDominators().keySet());
+			dataDominators[order] = orders;
+		}
+		return orders;
+	}
+
+	public int[] getDataDominateeOrders(TraceNode node) {
+		int order = node.getOrder();
+		if(order >= dataDominatees.length) {
+			dataDominatees = Arrays.copyOf(dataDominatees, Math.max(order, trace.size()) + 1);
+		}
+		int[] orders = dataDominatees[order];
+		if(orders == null) {
+			orders = toOrders(node.getDataDominatee().keySet());
+			dataDominatees[order] = orders;
+		}
+		return orders;
+	}
+
+	/**
+	 * compute the data dominators (or dominatees) of all steps ahead, so that
+	 * the later slices only look up the arrays.
+	 *
+	 * @throws OperationCanceledException
+	 *             if the monitor is cancelled.
+	 */
+	public void precompute(boolean forward, IProgressMonitor monitor) {
+		for(int order = 1; order <= trace.size(); order++) {
+			if(monitor != null && (order % CANCEL_CHECK_INTERVAL) == 0 && monitor.isCanceled()) {
+				throw new OperationCanceledException();
+			}
+			TraceNode node = trace.getTraceNode(order);
+			if(forward) {
+				getDataDominateeOrders(node);
+			}
+			else {
+				getDataDominatorOrders(node);
+			}
+		}
+	}
+
+	private int[] toOrders(Collection<TraceNode> nodes) {
+		int[] orders = new int[nodes.size()];
+		int i = 0;
+		for(TraceNode node: nodes) {
+			orders[i++] = node.getOrder();
+		}
+		Arrays.sort(orders);
+		return orders;
+	}
+
+	/**
+	 * Visit the dependencies of the start step level by level, a step is visited
+	 * once.
+	 *
+	 * @param forward
+	 *            true to follow the dominatees, false to follow the dominators.
+	 * @param followControl
+	 *            whether to follow the control dependencies besides the data
+	 *            dependencies.
+	 * @param maxDepth
+	 *            the number of dependency levels to follow, negative for no bound.
+	 * @param maxSteps
+	 *            the maximum number of steps in the slice, not counting the start
+	 *            step, negative for no bound.
+	 * @param monitor
+	 *            to cancel the slicing, can be null.
+	 * @return the orders of the steps in the slice, which never contains the
+	 *         start step, even if it depends on itself through a loop.
+	 * @throws OperationCanceledException
+	 *             if the monitor is cancelled.
+	 */
+	public BitSet slice(TraceNode start, boolean forward, boolean followControl, int maxDepth, int maxSteps,
+			IProgressMonitor monitor) {
+		BitSet slice = new BitSet(trace.size() + 1);
+		if(maxSteps == 0) {
+			return slice;
+		}
+		/* the start step is marked so that it is not visited again, and cleared at last */
+		slice.set(start.getOrder());
+		int[] frontier = new int[] {start.getOrder()};
+		int frontierSize = 1;
+		int sliceSize = 0;
+		int visited = 0;
+		for(int depth = 0; frontierSize > 0 && (maxDepth < 0 || depth < maxDepth); depth++) {
+			int[] next = new int[16];
+			int nextSize = 0;
+			for(int i = 0; i < frontierSize; i++) {
+				if(monitor != null && (visited++ % CANCEL_CHECK_INTERVAL) == 0 && monitor.isCanceled()) {
+					throw new OperationCanceledException();
+				}
+				TraceNode node = trace.getTraceNode(frontier[i]);
+				int[] dependencies = forward ? getDataDominateeOrders(node) : getDataDominatorOrders(node);
+				if(followControl) {
+					dependencies = appendControlDependencies(node, forward, dependencies);
+				}
+				for(int order: dependencies) {
+					if(slice.get(order)) {
+						continue;
+					}
+					slice.set(order);
+					sliceSize++;
+					if(maxSteps >= 0 && sliceSize >= maxSteps) {
+						slice.clear(start.getOrder());
+						return slice;
+					}
+					if(nextSize == next.length) {
+						next = Arrays.copyOf(next, nextSize * 2);
+					}
+					next[nextSize++] = order;
+				}
+			}
+			frontier = next;
+			frontierSize = nextSize;
+		}
+		slice.clear(start.getOrder());
+		return slice;
+	}
+
+	private int[] appendControlDependencies(TraceNode node, boolean forward, int[] dataDependencies) {
+		if(forward) {
+			List<TraceNode> controlDominatees = node.getControlDominatees();
+			if(controlDominatees.isEmpty()) {
+				return dataDependencies;
+			}
+			int[] dependencies = Arrays.copyOf(dataDependencies, dataDependencies.length + controlDominatees.size());
+			int i = dataDependencies.length;
+			for(TraceNode controlDominatee: controlDominatees) {
+				dependencies[i++] = controlDominatee.getOrder();
+			}
+			return dependencies;
+		}
+
+		TraceNode controlDominator = node.getControlDominator();
+		if(controlDominator == null) {
+			return dataDependencies;
+		}
+		int[] dependencies = Arrays.copyOf(dataDependencies, dataDependencies.length + 1);
+		dependencies[dataDependencies.length] = controlDominator.getOrder();
+		return dependencies;
+	}
+}
@@ -8,6 +8,10 @@ public class VirtualValue extends VarValue {
 
 	private long uniqueId;
 	
+	public VirtualValue(boolean isRoot, Variable variable) {
+		this(isRoot, variable, 0);
+	}
+	
 	public VirtualValue(boolean isRoot, Variable variable, long uniqueID) {
 		this.isRoot = isRoot;
 		this.variable = variable;
@@ -12,6 +12,7 @@ public abstract class Variable implements Serializable {
 	
 	protected String type;
 	protected String variableName;
+	protected String rtType; // runtime type
 	
 	/**
 	 * the JVM heap address
@@ -134,6 +135,14 @@ public abstract class Variable implements Serializable {
 //		return false;
 //	}
 
+	public String getRuntimeType() {
+		return rtType;
+	}
+
+	public void setRtType(String rtType) {
+		this.rtType = rtType;
+	}
+
 	public abstract String getSimpleName();
 	public abstract Variable clone();
 }
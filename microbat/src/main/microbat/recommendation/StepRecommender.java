@@ -6,6 +6,9 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+
 import microbat.model.Cause;
 import microbat.model.trace.PathInstance;
 import microbat.model.trace.PotentialCorrectPattern;
@@ -126,6 +129,26 @@ public class StepRecommender {
 	private DetailInspector detailInspector = DetailInspectorFactory.createInspector();
 	
 	private List<TraceNode> visitedUnclearNodeList = new ArrayList<>();
+	/* the monitor of the current recommendation, can be null */
+	private IProgressMonitor monitor;
+	
+	/**
+	 * the same as {@link #recommendNode(Trace, TraceNode, UserFeedback)}, the
+	 * slicing of the trace can be cancelled with the monitor.
+	 * 
+	 * @throws OperationCanceledException
+	 *             if the monitor is cancelled.
+	 */
+	public TraceNode recommendNode(Trace trace, TraceNode currentNode, UserFeedback userFeedback,
+			IProgressMonitor monitor){
+		this.monitor = monitor;
+		try{
+			return recommendNode(trace, currentNode, userFeedback);
+		}
+		finally{
+			this.monitor = null;
+		}
+	}
 	
 	public TraceNode recommendNode(Trace trace, TraceNode currentNode, UserFeedback userFeedback){
 		InspectingRange range = detailInspector.inspectingRange;
@@ -204,7 +227,7 @@ public class StepRecommender {
 		TraceNode latestWrongNode = trace.getLatestWrongNode();
 		
 		if(latestWrongNode != null){
-			Map<Integer, TraceNode> dominatorMap = latestWrongNode.findAllDominators();
+			Map<Integer, TraceNode> dominatorMap = latestWrongNode.findAllDominators(monitor);
 			List<TraceNode> dominators = new ArrayList<>(dominatorMap.values());
 			Collections.sort(dominators, new TraceNodeOrderComparator());
 			
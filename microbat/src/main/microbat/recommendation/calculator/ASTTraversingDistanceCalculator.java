@@ -146,8 +146,6 @@ public class ASTTraversingDistanceCalculator {
 	}
 
 	private ASTNode findSpecificNode(CompilationUnit cu, BreakPoint point) {
-		MinimumASTNodeFinder finder = new MinimumASTNodeFinder(point.getLineNumber(), cu);
-		cu.accept(finder);
-		return finder.getMinimumNode();
+		return MinimumASTNodeFinder.findMinimumNode(cu, point.getLineNumber());
 	}
 }
@@ -0,0 +1,181 @@
+package microbat.sql;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import microbat.instrumentation.output.VarValueDecoder;
+import microbat.model.value.VarValue;
+import sav.common.core.Pair;
+
+/**
+ * Loads the read/written variables of steps for {@link microbat.model.trace.LazyTraceNode}.
+ *
+ * Instead of opening a connection for every step, the loader queries the connection of
+ * its {@link TraceRetrieverImpl}, loads the variables of a whole window of steps in a
+ * single range query (so that scrolling the trace view or walking a slice hits the
+ * database once per window), and keeps the decoded variables in a size-bounded LRU
+ * cache. The lazy steps do not keep their variables, so the cache bounds the memory
+ * taken by the loaded variables.
+ *
+ * The connection is owned and closed by the retriever, the loader only closes its
+ * statement.
+ *
+ * Variables are read from table StepVariable (binary chunks), and from the xml
+ * columns of table Step for the databases recorded by older versions.
+ */
+public class StepVariableLoader {
+	public static final int DEFAULT_PREFETCH_SIZE = 200;
+	public static final int DEFAULT_CACHE_SIZE = 20000;
+	private static final String GET_STEP_VARS_IN_RANGE =
+			"SELECT s.step_order, s.read_vars, s.written_vars, v.vars FROM Step s "
+			+ "LEFT JOIN StepVariable v ON v.trace_id = s.trace_id AND v.step_order = s.step_order "
+			+ "WHERE s.trace_id = ? AND s.step_order >= ? AND s.step_order < ?";
+
+	private Function<String, List<VarValue>> xmlReader;
+	private int prefetchSize;
+	private Map<StepKey, Pair<List<VarValue>, List<VarValue>>> cache;
+	private Connection conn;
+	private PreparedStatement rangeQuery;
+
+	public StepVariableLoader(Connection conn, Function<String, List<VarValue>> xmlReader) {
+		this(conn, xmlReader, DEFAULT_PREFETCH_SIZE, DEFAULT_CACHE_SIZE);
+	}
+
+	public StepVariableLoader(Connection conn, Function<String, List<VarValue>> xmlReader, int prefetchSize,
+			final int cacheSize) {
+		this.conn = conn;
+		this.xmlReader = xmlReader;
+		this.prefetchSize = Math.max(1, prefetchSize);
+		this.cache = new LinkedHashMap<StepKey, Pair<List<VarValue>, List<VarValue>>>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<StepKey, Pair<List<VarValue>, List<VarValue>>> eldest) {
+				return size() > cacheSize;
+			}
+		};
+	}
+
+	/**
+	 * @return the variables of the step, the same lists as long as the step stays in
+	 *         the cache.
+	 */
+	public synchronized Pair<List<VarValue>, List<VarValue>> load(String traceId, int order) throws SQLException {
+		StepKey key = new StepKey(traceId, order);
+		Pair<List<VarValue>, List<VarValue>> vars = cache.get(key);
+		if (vars != null) {
+			return vars;
+		}
+		/* windows are aligned so that scrolling backward also hits the prefetched steps */
+		int start = ((order - 1) / prefetchSize) * prefetchSize + 1;
+		try {
+			loadRange(traceId, start, start + prefetchSize);
+		} catch (SQLException e) {
+			closeQuery();
+			throw e;
+		}
+		vars = cache.get(key);
+		if (vars == null) {
+			throw new SQLException(String.format("Cannot find step: [trace_id, order] = [%s, %d]", traceId, order));
+		}
+		return vars;
+	}
+
+	private void loadRange(String traceId, int start, int end) throws SQLException {
+		if (rangeQuery == null) {
+			rangeQuery = conn.prepareStatement(GET_STEP_VARS_IN_RANGE);
+		}
+		rangeQuery.setString(1, traceId);
+		rangeQuery.setInt(2, start);
+		rangeQuery.setInt(3, end);
+		try (ResultSet rs = rangeQuery.executeQuery()) {
+			while (rs.next()) {
+				int order = rs.getInt("step_order");
+				StepKey key = new StepKey(traceId, order);
+				/* the cached lists may be held by the callers, keep them */
+				if (!cache.containsKey(key)) {
+					cache.put(key, readVars(rs, traceId, order));
+				}
+			}
+		}
+	}
+
+	/**
+	 * close the statement and drop the cached variables, the connection is left to
+	 * the retriever.
+	 */
+	public synchronized void close() {
+		closeQuery();
+		cache.clear();
+	}
+
+	private void closeQuery() {
+		DbService.closeDb(null, Collections.<AutoCloseable>singletonList(rangeQuery));
+		rangeQuery = null;
+	}
+
+	private Pair<List<VarValue>, List<VarValue>> readVars(ResultSet rs, String traceId, int order)
+			throws SQLException {
+		byte[] vars = rs.getBytes("vars");
+		if (vars != null) {
+			return decode(vars, traceId, order);
+		}
+		/* steps recorded in xml format, or steps without any variable */
+		String loadVarStep = "read_vars";
+		try {
+			List<VarValue> readVars = xmlReader.apply(rs.getString("read_vars"));
+			loadVarStep = "written_vars";
+			List<VarValue> writtenVars = xmlReader.apply(rs.getString("written_vars"));
+			return Pair.of(readVars, writtenVars);
+		} catch (RuntimeException e) {
+			System.out.println(String.format("%s: Xml error at step: [trace_id, order] = [%s, %d]",
+					loadVarStep, traceId, order));
+			throw e;
+		}
+	}
+
+	/**
+	 * each step is stored as an independent chunk [readVars, writtenVars], see SqliteRecorder.
+	 */
+	private Pair<List<VarValue>, List<VarValue>> decode(byte[] vars, String traceId, int order) throws SQLException {
+		try {
+			List<List<VarValue>> stepVars = new VarValueDecoder().decode(vars);
+			return Pair.of(stepVars.get(0), stepVars.get(1));
+		} catch (IOException | RuntimeException e) {
+			throw new SQLException(String.format("Cannot decode variables at step: [trace_id, order] = [%s, %d]",
+					traceId, order), e);
+		}
+	}
+
+	private static class StepKey {
+		private String traceId;
+		private int order;
+
+		public StepKey(String traceId, int order) {
+			this.traceId = traceId;
+			this.order = order;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * traceId.hashCode() + order;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof StepKey)) {
+				return false;
+			}
+			StepKey other = (StepKey) obj;
+			return order == other.order && traceId.equals(other.traceId);
+		}
+	}
+}
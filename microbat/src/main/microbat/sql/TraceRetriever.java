@@ -9,4 +9,5 @@ import sav.common.core.Pair;
 public interface TraceRetriever {
 	List<Trace> getTraces(String runId);
 	Pair<List<VarValue>, List<VarValue>> loadRWVars(TraceNode step, String traceId);
+	void close();
 }
@@ -37,11 +37,15 @@ public class TraceRetrieverImpl implements TraceRetriever {
 			"SELECT s.* FROM Step s WHERE s.trace_id=?";
 	private static final String GET_STEP_VARIABLE_RELATION = 
 			"SELECT r.step_order, r.var_id, r.RW FROM StepVariableRelation r WHERE r.trace_id=?";
+	/* kept open for the lazy steps until the retriever is closed */
 	private Connection conn;
 	private List<AutoCloseable> closables = new ArrayList<>();
+	/* shared by the lazy steps of all loaded traces */
+	private StepVariableLoader stepVariableLoader;
 
 	public TraceRetrieverImpl() throws SQLException {
 		this.conn = DbService.getConnection();
+		this.stepVariableLoader = new StepVariableLoader(conn, this::toVarValue);
 	}
 
 	@Override
@@ -71,13 +75,23 @@ public class TraceRetrieverImpl implements TraceRetriever {
 		} catch (SQLException e) {
 			e.printStackTrace();
 		} finally {
-			DbService.closeDb(conn, closables);
+			DbService.closeDb(null, closables);
 			this.closables = new ArrayList<>();
 		}
 
 		return traces;
 	}
 
+	/**
+	 * the steps of the retrieved traces cannot load their variables once the
+	 * retriever is closed.
+	 */
+	@Override
+	public void close() {
+		stepVariableLoader.close();
+		DbService.closeDb(conn, null);
+	}
+
 	protected void loadTrace(Trace trace) throws SQLException {
 		// load step
 		List<TraceNode> steps = getSteps(trace);
@@ -162,29 +176,10 @@ public class TraceRetrieverImpl implements TraceRetriever {
 	}
 	
 	public Pair<List<VarValue>, List<VarValue>> loadRWVars(TraceNode step, String traceId) {
-		String loadVarStep = "read_vars";
 		try {
-			conn = DbService.getConnection();
-			PreparedStatement ps = conn.prepareStatement("SELECT read_vars, written_vars from Step where step_order = ? AND trace_id = ?");
-			ps.setInt(1, step.getOrder());
-			ps.setString(2, traceId);
-			ResultSet rs = ps.executeQuery();
-			closables.add(rs);
-			closables.add(ps);
-			// read_vars
-			List<VarValue>readVars = toVarValue(rs.getString("read_vars"));
-			// written_vars
-			loadVarStep = "written_vars";
-			List<VarValue>writeVars = toVarValue(rs.getString("written_vars"));
-			return Pair.of(readVars, writeVars);
+			return stepVariableLoader.load(traceId, step.getOrder());
 		} catch (SQLException e) {
 			e.printStackTrace();
-		} catch (Exception e) {
-			System.out.println(String.format("%s: Xml error at step: [trace_id, order] = [%d, %d]", loadVarStep, traceId, step.getOrder()));
-			throw e;
-		} finally {
-			DbService.closeDb(conn, closables);
-			this.closables = new ArrayList<>();
 		}
 		return null;
 	}
@@ -21,6 +21,11 @@ import sav.commons.testdata.calculator.CalculatorTest1;
  *
  */
 public class SqliteTraceReader implements TraceReader {
+	/*
+	 * the steps of the last read traces load their variables through its retriever, it
+	 * is closed when the traces of another run are read.
+	 */
+	private static TraceRetriever lastRetriever;
 	private String runId;
 
 	public SqliteTraceReader(String runId) {
@@ -42,6 +47,7 @@ public class SqliteTraceReader implements TraceReader {
 		}
 
 		List<Trace> traces = traceRetriever.getTraces(runId);
+		replaceLastRetriever(traceRetriever);
 		
 		int collectedSteps = traces.isEmpty() ? 0 : 
 			traces.stream().mapToInt(trace -> trace.size()).sum();
@@ -50,4 +56,11 @@ public class SqliteTraceReader implements TraceReader {
 		return new RunningInfo(precheckInfo.getProgramMsg(), traces, expectedSteps, collectedSteps);
 	}
 
+	private static synchronized void replaceLastRetriever(TraceRetriever traceRetriever) {
+		if (lastRetriever != null) {
+			lastRetriever.close();
+		}
+		lastRetriever = traceRetriever;
+	}
+
 }
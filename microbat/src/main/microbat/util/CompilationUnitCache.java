@@ -0,0 +1,113 @@
+package microbat.util;
+
+import java.io.File;
+import java.lang.ref.SoftReference;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.jdt.core.dom.CompilationUnit;
+
+/**
+ * The parsed compilation units by their qualified names. The cache keeps at
+ * most {@link #DEFAULT_CAPACITY} units, dropping the least recently used ones,
+ * and the units are softly referenced so that they can be collected when the
+ * heap runs short. A unit parsed from a source file is dropped once the file is
+ * modified.
+ */
+public class CompilationUnitCache {
+	public static final int DEFAULT_CAPACITY = 300;
+	/* the time between two checks of the timestamp of a source file */
+	private static final long VERIFY_INTERVAL_MS = 1000;
+
+	private int capacity;
+	private Map<String, Entry> entries;
+
+	public CompilationUnitCache() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	@SuppressWarnings("serial")
+	public CompilationUnitCache(int capacity) {
+		this.capacity = capacity;
+		this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				return size() > CompilationUnitCache.this.capacity;
+			}
+		};
+	}
+
+	/**
+	 * @return the cached unit, or null if it is not cached, collected or its
+	 *         source file is modified.
+	 */
+	public synchronized CompilationUnit get(String qualifiedName) {
+		Entry entry = entries.get(qualifiedName);
+		if (entry == null) {
+			return null;
+		}
+		CompilationUnit cu = entry.unit.get();
+		if (cu == null || entry.isModified()) {
+			entries.remove(qualifiedName);
+			return null;
+		}
+		return cu;
+	}
+
+	public void put(String qualifiedName, CompilationUnit cu) {
+		put(qualifiedName, cu, null);
+	}
+
+	/**
+	 * @param sourceFile
+	 *            the file the unit is parsed from, null if the unit is not
+	 *            invalidated by the file, e.g., a mutated unit.
+	 */
+	public synchronized void put(String qualifiedName, CompilationUnit cu, File sourceFile) {
+		if (cu == null) {
+			entries.remove(qualifiedName);
+			return;
+		}
+		entries.put(qualifiedName, new Entry(cu, sourceFile));
+	}
+
+	public synchronized void remove(String qualifiedName) {
+		entries.remove(qualifiedName);
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	private static class Entry {
+		private SoftReference<CompilationUnit> unit;
+		private File sourceFile;
+		private long lastModified;
+		private long lastVerified;
+
+		Entry(CompilationUnit unit, File sourceFile) {
+			this.unit = new SoftReference<CompilationUnit>(unit);
+			this.sourceFile = sourceFile;
+			if (sourceFile != null) {
+				this.lastModified = sourceFile.lastModified();
+				this.lastVerified = System.currentTimeMillis();
+			}
+		}
+
+		boolean isModified() {
+			if (sourceFile == null) {
+				return false;
+			}
+			long now = System.currentTimeMillis();
+			if (now - lastVerified < VERIFY_INTERVAL_MS) {
+				return false;
+			}
+			lastVerified = now;
+			return sourceFile.lastModified() != lastModified;
+		}
+	}
+}
@@ -19,6 +19,7 @@ import org.apache.bcel.generic.JsrInstruction;
 import org.apache.bcel.generic.ReturnInstruction;
 import org.apache.bcel.generic.Select;
 import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.IWorkspace;
 import org.eclipse.core.resources.IWorkspaceRoot;
 import org.eclipse.core.resources.ResourcesPlugin;
@@ -358,9 +359,14 @@ public class JavaUtil {
 		CompilationUnit cu = Settings.compilationUnitMap.get(qualifiedName);
 		if(null == cu){
 			try{
+				File sourceFile = null;
 				ICompilationUnit icu = findICompilationUnitInProject(qualifiedName);
 				if(icu != null){
 					cu = convertICompilationUnitToASTNode(icu);						
+					IResource resource = icu.getResource();
+					if(resource != null && resource.getLocation() != null){
+						sourceFile = resource.getLocation().toFile();
+					}
 				}
 				else{
 					boolean isFound = false;
@@ -368,6 +374,7 @@ public class JavaUtil {
 						String fileName = sourceFolder + File.separator + qualifiedName.replace(".", File.separator) + ".java";
 						if(new File(fileName).exists()){
 							cu = findCompiltionUnitBySourcePath(fileName, qualifiedName);
+							sourceFile = new File(fileName);
 							isFound = true;
 							break;
 						}
@@ -392,7 +399,7 @@ public class JavaUtil {
 					
 				}
 				
-				Settings.compilationUnitMap.put(qualifiedName, cu);
+				Settings.compilationUnitMap.put(qualifiedName, cu, sourceFile);
 				return cu;
 			}
 			catch(IllegalStateException e){
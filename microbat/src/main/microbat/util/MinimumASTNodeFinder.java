@@ -18,6 +18,14 @@ public class MinimumASTNodeFinder extends ASTVisitor{
 		this.line = line;
 		this.cu = cu;
 	}
+	
+	/**
+	 * the same as visiting the compilation unit with a finder of the line, looked up in
+	 * an index of all the lines built on the first call for the unit.
+	 */
+	public static ASTNode findMinimumNode(CompilationUnit cu, int line) {
+		return MinimumASTNodeIndex.findMinimumNode(cu, line);
+	}
 
 	@Override
 	public void preVisit(ASTNode node) {
@@ -0,0 +1,76 @@
+package microbat.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.ASTVisitor;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+
+/**
+ * The minimum AST node of each line of a compilation unit, as found by
+ * {@link MinimumASTNodeFinder}, computed in one visit of the unit. The index is
+ * kept as a property of the unit, so it is built once for each parsed unit and
+ * collected together with it.
+ */
+class MinimumASTNodeIndex {
+	private static final String PROPERTY = MinimumASTNodeIndex.class.getName();
+
+	/* line -> minimum node */
+	private ASTNode[] minimumNodes;
+
+	private MinimumASTNodeIndex(CompilationUnit cu) {
+		final List<ASTNode> nodes = new ArrayList<>();
+		final List<int[]> lines = new ArrayList<>();
+		int maxLine = 0;
+		cu.accept(new ASTVisitor() {
+			@Override
+			public void preVisit(ASTNode node) {
+				nodes.add(node);
+			}
+		});
+		for (ASTNode node : nodes) {
+			int start = cu.getLineNumber(node.getStartPosition());
+			int end = cu.getLineNumber(node.getStartPosition() + node.getLength());
+			lines.add(new int[] { start, end });
+			maxLine = Math.max(maxLine, end);
+		}
+
+		/*
+		 * replay the finder on all the lines at once: the nodes are visited in the
+		 * same order, and each line is only updated by the nodes covering it.
+		 */
+		minimumNodes = new ASTNode[maxLine + 1];
+		int[] startLines = new int[maxLine + 1];
+		int[] endLines = new int[maxLine + 1];
+		for (int i = 0; i < nodes.size(); i++) {
+			int start = lines.get(i)[0];
+			int end = lines.get(i)[1];
+			for (int line = Math.max(start, 1); line <= end; line++) {
+				if (minimumNodes[line] == null
+						|| (startLines[line] < start && end < endLines[line] && startLines[line] != line)) {
+					minimumNodes[line] = nodes.get(i);
+					startLines[line] = start;
+					endLines[line] = end;
+				}
+			}
+		}
+	}
+
+	public static ASTNode findMinimumNode(CompilationUnit cu, int line) {
+		if (line < 1) {
+			MinimumASTNodeFinder finder = new MinimumASTNodeFinder(line, cu);
+			cu.accept(finder);
+			return finder.getMinimumNode();
+		}
+		MinimumASTNodeIndex index;
+		synchronized (cu) {
+			index = (MinimumASTNodeIndex) cu.getProperty(PROPERTY);
+			if (index == null) {
+				index = new MinimumASTNodeIndex(cu);
+				cu.setProperty(PROPERTY, index);
+			}
+		}
+		return line < index.minimumNodes.length ? index.minimumNodes[line] : null;
+	}
+}
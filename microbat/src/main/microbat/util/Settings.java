@@ -5,7 +5,6 @@ import java.util.HashSet;
 import java.util.Stack;
 
 import org.eclipse.jdt.core.ICompilationUnit;
-import org.eclipse.jdt.core.dom.CompilationUnit;
 
 import microbat.Activator;
 import microbat.handler.CheckingState;
@@ -114,9 +113,10 @@ public class Settings {
 	public static Stack<CheckingState> checkingStateStack = new Stack<>();
 	
 	/**
-	 * The following two map is used to trade space for time.
+	 * The following two map is used to trade space for time, the parsed compilation units
+	 * are bounded, see {@link CompilationUnitCache}.
 	 */
-	public static HashMap<String, CompilationUnit> compilationUnitMap = new HashMap<>();
+	public static CompilationUnitCache compilationUnitMap = new CompilationUnitCache();
 	public static HashMap<String, ICompilationUnit> iCompilationUnitMap = new HashMap<>();
 	public static boolean enableLoopInference = true;
 	public static boolean supportConcurrentTrace;
@@ -5,6 +5,7 @@ import java.util.List;
 
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.jface.dialogs.ErrorDialog;
@@ -704,7 +705,14 @@ public class DebugFeedbackView extends ViewPart {
 								}
 							}
 							
-							final TraceNode suspiciousNode = recommender.recommendNode(trace, currentNode, feedback);
+							final TraceNode suspiciousNode;
+							try {
+								/* the dominators are looked up by the slices of the recommendation */
+								trace.precomputeDataDependencies(false, monitor);
+								suspiciousNode = recommender.recommendNode(trace, currentNode, feedback, monitor);
+							} catch (OperationCanceledException e) {
+								return Status.CANCEL_STATUS;
+							}
 							lastFeedbackType = feedbackType;
 							
 							if(recommender.getState()==DebugState.BINARY_SEARCH || recommender.getState()==DebugState.SKIP){
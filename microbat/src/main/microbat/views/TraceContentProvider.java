@@ -0,0 +1,80 @@
+package microbat.views;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.jface.viewers.ILazyTreeContentProvider;
+import org.eclipse.jface.viewers.TreeViewer;
+import org.eclipse.jface.viewers.Viewer;
+
+import microbat.model.trace.Trace;
+import microbat.model.trace.TraceAbstractionTree;
+import microbat.model.trace.TraceNode;
+
+/**
+ * The content of a virtual trace viewer, i.e., one created with
+ * {@link org.eclipse.swt.SWT#VIRTUAL}: the steps are organized by their
+ * abstraction parents, and only the rows shown by the viewer are asked for, by
+ * their index in the {@link TraceAbstractionTree} of the trace.
+ */
+public class TraceContentProvider implements ILazyTreeContentProvider {
+
+	private TreeViewer viewer;
+	private Trace trace;
+
+	@Override
+	public void dispose() {
+
+	}
+
+	@Override
+	public void inputChanged(Viewer viewer, Object oldInput, Object newInput) {
+		this.viewer = (TreeViewer) viewer;
+		this.trace = (newInput instanceof Trace) ? (Trace) newInput : null;
+	}
+
+	@Override
+	public void updateElement(Object parent, int index) {
+		List<TraceNode> children = getChildren(parent);
+		if (index < children.size()) {
+			TraceNode child = children.get(index);
+			viewer.replaceElement(parent, index, child);
+			viewer.setChildCount(child, trace.getAbstractionTree().getChildCount(child));
+		}
+	}
+
+	@Override
+	public void updateChildCount(Object element, int currentChildCount) {
+		int count = getChildren(element).size();
+		if (count != currentChildCount) {
+			viewer.setChildCount(element, count);
+		}
+	}
+
+	@Override
+	public Object getParent(Object element) {
+		if (trace == null || !(element instanceof TraceNode)) {
+			return null;
+		}
+		TraceNode node = (TraceNode) element;
+		TraceNode parent = trace.getAbstractionTree().getParent(node);
+		if (parent == null) {
+			parent = node.getAbstractionParent();
+		}
+		return (parent != null) ? parent : trace;
+	}
+
+	private List<TraceNode> getChildren(Object element) {
+		if (trace == null) {
+			return Collections.emptyList();
+		}
+		TraceAbstractionTree tree = trace.getAbstractionTree();
+		if (element instanceof Trace) {
+			return tree.getTopNodes();
+		} else if (element instanceof TraceNode) {
+			return tree.getChildren((TraceNode) element);
+		}
+		return Collections.emptyList();
+	}
+
+}
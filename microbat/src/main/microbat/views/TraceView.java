@@ -25,11 +25,9 @@ import org.eclipse.jface.viewers.ILabelProviderListener;
 import org.eclipse.jface.viewers.ISelection;
 import org.eclipse.jface.viewers.ISelectionChangedListener;
 import org.eclipse.jface.viewers.IStructuredSelection;
-import org.eclipse.jface.viewers.ITreeContentProvider;
 import org.eclipse.jface.viewers.SelectionChangedEvent;
 import org.eclipse.jface.viewers.StructuredSelection;
 import org.eclipse.jface.viewers.TreeViewer;
-import org.eclipse.jface.viewers.Viewer;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.events.KeyAdapter;
 import org.eclipse.swt.events.KeyEvent;
@@ -257,8 +255,9 @@ public class TraceView extends ViewPart {
 
 		createSearchBox(parent);
 
-		listViewer = new TreeViewer(parent, SWT.V_SCROLL | SWT.H_SCROLL | SWT.BORDER);
+		listViewer = new TreeViewer(parent, SWT.VIRTUAL | SWT.V_SCROLL | SWT.H_SCROLL | SWT.BORDER);
 		listViewer.getTree().setLayoutData(new GridData(SWT.FILL, SWT.FILL, true, true, 2, 1));
+		listViewer.setUseHashlookup(true);
 		listViewer.setContentProvider(new TraceContentProvider());
 		listViewer.setLabelProvider(new TraceLabelProvider());
 
@@ -473,58 +472,6 @@ public class TraceView extends ViewPart {
 		this.traceList = traceList;
 	}
 
-	class TraceContentProvider implements ITreeContentProvider {
-
-		public void dispose() {
-
-		}
-
-		public void inputChanged(Viewer viewer, Object oldInput, Object newInput) {
-
-		}
-
-		@Override
-		public Object[] getChildren(Object parentElement) {
-			if (parentElement instanceof Trace) {
-				Trace trace = (Trace) parentElement;
-				// List<TraceNode> nodeList = trace.getExectionList();
-				// List<TraceNode> nodeList = trace.getTopMethodLevelNodes();
-				// List<TraceNode> nodeList = trace.getTopLoopLevelNodes();
-				List<TraceNode> nodeList = trace.getTopAbstractionLevelNodes();
-				return nodeList.toArray(new TraceNode[0]);
-			} else if (parentElement instanceof TraceNode) {
-				TraceNode parentNode = (TraceNode) parentElement;
-				// List<TraceNode> nodeList = parentNode.getInvocationChildren();
-				// List<TraceNode> nodeList = parentNode.getLoopChildren();
-				List<TraceNode> nodeList = parentNode.getAbstractChildren();
-				return nodeList.toArray(new TraceNode[0]);
-			}
-			return null;
-		}
-
-		@Override
-		public Object getParent(Object element) {
-			return null;
-		}
-
-		@Override
-		public boolean hasChildren(Object element) {
-			if (element instanceof TraceNode) {
-				TraceNode node = (TraceNode) element;
-				// return !node.getInvocationChildren().isEmpty();
-				// return !node.getLoopChildren().isEmpty();
-				return !node.getAbstractChildren().isEmpty();
-			}
-			return false;
-		}
-
-		@Override
-		public Object[] getElements(Object inputElement) {
-			return getChildren(inputElement);
-		}
-
-	}
-
 	class TraceLabelProvider implements ILabelProvider {
 
 		public void addListener(ILabelProviderListener listener) {
@@ -0,0 +1,165 @@
+package microbat.algorithm.graphdiff;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import microbat.model.value.GraphNode;
+import microbat.model.value.PrimitiveValue;
+import microbat.model.value.ReferenceValue;
+import microbat.model.variable.FieldVar;
+import microbat.model.variable.Variable;
+
+/**
+ * Checks that {@link HierarchyGraphDiffer} with the hash indexed
+ * {@link SimpleMatcher} gives the same diffs and commons as the former list
+ * based matching on a wide object.
+ */
+public class HierarchyGraphDifferTest {
+	private static final int FIELDS = 1000;
+
+	@Test
+	public void testSameDiffsAsListMatching() {
+		ReferenceValue before = createObject("before", 0);
+		ReferenceValue after = createObject("after", 1);
+
+		HierarchyGraphDiffer differ = new HierarchyGraphDiffer();
+		differ.diff(before, after, false);
+		ListDiffer listDiffer = new ListDiffer();
+		listDiffer.diffChildren(before, after);
+
+		assertSameDiffs(listDiffer.diffs, differ.getDiffs());
+		assertSameDiffs(listDiffer.commons, differ.getCommons());
+	}
+
+	/**
+	 * values without a var id are matched by identity instead of failing in their
+	 * hash code.
+	 */
+	@Test
+	public void testMatchValuesWithoutVarID() {
+		List<PrimitiveValue> before = new ArrayList<>();
+		List<PrimitiveValue> after = new ArrayList<>();
+		for (int i = 0; i < 2; i++) {
+			before.add(new PrimitiveValue(String.valueOf(i), false, createVar("f", "int", null)));
+			after.add(new PrimitiveValue(String.valueOf(i), false, createVar("f", "int", null)));
+		}
+		List<MatchingGraphPair> pairs = new SimpleMatcher().matchList(before, after);
+		assertEquals(2, pairs.size());
+		for (int i = 0; i < 2; i++) {
+			assertSame(before.get(i), pairs.get(i).getNodeBefore());
+			assertSame(after.get(i), pairs.get(i).getNodeAfter());
+		}
+	}
+
+	private void assertSameDiffs(List<GraphDiff> expected, List<GraphDiff> actual) {
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertSame(expected.get(i).getNodeBefore(), actual.get(i).getNodeBefore());
+			assertSame(expected.get(i).getNodeAfter(), actual.get(i).getNodeAfter());
+		}
+	}
+
+	/**
+	 * an object with primitive fields, some of them changed or missing in the
+	 * version 1, fields of the same name and type, and a nested object shared by
+	 * two fields.
+	 */
+	private ReferenceValue createObject(String name, int version) {
+		ReferenceValue object = new ReferenceValue(false, 1, true, createVar(name, "Obj", "obj"));
+		for (int i = 0; i < FIELDS; i++) {
+			if (version == 1 && i % 7 == 0) {
+				continue;
+			}
+			String value = (version == 1 && i % 5 == 0) ? "changed" + i : String.valueOf(i);
+			/* every 10 fields share a name */
+			String fieldName = "f" + (i / 10);
+			object.linkAchild(new PrimitiveValue(value, false, createVar(fieldName, "int", "obj.f" + i)));
+		}
+		if (version == 1) {
+			object.linkAchild(new PrimitiveValue("new", false, createVar("added", "int", "obj.added")));
+		}
+		ReferenceValue nested = new ReferenceValue(false, 2, false, createVar("nested", "Obj", "obj.nested"));
+		nested.linkAchild(new PrimitiveValue(String.valueOf(version), false, createVar("x", "int", "obj.nested.x")));
+		object.linkAchild(nested);
+		object.linkAchild(nested);
+		return object;
+	}
+
+	private Variable createVar(String name, String type, String varID) {
+		Variable var = new FieldVar(false, name, type, "Obj");
+		var.setVarID(varID);
+		return var;
+	}
+
+	/**
+	 * the former differ, which looks up the visited nodes and the parsed pairs in
+	 * lists.
+	 */
+	private static class ListDiffer {
+		private List<GraphNode> visitedPool = new ArrayList<>();
+		private List<GraphDiff> diffs = new ArrayList<>();
+		private List<GraphDiff> commons = new ArrayList<>();
+
+		private void diffChildren(GraphNode rootBefore, GraphNode rootAfter) {
+			for (MatchingGraphPair pair : matchList(rootBefore.getChildren(), rootAfter.getChildren())) {
+				GraphNode nodeBefore = pair.getNodeBefore();
+				GraphNode nodeAfter = pair.getNodeAfter();
+				GraphDiff diff = new GraphDiff(nodeBefore, nodeAfter);
+				if (nodeBefore != null && nodeAfter != null) {
+					boolean isSame = nodeBefore.isTheSameWith(nodeAfter);
+					if (!isParsed(isSame ? commons : diffs, diff)) {
+						(isSame ? commons : diffs).add(diff);
+						diffChildren(nodeBefore, nodeAfter);
+					}
+				} else {
+					diffs.add(diff);
+				}
+			}
+		}
+
+		private boolean isParsed(List<GraphDiff> parsed, GraphDiff diff) {
+			for (GraphDiff gd : parsed) {
+				if (gd.getNodeBefore() == diff.getNodeBefore() && gd.getNodeAfter() == diff.getNodeAfter()) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private List<MatchingGraphPair> matchList(List<? extends GraphNode> childrenBefore,
+				List<? extends GraphNode> childrenAfter) {
+			List<MatchingGraphPair> pairs = new ArrayList<>();
+			if (childrenBefore == null || childrenAfter == null) {
+				return pairs;
+			}
+			for (GraphNode childBefore : childrenBefore) {
+				if (!visitedPool.contains(childBefore)) {
+					GraphNode node = null;
+					for (GraphNode childAfter : childrenAfter) {
+						if (!visitedPool.contains(childAfter) && childBefore.match(childAfter)) {
+							node = childAfter;
+							break;
+						}
+					}
+					visitedPool.add(childBefore);
+					if (node != null) {
+						visitedPool.add(node);
+					}
+					pairs.add(new MatchingGraphPair(childBefore, node));
+				}
+			}
+			for (GraphNode childAfter : childrenAfter) {
+				if (!visitedPool.contains(childAfter)) {
+					visitedPool.add(childAfter);
+					pairs.add(new MatchingGraphPair(null, childAfter));
+				}
+			}
+			return pairs;
+		}
+	}
+}
@@ -0,0 +1,77 @@
+package microbat.codeanalysis.bytecode;
+
+import java.util.List;
+
+import org.apache.bcel.classfile.Method;
+
+/**
+ * Times {@link ReachingDefinitionSolver} against the former round-robin solver,
+ * {@link CFGConstructor#constructDataDependencyByIteration(CFG)}, on the largest
+ * methods of the corpus of {@link ReachingDefinitionSolverTest}. It is not a junit
+ * test, so that the test runs only check the results, e.g.
+ *
+ * <pre>
+ * java -cp &lt;bin&gt;:&lt;lib/*&gt; -Dbenchmark.iterations=10 microbat.codeanalysis.bytecode.ReachingDefinitionSolverBenchmark
+ * </pre>
+ *
+ * Settings are read from system properties:
+ * <ul>
+ * <li>benchmark.warmup: warmup iterations (default 3)</li>
+ * <li>benchmark.iterations: measurement iterations (default 5)</li>
+ * <li>benchmark.methods: number of largest methods (default 20)</li>
+ * </ul>
+ *
+ * The control flow graph of a method is built before its dependencies are solved
+ * (the constructor keeps the code of the last built graph), only the solving is
+ * timed.
+ */
+public class ReachingDefinitionSolverBenchmark {
+	private static int warmupIterations = Integer.getInteger("benchmark.warmup", 3);
+	private static int measurementIterations = Integer.getInteger("benchmark.iterations", 5);
+
+	public static void main(String[] args) throws Exception {
+		List<Method> methods = ReachingDefinitionSolverTest.getLargestMethods(Integer.getInteger("benchmark.methods", 20));
+		int instructions = 0;
+		for(Method method: methods){
+			instructions += method.getCode().getCode().length;
+		}
+		System.out.println(String.format("%d methods, %d bytes of code", methods.size(), instructions));
+
+		long iteration = run(methods, true);
+		long worklist = run(methods, false);
+		System.out.println(String.format("%-45s %10.2f ms/op", "constructDataDependencyByIteration", iteration / 1e6));
+		System.out.println(String.format("%-45s %10.2f ms/op", "ReachingDefinitionSolver", worklist / 1e6));
+		System.out.println(String.format("speedup %.1fx", (double) iteration / worklist));
+	}
+
+	/**
+	 * @return the average nanos to solve the data dependencies of all methods.
+	 */
+	private static long run(List<Method> methods, boolean byIteration) {
+		for(int i=0; i<warmupIterations; i++){
+			solve(methods, byIteration);
+		}
+		long nanos = 0;
+		for(int i=0; i<measurementIterations; i++){
+			nanos += solve(methods, byIteration);
+		}
+		return nanos / Math.max(1, measurementIterations);
+	}
+
+	private static long solve(List<Method> methods, boolean byIteration) {
+		long nanos = 0;
+		for(Method method: methods){
+			CFGConstructor constructor = new CFGConstructor();
+			CFG cfg = constructor.constructCFG(method.getCode());
+			long start = System.nanoTime();
+			if(byIteration){
+				constructor.constructDataDependencyByIteration(cfg);
+			}
+			else{
+				constructor.constructDataDependency(cfg);
+			}
+			nanos += System.nanoTime() - start;
+		}
+		return nanos;
+	}
+}
@@ -0,0 +1,86 @@
+package microbat.codeanalysis.bytecode;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.bcel.classfile.ClassParser;
+import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.classfile.Method;
+import org.junit.Test;
+
+/**
+ * Checks that {@link ReachingDefinitionSolver} gives the same define and use
+ * nodes as the former round-robin solver on the largest methods of some classes
+ * of the classpath. Their times are compared by ReachingDefinitionSolverBenchmark.
+ */
+public class ReachingDefinitionSolverTest {
+	private static final int METHODS = 10;
+	static final Class<?>[] CORPUS = new Class<?>[] {
+		org.apache.bcel.classfile.Utility.class,
+		org.apache.bcel.util.BCELifier.class,
+		org.apache.bcel.verifier.structurals.InstConstraintVisitor.class,
+		org.apache.bcel.verifier.statics.Pass3aVerifier.class,
+		org.apache.bcel.generic.MethodGen.class,
+		java.lang.Character.class,
+		java.math.BigDecimal.class,
+		java.util.regex.Pattern.class
+	};
+
+	@Test
+	public void testSameDependenciesOnLargestMethods() throws Exception {
+		for(Method method: getLargestMethods(METHODS)){
+			CFGConstructor constructor = new CFGConstructor();
+			CFG expected = constructor.constructCFG(method.getCode());
+			constructor.constructDataDependencyByIteration(expected);
+
+			CFG actual = constructor.constructCFG(method.getCode());
+			constructor.constructDataDependency(actual);
+
+			for(int i=0; i<expected.size(); i++){
+				CFGNode expectedNode = expected.getNodeList().get(i);
+				CFGNode actualNode = actual.getNodeList().get(i);
+				String msg = method.getName() + " " + expectedNode;
+				assertEquals(msg, toPositions(expectedNode.getOutSet()), toPositions(actualNode.getOutSet()));
+				assertEquals(msg, toPositions(expectedNode.getDefineSet()), toPositions(actualNode.getDefineSet()));
+				assertEquals(msg, toPositions(expectedNode.getUseSet()), toPositions(actualNode.getUseSet()));
+			}
+		}
+	}
+
+	static List<Method> getLargestMethods(int count) throws Exception {
+		List<Method> methods = new ArrayList<>();
+		for(Class<?> clazz: CORPUS){
+			String resource = "/" + clazz.getName().replace(".", "/") + ".class";
+			try(InputStream in = clazz.getResourceAsStream(resource)){
+				JavaClass javaClass = new ClassParser(in, resource).parse();
+				for(Method method: javaClass.getMethods()){
+					if(method.getCode() != null){
+						methods.add(method);
+					}
+				}
+			}
+		}
+		Collections.sort(methods, new Comparator<Method>() {
+			@Override
+			public int compare(Method m1, Method m2) {
+				return m2.getCode().getCode().length - m1.getCode().getCode().length;
+			}
+		});
+		return methods.subList(0, Math.min(count, methods.size()));
+	}
+
+	private Set<Integer> toPositions(List<CFGNode> nodes) {
+		Set<Integer> positions = new HashSet<>();
+		for(CFGNode node: nodes){
+			positions.add(node.getInstructionHandle().getPosition());
+		}
+		return positions;
+	}
+}
@@ -0,0 +1,141 @@
+package microbat.codeanalysis.runtime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jdt.core.dom.AST;
+import org.eclipse.jdt.core.dom.ASTParser;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.junit.Test;
+
+import microbat.model.BreakPoint;
+import microbat.model.trace.Trace;
+import microbat.model.trace.TraceNode;
+import microbat.model.value.PrimitiveValue;
+import microbat.model.value.VarValue;
+import microbat.model.variable.LocalVar;
+
+/**
+ * Checks that the read variables appended in parallel, one partition per
+ * invocation parent, are the same as the ones appended sequentially, and that
+ * they are seen by the variable index of the trace.
+ */
+public class InstrumentationExecutorTest {
+	private static final int PARTITIONS = 50;
+	/* line 3 and 4 are the same statement */
+	private static final String SOURCE = "public class Sample {\n"
+			+ "	void run(int a, int b) {\n"
+			+ "		int c = Math.max(a,\n"
+			+ "				b);\n"
+			+ "	}\n"
+			+ "}\n";
+
+	@Test
+	public void testParallelSameAsSequential() {
+		Map<String, CompilationUnit> units = Collections.singletonMap("Sample", parse(SOURCE));
+		Trace sequentialTrace = new Trace("sequential");
+		Map<Integer, List<TraceNode>> sequentialPartitions = createSteps(sequentialTrace);
+		Trace parallelTrace = new Trace("parallel");
+		Map<Integer, List<TraceNode>> parallelPartitions = createSteps(parallelTrace);
+
+		InstrumentationExecutor.appendMissingReadVariables(sequentialPartitions.values(), units, false);
+		InstrumentationExecutor.appendMissingReadVariables(parallelPartitions.values(), units, true);
+
+		for (int order = 1; order <= sequentialTrace.size(); order++) {
+			assertEquals(getVarIDs(sequentialTrace.getTraceNode(order)),
+					getVarIDs(parallelTrace.getTraceNode(order)));
+		}
+		/* the call of each partition reads the arguments of the statement */
+		for (List<TraceNode> nodes : parallelPartitions.values()) {
+			TraceNode call = nodes.get(nodes.size() - 1);
+			String suffix = "_" + call.getInvocationParent().getOrder();
+			assertEquals(Arrays.asList("b" + suffix, "a" + suffix), getVarIDs(call));
+		}
+	}
+
+	@Test
+	public void testAppendedVariablesAreIndexed() {
+		Map<String, CompilationUnit> units = Collections.singletonMap("Sample", parse(SOURCE));
+		Trace trace = new Trace("indexed");
+		Map<Integer, List<TraceNode>> partitions = createSteps(trace);
+		List<TraceNode> nodes = partitions.values().iterator().next();
+		TraceNode call = nodes.get(nodes.size() - 1);
+		TraceNode writer = call.getInvocationParent().getInvocationChildren().get(0);
+		/* the variables are indexed before they are appended */
+		assertTrue(trace.sliceBackward(call, 1, -1, null).isEmpty());
+
+		InstrumentationExecutor.appendMissingReadVariables(partitions.values(), units, true);
+
+		assertTrue(trace.sliceBackward(call, 1, -1, null).get(writer.getOrder()));
+	}
+
+	private CompilationUnit parse(String source) {
+		ASTParser parser = ASTParser.newParser(AST.JLS8);
+		parser.setKind(ASTParser.K_COMPILATION_UNIT);
+		parser.setSource(source.toCharArray());
+		return (CompilationUnit) parser.createAST(null);
+	}
+
+	/**
+	 * each partition is an invocation of run(a, b): a step writing a and b, the
+	 * steps reading them on line 3 and 4, and the call of Math.max on line 3, which
+	 * reads no variable as it is recorded.
+	 */
+	private Map<Integer, List<TraceNode>> createSteps(Trace trace) {
+		Map<Integer, List<TraceNode>> partitions = new LinkedHashMap<>();
+		for (int i = 0; i < PARTITIONS; i++) {
+			TraceNode parent = addStep(trace, 5);
+			String suffix = "_" + parent.getOrder();
+			TraceNode writer = addStep(trace, 2, parent, null);
+			writer.addWrittenVariable(createValue("a" + suffix));
+			writer.addWrittenVariable(createValue("b" + suffix));
+			TraceNode readA = addStep(trace, 3, parent, writer);
+			readA.addReadVariable(createValue("a" + suffix));
+			TraceNode readB = addStep(trace, 4, parent, readA);
+			readB.addReadVariable(createValue("b" + suffix));
+			TraceNode call = addStep(trace, 3, parent, readB);
+			TraceNode callee = addStep(trace, 5);
+			callee.setInvocationParent(call);
+			call.addInvocationChild(callee);
+			partitions.put(parent.getOrder(), new ArrayList<>(Arrays.asList(call)));
+		}
+		return partitions;
+	}
+
+	private TraceNode addStep(Trace trace, int line) {
+		int order = trace.size() + 1;
+		TraceNode node = new TraceNode(new BreakPoint("Sample", "Sample", "run(II)V", line), null, order, trace,
+				null);
+		trace.addTraceNode(node);
+		return node;
+	}
+
+	private TraceNode addStep(Trace trace, int line, TraceNode parent, TraceNode stepOverPrevious) {
+		TraceNode node = addStep(trace, line);
+		node.setInvocationParent(parent);
+		parent.addInvocationChild(node);
+		node.setStepOverPrevious(stepOverPrevious);
+		return node;
+	}
+
+	private VarValue createValue(String varID) {
+		LocalVar var = new LocalVar(varID, "int", "Sample", 2);
+		var.setVarID(varID);
+		return new PrimitiveValue("0", false, var);
+	}
+
+	private List<String> getVarIDs(TraceNode node) {
+		List<String> varIDs = new ArrayList<>();
+		for (VarValue value : node.getReadVariables()) {
+			varIDs.add(value.getVarID());
+		}
+		return varIDs;
+	}
+}
@@ -0,0 +1,64 @@
+package microbat.evaluation.model;
+
+import java.util.ArrayList;
+
+/**
+ * Times the lookups of a simulated debugging session, see {@link SimulatedSession},
+ * on a {@link PairList} against the former linear scanning of the pairs. It is not
+ * a junit test, so that the test runs only check the results, see
+ * {@link PairListTest}, e.g.
+ *
+ * <pre>
+ * java -cp &lt;bin&gt;:&lt;lib/*&gt; -Dbenchmark.steps=50000 microbat.evaluation.model.PairListBenchmark
+ * </pre>
+ *
+ * Settings are read from system properties:
+ * <ul>
+ * <li>benchmark.warmup: warmup iterations (default 3)</li>
+ * <li>benchmark.iterations: measurement iterations (default 5)</li>
+ * <li>benchmark.steps: steps of each trace (default 20000)</li>
+ * <li>benchmark.feedbacks: feedbacks of the simulated user (default 2000)</li>
+ * </ul>
+ */
+public class PairListBenchmark {
+	private static int warmupIterations = Integer.getInteger("benchmark.warmup", 3);
+	private static int measurementIterations = Integer.getInteger("benchmark.iterations", 5);
+
+	public static void main(String[] args) {
+		final SimulatedSession session = new SimulatedSession(Integer.getInteger("benchmark.steps", 20000),
+				Integer.getInteger("benchmark.feedbacks", 2000), 0);
+		System.out.println(String.format("%d steps, %d pairs, %d lookups", session.mutatedTrace.size(),
+				session.pairs.size(), session.lookups.size()));
+
+		/* the index is built with the pair list, as SimulatedMicroBat sets it once per session */
+		long indexed = run(new Runnable() {
+			@Override
+			public void run() {
+				session.replay(new PairList(new ArrayList<>(session.pairs)));
+			}
+		});
+		long scanning = run(new Runnable() {
+			@Override
+			public void run() {
+				session.replayByScanning();
+			}
+		});
+		System.out.println(String.format("%-30s %12.3f ms/op", "PairList", indexed / 1e6));
+		System.out.println(String.format("%-30s %12.3f ms/op", "scanning", scanning / 1e6));
+		System.out.println(String.format("speedup %.1fx", (double) scanning / indexed));
+	}
+
+	/**
+	 * @return the average nanos to replay the session.
+	 */
+	private static long run(Runnable replay) {
+		for (int i = 0; i < warmupIterations; i++) {
+			replay.run();
+		}
+		long start = System.nanoTime();
+		for (int i = 0; i < measurementIterations; i++) {
+			replay.run();
+		}
+		return (System.nanoTime() - start) / Math.max(1, measurementIterations);
+	}
+}
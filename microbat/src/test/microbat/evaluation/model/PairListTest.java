@@ -0,0 +1,59 @@
+package microbat.evaluation.model;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import microbat.model.trace.TraceNode;
+
+/**
+ * Checks that a {@link PairList} finds the same pairs as the former linear
+ * scanning of the pairs on a simulated debugging session, see
+ * {@link SimulatedSession}, and that its index follows the modifications of the
+ * pairs. The lookups are timed by PairListBenchmark.
+ */
+public class PairListTest {
+	private static final int STEPS = 10000;
+	private static final int FEEDBACKS = 2000;
+
+	@Test
+	public void replaySimulatedSession() {
+		SimulatedSession session = new SimulatedSession(STEPS, FEEDBACKS, 0);
+		TraceNodePair[] found = session.replay(new PairList(new ArrayList<>(session.pairs)));
+		TraceNodePair[] expected = session.replayByScanning();
+		for (int i = 0; i < expected.length; i++) {
+			assertSame(expected[i], found[i]);
+		}
+	}
+
+	@Test
+	public void indexFollowsModifications() {
+		List<TraceNode> mutatedTrace = SimulatedSession.createTrace(3);
+		List<TraceNode> correctTrace = SimulatedSession.createTrace(3);
+		List<TraceNodePair> pairs = new ArrayList<>();
+		pairs.add(new TraceNodePair(mutatedTrace.get(0), correctTrace.get(0)));
+		PairList pairList = new PairList(pairs);
+		/* the given list is copied */
+		pairs.set(0, new TraceNodePair(mutatedTrace.get(0), correctTrace.get(1)));
+		assertSame(correctTrace.get(0), pairList.findByMutatedNode(mutatedTrace.get(0)).getOriginalNode());
+
+		TraceNodePair added = new TraceNodePair(mutatedTrace.get(2), correctTrace.get(2));
+		pairList.add(added);
+		assertSame(added, pairList.findByMutatedNode(mutatedTrace.get(2)));
+		assertSame(added, pairList.findByOriginalNode(correctTrace.get(2)));
+
+		pairList.setPairList(pairs);
+		assertNull(pairList.findByMutatedNode(mutatedTrace.get(2)));
+		assertSame(pairs.get(0), pairList.findByOriginalNode(correctTrace.get(1)));
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void pairListIsUnmodifiable() {
+		PairList pairList = new PairList(new ArrayList<TraceNodePair>());
+		pairList.getPairList().add(new TraceNodePair(null, null));
+	}
+}
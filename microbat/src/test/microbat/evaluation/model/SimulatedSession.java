@@ -0,0 +1,144 @@
+package microbat.evaluation.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import microbat.model.trace.TraceNode;
+
+/**
+ * The pair lookups of a debugging session, recorded the way
+ * {@link microbat.evaluation.SimulatedMicroBat} looks up the pairs of a mutated
+ * and a correct trace:
+ * <ol>
+ * <li>findRootCause looks up the steps on the mutated line,</li>
+ * <li>findAllWrongNodes looks up every step of the mutated trace,</li>
+ * <li>isObservedFaultWrongPath looks up the observed fault, the last wrong step,</li>
+ * <li>then, for each feedback, {@link microbat.evaluation.SimulatedUser} and the
+ * simulated debugger look up the suspicious step, and the debugger looks up its
+ * reference step in the correct trace, before going back to a dominator of the
+ * suspicious step.</li>
+ * </ol>
+ *
+ * The traces are synthetic, their steps have no location: the mutated line is
+ * every LINES-th step, and the traces are matched in order with some steps
+ * missing in either trace.
+ */
+class SimulatedSession {
+	private static final int LINES = 50;
+
+	List<TraceNode> mutatedTrace;
+	List<TraceNode> correctTrace;
+	List<TraceNodePair> pairs;
+	List<Lookup> lookups = new ArrayList<>();
+
+	SimulatedSession(int steps, int feedbacks, long seed) {
+		Random random = new Random(seed);
+		mutatedTrace = createTrace(steps);
+		correctTrace = createTrace(steps);
+		pairs = matchTraces(random);
+		record(new PairList(new ArrayList<>(pairs)), feedbacks, random);
+	}
+
+	static List<TraceNode> createTrace(int size) {
+		List<TraceNode> trace = new ArrayList<>();
+		for (int order = 1; order <= size; order++) {
+			trace.add(new TraceNode(null, null, order, null, null));
+		}
+		return trace;
+	}
+
+	private List<TraceNodePair> matchTraces(Random random) {
+		List<TraceNodePair> pairs = new ArrayList<>();
+		for (int i = 0, j = 0; i < mutatedTrace.size() && j < correctTrace.size(); i++, j++) {
+			int skip = random.nextInt(20);
+			if (skip == 0) {
+				i++;
+			} else if (skip == 1) {
+				j++;
+			}
+			if (i < mutatedTrace.size() && j < correctTrace.size()) {
+				TraceNodePair pair = new TraceNodePair(mutatedTrace.get(i), correctTrace.get(j));
+				pair.setExactSame(random.nextInt(10) != 0);
+				pairs.add(pair);
+			}
+		}
+		return pairs;
+	}
+
+	private void record(PairList pairList, int feedbacks, Random random) {
+		/* findRootCause */
+		for (TraceNode node : mutatedTrace) {
+			if (node.getOrder() % LINES == 0) {
+				lookups.add(new Lookup(node, true));
+				if (pairList.findByMutatedNode(node) != null) {
+					break;
+				}
+			}
+		}
+		/* findAllWrongNodes */
+		TraceNode suspiciousNode = null;
+		for (TraceNode node : mutatedTrace) {
+			lookups.add(new Lookup(node, true));
+			TraceNodePair pair = pairList.findByMutatedNode(node);
+			if (pair == null || !pair.isExactSame()) {
+				suspiciousNode = node;
+			}
+		}
+		/* isObservedFaultWrongPath */
+		if (suspiciousNode != null) {
+			lookups.add(new Lookup(suspiciousNode, true));
+		}
+		for (int i = 0; i < feedbacks && suspiciousNode != null; i++) {
+			/* SimulatedUser.feedback */
+			lookups.add(new Lookup(suspiciousNode, true));
+			/* the reference step of the feedback */
+			lookups.add(new Lookup(suspiciousNode, true));
+			TraceNodePair pair = pairList.findByMutatedNode(suspiciousNode);
+			if (pair != null) {
+				lookups.add(new Lookup(pair.getOriginalNode(), false));
+			}
+			/* a dominator of the suspicious step */
+			int order = suspiciousNode.getOrder() - 1 - random.nextInt(10);
+			suspiciousNode = order > 0 ? mutatedTrace.get(order - 1) : null;
+		}
+	}
+
+	TraceNodePair[] replay(PairList pairList) {
+		TraceNodePair[] found = new TraceNodePair[lookups.size()];
+		for (int i = 0; i < lookups.size(); i++) {
+			Lookup lookup = lookups.get(i);
+			found[i] = lookup.isMutated ? pairList.findByMutatedNode(lookup.node)
+					: pairList.findByOriginalNode(lookup.node);
+		}
+		return found;
+	}
+
+	/**
+	 * the former lookup of PairList, scanning the pairs.
+	 */
+	TraceNodePair[] replayByScanning() {
+		TraceNodePair[] found = new TraceNodePair[lookups.size()];
+		for (int i = 0; i < lookups.size(); i++) {
+			Lookup lookup = lookups.get(i);
+			for (TraceNodePair pair : pairs) {
+				TraceNode node = lookup.isMutated ? pair.getMutatedNode() : pair.getOriginalNode();
+				if (node.equals(lookup.node)) {
+					found[i] = pair;
+					break;
+				}
+			}
+		}
+		return found;
+	}
+
+	static class Lookup {
+		private TraceNode node;
+		private boolean isMutated;
+
+		public Lookup(TraceNode node, boolean isMutated) {
+			this.node = node;
+			this.isMutated = isMutated;
+		}
+	}
+}
@@ -0,0 +1,136 @@
+package microbat.evaluation.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import microbat.evaluation.model.TraceNodePair;
+import microbat.model.BreakPoint;
+import microbat.model.trace.TraceNode;
+
+/**
+ * Checks that the traces aligned between anchors and split in the Hirschberg way,
+ * with a small score table, have the same total similarity as the ones aligned
+ * with the full score table, on random mutations of random traces.
+ */
+public class TraceAlignerTest {
+	private static final int CASES = 300;
+	private static final int MAX_STEPS = 150;
+	/* the lines executed repeatedly, the other lines are executed once */
+	private static final int LOOP_LINES = 5;
+
+	@Test
+	public void testSameSimilarityAsFullTable() {
+		Random random = new Random(0);
+		for (int c = 0; c < CASES; c++) {
+			List<Integer> correctLines = createLines(random);
+			List<Integer> mutatedLines = mutate(correctLines, random);
+			TraceNode[] correctTrace = createTrace(correctLines);
+			TraceNode[] mutatedTrace = createTrace(mutatedLines);
+			TraceNodeSimilarityComparator comparator = new RandomSimilarityComparator(random.nextLong());
+
+			List<TraceNodePair> expected = new TraceAligner(comparator, Long.MAX_VALUE)
+					.align(mutatedTrace, correctTrace).getPairList();
+			for (long maxTableCells : new long[] { 4, 64, 1024 }) {
+				List<TraceNodePair> actual = new TraceAligner(comparator, maxTableCells)
+						.align(mutatedTrace, correctTrace).getPairList();
+				String msg = "case " + c + ", " + maxTableCells + " cells";
+				assertAligned(msg, actual);
+				assertEquals(msg, getSimilarity(expected, comparator), getSimilarity(actual, comparator), 1e-6);
+			}
+		}
+	}
+
+	/**
+	 * a loop over some lines, with lines executed once before, inside and after it.
+	 */
+	private List<Integer> createLines(Random random) {
+		List<Integer> lines = new ArrayList<>();
+		int line = LOOP_LINES + 1;
+		int steps = 1 + random.nextInt(MAX_STEPS);
+		while (lines.size() < steps) {
+			if (random.nextInt(3) == 0) {
+				lines.add(1 + random.nextInt(LOOP_LINES));
+			} else {
+				lines.add(line++);
+			}
+		}
+		return lines;
+	}
+
+	/**
+	 * remove, insert or replace some steps, the inserted steps may repeat a line.
+	 */
+	private List<Integer> mutate(List<Integer> lines, Random random) {
+		List<Integer> mutated = new ArrayList<>();
+		for (int line : lines) {
+			int mutation = random.nextInt(20);
+			if (mutation == 0) {
+				continue;
+			}
+			if (mutation == 1) {
+				mutated.add(lines.get(random.nextInt(lines.size())));
+			} else if (mutation == 2) {
+				mutated.add(1 + random.nextInt(LOOP_LINES));
+				continue;
+			}
+			mutated.add(line);
+		}
+		return mutated;
+	}
+
+	private TraceNode[] createTrace(List<Integer> lines) {
+		TraceNode[] trace = new TraceNode[lines.size()];
+		for (int i = 0; i < trace.length; i++) {
+			trace[i] = new TraceNode(new BreakPoint("Sample", "Sample", "run()V", lines.get(i)), null, i + 1, null,
+					null);
+		}
+		return trace;
+	}
+
+	/**
+	 * the pairs are of the same locations, in the order of both traces.
+	 */
+	private void assertAligned(String msg, List<TraceNodePair> pairs) {
+		for (int k = 0; k < pairs.size(); k++) {
+			TraceNode mutatedNode = pairs.get(k).getMutatedNode();
+			TraceNode correctNode = pairs.get(k).getOriginalNode();
+			assertEquals(msg, mutatedNode.getLineNumber(), correctNode.getLineNumber());
+			if (k > 0) {
+				assertTrue(msg, pairs.get(k - 1).getMutatedNode().getOrder() < mutatedNode.getOrder());
+				assertTrue(msg, pairs.get(k - 1).getOriginalNode().getOrder() < correctNode.getOrder());
+			}
+		}
+	}
+
+	private double getSimilarity(List<TraceNodePair> pairs, TraceNodeSimilarityComparator comparator) {
+		double similarity = 0;
+		for (TraceNodePair pair : pairs) {
+			similarity += comparator.compute(pair.getMutatedNode(), pair.getOriginalNode());
+		}
+		return similarity;
+	}
+
+	/**
+	 * the steps of a line are mostly the same, some differ in their variables.
+	 */
+	private static class RandomSimilarityComparator implements TraceNodeSimilarityComparator {
+		private long seed;
+
+		public RandomSimilarityComparator(long seed) {
+			this.seed = seed;
+		}
+
+		@Override
+		public double compute(TraceNode traceNode1, TraceNode traceNode2) {
+			long hash = seed + 31L * traceNode1.getOrder() + 1000003L * traceNode2.getOrder();
+			int value = new Random(hash).nextInt(4);
+			return value == 0 ? 0.5 : 1;
+		}
+	}
+}
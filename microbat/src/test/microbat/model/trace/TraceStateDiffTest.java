@@ -0,0 +1,86 @@
+package microbat.model.trace;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import microbat.algorithm.graphdiff.GraphDiff;
+import microbat.model.BreakPoint;
+import microbat.model.BreakPointValue;
+import microbat.model.value.PrimitiveValue;
+import microbat.model.value.VarValue;
+import microbat.model.variable.LocalVar;
+
+/**
+ * Checks that the states of the steps diffed in parallel are the same as the ones
+ * diffed sequentially, the state after a step being the state before the next one.
+ */
+public class TraceStateDiffTest {
+	private static final int STEPS = 2000;
+	private static final int VARIABLES = 20;
+
+	@Test
+	public void testParallelSameAsSequential() {
+		Trace sequentialTrace = createTrace("sequential");
+		Trace parallelTrace = createTrace("parallel");
+
+		sequentialTrace.conductStateDiff(false);
+		parallelTrace.conductStateDiff(true);
+
+		boolean hasDiffs = false;
+		for (int order = 1; order <= STEPS; order++) {
+			List<String> diffs = getDiffs(sequentialTrace.getTraceNode(order));
+			assertEquals(diffs, getDiffs(parallelTrace.getTraceNode(order)));
+			hasDiffs |= !diffs.isEmpty();
+		}
+		assertTrue(hasDiffs);
+	}
+
+	/**
+	 * step i changes variable i % VARIABLES, and every other step also changes the
+	 * next one.
+	 */
+	private Trace createTrace(String id) {
+		Trace trace = new Trace(id);
+		BreakPointValue state = createState(0, new int[VARIABLES]);
+		int[] values = new int[VARIABLES];
+		for (int order = 1; order <= STEPS; order++) {
+			values[order % VARIABLES]++;
+			if (order % 2 == 0) {
+				values[(order + 1) % VARIABLES]++;
+			}
+			BreakPointValue after = createState(order, values);
+			TraceNode node = new TraceNode(new BreakPoint("Sample", "Sample", "run()V", order % 10 + 1), state,
+					order, trace, null);
+			node.setAfterStepInState(after);
+			trace.addTraceNode(node);
+			state = after;
+		}
+		return trace;
+	}
+
+	private BreakPointValue createState(int order, int[] values) {
+		BreakPointValue state = new BreakPointValue("state" + order);
+		List<VarValue> children = new ArrayList<>();
+		for (int i = 0; i < values.length; i++) {
+			LocalVar var = new LocalVar("v" + i, "int", "Sample", 2);
+			var.setVarID("v" + i);
+			children.add(new PrimitiveValue(String.valueOf(values[i]), false, var));
+		}
+		state.setChildren(children);
+		return state;
+	}
+
+	private List<String> getDiffs(TraceNode node) {
+		List<String> diffs = new ArrayList<>();
+		for (GraphDiff diff : node.getConsequences()) {
+			diffs.add(diff.getDiffType() + ":" + ((VarValue) diff.getChangedNode()).getVarID() + "="
+					+ ((VarValue) diff.getChangedNode()).getStringValue());
+		}
+		return diffs;
+	}
+}
@@ -0,0 +1,116 @@
+package microbat.trace;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.junit.Before;
+import org.junit.Test;
+
+import microbat.model.BreakPoint;
+import microbat.model.trace.Trace;
+import microbat.model.trace.TraceNode;
+import microbat.model.value.PrimitiveValue;
+import microbat.model.value.VarValue;
+import microbat.model.variable.LocalVar;
+
+/**
+ * Checks the slices of a trace whose steps form a chain of data dependencies:
+ * step 1 writes a, step 2 reads a and writes b, step 3 reads b and writes c,
+ * step 4 reads c.
+ */
+public class TraceSlicerTest {
+	private Trace trace;
+
+	@Before
+	public void setup() {
+		trace = new Trace("slicer");
+		addStep(null, "a");
+		addStep("a", "b");
+		addStep("b", "c");
+		addStep("c", null);
+	}
+
+	private void addStep(String readVar, String writtenVar) {
+		int order = trace.size() + 1;
+		BreakPoint breakPoint = new BreakPoint("Sample", "Sample#run()V", order);
+		TraceNode node = new TraceNode(breakPoint, null, order, trace, null);
+		trace.addTraceNode(node);
+		if (readVar != null) {
+			node.addReadVariable(createValue(readVar));
+		}
+		if (writtenVar != null) {
+			node.addWrittenVariable(createValue(writtenVar));
+		}
+	}
+
+	private VarValue createValue(String name) {
+		LocalVar var = new LocalVar(name, "int", "Sample", 1);
+		var.setVarID(name);
+		return new PrimitiveValue("0", false, var);
+	}
+
+	@Test
+	public void testBackwardSlice() {
+		assertSlice(trace.sliceBackward(trace.getTraceNode(4), -1, -1, null), 1, 2, 3);
+		assertSlice(trace.sliceBackward(trace.getTraceNode(4), 1, -1, null), 3);
+		assertSlice(trace.sliceBackward(trace.getTraceNode(1), -1, -1, null));
+	}
+
+	@Test
+	public void testForwardSlice() {
+		assertSlice(trace.sliceForward(trace.getTraceNode(1), -1, -1, null), 2, 3, 4);
+		assertSlice(trace.sliceForward(trace.getTraceNode(2), 1, -1, null), 3);
+	}
+
+	@Test
+	public void testMaxStepsExcludesStart() {
+		assertSlice(trace.sliceBackward(trace.getTraceNode(4), -1, 0, null));
+		assertSlice(trace.sliceBackward(trace.getTraceNode(4), -1, 1, null), 3);
+		assertSlice(trace.sliceBackward(trace.getTraceNode(4), -1, 2, null), 2, 3);
+	}
+
+	@Test
+	public void testPrecomputedDependencies() {
+		trace.precomputeDataDependencies(false, null);
+		trace.precomputeDataDependencies(true, null);
+		assertSlice(trace.sliceBackward(trace.getTraceNode(4), -1, -1, null), 1, 2, 3);
+		assertSlice(trace.sliceForward(trace.getTraceNode(1), -1, -1, null), 2, 3, 4);
+	}
+
+	@Test
+	public void testSliceAfterVariablesChanged() {
+		assertSlice(trace.sliceBackward(trace.getTraceNode(4), -1, -1, null), 1, 2, 3);
+		/* step 4 reads b instead of c */
+		List<VarValue> readVars = new ArrayList<>();
+		readVars.add(createValue("b"));
+		trace.getTraceNode(4).setReadVariables(readVars);
+		assertSlice(trace.sliceBackward(trace.getTraceNode(4), -1, -1, null), 1, 2);
+		assertSlice(trace.sliceForward(trace.getTraceNode(2), -1, -1, null), 3, 4);
+	}
+
+	@Test(expected = OperationCanceledException.class)
+	public void testCancelledSlice() {
+		NullProgressMonitor monitor = new NullProgressMonitor();
+		monitor.setCanceled(true);
+		trace.sliceBackward(trace.getTraceNode(4), -1, -1, monitor);
+	}
+
+	private void assertSlice(BitSet slice, int... orders) {
+		List<Integer> actual = new ArrayList<>();
+		for (int order = slice.nextSetBit(0); order >= 0; order = slice.nextSetBit(order + 1)) {
+			actual.add(order);
+		}
+		List<Integer> expected = new ArrayList<>();
+		for (int order : orders) {
+			expected.add(order);
+		}
+		assertEquals(expected, actual);
+		assertEquals(Arrays.toString(orders), orders.length, slice.cardinality());
+	}
+}
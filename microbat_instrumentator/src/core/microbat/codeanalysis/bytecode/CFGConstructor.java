@@ -26,18 +26,38 @@ import org.apache.bcel.generic.Select;
  *
  */
 public class CFGConstructor {
+	/**
+	 * whether the control dependency is built with {@link PostDominatorTree} instead of
+	 * the iterative post domination on {@link BlockGraph}. The two give different
+	 * dependencies, so the tree is opt-in until its results are validated on real traces.
+	 */
+	private static volatile boolean postDominatorControlDependency = false;
+	
 	/**
 	 * This field is remained for debugging purpose
 	 */
 	private Code code;
 	
+	public static void setPostDominatorControlDependency(boolean postDominatorControlDependency) {
+		CFGConstructor.postDominatorControlDependency = postDominatorControlDependency;
+	}
+	
+	public static boolean isPostDominatorControlDependency() {
+		return postDominatorControlDependency;
+	}
+	
 	public CFG buildCFGWithControlDomiance(Code code){
 		this.code = code;
 		
 		CFG cfg = constructCFG(code);
 		
-		BlockGraph bGraph = constructPostDomination(cfg);
-		constructControlDependency(cfg, bGraph);
+		if (postDominatorControlDependency) {
+			PostDominatorTree postDominatorTree = new PostDominatorTree(cfg);
+			postDominatorTree.constructControlDependency();
+		} else {
+			BlockGraph bGraph = constructPostDomination(cfg);
+			constructControlDependency(cfg, bGraph);
+		}
 		
 		return cfg;
 	}
@@ -0,0 +1,196 @@
+package microbat.codeanalysis.bytecode;
+
+import java.util.List;
+
+/**
+ * The post-dominator tree of a CFG, built with the algorithm of Cooper, Harvey
+ * and Kennedy ("A Simple, Fast Dominance Algorithm") on the reversed CFG. A
+ * virtual exit node is the parent of all the exit nodes of the CFG, so that
+ * methods with several returns or throws have a single root.
+ *
+ * The nodes are identified by {@link CFGNode#getIdx()}, which is set by
+ * {@link CFGConstructor#constructCFG(org.apache.bcel.classfile.Code)}. Nodes
+ * which cannot reach an exit (e.g. in an infinite loop) have no post dominator.
+ */
+public class PostDominatorTree {
+	private static final int UNDEFINED = -1;
+
+	private CFGNode[] nodes;
+	/** index of the virtual exit node */
+	private int exit;
+	/** immediate post dominator of each node, the virtual exit is its own one */
+	private int[] ipdoms;
+	/** order of the nodes in a postorder traversal of the reversed CFG */
+	private int[] postOrderNumbers;
+
+	public PostDominatorTree(CFG cfg) {
+		List<CFGNode> nodeList = cfg.getNodeList();
+		int size = nodeList.size();
+		nodes = new CFGNode[size];
+		for(CFGNode node: nodeList){
+			nodes[node.getIdx()] = node;
+		}
+		exit = size;
+
+		boolean[] isExit = new boolean[size];
+		for(CFGNode exitNode: cfg.getExitList()){
+			isExit[exitNode.getIdx()] = true;
+		}
+
+		int[] reversePostOrder = computeReversePostOrder(cfg.getExitList());
+		computeImmediatePostDominators(reversePostOrder, isExit);
+	}
+
+	/**
+	 * depth first traversal of the reversed CFG from the virtual exit.
+	 */
+	private int[] computeReversePostOrder(List<CFGNode> exitNodes) {
+		postOrderNumbers = new int[exit + 1];
+		for(int i=0; i<postOrderNumbers.length; i++){
+			postOrderNumbers[i] = UNDEFINED;
+		}
+
+		int[] postOrder = new int[exit + 1];
+		int count = 0;
+		boolean[] visited = new boolean[exit + 1];
+		int[] stack = new int[exit + 1];
+		int[] nextParent = new int[exit + 1];
+
+		int top = 0;
+		stack[0] = exit;
+		visited[exit] = true;
+		while(top >= 0){
+			int node = stack[top];
+			int next = UNDEFINED;
+			if(node == exit){
+				while(nextParent[node] < exitNodes.size() && next == UNDEFINED){
+					int candidate = exitNodes.get(nextParent[node]++).getIdx();
+					next = visited[candidate] ? UNDEFINED : candidate;
+				}
+			}
+			else{
+				List<CFGNode> parents = nodes[node].getParents();
+				while(nextParent[node] < parents.size() && next == UNDEFINED){
+					int candidate = parents.get(nextParent[node]++).getIdx();
+					next = visited[candidate] ? UNDEFINED : candidate;
+				}
+			}
+
+			if(next != UNDEFINED){
+				visited[next] = true;
+				stack[++top] = next;
+			}
+			else{
+				postOrderNumbers[node] = count;
+				postOrder[count++] = node;
+				top--;
+			}
+		}
+
+		int[] reversePostOrder = new int[count];
+		for(int i=0; i<count; i++){
+			reversePostOrder[i] = postOrder[count - 1 - i];
+		}
+		return reversePostOrder;
+	}
+
+	private void computeImmediatePostDominators(int[] reversePostOrder, boolean[] isExit) {
+		ipdoms = new int[exit + 1];
+		for(int i=0; i<ipdoms.length; i++){
+			ipdoms[i] = UNDEFINED;
+		}
+		ipdoms[exit] = exit;
+
+		boolean changed = true;
+		while(changed){
+			changed = false;
+			/* the first node is the virtual exit */
+			for(int i=1; i<reversePostOrder.length; i++){
+				int node = reversePostOrder[i];
+				int newIpdom = isExit[node] ? exit : UNDEFINED;
+				/* the predecessors in the reversed CFG are the children in the CFG */
+				for(CFGNode child: nodes[node].getChildren()){
+					int c = child.getIdx();
+					if(ipdoms[c] != UNDEFINED){
+						newIpdom = (newIpdom == UNDEFINED) ? c : intersect(c, newIpdom);
+					}
+				}
+				if(ipdoms[node] != newIpdom){
+					ipdoms[node] = newIpdom;
+					changed = true;
+				}
+			}
+		}
+	}
+
+	private int intersect(int node1, int node2) {
+		while(node1 != node2){
+			while(postOrderNumbers[node1] < postOrderNumbers[node2]){
+				node1 = ipdoms[node1];
+			}
+			while(postOrderNumbers[node2] < postOrderNumbers[node1]){
+				node2 = ipdoms[node2];
+			}
+		}
+		return node1;
+	}
+
+	/**
+	 * @return the immediate post dominator of {@code node}, null if it is the
+	 *         virtual exit or if {@code node} cannot reach an exit.
+	 */
+	public CFGNode getImmediatePostDominator(CFGNode node) {
+		int ipdom = ipdoms[node.getIdx()];
+		if(ipdom == UNDEFINED || ipdom == exit){
+			return null;
+		}
+		return nodes[ipdom];
+	}
+
+	/**
+	 * @return whether {@code postDominator} post dominates {@code node}, a node
+	 *         post dominates itself.
+	 */
+	public boolean isPostDominator(CFGNode postDominator, CFGNode node) {
+		int target = postDominator.getIdx();
+		int runner = node.getIdx();
+		if(ipdoms[runner] == UNDEFINED){
+			return runner == target;
+		}
+		while(runner != exit){
+			if(runner == target){
+				return true;
+			}
+			runner = ipdoms[runner];
+		}
+		return false;
+	}
+
+	/**
+	 * Control dependence derived from the post dominance frontier: for each edge
+	 * (branch, child), the nodes on the path of the tree from the child up to,
+	 * excluding, the immediate post dominator of the branch are control dependent
+	 * on the branch. This method is linear in the size of the control dependence
+	 * relation.
+	 */
+	public void constructControlDependency() {
+		int[] marks = new int[exit + 1];
+		for(int b=0; b<nodes.length; b++){
+			CFGNode branchNode = nodes[b];
+			if(!branchNode.isBranch()){
+				continue;
+			}
+			int stopNode = ipdoms[b];
+			/* marks of the current branch are b+1, so that they need no reset */
+			for(CFGNode child: branchNode.getChildren()){
+				int runner = child.getIdx();
+				while(runner != UNDEFINED && runner != exit && runner != stopNode
+						&& marks[runner] != b + 1){
+					marks[runner] = b + 1;
+					branchNode.addControlDominatee(nodes[runner]);
+					runner = ipdoms[runner];
+				}
+			}
+		}
+	}
+}
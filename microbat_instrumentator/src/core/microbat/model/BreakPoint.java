@@ -21,6 +21,10 @@ public class BreakPoint extends ClassLocation {
 	private ControlScope controlScope;
 	private SourceScope loopScope;
 	private String declaringCompilationUnitName;
+	/**
+	 * id in the {@link LocationRegistry} of the trace, -1 if the location is not registered.
+	 */
+	private int locationId = -1;
 	
 	public BreakPoint(String className, String methodSinature, int linNum){
 		super(className, methodSinature, linNum);
@@ -179,4 +183,12 @@ public class BreakPoint extends ClassLocation {
 	public void setBranch(boolean isBranch) {
 		this.isBranch = isBranch;
 	}
+
+	public int getLocationId() {
+		return locationId;
+	}
+
+	public void setLocationId(int locationId) {
+		this.locationId = locationId;
+	}
 }
@@ -0,0 +1,153 @@
+package microbat.model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hands out one canonical {@link BreakPoint} for each executed (class, method,
+ * line), so that the steps at the same location share their BreakPoint instead
+ * of allocating their own.
+ *
+ * Each registered location gets an id, which is its index in
+ * {@link #getLocations()}, so the output writers can index the locations of a
+ * trace by id instead of hashing the locations of all steps.
+ *
+ * A registry belongs to a single trace and is not thread-safe.
+ */
+public class LocationRegistry {
+	private List<BreakPoint> locations = new ArrayList<>();
+	private Map<String, Map<String, MethodLocations>> classLocations = new HashMap<>();
+	/* consecutive steps are mostly in the same method */
+	private String lastClassName;
+	private String lastMethodSign;
+	private MethodLocations lastMethodLocations;
+
+	public BreakPoint getLocation(String className, String methodSign, int lineNo) {
+		return getLocation(className, null, methodSign, lineNo);
+	}
+
+	/**
+	 * @param declaringCompilationUnitName
+	 *            if null, it is derived from the class name.
+	 */
+	public BreakPoint getLocation(String className, String declaringCompilationUnitName, String methodSign,
+			int lineNo) {
+		MethodLocations methodLocations = getMethodLocations(className, methodSign);
+		BreakPoint location = methodLocations.get(lineNo);
+		if (location == null) {
+			if (declaringCompilationUnitName == null) {
+				location = new BreakPoint(className, methodSign, lineNo);
+			} else {
+				location = new BreakPoint(className, declaringCompilationUnitName, methodSign, lineNo);
+			}
+			add(location);
+			methodLocations.put(lineNo, location);
+		}
+		return location;
+	}
+
+	/**
+	 * register a location which is not created by this registry, the canonical
+	 * location is returned if the same location is already registered.
+	 */
+	public BreakPoint register(BreakPoint location) {
+		if (isRegistered(location)) {
+			return location;
+		}
+		MethodLocations methodLocations = getMethodLocations(location.getClassCanonicalName(),
+				location.getMethodSign());
+		BreakPoint registered = methodLocations.get(location.getLineNumber());
+		if (registered != null) {
+			return registered;
+		}
+		add(location);
+		methodLocations.put(location.getLineNumber(), location);
+		return location;
+	}
+
+	public boolean isRegistered(BreakPoint location) {
+		int id = location.getLocationId();
+		return id >= 0 && id < locations.size() && locations.get(id) == location;
+	}
+
+	private void add(BreakPoint location) {
+		location.setLocationId(locations.size());
+		locations.add(location);
+	}
+
+	private MethodLocations getMethodLocations(String className, String methodSign) {
+		/* class names and method signatures passed by the instrumented code are constants */
+		if (className == lastClassName && methodSign == lastMethodSign && lastMethodLocations != null) {
+			return lastMethodLocations;
+		}
+		Map<String, MethodLocations> methods = classLocations.get(className);
+		if (methods == null) {
+			methods = new HashMap<>();
+			classLocations.put(className, methods);
+		}
+		MethodLocations methodLocations = methods.get(methodSign);
+		if (methodLocations == null) {
+			methodLocations = new MethodLocations();
+			methods.put(methodSign, methodLocations);
+		}
+		lastClassName = className;
+		lastMethodSign = methodSign;
+		lastMethodLocations = methodLocations;
+		return methodLocations;
+	}
+
+	public BreakPoint getLocation(int locationId) {
+		return locations.get(locationId);
+	}
+
+	/**
+	 * @return all registered locations in the order of their ids.
+	 */
+	public List<BreakPoint> getLocations() {
+		return locations;
+	}
+
+	public int size() {
+		return locations.size();
+	}
+
+	/**
+	 * locations of a method indexed by their line numbers, lines of a method are
+	 * close to each other so an array over the line range is enough.
+	 */
+	private static class MethodLocations {
+		private int firstLine;
+		private BreakPoint[] lines;
+
+		BreakPoint get(int lineNo) {
+			if (lines == null) {
+				return null;
+			}
+			int idx = lineNo - firstLine;
+			if (idx < 0 || idx >= lines.length) {
+				return null;
+			}
+			return lines[idx];
+		}
+
+		void put(int lineNo, BreakPoint location) {
+			if (lines == null) {
+				firstLine = lineNo;
+				lines = new BreakPoint[4];
+			} else if (lineNo < firstLine) {
+				int shift = firstLine - lineNo;
+				BreakPoint[] newLines = new BreakPoint[lines.length + shift];
+				System.arraycopy(lines, 0, newLines, shift, lines.length);
+				lines = newLines;
+				firstLine = lineNo;
+			} else if (lineNo - firstLine >= lines.length) {
+				BreakPoint[] newLines = new BreakPoint[Math.max(lines.length * 2, lineNo - firstLine + 1)];
+				System.arraycopy(lines, 0, newLines, 0, lines.length);
+				lines = newLines;
+			}
+			lines[lineNo - firstLine] = location;
+		}
+	}
+}
@@ -0,0 +1,171 @@
+package microbat.model.trace;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import microbat.model.BreakPoint;
+import microbat.model.ClassLocation;
+import microbat.model.ControlScope;
+import microbat.model.Scope;
+
+/**
+ * Links steps to their control dominators one by one, in the execution order.
+ * The effective control dominators are kept in a stack, the latest branch step
+ * on the top: the control dominator of a step is the top-most one whose scope
+ * contains the step or one of its invocation parents, the ones above it are no
+ * longer effective and are popped. A step is pushed or popped once, and the
+ * invocation parents of the current step are kept in {@link InvocationFrames}
+ * instead of being collected for every check.
+ *
+ * The control scopes of the locations must be filled in before, see
+ * {@link Trace#fillInControlScope(java.util.Collection)}.
+ */
+public class ControlDominanceBuilder {
+	private List<TraceNode> dominatorStack = new ArrayList<>();
+	private InvocationFrames frames = new InvocationFrames();
+	private boolean linkDominatees;
+
+	/**
+	 * @param linkDominatees
+	 *            whether a control dominator refers to its dominatees as well,
+	 *            which are all kept in memory then.
+	 */
+	public ControlDominanceBuilder(boolean linkDominatees) {
+		this.linkDominatees = linkDominatees;
+	}
+
+	/**
+	 * @return the control dominator of the step, null if there is none.
+	 */
+	public TraceNode link(TraceNode node) {
+		frames.moveTo(node);
+		TraceNode dominator = null;
+		while (!dominatorStack.isEmpty()) {
+			TraceNode controlDominator = dominatorStack.get(dominatorStack.size() - 1);
+			if (frames.isContainedInScope(node, controlDominator.getControlScope())) {
+				if (linkDominatees) {
+					/* a step is linked once, no need to check the dominatees for duplicates */
+					controlDominator.getControlDominatees().add(node);
+				}
+				node.setControlDominator(controlDominator);
+				dominator = controlDominator;
+				break;
+			}
+			/** which means the {@code controlDominator} is no longer effective now */
+			dominatorStack.remove(dominatorStack.size() - 1);
+		}
+
+		if (node.isBranch()) {
+			/*
+			 * a step on the top with the same scope can never be effective again: the
+			 * node shadows it for the steps in the scope and both are popped by the
+			 * others. Replacing it keeps the stack from growing along loop iterations.
+			 */
+			if (dominator != null && dominator.getControlScope() == node.getControlScope()) {
+				dominatorStack.set(dominatorStack.size() - 1, node);
+			} else {
+				dominatorStack.add(node);
+			}
+		}
+		return dominator;
+	}
+
+	/**
+	 * The invocation parents of the current step, from the outermost one, and the
+	 * number of them at each location. They are updated step by step as the
+	 * invocations are entered and left.
+	 */
+	private static class InvocationFrames {
+		private List<TraceNode> parents = new ArrayList<>();
+		private List<ClassLocation> parentLocations = new ArrayList<>();
+		private Map<ClassLocation, Integer> locationCounts = new HashMap<>();
+
+		public void moveTo(TraceNode node) {
+			TraceNode parent = node.getInvocationParent();
+			TraceNode top = getTop();
+			if (parent == top) {
+				return;
+			}
+			/* a new invocation of the current frame */
+			if (parent != null && parent.getInvocationParent() == top) {
+				push(parent);
+				return;
+			}
+			/* returned to an outer frame */
+			while (!parents.isEmpty() && getTop() != parent) {
+				pop();
+			}
+			if (getTop() != parent) {
+				List<TraceNode> chain = new ArrayList<>();
+				Set<TraceNode> visited = new HashSet<>();
+				for (TraceNode p = parent; p != null && visited.add(p); p = p.getInvocationParent()) {
+					chain.add(p);
+				}
+				for (int i = chain.size() - 1; i >= 0; i--) {
+					push(chain.get(i));
+				}
+			}
+		}
+
+		private TraceNode getTop() {
+			return parents.isEmpty() ? null : parents.get(parents.size() - 1);
+		}
+
+		private void push(TraceNode parent) {
+			BreakPoint breakPoint = parent.getBreakPoint();
+			ClassLocation location = new ClassLocation(breakPoint.getClassCanonicalName(), null,
+					breakPoint.getLineNumber());
+			parents.add(parent);
+			parentLocations.add(location);
+			Integer count = locationCounts.get(location);
+			locationCounts.put(location, count == null ? 1 : count + 1);
+		}
+
+		private void pop() {
+			parents.remove(parents.size() - 1);
+			ClassLocation location = parentLocations.remove(parentLocations.size() - 1);
+			int count = locationCounts.get(location);
+			if (count == 1) {
+				locationCounts.remove(location);
+			} else {
+				locationCounts.put(location, count - 1);
+			}
+		}
+
+		/**
+		 * the step is in the scope if itself or one of its invocation parents is in
+		 * the scope.
+		 */
+		public boolean isContainedInScope(TraceNode node, Scope conditionScope) {
+			if (conditionScope == null) {
+				return false;
+			}
+			if (conditionScope.containsNodeScope(node)) {
+				return true;
+			}
+			/*
+			 * a ControlScope contains the locations of the same class and line number,
+			 * which is the equality of ClassLocation, so its ranges are looked up
+			 * instead of checking every frame.
+			 */
+			if (conditionScope instanceof ControlScope) {
+				for (ClassLocation location : ((ControlScope) conditionScope).getRangeList()) {
+					if (locationCounts.containsKey(location)) {
+						return true;
+					}
+				}
+				return false;
+			}
+			for (TraceNode parent : parents) {
+				if (conditionScope.containsNodeScope(parent)) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+}
@@ -0,0 +1,430 @@
+package microbat.model.trace;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.classfile.LineNumber;
+import org.apache.bcel.classfile.LineNumberTable;
+import org.apache.bcel.classfile.Method;
+
+import microbat.codeanalysis.bytecode.CFG;
+import microbat.codeanalysis.bytecode.CFGConstructor;
+import microbat.codeanalysis.bytecode.CFGNode;
+import microbat.codeanalysis.bytecode.ClassFileRepository;
+import microbat.instrumentation.AgentLogger;
+import microbat.model.BreakPoint;
+import microbat.model.ClassLocation;
+import microbat.model.ControlScope;
+import sav.strategies.dto.AppJavaClassPath;
+
+/**
+ * Caches the control scopes of the lines of the classes, which are derived from
+ * the control dependencies of their CFGs, see
+ * {@link #getClassScopes(String, AppJavaClassPath)}.
+ *
+ * Without a cache folder, only the methods whose control scopes are asked for
+ * (i.e., the executed ones) are analyzed. If a cache folder is set up, all the
+ * methods of a class are analyzed and the scopes are stored in a file of the
+ * folder named after the class name and the hash of its class file, so that the
+ * next runs on the same class files read them back instead of analyzing the
+ * bytecode. A class file which changes gets a new file and the file of its
+ * former version is deleted. The files are written to a temporary file first and
+ * then moved, so that several traced vms can share a folder.
+ */
+public class ControlScopeCache {
+	private static final int MAGIC = 0x43534331; // CSC1
+	private static final String FILE_EXTENSION = ".scope";
+	private static final int MAX_CACHED_CLASSES = 2000;
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static volatile ControlScopeCache instance = new ControlScopeCache(null);
+
+	private File cacheFolder;
+	private Map<String, ClassControlScopes> classes = new LinkedHashMap<String, ClassControlScopes>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, ClassControlScopes> eldest) {
+			return size() > MAX_CACHED_CLASSES;
+		}
+	};
+	private AtomicInteger memoryHits = new AtomicInteger();
+	private AtomicInteger diskHits = new AtomicInteger();
+	private AtomicInteger misses = new AtomicInteger();
+
+	public ControlScopeCache(String cacheFolder) {
+		if (cacheFolder != null) {
+			this.cacheFolder = new File(cacheFolder);
+			this.cacheFolder.mkdirs();
+		}
+	}
+
+	/**
+	 * @param cacheFolder
+	 *            the folder of the persistent cache, null to keep the scopes in
+	 *            memory only.
+	 */
+	public static void setup(String cacheFolder) {
+		instance = new ControlScopeCache(cacheFolder);
+	}
+
+	public static ControlScopeCache getInstance() {
+		return instance;
+	}
+
+	/**
+	 * @return the control scopes of the methods of the class, or null if its class
+	 *         file cannot be found.
+	 */
+	public ClassControlScopes getClassScopes(String className, AppJavaClassPath appClassPath) {
+		ClassFileRepository repository = ClassFileRepository.getInstance(appClassPath);
+		String hash = repository.getClassFileHash(className);
+		if (hash == null) {
+			return null;
+		}
+		/* the control dependency from the post dominator tree gives other scopes */
+		String suffix = CFGConstructor.isPostDominatorControlDependency() ? "-pdom" : "";
+		String key = className + "-" + hash + suffix;
+		synchronized (classes) {
+			ClassControlScopes scopes = classes.get(key);
+			if (scopes != null) {
+				memoryHits.incrementAndGet();
+				return scopes;
+			}
+		}
+
+		File file = (cacheFolder == null) ? null : new File(cacheFolder, key + FILE_EXTENSION);
+		ClassControlScopes scopes = null;
+		if (file != null && file.exists()) {
+			scopes = read(file);
+		}
+		if (scopes != null) {
+			diskHits.incrementAndGet();
+		} else {
+			misses.incrementAndGet();
+			JavaClass clazz = repository.lookupClass(className);
+			if (clazz == null) {
+				return null;
+			}
+			scopes = analyze(clazz, repository, file != null);
+			if (file != null) {
+				write(scopes, file);
+				deleteStaleFiles(className, suffix, file);
+			}
+		}
+		synchronized (classes) {
+			classes.put(key, scopes);
+		}
+		return scopes;
+	}
+
+	/**
+	 * @param allMethods
+	 *            whether to analyze all methods now, otherwise a method is analyzed
+	 *            when its control scopes are first created.
+	 */
+	private ClassControlScopes analyze(JavaClass clazz, ClassFileRepository repository, boolean allMethods) {
+		ClassControlScopes scopes = new ClassControlScopes();
+		for (Method method : clazz.getMethods()) {
+			LineNumberTable lineTable = method.getLineNumberTable();
+			if (lineTable == null) {
+				continue;
+			}
+			MethodControlScopes methodScopes = new MethodControlScopes(method.getName(), method.getSignature());
+			for (LineNumber lineNumber : lineTable.getLineNumberTable()) {
+				methodScopes.getLineScope(lineNumber.getLineNumber());
+			}
+			if (method.getCode() != null) {
+				methodScopes.setPendingAnalysis(clazz.getClassName(), method, repository);
+				if (allMethods) {
+					methodScopes.analyze();
+				}
+			}
+			scopes.methods.add(methodScopes);
+		}
+		return scopes;
+	}
+
+	/**
+	 * delete the files of the former versions of the class, which are not
+	 * read again.
+	 */
+	private void deleteStaleFiles(final String className, final String suffix, File current) {
+		File[] files = cacheFolder.listFiles(new FilenameFilter() {
+
+			@Override
+			public boolean accept(File dir, String name) {
+				if (!name.startsWith(className + "-") || !name.endsWith(FILE_EXTENSION)) {
+					return false;
+				}
+				/* the rest is the hash of the class file, followed by the suffix */
+				String rest = name.substring(className.length() + 1, name.length() - FILE_EXTENSION.length());
+				if (!rest.endsWith(suffix)) {
+					return false;
+				}
+				return rest.substring(0, rest.length() - suffix.length()).indexOf('-') < 0;
+			}
+		});
+		if (files == null) {
+			return;
+		}
+		for (File file : files) {
+			if (!file.getName().equals(current.getName())) {
+				file.delete();
+			}
+		}
+	}
+
+	/**
+	 * format: magic, method count, then for each method its name, signature, line
+	 * count and, for each line, the line number, the flags and the controlled
+	 * lines.
+	 */
+	private void write(ClassControlScopes scopes, File file) {
+		File tempFile = null;
+		try {
+			tempFile = File.createTempFile(file.getName(), ".tmp", cacheFolder);
+			try (DataOutputStream out = new DataOutputStream(new FileOutputStream(tempFile))) {
+				out.writeInt(MAGIC);
+				out.writeInt(scopes.methods.size());
+				for (MethodControlScopes method : scopes.methods) {
+					writeString(out, method.name);
+					writeString(out, method.signature);
+					out.writeInt(method.lines.size());
+					for (LineControlScope line : method.lines.values()) {
+						out.writeInt(line.line);
+						out.writeByte((line.conditional ? 1 : 0) | (line.branch ? 2 : 0));
+						out.writeInt(line.controlledLines.size());
+						for (Integer controlledLine : line.controlledLines) {
+							out.writeInt(controlledLine);
+						}
+					}
+				}
+			}
+			Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			AgentLogger.error(e);
+			if (tempFile != null) {
+				tempFile.delete();
+			}
+		}
+	}
+
+	private void writeString(DataOutputStream out, String str) throws IOException {
+		byte[] bytes = str.getBytes(UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * @return the scopes stored in the file, null if the file cannot be read.
+	 */
+	private ClassControlScopes read(File file) {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			/*
+			 * the files are small, so they are read at once rather than mapped: a
+			 * mapped file is only unmapped by the gc and cannot be replaced or
+			 * deleted on Windows until then.
+			 */
+			ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+			while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+				// read until the end of the file
+			}
+			buffer.flip();
+			if (buffer.getInt() != MAGIC) {
+				return null;
+			}
+			ClassControlScopes scopes = new ClassControlScopes();
+			int methodCount = buffer.getInt();
+			for (int i = 0; i < methodCount; i++) {
+				MethodControlScopes method = new MethodControlScopes(readString(buffer), readString(buffer));
+				int lineCount = buffer.getInt();
+				for (int j = 0; j < lineCount; j++) {
+					LineControlScope line = method.getLineScope(buffer.getInt());
+					byte flags = buffer.get();
+					line.conditional = (flags & 1) != 0;
+					line.branch = (flags & 2) != 0;
+					int controlledCount = buffer.getInt();
+					for (int k = 0; k < controlledCount; k++) {
+						line.controlledLines.add(buffer.getInt());
+					}
+				}
+				scopes.methods.add(method);
+			}
+			return scopes;
+		} catch (Exception e) {
+			/* a truncated or corrupted file is analyzed again */
+			AgentLogger.error(e);
+			return null;
+		}
+	}
+
+	private String readString(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.getInt()];
+		buffer.get(bytes);
+		return new String(bytes, UTF_8);
+	}
+
+	public int getMemoryHits() {
+		return memoryHits.get();
+	}
+
+	public int getDiskHits() {
+		return diskHits.get();
+	}
+
+	public int getMisses() {
+		return misses.get();
+	}
+
+	public void logStatistics() {
+		AgentLogger.debug(String.format("Control scope cache: %d memory hits, %d disk hits, %d misses",
+				memoryHits.get(), diskHits.get(), misses.get()));
+	}
+
+	public static class ClassControlScopes {
+		private List<MethodControlScopes> methods = new ArrayList<>();
+
+		/**
+		 * @return the last method having the line in its line number table, like
+		 *         {@link microbat.codeanalysis.bytecode.MethodFinderByLine}.
+		 */
+		public MethodControlScopes findMethodByLine(int line) {
+			MethodControlScopes result = null;
+			for (MethodControlScopes method : methods) {
+				if (method.lines.containsKey(line)) {
+					result = method;
+				}
+			}
+			return result;
+		}
+	}
+
+	public static class MethodControlScopes {
+		private String name;
+		private String signature;
+		private Map<Integer, LineControlScope> lines = new HashMap<>();
+		/* the method to analyze before its scopes are created, null if it is analyzed */
+		private String className;
+		private Method method;
+		private ClassFileRepository repository;
+
+		public MethodControlScopes(String name, String signature) {
+			this.name = name;
+			this.signature = signature;
+		}
+
+		private void setPendingAnalysis(String className, Method method, ClassFileRepository repository) {
+			this.className = className;
+			this.method = method;
+			this.repository = repository;
+		}
+
+		/**
+		 * derive the control scopes of the lines from the control dependencies of the
+		 * cfg of the method.
+		 */
+		private synchronized void analyze() {
+			if (method == null) {
+				return;
+			}
+			LineNumberTable lineTable = method.getLineNumberTable();
+			CFG cfg = repository.getCFG(className, method);
+			for (CFGNode node : cfg.getNodeList()) {
+				int line = lineTable.getSourceLine(node.getInstructionHandle().getPosition());
+				LineControlScope lineScope = getLineScope(line);
+				lineScope.conditional |= node.isConditional();
+				lineScope.branch |= node.isBranch();
+				for (CFGNode dependentee : node.getControlDependentees()) {
+					lineScope.addControlledLine(lineTable.getSourceLine(dependentee.getInstructionHandle().getPosition()));
+				}
+			}
+			method = null;
+			repository = null;
+		}
+
+		private LineControlScope getLineScope(int line) {
+			LineControlScope lineScope = lines.get(line);
+			if (lineScope == null) {
+				lineScope = new LineControlScope(line);
+				lines.put(line, lineScope);
+			}
+			return lineScope;
+		}
+
+		/**
+		 * create the control scope of the break point, which is in this method, and
+		 * mark the break point as conditional or branch like its instructions.
+		 */
+		public ControlScope createControlScope(BreakPoint breakPoint) {
+			analyze();
+			List<ClassLocation> ranges = new ArrayList<>(1);
+			LineControlScope lineScope = lines.get(breakPoint.getLineNumber());
+			if (lineScope != null) {
+				if (!breakPoint.isConditional()) {
+					breakPoint.setConditional(lineScope.conditional);
+				}
+				if (!breakPoint.isBranch()) {
+					breakPoint.setBranch(lineScope.branch);
+				}
+				for (Integer line : lineScope.controlledLines) {
+					ranges.add(new ClassLocation(breakPoint.getClassCanonicalName(), breakPoint.getMethodSign(), line));
+				}
+			}
+			ClassLocation own = new ClassLocation(breakPoint.getClassCanonicalName(), breakPoint.getMethodSign(),
+					breakPoint.getLineNumber());
+			if (!ranges.contains(own)) {
+				ranges.add(own);
+			}
+
+			ControlScope scope = new ControlScope();
+			scope.setRangeList(ranges);
+			scope.setCondition(breakPoint.isConditional());
+			scope.setBranch(breakPoint.isBranch());
+			return scope;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public String getSignature() {
+			return signature;
+		}
+	}
+
+	private static class LineControlScope {
+		private int line;
+		private boolean conditional;
+		private boolean branch;
+		/* in the order they are found, without duplicates */
+		private List<Integer> controlledLines = new ArrayList<>(0);
+
+		public LineControlScope(int line) {
+			this.line = line;
+		}
+
+		private void addControlledLine(int controlledLine) {
+			if (!controlledLines.contains(controlledLine)) {
+				controlledLines.add(controlledLine);
+			}
+		}
+	}
+}
@@ -0,0 +1,82 @@
+package microbat.model.trace;
+
+/**
+ * The orders of the steps which a step is linked to, -1 if there is no such
+ * step. The trace writers take the links of a step from here rather than from
+ * the step itself, so that the steps of a trace which is not kept in memory
+ * (see {@link TraceStepSource}) can be written without linking them to each
+ * other.
+ */
+public class StepLinks {
+	private int controlDominator;
+	private int stepInNext;
+	private int stepOverNext;
+	private int stepOverPrevious;
+	private int invocationParent;
+	private int loopParent;
+
+	/**
+	 * take the links of a step of a trace which is kept in memory.
+	 */
+	public StepLinks set(TraceNode step) {
+		controlDominator = getOrder(step.getControlDominator());
+		stepInNext = getOrder(step.getStepInNext());
+		stepOverNext = getOrder(step.getStepOverNext());
+		stepOverPrevious = getOrder(step.getStepOverPrevious());
+		invocationParent = step.getInvocationParentOrder();
+		loopParent = getOrder(step.getLoopParent());
+		return this;
+	}
+
+	private static int getOrder(TraceNode step) {
+		return (step == null) ? -1 : step.getOrder();
+	}
+
+	public int getControlDominator() {
+		return controlDominator;
+	}
+
+	public void setControlDominator(int controlDominator) {
+		this.controlDominator = controlDominator;
+	}
+
+	public int getStepInNext() {
+		return stepInNext;
+	}
+
+	public void setStepInNext(int stepInNext) {
+		this.stepInNext = stepInNext;
+	}
+
+	public int getStepOverNext() {
+		return stepOverNext;
+	}
+
+	public void setStepOverNext(int stepOverNext) {
+		this.stepOverNext = stepOverNext;
+	}
+
+	public int getStepOverPrevious() {
+		return stepOverPrevious;
+	}
+
+	public void setStepOverPrevious(int stepOverPrevious) {
+		this.stepOverPrevious = stepOverPrevious;
+	}
+
+	public int getInvocationParent() {
+		return invocationParent;
+	}
+
+	public void setInvocationParent(int invocationParent) {
+		this.invocationParent = invocationParent;
+	}
+
+	public int getLoopParent() {
+		return loopParent;
+	}
+
+	public void setLoopParent(int loopParent) {
+		this.loopParent = loopParent;
+	}
+}
@@ -1,25 +1,22 @@
 package microbat.model.trace;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
-import org.apache.bcel.Repository;
-import org.apache.bcel.classfile.Method;
-import org.apache.bcel.generic.InstructionHandle;
-
-import microbat.codeanalysis.bytecode.ByteCodeParser;
-import microbat.codeanalysis.bytecode.CFG;
-import microbat.codeanalysis.bytecode.CFGConstructor;
-import microbat.codeanalysis.bytecode.CFGNode;
-import microbat.codeanalysis.bytecode.MethodFinderByLine;
 import microbat.model.BreakPoint;
-import microbat.model.ClassLocation;
 import microbat.model.ControlScope;
-import microbat.model.Scope;
+import microbat.model.LocationRegistry;
 import microbat.model.variable.LocalVar;
+import microbat.model.trace.ControlScopeCache.ClassControlScopes;
+import microbat.model.trace.ControlScopeCache.MethodControlScopes;
+import microbat.model.trace.TraceStepSource.StepVisitor;
+import microbat.model.trace.VariableDefinitions.DefiningStep;
 import microbat.model.variable.Variable;
 import sav.common.core.utils.CollectionUtils;
 import sav.strategies.dto.AppJavaClassPath;
@@ -37,6 +34,7 @@ public class Trace {
 	private long threadId;
 	private boolean isMain;
 	private String threadName;
+	private LocationRegistry locationRegistry = new LocationRegistry();
 
 	/**
 	 * This variable is to trace whether the variables in different lines are the same
@@ -60,6 +58,8 @@ public class Trace {
 	}
 	
 	private List<TraceNode> executionList;
+	private int spilledSize;
+	private TraceStepSource stepSource;
 	/**
 	 * tracking which steps read/write what variables, and what variables are read/written by which steps.
 	 * key is the variable ID, and value is the entry containing all the steps reading/writing the corresponding
@@ -87,14 +87,55 @@ public class Trace {
 		this.executionList.add(node);
 	}
 	
+	/**
+	 * the size includes the steps which are already spilled out of the execution list.
+	 */
 	public int size(){
-		return this.executionList.size();
+		return this.spilledSize + this.executionList.size();
+	}
+	
+	/**
+	 * used in the spilling recording mode, the spilled steps are dropped from the execution
+	 * list (they have been written to disk), only {@code keptNodes} remains in memory.
+	 */
+	public void spill(List<TraceNode> keptNodes, int spilledNum) {
+		this.executionList = keptNodes;
+		this.spilledSize += spilledNum;
+	}
+	
+	/**
+	 * the steps of a trace which are not kept in memory, null if the steps are in the
+	 * execution list.
+	 */
+	public TraceStepSource getStepSource() {
+		return stepSource;
+	}
+
+	public void setStepSource(TraceStepSource stepSource) {
+		this.stepSource = stepSource;
+	}
+
+	/**
+	 * visit all steps in the execution order, either from the execution list or from
+	 * the step source. This is the way to write out a trace whose steps may not be in
+	 * memory.
+	 */
+	public void visitSteps(StepVisitor visitor) throws IOException {
+		if (stepSource != null) {
+			stepSource.visit(visitor);
+			return;
+		}
+		StepLinks links = new StepLinks();
+		for (TraceNode node : executionList) {
+			visitor.visit(node, links.set(node));
+		}
 	}
 	
 	public List<TraceNode> getTopMethodLevelNodes(){
 		List<TraceNode> topList = new ArrayList<>();
 		for(TraceNode node: this.executionList){
-			if(node.getInvocationParent() == null){
+			/* the parent of a kept step may be spilled, see spill() */
+			if(node.getInvocationParentOrder() < 0){
 				topList.add(node);
 			}
 		}
@@ -102,8 +143,15 @@ public class Trace {
 		return topList;
 	}
 	
+	/**
+	 * the canonical locations of the steps of this trace.
+	 */
+	public LocationRegistry getLocationRegistry() {
+		return locationRegistry;
+	}
+	
 	public TraceNode getLatestNode(){
-		int len = size();
+		int len = executionList.size();
 		if(len > 0){
 			return this.executionList.get(len-1);
 		}
@@ -112,92 +160,35 @@ public class Trace {
 		}
 	}
 	
-	private ControlScope parseControlScope(BreakPoint breakPoint, CFG cfg) {
-		List<ClassLocation> ranges = new ArrayList<>(1);
-		List<InstructionHandle> correspondingList = findCorrepondingIns(breakPoint, cfg, cfg.getMethod());
-		
-		for(InstructionHandle ins: correspondingList){
-			CFGNode cfgNode = cfg.findNode(ins);
-			if(!breakPoint.isConditional()){
-				breakPoint.setConditional(cfgNode.isConditional());				
-			}
-			
-			if(!breakPoint.isBranch()){
-				breakPoint.setBranch(cfgNode.isBranch());				
-			}
-			
-			List<ClassLocation> controlScope0 = findControlledLines(cfgNode.getControlDependentees(), cfg.getMethod(), breakPoint);
-			ranges.addAll(controlScope0);
-		}
-		
-		ClassLocation own = new ClassLocation(breakPoint.getClassCanonicalName(), breakPoint.getMethodSign(), breakPoint.getLineNumber());
-		if(!ranges.contains(own)){
-			ranges.add(own);
-		}
-		
-		ControlScope scope = new ControlScope();
-		scope.setRangeList(ranges);
-		scope.setCondition(breakPoint.isConditional());
-		scope.setBranch(breakPoint.isBranch());
-		return scope;
-	}
-
-	private List<InstructionHandle> findCorrepondingIns(BreakPoint breakPoint, CFG cfg, Method method) {
-		List<InstructionHandle> list = new ArrayList<>();
-		for(CFGNode node: cfg.getNodeList()){
-			int line = method.getLineNumberTable().getSourceLine(node.getInstructionHandle().getPosition());
-			if(line==breakPoint.getLineNumber()){
-				list.add(node.getInstructionHandle());
-			}
-		}
-		return list;
-	}
-
-	private List<ClassLocation> findControlledLines(List<CFGNode> controlDependentees, Method method,
-			BreakPoint breakPoint) {
-		List<ClassLocation> controlLines = new ArrayList<>();
-		for(CFGNode node: controlDependentees){
-			int line = method.getLineNumberTable().getSourceLine(node.getInstructionHandle().getPosition());
-			ClassLocation location = new ClassLocation(breakPoint.getClassCanonicalName(), breakPoint.getMethodSign(), line);
-			
-			if(!controlLines.contains(location)){
-				controlLines.add(location);
-			}
-		}
-		return controlLines;
-	}
-
+	/**
+	 * Links every step to its control dominator in a single pass, see
+	 * {@link ControlDominanceBuilder}.
+	 */
 	public void constructControlDomianceRelation() {
-		TraceNode controlDominator = null;
-		fillInControlScope();
+		fillInControlScope(getExecutedLocations());
+		ControlDominanceBuilder builder = new ControlDominanceBuilder(true);
 		for(TraceNode node: this.executionList){
-			if(controlDominator != null){
-				
-				if(isContainedInScope(node, controlDominator.getControlScope())){
-					controlDominator.addControlDominatee(node);
-					node.setControlDominator(controlDominator);
-				}
-				/** which means the {@code controlDominator} is no longer effective now */
-				else{
-					controlDominator = findContainingControlDominator(node, controlDominator);
-					
-					if(controlDominator != null){
-						controlDominator.addControlDominatee(node);
-						node.setControlDominator(controlDominator);
-					}
-				}
-			}
-			
-			if(node.isBranch()){
-				controlDominator = node;
-			}
+			builder.link(node);
 		}
 	}
 
-	private void fillInControlScope() {
-		Map<BreakPoint, List<TraceNode>> breakpointMap = new HashMap<>();
+	private Collection<BreakPoint> getExecutedLocations() {
+		Map<BreakPoint, BreakPoint> locations = new IdentityHashMap<>();
 		for (TraceNode node : executionList) {
-			CollectionUtils.getListInitIfEmpty(breakpointMap, node.getBreakPoint()).add(node);
+			locations.put(node.getBreakPoint(), node.getBreakPoint());
+		}
+		return locations.values();
+	}
+
+	/**
+	 * set the control scopes of the given locations, which are shared by the steps at
+	 * these locations.
+	 */
+	public void fillInControlScope(Collection<BreakPoint> locations) {
+		/* the locations of the same class and line are equal */
+		Map<BreakPoint, List<BreakPoint>> breakpointMap = new HashMap<>();
+		for (BreakPoint location : locations) {
+			CollectionUtils.getListInitIfEmpty(breakpointMap, location).add(location);
 		}
 		Map<String, Set<String>> classMethodMap = new HashMap<>();
 		Map<String, List<BreakPoint>> methodSignMap = new HashMap<>();
@@ -205,64 +196,29 @@ public class Trace {
 			CollectionUtils.getListInitIfEmpty(methodSignMap, bkp.getMethodSign()).add(bkp);
 			CollectionUtils.getSetInitIfEmpty(classMethodMap, bkp.getClassCanonicalName()).add(bkp.getMethodSign());
 		}
+		ControlScopeCache scopeCache = ControlScopeCache.getInstance();
 		for (String classCanonicalName : classMethodMap.keySet()) {
+			ClassControlScopes classScopes = scopeCache.getClassScopes(classCanonicalName, appJavaClassPath);
+			if (classScopes == null) {
+				continue;
+			}
 			for (String methodSig : classMethodMap.get(classCanonicalName)) {
 				List<BreakPoint> bkpList = methodSignMap.get(methodSig);
 				BreakPoint breakPoint = bkpList.get(0);
-				MethodFinderByLine finder = new MethodFinderByLine(breakPoint);
-				ByteCodeParser.parse(breakPoint.getClassCanonicalName(), finder, appJavaClassPath);
-				Method method = finder.getMethod();
-				CFGConstructor cfgConstructor = new CFGConstructor();
-				CFG cfg = cfgConstructor.buildCFGWithControlDomiance(method.getCode());
-				cfg.setMethod(method);
+				MethodControlScopes methodScopes = classScopes.findMethodByLine(breakPoint.getLineNumber());
+				if (methodScopes == null) {
+					continue;
+				}
 				for (BreakPoint bkp : bkpList) {
-					ControlScope scope = parseControlScope(bkp, cfg);		
-					for (TraceNode node : breakpointMap.get(bkp)) {
-						node.getBreakPoint().setConditional(scope.isCondition());
-						node.getBreakPoint().setBranch(scope.isBranch());
-						node.setControlScope(scope);
+					ControlScope scope = methodScopes.createControlScope(bkp);
+					for (BreakPoint location : breakpointMap.get(bkp)) {
+						location.setConditional(scope.isCondition());
+						location.setBranch(scope.isBranch());
+						location.setControlScope(scope);
 					}
 				}
 			}
-			Repository.clearCache();
-		}
-	}
-
-	private TraceNode findContainingControlDominator(TraceNode node, TraceNode controlDominator) {
-		TraceNode superControlDominator = controlDominator.getControlDominator();
-		while(superControlDominator != null){
-			if(isContainedInScope(node, superControlDominator.getControlScope())){
-				return superControlDominator;
-			}
-			superControlDominator = superControlDominator.getControlDominator();
 		}
-		
-		return null;
-	}
-
-	/**
-	 * I will consider the invocation parents of {@code node} as well
-	 * @param node
-	 * @param conditionScope
-	 * @return
-	 */
-	private boolean isContainedInScope(TraceNode node, Scope conditionScope) {
-		if(conditionScope==null){
-			return false;
-		}
-		
-		List<TraceNode> testingSet = new ArrayList<>();
-		testingSet.add(node);
-		List<TraceNode> invocationParents = node.findAllInvocationParents();
-		testingSet.addAll(invocationParents);
-		
-		for(TraceNode n: testingSet){
-			if(conditionScope.containsNodeScope(n)){
-				return true;
-			}
-		}
-		
-		return false;
 	}
 
 //	public Map<String, StepVariableRelationEntry> getStepVariableTable() {
@@ -316,8 +272,8 @@ public class Trace {
 			}
 		}
 		else if(accessType.equals(Variable.READ)){
-			TraceNode node1 = variableDefs.get(varID, currentNode, defStepSelection);
-			TraceNode node2 = variableDefs.get(aliasVarID, currentNode, defStepSelection);
+			DefiningStep node1 = variableDefs.get(varID, currentNode, defStepSelection);
+			DefiningStep node2 = variableDefs.get(aliasVarID, currentNode, defStepSelection);
 			
 			int order = 0;
 			if(var instanceof LocalVar){
@@ -328,11 +284,11 @@ public class Trace {
 					order = node2.getOrder();
 				}
 				else if(node1!=null && node2!=null){
-					if(node2.getInvocationParent()==null && currentNode.getInvocationParent()==null){
+					if(node2.getInvocationParentOrder()<0 && currentNode.getInvocationParentOrder()<0){
 						order = (node1.getOrder()>node2.getOrder())?node1.getOrder():node2.getOrder();						
 					}
-					else if(node2.getInvocationParent()!=null && currentNode.getInvocationParent()!=null
-							&& node2.getInvocationParent().equals(currentNode.getInvocationParent())){
+					else if(node2.getInvocationParentOrder()>=0
+							&& node2.getInvocationParentOrder()==currentNode.getInvocationParentOrder()){
 						order = (node1.getOrder()>node2.getOrder())?node1.getOrder():node2.getOrder();
 					}
 					else{
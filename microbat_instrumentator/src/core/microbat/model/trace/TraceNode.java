@@ -79,6 +79,11 @@ public class TraceNode{
 	
 	private List<TraceNode> invocationChildren = new ArrayList<>();
 	private TraceNode invocationParent;
+	/**
+	 * the order of the invocation parent, -1 if there is none. It is kept when the
+	 * parent itself is no longer referred, e.g., after the parent is spilled to disk.
+	 */
+	private int invocationParentOrder = -1;
 	
 	private List<TraceNode> loopChildren;
 	private TraceNode loopParent;
@@ -371,6 +376,25 @@ public class TraceNode{
 
 	public void setInvocationParent(TraceNode invocationParent) {
 		this.invocationParent = invocationParent;
+		this.invocationParentOrder = (invocationParent == null) ? -1 : invocationParent.getOrder();
+	}
+
+	/**
+	 * @return the order of the invocation parent, -1 if there is none. Unlike
+	 *         {@link #getInvocationParent()}, it is still available after the
+	 *         parent is released by {@link #setInvocationParentOrder(int)}.
+	 */
+	public int getInvocationParentOrder() {
+		return invocationParentOrder;
+	}
+
+	/**
+	 * refer to the invocation parent by its order only, the parent node is no
+	 * longer referred (e.g., it is spilled to disk while recording).
+	 */
+	public void setInvocationParentOrder(int invocationParentOrder) {
+		this.invocationParent = null;
+		this.invocationParentOrder = invocationParentOrder;
 	}
 
 	public BreakPointValue getAfterStepInState() {
@@ -0,0 +1,21 @@
+package microbat.model.trace;
+
+import java.io.IOException;
+
+/**
+ * The steps of a trace which are not kept in memory, e.g., the steps spilled to
+ * disk while recording (see {@link Trace#getStepSource()}).
+ *
+ * The steps can be visited only once, in the execution order. A step is
+ * complete when it is visited, it is not linked to other steps (its links are
+ * given as orders) and a visitor should only keep a bounded number of them. The
+ * links object is reused for the next step.
+ */
+public interface TraceStepSource {
+
+	void visit(StepVisitor visitor) throws IOException;
+
+	public static interface StepVisitor {
+		void visit(TraceNode step, StepLinks links) throws IOException;
+	}
+}
@@ -1,10 +1,7 @@
 package microbat.model.trace;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 public class VariableDefinitions {
@@ -12,50 +9,90 @@ public class VariableDefinitions {
 	public static final int USE_LAST = 2;
 	
 	/**
-	 * the trace node list for each variable is ordered.
+	 * the defining steps of each variable, ordered. The steps are kept by their orders (and the
+	 * orders of their invocation parents) instead of the nodes, so that the nodes can be spilled
+	 * out of memory while recording.
 	 */
-	private Map<String, List<TraceNode>> nodeDefiningVariableMap = new HashMap<>();
+	private Map<String, DefiningSteps> nodeDefiningVariableMap = new HashMap<>();
 
 	public void put(String varID, TraceNode currentNode) {
-		List<TraceNode> list = nodeDefiningVariableMap.get(varID);
-		if(list==null){
-			list = new ArrayList<>();
+		DefiningSteps steps = nodeDefiningVariableMap.get(varID);
+		if(steps==null){
+			steps = new DefiningSteps();
+			nodeDefiningVariableMap.put(varID, steps);
 		}
 		
-		if(!list.contains(currentNode)){
-			list.add(currentNode);
-		}
-		nodeDefiningVariableMap.put(varID, list);
-		
-		Collections.sort(list, new Comparator<TraceNode>(){
-
-			@Override
-			public int compare(TraceNode o1, TraceNode o2) {
-				return o1.getOrder() - o2.getOrder();
-			}
-		});
+		steps.add(currentNode.getOrder(), currentNode.getInvocationParentOrder());
 	}
 
-	public TraceNode get(String varID, TraceNode currentNode, int defStepSelection) {
-		List<TraceNode> list = nodeDefiningVariableMap.get(varID);
-		if(list==null || list.isEmpty()){
+	public DefiningStep get(String varID, TraceNode currentNode, int defStepSelection) {
+		DefiningSteps steps = nodeDefiningVariableMap.get(varID);
+		if(steps==null || steps.size==0){
 			return null;			
 		}
 		
 		if(defStepSelection==VariableDefinitions.USE_FIRST){
-			return list.get(0);
+			return steps.get(0);
+		}
+		
+		/* the last defining step before the current node */
+		int idx = steps.indexOf(currentNode.getOrder());
+		if(idx < 0){
+			idx = -idx - 1;
 		}
+		return (idx > 0) ? steps.get(idx - 1) : null;
+	}
+	
+	public static class DefiningStep {
+		private int order;
+		private int invocationParentOrder;
 		
-		TraceNode prev = null;
-		for(TraceNode node: list){
-			if(node.getOrder() < currentNode.getOrder()){
-				prev = node;
+		public DefiningStep(int order, int invocationParentOrder) {
+			this.order = order;
+			this.invocationParentOrder = invocationParentOrder;
+		}
+
+		public int getOrder() {
+			return order;
+		}
+
+		/**
+		 * @return the order of the invocation parent of the step when it defines the variable, -1 if
+		 *         it has no invocation parent.
+		 */
+		public int getInvocationParentOrder() {
+			return invocationParentOrder;
+		}
+	}
+	
+	private static class DefiningSteps {
+		private int[] orders = new int[2];
+		private int[] invocationParentOrders = new int[2];
+		private int size;
+		
+		void add(int order, int invocationParentOrder) {
+			int idx = indexOf(order);
+			if(idx >= 0){
+				return;
 			}
-			else{
-				return prev;
+			idx = -idx - 1;
+			if(size == orders.length){
+				orders = Arrays.copyOf(orders, size * 2);
+				invocationParentOrders = Arrays.copyOf(invocationParentOrders, size * 2);
 			}
+			System.arraycopy(orders, idx, orders, idx + 1, size - idx);
+			System.arraycopy(invocationParentOrders, idx, invocationParentOrders, idx + 1, size - idx);
+			orders[idx] = order;
+			invocationParentOrders[idx] = invocationParentOrder;
+			size++;
+		}
+		
+		int indexOf(int order) {
+			return Arrays.binarySearch(orders, 0, size, order);
 		}
 		
-		return prev;
+		DefiningStep get(int idx) {
+			return new DefiningStep(orders[idx], invocationParentOrders[idx]);
+		}
 	}
 }
@@ -0,0 +1,9 @@
+package microbat.model.value;
+
+/**
+ * The string value of a {@link VarValue} which is not captured while tracing
+ * but rendered on the first access, e.g., when the trace is written.
+ */
+public interface DeferredStringValue {
+	public String render();
+}
@@ -77,6 +77,8 @@ public class ReferenceValue extends VarValue {
 		Collections.sort(children, new Comparator<VarValue>() {
 			@Override
 			public int compare(VarValue o1, VarValue o2) {
+				o1.renderStringValue();
+				o2.renderStringValue();
 				String str1 = (o1.stringValue==null)?"null":o1.stringValue;
 				String str2 = (o2.stringValue==null)?"null":o2.stringValue;
 				
@@ -122,6 +124,7 @@ public class ReferenceValue extends VarValue {
 	@Override
 	public String getManifestationValue() {
 		String str = "(id = " + getVarID() + ")";
+		renderStringValue();
 		return stringValue + " " + str;
 	}
 
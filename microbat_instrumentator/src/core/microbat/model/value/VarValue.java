@@ -8,6 +8,8 @@
 
 package microbat.model.value;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -28,6 +30,10 @@ import microbat.model.variable.Variable;
 public abstract class VarValue implements GraphNode, Serializable {
 	private static final long serialVersionUID = -4243257984929286188L;
 	protected String stringValue;
+	/**
+	 * rendered into {@link #stringValue} on the first access, it is not serialized.
+	 */
+	private transient DeferredStringValue deferredStringValue;
 	protected List<VarValue> parents = null;
 	protected Variable variable;
 	protected List<VarValue> children = null;
@@ -57,6 +63,7 @@ public abstract class VarValue implements GraphNode, Serializable {
 	 * @return
 	 */
 	public boolean isDefinedToStringMethod(){
+		renderStringValue();
 		if(stringValue == null){
 			return false;
 		}
@@ -281,10 +288,21 @@ public abstract class VarValue implements GraphNode, Serializable {
 	}
 	
 	public String getManifestationValue() {
+		renderStringValue();
 		return stringValue;
 	}
 	
+	/**
+	 * @return false if the string value is missing, i.e., {@link #getStringValue()}
+	 *         reports "null" for it.
+	 */
+	public boolean hasStringValue() {
+		renderStringValue();
+		return stringValue != null;
+	}
+	
 	public String getStringValue(){
+		renderStringValue();
 		if(stringValue==null) {
 			return "null";
 		}
@@ -294,6 +312,24 @@ public abstract class VarValue implements GraphNode, Serializable {
 
 	public void setStringValue(String stringValue) {
 		this.stringValue = stringValue;
+		this.deferredStringValue = null;
+	}
+
+	public void setDeferredStringValue(DeferredStringValue deferredStringValue) {
+		this.stringValue = null;
+		this.deferredStringValue = deferredStringValue;
+	}
+
+	protected void renderStringValue() {
+		if (deferredStringValue != null) {
+			stringValue = deferredStringValue.render();
+			deferredStringValue = null;
+		}
+	}
+
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		renderStringValue();
+		out.defaultWriteObject();
 	}
 
 	public Variable getVariable() {
@@ -31,7 +31,7 @@ public class FileRecorder implements TraceRecorder {
 		
 //		Trace trace = traceList.get(0);
 		
-		int collectedSteps = traceList.get(0).getExecutionList().size();
+		int collectedSteps = traceList.get(0).size();
 		int expectedSteps = agentParams.getExpectedSteps();
 		RunningInfo result = new RunningInfo(Agent.getProgramMsg(), traceList, collectedSteps, expectedSteps);
 		try {
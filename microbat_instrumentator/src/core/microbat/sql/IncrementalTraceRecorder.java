@@ -0,0 +1,16 @@
+package microbat.sql;
+
+import microbat.model.trace.Trace;
+
+/**
+ * A recorder which can store the trace of each thread as soon as it is built,
+ * instead of waiting for the traces of all threads.
+ */
+public interface IncrementalTraceRecorder extends TraceRecorder {
+	void store(Trace trace);
+
+	/**
+	 * called once after the traces of all threads are stored.
+	 */
+	void finish();
+}
@@ -4,6 +4,7 @@
 package microbat.sql;
 
 
+import microbat.instrumentation.AgentConstants;
 import microbat.instrumentation.AgentParams;
 /**
  * @author knightsong
@@ -13,6 +14,9 @@ public enum Recorder {
 	FILE,SQLITE3,MYSQL;
 	
 	public static TraceRecorder create(AgentParams params) {
+		if (params.getTcpPort() != AgentConstants.UNSPECIFIED_INT_VALUE) {
+			return new SocketRecorder(params);
+		}
 		switch (params.getTraceRecorderName()) {
 		case "FILE":
 			return new FileRecorder(params);
@@ -6,17 +6,24 @@ package microbat.sql;
 import java.util.List;
 
 import microbat.instrumentation.Agent;
+import microbat.instrumentation.AgentLogger;
 import microbat.instrumentation.AgentParams;
-import microbat.instrumentation.output.TraceOutputWriter;
 import microbat.instrumentation.output.tcp.TcpConnector;
+import microbat.instrumentation.output.tcp.TraceStreamWriter;
 import microbat.model.trace.Trace;
 
 /**
- * 
+ * Streams the trace of each thread to the IDE as soon as it is built, see
+ * {@link TraceStreamWriter}. The connection is closed after the IDE
+ * acknowledges the end of the stream.
  *
  */
-public class SocketRecorder implements TraceRecorder{
+public class SocketRecorder implements IncrementalTraceRecorder {
 	AgentParams agentParams;
+	private TcpConnector tcpConnector;
+	private TraceStreamWriter traceWriter;
+	private boolean failed;
+
 	public SocketRecorder(AgentParams agentParams) {
 		this.agentParams=agentParams;
 	}
@@ -25,18 +32,50 @@ public class SocketRecorder implements TraceRecorder{
 	 */
 	@Override
 	public void store(List<Trace> traceList) {
-		TcpConnector tcpConnector = new TcpConnector(agentParams.getTcpPort());
-		TraceOutputWriter traceWriter;
+		for (Trace trace : traceList) {
+			store(trace);
+		}
+		finish();
+	}
+
+	@Override
+	public void store(Trace trace) {
+		if (failed) {
+			return;
+		}
 		try {
-			traceWriter = tcpConnector.connect();
-			traceWriter.writeString(Agent.getProgramMsg());
-			traceWriter.writeTrace(traceList);
-			traceWriter.flush();
-			Thread.sleep(10000l);
+			getTraceWriter().writeTrace(trace);
 		} catch (Exception e) {
-			e.printStackTrace();
+			/* the stream is broken, the IDE cannot read the following traces anyway */
+			failed = true;
+			AgentLogger.error(e);
+		}
+	}
+
+	@Override
+	public void finish() {
+		try {
+			if (!failed) {
+				getTraceWriter().writeEndOfStream();
+			}
+		} catch (Exception e) {
+			AgentLogger.error(e);
+		}
+		if (tcpConnector != null) {
+			tcpConnector.close();
+		}
+		tcpConnector = null;
+		traceWriter = null;
+		failed = false;
+	}
+
+	private TraceStreamWriter getTraceWriter() throws Exception {
+		if (traceWriter == null) {
+			tcpConnector = new TcpConnector(agentParams.getTcpPort());
+			traceWriter = tcpConnector.connectStream();
+			traceWriter.writeHeader(Agent.getProgramMsg());
 		}
-		tcpConnector.close();
+		return traceWriter;
 	}
 
 }
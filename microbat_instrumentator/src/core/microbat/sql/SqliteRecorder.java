@@ -1,24 +1,33 @@
 package microbat.sql;
 
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.Date;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.sql.Statement;
 
 import java.sql.Timestamp;
+import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import microbat.handler.xml.VarValueXmlWriter;
 import microbat.instrumentation.AgentParams;
+import microbat.instrumentation.output.VarValueEncoder;
 import microbat.model.BreakPoint;
+import microbat.model.LocationRegistry;
+import microbat.model.trace.StepLinks;
 import microbat.model.trace.StepVariableRelationEntry;
 import microbat.model.trace.Trace;
 import microbat.model.trace.TraceNode;
+import microbat.model.trace.TraceStepSource.StepVisitor;
 import microbat.model.value.VarValue;
 import sav.common.core.utils.CollectionUtils;
 
@@ -26,11 +35,15 @@ import sav.common.core.utils.CollectionUtils;
  * @author knightsong
  *
  */
-public class SqliteRecorder extends SqliteServer implements TraceRecorder {
+public class SqliteRecorder extends SqliteServer implements IncrementalTraceRecorder {
 
 	public static final int READ = 1;
 	public static final int WRITE = 2;
+	/* same as ddl/StepVariable.sql, in case the database is created by an older version */
+	private static final String CREATE_STEP_VARIABLE_TABLE = "CREATE TABLE IF NOT EXISTS StepVariable ("
+			+ "trace_id TEXT NOT NULL, step_order INTEGER NOT NULL, vars MEDIUMBLOB, PRIMARY KEY (trace_id, step_order))";
 	private String runId;
+	private boolean runStored = false;
 
 	/**
 	 * @param dbPath
@@ -46,7 +59,7 @@ public class SqliteRecorder extends SqliteServer implements TraceRecorder {
 		try {
 			conn = getConnection();
 			conn.setAutoCommit(false);
-			insertRun(conn, closables);
+			storeRun(conn, closables);
 			for (Trace trace : traces) {
 				insertTrace(trace, runId, conn, closables);
 			}
@@ -59,6 +72,45 @@ public class SqliteRecorder extends SqliteServer implements TraceRecorder {
 		}
 	}
 
+	/**
+	 * store a single trace in its own transaction, the run is stored together with
+	 * the first trace.
+	 */
+	public void store(Trace trace) {
+		Connection conn = null;
+		List<AutoCloseable> closables = new ArrayList<AutoCloseable>();
+		boolean isNewRun = !runStored;
+		try {
+			conn = getConnection();
+			conn.setAutoCommit(false);
+			storeRun(conn, closables);
+			insertTrace(trace, runId, conn, closables);
+			conn.commit();
+		} catch (SQLException e) {
+			e.printStackTrace();
+			rollback(conn);
+			if (isNewRun) {
+				runStored = false;
+			}
+		} finally {
+			closeDb(conn, closables);
+		}
+	}
+
+	@Override
+	public void finish() {
+		// each trace is committed in store(Trace)
+	}
+
+	private void storeRun(Connection conn, List<AutoCloseable> closables) throws SQLException {
+		if (runStored) {
+			return;
+		}
+		insertRun(conn, closables);
+		createStepVariableTable(conn, closables);
+		runStored = true;
+	}
+
 	public void insertRun(Connection conn, List<AutoCloseable> closables) throws SQLException {
 		PreparedStatement ps;
 		String sql = "INSERT INTO run (run_id,project_name,project_version,launch_method,thread_status,launch_class) "
@@ -96,35 +148,104 @@ public class SqliteRecorder extends SqliteServer implements TraceRecorder {
 		ps.setBoolean(idx++, trace.isMain());
 		ps.setTimestamp(idx++, new Timestamp(System.currentTimeMillis()));
 		ps.execute();
-		insertSteps(traceId, trace.getExecutionList(), conn, closables);
+		LocationRegistry registry = trace.getLocationRegistry();
+		String[] locationIds = insertLocation(traceId, registry, trace.getExecutionList(), conn, closables);
+		insertSteps(traceId, trace, registry, locationIds, conn, closables);
 		insertStepVariableRelation(trace, traceId, conn, closables);
 		return traceId;
 	}
 
-	private void insertSteps(String traceId, List<TraceNode> exectionList, Connection conn, List<AutoCloseable> closables)
-			throws SQLException {
+	private void createStepVariableTable(Connection conn, List<AutoCloseable> closables) throws SQLException {
+		Statement st = conn.createStatement();
+		closables.add(st);
+		st.execute(CREATE_STEP_VARIABLE_TABLE);
+	}
+
+	/**
+	 * the read/written variables of steps are stored as binary chunks (see
+	 * {@link VarValueEncoder}) in table StepVariable, columns read_vars and
+	 * written_vars of table Step are kept for the traces recorded in xml format.
+	 */
+	private void insertSteps(final String traceId, Trace trace, final LocationRegistry registry,
+			final String[] locationIds, Connection conn, List<AutoCloseable> closables) throws SQLException {
 		String sql = "INSERT INTO Step (trace_id, step_order, control_dominator, step_in, step_over, invocation_parent, loop_parent,"
 				+ "location_id, read_vars, written_vars, time) VALUES (?,?,?,?,?,?,?,?,?,?,?)";
-		PreparedStatement ps = conn.prepareStatement(sql);
+		final PreparedStatement ps = conn.prepareStatement(sql);
 		closables.add(ps);
-		insertLocation(traceId, exectionList, conn, closables);
-		for (int i = 0; i < exectionList.size(); i++) {
-			TraceNode node = exectionList.get(i);
-			int idx = 1;
-			ps.setString(idx++, traceId);
-			ps.setInt(idx++, node.getOrder());
-			setNodeOrder(ps, idx++, node.getControlDominator());
-			setNodeOrder(ps, idx++, node.getStepInNext());
-			setNodeOrder(ps, idx++, node.getStepOverNext());
-			setNodeOrder(ps, idx++, node.getInvocationParent());
-			setNodeOrder(ps, idx++, node.getLoopParent());
-			ps.setString(idx++, node.getDeclaringCompilationUnitName() + "_" + node.getLineNumber());
-			ps.setString(idx++, generateXmlContent(node.getReadVariables()));
-			ps.setString(idx++, generateXmlContent(node.getWrittenVariables()));
-			ps.setDate(idx, new Date(node.getTimestamp()));
-			ps.addBatch();
+		final PreparedStatement varPs = conn.prepareStatement("INSERT INTO StepVariable (trace_id, step_order, vars) VALUES (?,?,?)");
+		closables.add(varPs);
+		final VarValueEncoder encoder = new VarValueEncoder();
+		final int[] counts = new int[2]; // steps, step variables
+		try {
+			trace.visitSteps(new StepVisitor() {
+				
+				@Override
+				public void visit(TraceNode node, StepLinks links) throws IOException {
+					try {
+						int idx = 1;
+						ps.setString(idx++, traceId);
+						ps.setInt(idx++, node.getOrder());
+						setNodeOrder(ps, idx++, links.getControlDominator());
+						setNodeOrder(ps, idx++, links.getStepInNext());
+						setNodeOrder(ps, idx++, links.getStepOverNext());
+						setNodeOrder(ps, idx++, links.getInvocationParent());
+						setNodeOrder(ps, idx++, links.getLoopParent());
+						ps.setString(idx++, locationIds[registry.register(node.getBreakPoint()).getLocationId()]);
+						ps.setNull(idx++, Types.VARCHAR);
+						ps.setNull(idx++, Types.VARCHAR);
+						ps.setDate(idx, new Date(node.getTimestamp()));
+						ps.addBatch();
+						if (++counts[0] == BATCH_SIZE) {
+							ps.executeBatch();
+							counts[0] = 0;
+						}
+						byte[] vars = encodeVarValues(encoder, node);
+						if (vars != null) {
+							idx = 1;
+							varPs.setString(idx++, traceId);
+							varPs.setInt(idx++, node.getOrder());
+							varPs.setBytes(idx++, vars);
+							varPs.addBatch();
+							if (++counts[1] == BATCH_SIZE) {
+								varPs.executeBatch();
+								counts[1] = 0;
+							}
+						}
+					} catch (SQLException e) {
+						throw new IOException(e);
+					}
+				}
+			});
+		} catch (IOException e) {
+			if (e.getCause() instanceof SQLException) {
+				throw (SQLException) e.getCause();
+			}
+			throw new SQLException("Cannot read the steps of the trace", e);
+		}
+		if (counts[0] > 0) {
+			ps.executeBatch();
+		}
+		if (counts[1] > 0) {
+			varPs.executeBatch();
+		}
+	}
+
+	/**
+	 * each step is encoded as an independent chunk [readVars, writtenVars] so that
+	 * it can be loaded on its own.
+	 */
+	private byte[] encodeVarValues(VarValueEncoder encoder, TraceNode node) throws SQLException {
+		Collection<VarValue> readVars = node.getReadVariables();
+		Collection<VarValue> writtenVars = node.getWrittenVariables();
+		if (CollectionUtils.isEmpty(readVars) && CollectionUtils.isEmpty(writtenVars)) {
+			return null;
+		}
+		encoder.reset();
+		try {
+			return encoder.encode(Arrays.asList(readVars, writtenVars));
+		} catch (IOException e) {
+			throw new SQLException("Cannot encode variables of step " + node.getOrder(), e);
 		}
-		ps.executeBatch();
 	}
 
 	// TODO value_string is not true instance
@@ -165,42 +286,45 @@ public class SqliteRecorder extends SqliteServer implements TraceRecorder {
 		// }
 	}
 
-	private void insertLocation(String traceId, List<TraceNode> nodes, Connection conn, List<AutoCloseable> closables)
-			throws SQLException {
+	/**
+	 * insert the locations of the location registry of the trace, the locations of
+	 * the same line in different methods share one row.
+	 * 
+	 * @return location_id of the locations, indexed by their ids in the registry.
+	 */
+	private String[] insertLocation(String traceId, LocationRegistry registry, List<TraceNode> nodes,
+			Connection conn, List<AutoCloseable> closables) throws SQLException {
+		for (TraceNode node : nodes) {
+			/* steps which are not created by the tracer */
+			registry.register(node.getBreakPoint());
+		}
 		String sql = "INSERT INTO location (location_id,trace_id, class_name, line_number, is_conditional, is_return) "
 				+ "VALUES (?,?, ?, ?, ?, ?)";
 		PreparedStatement ps = conn.prepareStatement(sql);
 		closables.add(ps);
-		HashSet<BreakPoint> set = getLoactionSet(nodes);
-		List<String> ids = new ArrayList<>();
-		for (BreakPoint location : set) {
+		List<BreakPoint> locations = registry.getLocations();
+		String[] locationIds = new String[locations.size()];
+		Set<String> insertedIds = new HashSet<>();
+		for (BreakPoint location : locations) {
+			String locationId = location.getDeclaringCompilationUnitName() + "_" + location.getLineNumber();
+			locationIds[location.getLocationId()] = locationId;
+			if (!insertedIds.add(locationId)) {
+				continue;
+			}
 			int idx = 1;
-			String locationId = getUUID();
-			ps.setString(idx++, location.getDeclaringCompilationUnitName() + "_" + location.getLineNumber());
+			ps.setString(idx++, locationId);
 			ps.setString(idx++, traceId);
 			ps.setString(idx++, location.getDeclaringCompilationUnitName());
 			ps.setInt(idx++, location.getLineNumber());
 			ps.setBoolean(idx++, location.isConditional());
 			ps.setBoolean(idx++, location.isReturnStatement());
-			ids.add(locationId);
 			ps.addBatch();
 		}
 
 		ps.executeBatch();
-
-		if (ids.size() != set.size()) {
-			throw new SQLException("Number of locations is incorrect!");
-		}
 		// insertControlScope(traceId, result, conn, closables);
 		// insertLoopScope(traceId, result, conn, closables);
-	}
-
-	private HashSet<BreakPoint> getLoactionSet(List<TraceNode> list) {
-		HashSet<BreakPoint> set = new HashSet<>();
-		for (TraceNode node : list) {
-			set.add(node.getBreakPoint());
-		}
-		return set;
+		return locationIds;
 	}
 
 	protected String generateXmlContent(Collection<VarValue> varValues) {
@@ -210,9 +334,13 @@ public class SqliteRecorder extends SqliteServer implements TraceRecorder {
 		return VarValueXmlWriter.generateXmlContent(varValues);
 	}
 
-	private void setNodeOrder(PreparedStatement ps, int idx, TraceNode node) throws SQLException {
-		if (node != null) {
-			ps.setInt(idx, node.getOrder());
+	/**
+	 * @param order
+	 *            -1 if there is no such step.
+	 */
+	private void setNodeOrder(PreparedStatement ps, int idx, int order) throws SQLException {
+		if (order > 0) {
+			ps.setInt(idx, order);
 		} else {
 			ps.setNull(idx, java.sql.Types.INTEGER);
 		}
@@ -1,5 +1,6 @@
 package microbat.instrumentation;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
@@ -43,6 +44,14 @@ public class AgentParams extends CommonParams {
 	public static final String OPT_CODE_RANGE = "code_range";
 	public static final String OPT_TRACE_RECORDER = "trace_recorder";
 	public static final String OPT_RUN_ID = "run_id";
+	public static final String OPT_SPILL_WINDOW = "spill_window";
+	public static final String OPT_SPILL_FOLDER = "spill_folder";
+	public static final String OPT_POST_DOMINATOR_CONTROL_DEPENDENCY = "post_dominator_control_dependency";
+	public static final String OPT_CONTROL_SCOPE_CACHE = "control_scope_cache";
+	public static final String OPT_TO_STRING_CLASS_COST = "tostring_class_cost";
+	public static final String OPT_TO_STRING_STEP_BUDGET = "tostring_step_budget";
+	public static final String OPT_TO_STRING_RUN_BUDGET = "tostring_run_budget";
+	public static final String OPT_DEFERRED_TO_STRING = "deferred_tostring";
 	
 	private boolean precheck;
 	private EntryPoint entryPoint;
@@ -63,6 +72,15 @@ public class AgentParams extends CommonParams {
 	private List<CodeRangeEntry> codeRanges;
 	private String recorderName;
 	private String runId;
+	private int spillWindow;
+	private String spillFolder;
+	private boolean postDominatorControlDependency;
+	private String controlScopeCacheFolder;
+	/* in ms */
+	private int toStringClassCost;
+	private int toStringStepBudget;
+	private int toStringRunBudget;
+	private boolean deferredToString;
 	
 	public AgentParams(CommandLine cmd) {
 		super(cmd);
@@ -99,6 +117,17 @@ public class AgentParams extends CommonParams {
 		codeRanges = CodeRangeEntry.parse(cmd.getStringList(OPT_CODE_RANGE));
 		recorderName = cmd.getString(OPT_TRACE_RECORDER);
 		runId = cmd.getString(OPT_RUN_ID);
+		spillWindow = cmd.getInt(OPT_SPILL_WINDOW, AgentConstants.UNSPECIFIED_INT_VALUE);
+		spillFolder = cmd.getString(OPT_SPILL_FOLDER);
+		postDominatorControlDependency = cmd.getBoolean(OPT_POST_DOMINATOR_CONTROL_DEPENDENCY, false);
+		controlScopeCacheFolder = cmd.getString(OPT_CONTROL_SCOPE_CACHE);
+		toStringClassCost = cmd.getInt(OPT_TO_STRING_CLASS_COST, AgentConstants.UNSPECIFIED_INT_VALUE);
+		toStringStepBudget = cmd.getInt(OPT_TO_STRING_STEP_BUDGET, AgentConstants.UNSPECIFIED_INT_VALUE);
+		toStringRunBudget = cmd.getInt(OPT_TO_STRING_RUN_BUDGET, AgentConstants.UNSPECIFIED_INT_VALUE);
+		deferredToString = cmd.getBoolean(OPT_DEFERRED_TO_STRING, false);
+		if (spillFolder == null && dumpFile != null) {
+			spillFolder = new File(dumpFile).getAbsoluteFile().getParent();
+		}
 	}
 
 	public static AgentParams initFrom(CommandLine cmd) {
@@ -202,6 +231,38 @@ public class AgentParams extends CommonParams {
 		return this.runId;
 	}
 	
+	public int getSpillWindow() {
+		return spillWindow;
+	}
+	
+	public String getSpillFolder() {
+		return spillFolder;
+	}
+	
+	public boolean isPostDominatorControlDependency() {
+		return postDominatorControlDependency;
+	}
+	
+	public String getControlScopeCacheFolder() {
+		return controlScopeCacheFolder;
+	}
+	
+	public int getToStringClassCost() {
+		return toStringClassCost;
+	}
+	
+	public int getToStringStepBudget() {
+		return toStringStepBudget;
+	}
+	
+	public int getToStringRunBudget() {
+		return toStringRunBudget;
+	}
+	
+	public boolean isDeferredToString() {
+		return deferredToString;
+	}
+	
 	public AppJavaClassPath initAppClassPath() {
 		return initAppClassPath(getLaunchClass(), getJavaHome(), getClassPaths(), getWorkingDirectory());
 	}
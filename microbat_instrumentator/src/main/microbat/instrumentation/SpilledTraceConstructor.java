@@ -0,0 +1,236 @@
+package microbat.instrumentation;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import microbat.instrumentation.output.StepOrderFile;
+import microbat.instrumentation.output.TraceSegmentReader;
+import microbat.instrumentation.output.TraceSegmentWriter;
+import microbat.instrumentation.output.TraceSegmentWriter.SegmentIndex;
+import microbat.model.trace.ControlDominanceBuilder;
+import microbat.model.trace.StepLinks;
+import microbat.model.trace.Trace;
+import microbat.model.trace.TraceNode;
+import microbat.model.trace.TraceStepSource;
+import microbat.model.value.VarValue;
+
+/**
+ * Constructs the trace of a thread whose steps are spilled to disk while
+ * recording (see {@link microbat.instrumentation.runtime.ExecutionTracer}) as
+ * the steps are written, instead of loading the whole trace into memory. It does
+ * what {@link TraceAgent#constructTrace(Trace)} does for a trace in memory:
+ * <ul>
+ * <li>the first pass reads the steps without their variables to find the step
+ * over next of every step, which is kept in a {@link StepOrderFile}.</li>
+ * <li>the second pass reads the steps with their variables, creates the virtual
+ * data relation and the control dominance of each step, and hands the step to
+ * the visitor.</li>
+ * </ul>
+ * Only the invocation frames of the current step and the effective control
+ * dominators are kept in memory. The steps can be visited once, the spill files
+ * are deleted afterwards.
+ */
+public class SpilledTraceConstructor implements TraceStepSource {
+	private File segmentFile;
+	private SegmentIndex index;
+	private Trace trace;
+
+	/**
+	 * @param segmentWriter
+	 *            the closed writer of the spilled steps.
+	 * @param trace
+	 *            the trace of the tracer, which keeps the locations of the
+	 *            steps.
+	 */
+	public SpilledTraceConstructor(TraceSegmentWriter segmentWriter, Trace trace) {
+		this.segmentFile = segmentWriter.getSegmentFile();
+		this.index = segmentWriter.getIndex();
+		this.trace = trace;
+		/* the locations are written before the steps */
+		trace.fillInControlScope(trace.getLocationRegistry().getLocations());
+	}
+
+	@Override
+	public void visit(StepVisitor visitor) throws IOException {
+		File stepOverFile = new File(segmentFile.getPath() + ".stepover");
+		StepOrderFile stepOverNexts = new StepOrderFile(stepOverFile);
+		try {
+			findStepOverNexts(stepOverNexts);
+			constructSteps(stepOverNexts, visitor);
+		} finally {
+			stepOverNexts.close();
+			segmentFile.delete();
+		}
+	}
+
+	private void findStepOverNexts(StepOrderFile stepOverNexts) throws IOException {
+		TraceSegmentReader reader = new TraceSegmentReader(segmentFile, index, trace, false);
+		try {
+			/* the last step of each invocation frame, by the order of the invocation parent */
+			List<int[]> frames = new ArrayList<>();
+			frames.add(new int[] { -1, -1 });
+			while (reader.hasNext()) {
+				TraceNode step = reader.next();
+				int[] frame = moveToFrame(frames, step.getInvocationParentOrder());
+				if (frame[1] > 0) {
+					stepOverNexts.set(frame[1], step.getOrder());
+				}
+				frame[1] = step.getOrder();
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * frames are nested, a new frame is entered from the last step of the
+	 * current frame.
+	 */
+	private int[] moveToFrame(List<int[]> frames, int parentOrder) {
+		while (true) {
+			int[] top = frames.get(frames.size() - 1);
+			if (top[0] == parentOrder) {
+				return top;
+			}
+			if (top[1] == parentOrder || frames.size() == 1) {
+				int[] frame = new int[] { parentOrder, -1 };
+				frames.add(frame);
+				return frame;
+			}
+			frames.remove(frames.size() - 1);
+		}
+	}
+
+	private void constructSteps(StepOrderFile stepOverNexts, StepVisitor visitor) throws IOException {
+		TraceSegmentReader reader = new TraceSegmentReader(segmentFile, index, trace, true);
+		try {
+			List<Frame> frames = new ArrayList<>();
+			frames.add(new Frame(null, -1));
+			/* the returned values for the steps to come, by step order */
+			Map<Integer, List<VarValue>> pendingReadVars = new HashMap<>();
+			ControlDominanceBuilder controlDominanceBuilder = new ControlDominanceBuilder(false);
+			StepLinks links = new StepLinks();
+			int totalSteps = index.getTotalSteps();
+			while (reader.hasNext()) {
+				TraceNode step = reader.next();
+				int order = step.getOrder();
+				int stepOverNext = stepOverNexts.get(order);
+				Frame frame = moveToFrame(frames, step);
+				List<VarValue> returnedValues = pendingReadVars.remove(order);
+				if (returnedValues != null) {
+					for (VarValue value : returnedValues) {
+						step.addReadVariable(value);
+					}
+				}
+				createVirtualDataRelation(step, frame, order < totalSteps ? order + 1 : -1, pendingReadVars);
+				TraceNode controlDominator = controlDominanceBuilder.link(step);
+
+				links.setInvocationParent(step.getInvocationParentOrder());
+				links.setStepInNext(order < totalSteps ? order + 1 : -1);
+				links.setStepOverNext(stepOverNext);
+				links.setStepOverPrevious(frame.last == null ? -1 : frame.last.getOrder());
+				links.setControlDominator(controlDominator == null ? -1 : controlDominator.getOrder());
+				links.setLoopParent(-1);
+				visitor.visit(step, links);
+				/* the dominator may be kept as the last step of a frame, do not keep older steps alive */
+				step.setControlDominator(null);
+				frame.last = step;
+				frame.lastStepOverNext = stepOverNext;
+			}
+			if (!pendingReadVars.isEmpty()) {
+				AgentLogger.debug("Returned values are not read by steps " + pendingReadVars.keySet());
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * the same as {@link #moveToFrame(List, int)}, the invocation parent of the
+	 * step is linked if the parent is still kept as the last step of a frame.
+	 */
+	private Frame moveToFrame(List<Frame> frames, TraceNode step) {
+		int parentOrder = step.getInvocationParentOrder();
+		while (true) {
+			Frame top = frames.get(frames.size() - 1);
+			if (top.parentOrder == parentOrder) {
+				if (top.parent != null) {
+					step.setInvocationParent(top.parent);
+				}
+				return top;
+			}
+			if (top.last != null && top.last.getOrder() == parentOrder) {
+				Frame frame = new Frame(top.last, top.lastStepOverNext);
+				frames.add(frame);
+				step.setInvocationParent(frame.parent);
+				return frame;
+			}
+			if (frames.size() == 1) {
+				AgentLogger.debug("Invocation parent of step " + step.getOrder() + " is not found: " + parentOrder);
+				Frame frame = new Frame(null, -1);
+				frame.parentOrder = parentOrder;
+				frames.add(frame);
+				return frame;
+			}
+			frames.remove(frames.size() - 1);
+		}
+	}
+
+	/**
+	 * see TraceAgent#createVirtualDataRelation, the returned values are given to
+	 * the steps which read them through {@code pendingReadVars}. Pass parameters
+	 * are not spilled, so they are not handled here.
+	 */
+	private void createVirtualDataRelation(TraceNode step, Frame frame, int stepInNext,
+			Map<Integer, List<VarValue>> pendingReadVars) {
+		TraceNode previousStepOver = frame.last;
+		if (previousStepOver != null
+				&& previousStepOver.getClassCanonicalName().equals(step.getClassCanonicalName())
+				&& previousStepOver.getLineNumber() == step.getLineNumber()) {
+			for (VarValue readVar : previousStepOver.getReadVariables()) {
+				if (!step.containReadVariable(readVar)) {
+					step.addReadVariable(readVar);
+				}
+			}
+		}
+
+		if (step.getInvocationParentOrder() > 0 && !step.getReturnedVariables().isEmpty()) {
+			int returnStep = frame.parentStepOverNext;
+			if (returnStep < 0) {
+				returnStep = stepInNext;
+			}
+			if (returnStep > 0) {
+				List<VarValue> readVars = pendingReadVars.get(returnStep);
+				if (readVars == null) {
+					readVars = new ArrayList<>();
+					pendingReadVars.put(returnStep, readVars);
+				}
+				for (VarValue value : step.getReturnedVariables()) {
+					step.addWrittenVariable(value);
+					readVars.add(value);
+				}
+			}
+		}
+	}
+
+	/**
+	 * an invocation frame: the invocation parent and the last step visited in it.
+	 */
+	private static class Frame {
+		private TraceNode parent;
+		private int parentOrder;
+		private int parentStepOverNext;
+		private TraceNode last;
+		private int lastStepOverNext = -1;
+
+		Frame(TraceNode parent, int parentStepOverNext) {
+			this.parent = parent;
+			this.parentOrder = (parent == null) ? -1 : parent.getOrder();
+			this.parentStepOverNext = parentStepOverNext;
+		}
+	}
+}
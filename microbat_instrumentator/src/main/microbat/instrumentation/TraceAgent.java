@@ -3,17 +3,30 @@ package microbat.instrumentation;
 import java.lang.instrument.Instrumentation;
 import java.util.ArrayList;
 import java.util.List;
-
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import microbat.codeanalysis.bytecode.CFGConstructor;
 import microbat.instrumentation.filter.CodeRangeUserFilter;
 import microbat.instrumentation.filter.GlobalFilterChecker;
 import microbat.instrumentation.filter.OverLongMethodFilter;
 import microbat.instrumentation.instr.TraceTransformer;
 import microbat.instrumentation.runtime.ExecutionTracer;
 import microbat.instrumentation.runtime.IExecutionTracer;
+import microbat.instrumentation.runtime.ToStringCapturePolicy;
+import microbat.model.trace.ControlScopeCache;
 import microbat.model.trace.Trace;
 import microbat.model.trace.TraceNode;
 import microbat.model.value.VarValue;
+import microbat.sql.IncrementalTraceRecorder;
 import microbat.sql.Recorder;
+import microbat.sql.TraceRecorder;
 import sav.strategies.dto.AppJavaClassPath;
 
 public class TraceAgent extends Agent {
@@ -43,6 +56,11 @@ public class TraceAgent extends Agent {
 
 		ExecutionTracer.setExpectedSteps(agentParams.getExpectedSteps());
 		ExecutionTracer.avoidProxyToString = agentParams.isAvoidProxyToString();
+		ToStringCapturePolicy.setup(agentParams.getToStringClassCost(), agentParams.getToStringStepBudget(),
+				agentParams.getToStringRunBudget(), agentParams.isDeferredToString());
+		ExecutionTracer.setSpillWindow(agentParams.getSpillWindow(), agentParams.getSpillFolder());
+		CFGConstructor.setPostDominatorControlDependency(agentParams.isPostDominatorControlDependency());
+		ControlScopeCache.setup(agentParams.getControlScopeCacheFolder());
 	}
 
 	public void shutdown() throws Exception {
@@ -53,33 +71,102 @@ public class TraceAgent extends Agent {
 		// FIXME -mutithread LINYUN [3]
 		// LLT: only trace of main thread is recorded.
 		List<IExecutionTracer> tracers = ExecutionTracer.getAllThreadStore();
+		ExecutionTracer.dispose(); // clear cache
+		long t1 = System.currentTimeMillis();
 
+		/* traces of threads are built in parallel, and stored as soon as they are ready if the recorder supports it */
 		int size = tracers.size();
-		List<Trace> traceList = new ArrayList<>(size);
+		int poolSize = Math.max(1, Math.min(size, Runtime.getRuntime().availableProcessors()));
+		ExecutorService executor = Executors.newFixedThreadPool(poolSize, new ThreadFactory() {
+			private int count = 0;
+
+			@Override
+			public synchronized Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "microbat-trace-construction-" + (count++));
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		CompletionService<Trace> completionService = new ExecutorCompletionService<>(executor);
+		List<Future<Trace>> futures = new ArrayList<>(size);
 		for (int i = 0; i < size; i++) {
+			final ExecutionTracer tracer = (ExecutionTracer) tracers.get(i);
+			final boolean isMain = ExecutionTracer.getMainThreadStore().equals(tracer);
+			futures.add(completionService.submit(new Callable<Trace>() {
 
-			ExecutionTracer tracer = (ExecutionTracer) tracers.get(i);
-
-			Trace trace = tracer.getTrace();
-			trace.setThreadId(tracer.getThreadId());
-			trace.setThreadName(tracer.getThreadName());
-			trace.setMain(ExecutionTracer.getMainThreadStore().equals(tracer));
-
-			constructTrace(trace);
-			traceList.add(trace);
+				@Override
+				public Trace call() throws Exception {
+					return buildTrace(tracer, isMain);
+				}
+			}));
 		}
 
 //		timer.newPoint("Saving trace");
-		Recorder.create(agentParams).store(traceList);
+		TraceRecorder recorder = Recorder.create(agentParams);
+		try {
+			if (recorder instanceof IncrementalTraceRecorder && size > 0) {
+				IncrementalTraceRecorder incrementalRecorder = (IncrementalTraceRecorder) recorder;
+				for (int i = 0; i < size; i++) {
+					Trace trace = getTrace(completionService.take());
+					incrementalRecorder.store(trace);
+					AgentLogger.debug(String.format("Trace of thread %s is stored (%d/%d), elapsed time: %dms",
+							trace.getThreadName(), i + 1, size, System.currentTimeMillis() - t1));
+				}
+				incrementalRecorder.finish();
+			} else {
+				List<Trace> traceList = new ArrayList<>(size);
+				for (Future<Trace> future : futures) {
+					traceList.add(getTrace(future));
+				}
+				recorder.store(traceList);
+			}
+		} finally {
+			executor.shutdownNow();
+			/* after the traces are stored, their deferred values are rendered with the policy */
+			ToStringCapturePolicy.reset();
+		}
+		AgentLogger.debug(String.format("Built and stored %d traces in %dms", size, System.currentTimeMillis() - t1));
+		ControlScopeCache.getInstance().logStatistics();
 //		AgentLogger.debug(timer.getResultString());
 	}
 
-	//FIXME this method can be handled in an asynchronized way
+	private Trace getTrace(Future<Trace> future) throws Exception {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof Exception) {
+				throw (Exception) e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	private Trace buildTrace(ExecutionTracer tracer, boolean isMain) throws Exception {
+		long t1 = System.currentTimeMillis();
+		Trace trace = tracer.getTrace();
+		trace.setThreadId(tracer.getThreadId());
+		trace.setThreadName(tracer.getThreadName());
+		trace.setMain(isMain);
+
+		if (tracer.isSpilling()) {
+			/* the steps are constructed one by one while the trace is stored */
+			trace.setStepSource(new SpilledTraceConstructor(tracer.finishSpilling(), trace));
+			GlobalFilterChecker.addFilterInfo(trace);
+		} else {
+			constructTrace(trace);
+		}
+		AgentLogger.debug(String.format("Trace of thread %s is built, steps: %d, time: %dms", tracer.getThreadName(),
+				trace.size(), System.currentTimeMillis() - t1));
+		return trace;
+	}
+
+	/**
+	 * this method can be called concurrently for traces of different threads.
+	 */
 	public void constructTrace(Trace trace) {
 		GlobalFilterChecker.addFilterInfo(trace);
 
 		StepMismatchChecker.logNormalSteps(trace);
-		ExecutionTracer.dispose(); // clear cache
 		long t1 = System.currentTimeMillis();
 		AgentLogger.debug("create VirtualDataRelation....");
 		createVirtualDataRelation(trace);
@@ -91,6 +178,7 @@ public class TraceAgent extends Agent {
 		AgentLogger.debug("construct ControlDomianceRelation....");
 		trace.constructControlDomianceRelation();
 		t2 = System.currentTimeMillis();
+		AgentLogger.debug("time for constructControlDomianceRelation: " + (t2 - t1) / 1000);
 
 		// trace.constructLoopParentRelation();
 
@@ -1,6 +1,7 @@
 package microbat.instrumentation.output;
 
 import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
@@ -40,6 +41,17 @@ public class OutputReader extends DataInputStream {
 		}
 	}
 	
+	public void skipByteArray() throws IOException {
+		int len = readVarInt();
+		while (len > 0) {
+			int skipped = skipBytes(len);
+			if (skipped <= 0) {
+				throw new EOFException();
+			}
+			len -= skipped;
+		}
+	}
+	
 	public int readVarInt() throws IOException {
 		final int value = 0xFF & readByte();
 		if ((value & 0x80) == 0) {
@@ -48,6 +60,19 @@ public class OutputReader extends DataInputStream {
 		return (value & 0x7F) | (readVarInt() << 7);
 	}
 	
+	public long readVarLong() throws IOException {
+		long value = 0;
+		int shift = 0;
+		while (true) {
+			final int b = 0xFF & readByte();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+			shift += 7;
+		}
+	}
+	
 	public List<Integer> readListInt() throws IOException {
 		int size = readVarInt();
 		if (size == -1) {
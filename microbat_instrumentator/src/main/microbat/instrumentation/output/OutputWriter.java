@@ -35,6 +35,15 @@ public class OutputWriter extends DataOutputStream {
 		}
 	}
 	
+	public void writeVarLong(final long value) throws IOException {
+		long v = value;
+		while ((v & 0xFFFFFFFFFFFFFF80L) != 0) {
+			writeByte(0x80 | (int) (v & 0x7F));
+			v >>>= 7;
+		}
+		writeByte((int) v);
+	}
+	
 	public <K extends Serializable, V> void writeSerializableMap(Map<K, V> map)
 			throws IOException {
 		if (map == null || map.isEmpty()) {
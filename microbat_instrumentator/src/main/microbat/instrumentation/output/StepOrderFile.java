@@ -0,0 +1,105 @@
+package microbat.instrumentation.output;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A step order for every step of a trace (e.g., the step over next of each
+ * step) which is kept on disk instead of in memory.
+ *
+ * The values are set in any order, mostly close to the latest step, so the
+ * latest block of slots is buffered and the older slots are patched in the
+ * file. Then they are read once in the order of steps.
+ */
+public class StepOrderFile {
+	private static final int BLOCK_SIZE = 4096;
+	/* a slot which is never set holds 0, which is not a step order */
+	private static final int NONE = 0;
+
+	private File file;
+	private RandomAccessFile output;
+	private ByteBuffer block = ByteBuffer.allocate(BLOCK_SIZE * 4);
+	/* the index of the first slot of the buffered block */
+	private int blockStart = 0;
+	private DataInputStream input;
+	private int nextReadOrder = 1;
+
+	public StepOrderFile(File file) throws IOException {
+		this.file = file;
+		output = new RandomAccessFile(file, "rw");
+		output.setLength(0);
+	}
+
+	/**
+	 * @param value
+	 *            a step order, or -1 for none.
+	 */
+	public void set(int order, int value) throws IOException {
+		int slot = order - 1;
+		int storedValue = (value < 0) ? NONE : value;
+		while (slot >= blockStart + BLOCK_SIZE) {
+			writeBlock();
+			blockStart += BLOCK_SIZE;
+		}
+		if (slot >= blockStart) {
+			block.putInt((slot - blockStart) * 4, storedValue);
+		} else {
+			output.seek(slot * 4L);
+			output.writeInt(storedValue);
+		}
+	}
+
+	private void writeBlock() throws IOException {
+		output.seek(blockStart * 4L);
+		output.write(block.array());
+		Arrays.fill(block.array(), (byte) 0);
+	}
+
+	/**
+	 * @return the value of the step, -1 if it is not set. The steps must be read
+	 *         in the increasing order, after all values are set.
+	 */
+	public int get(int order) throws IOException {
+		if (input == null) {
+			writeBlock();
+			output.close();
+			output = null;
+			input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		}
+		if (order < nextReadOrder) {
+			throw new IOException("Step " + order + " is already read");
+		}
+		try {
+			int value = NONE;
+			while (nextReadOrder <= order) {
+				value = input.readInt();
+				nextReadOrder++;
+			}
+			return (value == NONE) ? -1 : value;
+		} catch (EOFException e) {
+			/* the slots after the last block are never set */
+			nextReadOrder = order + 1;
+			return -1;
+		}
+	}
+
+	public void close() throws IOException {
+		try {
+			if (output != null) {
+				output.close();
+			}
+			if (input != null) {
+				input.close();
+			}
+		} finally {
+			file.delete();
+		}
+	}
+}
@@ -16,6 +16,7 @@ import sav.common.core.utils.FileUtils;
 
 public class TraceOutputReader extends OutputReader {
 	private String traceExecFolder;
+	private VarValueDecoder varValueDecoder;
 	
 	public TraceOutputReader(InputStream in) {
 		super(in);
@@ -44,6 +45,7 @@ public class TraceOutputReader extends OutputReader {
 			trace.setThreadId(Long.parseLong(readString()));
 			trace.setIncludedLibraryClasses(readFilterInfo());
 			trace.setExcludedLibraryClasses(readFilterInfo());
+			varValueDecoder = new VarValueDecoder();
 			List<BreakPoint> locationList = readLocations();
 			trace.setExecutionList(readSteps(trace, locationList));
 			readStepVariableRelation(trace);
@@ -54,7 +56,136 @@ public class TraceOutputReader extends OutputReader {
 		return traceList;
 	}
 
-	private List<String> readFilterInfo() throws IOException {
+	/**
+	 * read a whole trace written by {@link TraceSegmentWriter}, the links between
+	 * steps are rebuilt from their orders. To read the steps one by one instead,
+	 * see {@link TraceSegmentReader}.
+	 */
+	public Trace readSegmentedTrace() throws IOException {
+		readSegmentFileHeader();
+		Trace trace = new Trace(null);
+		List<TraceNode> allSteps = new ArrayList<>();
+		List<TraceNode> steps;
+		while ((steps = readNextSegment(trace, true)) != null) {
+			for (TraceNode step : steps) {
+				int order = step.getOrder();
+				while (allSteps.size() < order) {
+					allSteps.add(null);
+				}
+				allSteps.set(order - 1, step);
+			}
+		}
+		int totalSteps = readSegmentFileEnd(trace);
+		if (totalSteps != allSteps.size()) {
+			throw new IOException(
+					String.format("Incomplete trace segment file, expect %d steps, read %d", totalSteps, allSteps.size()));
+		}
+		/* links are resolved in the order of steps to keep children in the execution order */
+		for (int i = 0; i < allSteps.size(); i++) {
+			TraceNode step = allSteps.get(i);
+			if (step == null) {
+				throw new IOException("Missing step " + (i + 1) + " in trace segment file");
+			}
+			TraceNode invocationParent = getNode(allSteps, step.getInvocationParentOrder());
+			step.setInvocationParent(invocationParent);
+			if (invocationParent != null) {
+				invocationParent.addInvocationChild(step);
+			}
+			if (i > 0) {
+				TraceNode prev = allSteps.get(i - 1);
+				prev.setStepInNext(step);
+				step.setStepInPrevious(prev);
+			}
+		}
+		trace.setExecutionList(allSteps);
+		return trace;
+	}
+
+	public void readSegmentFileHeader() throws IOException {
+		String header = readString();
+		if (!TraceSegmentWriter.HEADER.equals(header)) {
+			throw new IOException("Invalid trace segment file, header: " + header);
+		}
+		int version = readVarInt();
+		if (version != TraceSegmentWriter.VERSION) {
+			throw new IOException("Unsupported trace segment version: " + version);
+		}
+	}
+
+	/**
+	 * read the thread info after the last segment into the trace.
+	 * 
+	 * @return the number of steps in the segment file.
+	 */
+	public int readSegmentFileEnd(Trace trace) throws IOException {
+		trace.setThreadName(readString());
+		trace.setThreadId(readLong());
+		return readVarInt();
+	}
+
+	/**
+	 * read the steps of the next segment, their invocation parents are given as
+	 * orders only (see {@link TraceNode#getInvocationParentOrder()}).
+	 * 
+	 * @param withVariables
+	 *            whether to decode the variables of the steps or to skip them.
+	 * @return null if there is no more segment.
+	 */
+	public List<TraceNode> readNextSegment(Trace trace, boolean withVariables) throws IOException {
+		if (readVarInt() != TraceSegmentWriter.SEGMENT) {
+			return null;
+		}
+		int size = readVarInt();
+		List<TraceNode> steps = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			int order = readVarInt();
+			String classCanonicalName = readString();
+			String declaringCompilationUnitName = readString();
+			String methodSig = readString();
+			int lineNo = readVarInt();
+			BreakPoint location = trace.getLocationRegistry().getLocation(classCanonicalName,
+					declaringCompilationUnitName, methodSig, lineNo);
+			TraceNode step = new TraceNode(location, null, order, trace, null);
+			step.setTimestamp(readLong());
+			step.setInvocationParentOrder(readVarInt());
+			step.setException(readBoolean());
+			step.setBytecode(readString());
+			steps.add(step);
+		}
+		if (!withVariables) {
+			skipByteArray();
+			skipByteArray();
+			skipByteArray();
+			return steps;
+		}
+		/* segments are encoded independently */
+		varValueDecoder = new VarValueDecoder();
+		List<List<VarValue>> readVars = readVarValueSegment();
+		List<List<VarValue>> writtenVars = readVarValueSegment();
+		List<List<VarValue>> returnedVars = readVarValueSegment();
+		for (int i = 0; i < size; i++) {
+			TraceNode step = steps.get(i);
+			step.setReadVariables(readVars.get(i));
+			step.setWrittenVariables(writtenVars.get(i));
+			for (VarValue returnedVar : returnedVars.get(i)) {
+				step.addReturnVariable(returnedVar);
+			}
+		}
+		return steps;
+	}
+
+	private List<List<VarValue>> readVarValueSegment() throws IOException {
+		return varValueDecoder.decode(readByteArray());
+	}
+
+	private TraceNode getNode(List<TraceNode> allSteps, int order) {
+		if (order <= 0) {
+			return null;
+		}
+		return allSteps.get(order - 1);
+	}
+
+	protected List<String> readFilterInfo() throws IOException {
 		boolean inFile = readBoolean();
 		if (inFile) {
 			if (traceExecFolder == null) {
@@ -141,7 +272,7 @@ public class TraceOutputReader extends OutputReader {
 	private void readRWVarValues(List<TraceNode> allSteps, boolean isWrittenVar) throws IOException {
 		int i = 0;
 		while (i < allSteps.size()) {
-			List<List<VarValue>> varsCol = readSerializableList();
+			List<List<VarValue>> varsCol = readVarValueChunk();
 			for (List<VarValue> vars : varsCol) {
 				if (isWrittenVar) {
 					allSteps.get(i++).setWrittenVariables(vars);
@@ -152,6 +283,14 @@ public class TraceOutputReader extends OutputReader {
 		}
 	}
 
+	private List<List<VarValue>> readVarValueChunk() throws IOException {
+		int size = readVarInt();
+		if (size == 0) {
+			return new ArrayList<>(0);
+		}
+		return varValueDecoder.decode(readByteArray());
+	}
+
 	private TraceNode readNode(List<TraceNode> allSteps) throws IOException {
 		int nodeOrder = readVarInt();
 		if (nodeOrder <= 0) {
@@ -160,7 +299,7 @@ public class TraceOutputReader extends OutputReader {
 		return allSteps.get(nodeOrder - 1);
 	}
 
-	private BreakPoint readLocation(String declaringCompilationUnitName) throws IOException {
+	protected BreakPoint readLocation(String declaringCompilationUnitName) throws IOException {
 		String classCanonicalName = readString();
 		String methodSig = readString();
 		int lineNo = readVarInt();
@@ -1,32 +1,42 @@
 package microbat.instrumentation.output;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.Map.Entry;
 
 import microbat.model.BreakPoint;
 import microbat.model.ClassLocation;
 import microbat.model.ControlScope;
+import microbat.model.LocationRegistry;
 import microbat.model.SourceScope;
+import microbat.model.trace.StepLinks;
 import microbat.model.trace.StepVariableRelationEntry;
 import microbat.model.trace.Trace;
 import microbat.model.trace.TraceNode;
+import microbat.model.trace.TraceStepSource.StepVisitor;
 import microbat.model.value.VarValue;
-import microbat.util.BreakpointUtils;
+import sav.common.core.utils.CollectionUtils;
 import sav.common.core.utils.FileUtils;
 import sav.common.core.utils.StringUtils;
 
 public class TraceOutputWriter extends OutputWriter {
 	public static final int READ = 1;
 	public static final int WRITE = 2;
+	private static final int VAR_CHUNK_SIZE = 4000;
 	private String traceExecFolder;
 	private String filterFilePrefix;
+	private VarValueEncoder varValueEncoder;
 	
 	public TraceOutputWriter(OutputStream out) {
 		super(out);
@@ -57,12 +67,13 @@ public class TraceOutputWriter extends OutputWriter {
 		writeString(String.valueOf(trace.getThreadId()));
 		writeFilterInfo(trace.getIncludedLibraryClasses(), true);
 		writeFilterInfo(trace.getExcludedLibraryClasses(), false);
-		Map<String, Integer> locIdIdxMap = writeLocations(trace);
-		writeSteps(trace.getExecutionList(), locIdIdxMap);
+		varValueEncoder = new VarValueEncoder();
+		int[] locIdxs = writeLocations(trace);
+		writeSteps(trace, locIdxs);
 		writeStepVariableRelation(trace);
 	}
 	
-	private void writeFilterInfo(List<String> libClasses, boolean isInclusive) throws IOException {
+	protected void writeFilterInfo(List<String> libClasses, boolean isInclusive) throws IOException {
 		if (libClasses.size() > 300 && (traceExecFolder != null)) {
 			writeBoolean(true); // write file
 			String fileName = filterFilePrefix + (isInclusive ? "_includes.info" : "_excludes.info");
@@ -75,74 +86,77 @@ public class TraceOutputWriter extends OutputWriter {
 		}
 	}
 
-	private Map<String, Integer> writeLocations(Trace trace) throws IOException {
-		Map<String, Set<BreakPoint>> locationMap = getExecutedLocation(trace);
-		writeVarInt(getNumberOfBkps(locationMap)); // number of bkps
+	/**
+	 * locations are taken from the location registry of the trace, steps refer to
+	 * them by their indexes in the output, which are returned by location id.
+	 */
+	private int[] writeLocations(Trace trace) throws IOException {
+		LocationRegistry registry = trace.getLocationRegistry();
+		for (TraceNode node : trace.getExecutionList()) {
+			/* steps which are not created by the tracer */
+			registry.register(node.getBreakPoint());
+		}
+		List<BreakPoint> locations = registry.getLocations();
+		Map<String, List<BreakPoint>> locationMap = new LinkedHashMap<>();
+		for (BreakPoint location : locations) {
+			CollectionUtils.getListInitIfEmpty(locationMap, location.getDeclaringCompilationUnitName()).add(location);
+		}
+		writeVarInt(locations.size()); // number of bkps
 		writeVarInt(locationMap.size()); // numberOfClass
+		int[] locIdxs = new int[locations.size()];
 		int idx = 0;
-		Map<String, Integer> locIdIdxMap = new HashMap<>();
-		for (String className : locationMap.keySet()) {
-			Set<BreakPoint> bkps = locationMap.get(className);
+		for (Entry<String, List<BreakPoint>> entry : locationMap.entrySet()) {
+			List<BreakPoint> bkps = entry.getValue();
 			writeVarInt(bkps.size()); // lines
-			if (bkps.size() <= 0) {
-				continue;
-			}
-			int i = 0;
+			writeString(entry.getKey()); // DeclaringCompilationUnitName
 			for (BreakPoint bkp : bkps) {
-				if (i == 0) {
-					writeString(bkp.getDeclaringCompilationUnitName()); // DeclaringCompilationUnitName
-					i++;
-				}
 				writeLocation(bkp); // writeLocation
-				locIdIdxMap.put(BreakpointUtils.getLocationId(bkp), idx++);
+				locIdxs[bkp.getLocationId()] = idx++;
 			}
 		}
-		return locIdIdxMap;
- 	}
+		return locIdxs;
+	}
 	
-	private int getNumberOfBkps(Map<String, Set<BreakPoint>> locationMap) {
-		int size = 0;
-		for (Set<BreakPoint> vals : locationMap.values()) {
-			size += vals.size();
+	private void writeSteps(Trace trace, final int[] locIdxs) throws IOException {
+		writeVarInt(trace.size());
+		final LocationRegistry registry = trace.getLocationRegistry();
+		final VarValueChunks readVars;
+		final VarValueChunks writtenVars;
+		if (trace.getStepSource() == null) {
+			readVars = new VarValueChunks(trace.size());
+			writtenVars = new VarValueChunks(trace.size());
+		} else {
+			/* the steps are not in memory, neither should their variables be */
+			readVars = new SpooledVarValueChunks(varValueEncoder);
+			VarValueEncoder writtenVarEncoder = new VarValueEncoder();
+			/* written vars are decoded after read vars by the same decoder */
+			writtenVarEncoder.clear();
+			writtenVars = new SpooledVarValueChunks(writtenVarEncoder);
 		}
-		return size;
-	}
-
-	public Map<String, Set<BreakPoint>> getExecutedLocation(Trace trace){
-		Map<String, Set<BreakPoint>> locationMap = new HashMap<>();
-		for(TraceNode node: trace.getExecutionList()){
-			Set<BreakPoint> bkps = locationMap.get(node.getDeclaringCompilationUnitName());
-			if(bkps == null){	
-				bkps = new HashSet<>();
-				locationMap.put(node.getDeclaringCompilationUnitName(), bkps);
-			}
-			bkps.add(node.getBreakPoint());
+		try {
+			trace.visitSteps(new StepVisitor() {
+				
+				@Override
+				public void visit(TraceNode node, StepLinks links) throws IOException {
+					writeVarInt(locIdxs[registry.register(node.getBreakPoint()).getLocationId()]);
+					writeLong(node.getTimestamp());
+					writeNodeOrder(links.getControlDominator());
+					writeNodeOrder(links.getStepInNext());
+					writeNodeOrder(links.getStepOverNext());
+					writeNodeOrder(links.getInvocationParent());
+					writeNodeOrder(links.getLoopParent());
+					readVars.add(node.getReadVariables());
+					writtenVars.add(node.getWrittenVariables());
+					writeBoolean(node.isException());
+					writeString(node.getBytecode());
+				}
+			});
+			readVars.writeTo(this);
+			writtenVars.writeTo(this);
+		} finally {
+			readVars.close();
+			writtenVars.close();
 		}
-		
-		return locationMap;
-	}
-	
-	private void writeSteps(List<TraceNode> exectionList, Map<String, Integer> locIdIdxMap)
-			throws IOException {
-		writeVarInt(exectionList.size());
-		List<Collection<VarValue>> allReadVars = new ArrayList<>(exectionList.size());
-		List<Collection<VarValue>> allWrittenVars = new ArrayList<>(exectionList.size());
-		for (int i = 0; i < exectionList.size(); i++) {
-			TraceNode node = exectionList.get(i);
-			writeVarInt(locIdIdxMap.get(node.getBreakPoint().getId()));
-			writeLong(node.getTimestamp());
-			writeNodeOrder(node.getControlDominator());
-			writeNodeOrder(node.getStepInNext());
-			writeNodeOrder(node.getStepOverNext());
-			writeNodeOrder(node.getInvocationParent());
-			writeNodeOrder(node.getLoopParent());
-			allReadVars.add(node.getReadVariables());
-			allWrittenVars.add(node.getWrittenVariables());
-			writeBoolean(node.isException());
-			writeString(node.getBytecode());
-		}
-		writeVarValues(allReadVars);
-		writeVarValues(allWrittenVars);
 	}
 	
 	private void writeVarValues(List<Collection<VarValue>> list) throws IOException {
@@ -150,7 +164,7 @@ public class TraceOutputWriter extends OutputWriter {
 		while (idx < list.size()) {
 			int limitSize = 0;
 			List<Collection<VarValue>> subList = new ArrayList<>();
-			while (limitSize < 4000 && (idx < list.size())) {
+			while (limitSize < VAR_CHUNK_SIZE && (idx < list.size())) {
 				Collection<VarValue> vars = list.get(idx++);
 				subList.add(vars);
 				limitSize = subList.size();
@@ -159,18 +173,18 @@ public class TraceOutputWriter extends OutputWriter {
 				writeVarInt(0);
 			} else {
 				writeVarInt(subList.size());
-				byte[] bytes = ByteConverter.convertToBytes(subList);
+				byte[] bytes = varValueEncoder.encode(subList);
 				writeByteArr(bytes);
 			}
 		}
 	}
 	
-	private void writeNodeOrder(TraceNode node) throws IOException {
-		if (node != null) {
-			writeVarInt(node.getOrder());
-		} else {
-			writeVarInt(-1);
-		}
+	/**
+	 * @param order
+	 *            -1 if there is no such step.
+	 */
+	private void writeNodeOrder(int order) throws IOException {
+		writeVarInt(order);
 	}
 
 	private void writeStepVariableRelation(Trace trace) throws IOException {
@@ -190,7 +204,93 @@ public class TraceOutputWriter extends OutputWriter {
 //		}
 	}
 	
-	private void writeLocation(BreakPoint location) throws IOException {
+	/**
+	 * The variables of all steps, which are written in chunks of
+	 * {@link #VAR_CHUNK_SIZE} steps after the steps.
+	 */
+	private class VarValueChunks {
+		private List<Collection<VarValue>> allVars;
+		
+		VarValueChunks(int size) {
+			allVars = new ArrayList<>(size);
+		}
+		
+		public void add(Collection<VarValue> vars) throws IOException {
+			allVars.add(vars);
+		}
+		
+		public void writeTo(TraceOutputWriter writer) throws IOException {
+			writer.writeVarValues(allVars);
+		}
+		
+		public void close() throws IOException {
+			// nothing to release
+		}
+	}
+	
+	/**
+	 * encodes the chunks as soon as they are complete and keeps them in a temp
+	 * file until the steps are written. The encoder does not keep the values of
+	 * the former chunks.
+	 */
+	private class SpooledVarValueChunks extends VarValueChunks {
+		private VarValueEncoder encoder;
+		private List<Collection<VarValue>> chunk = new ArrayList<>(VAR_CHUNK_SIZE);
+		private File spoolFile;
+		private OutputWriter spool;
+		
+		SpooledVarValueChunks(VarValueEncoder encoder) throws IOException {
+			super(0);
+			this.encoder = encoder;
+			File folder = (traceExecFolder == null) ? null : new File(traceExecFolder);
+			spoolFile = File.createTempFile("trace_vars_", ".tmp", folder);
+			spool = new OutputWriter(new BufferedOutputStream(new FileOutputStream(spoolFile)));
+		}
+		
+		@Override
+		public void add(Collection<VarValue> vars) throws IOException {
+			chunk.add(vars);
+			if (chunk.size() == VAR_CHUNK_SIZE) {
+				writeChunk();
+			}
+		}
+		
+		private void writeChunk() throws IOException {
+			spool.writeVarInt(chunk.size());
+			spool.writeByteArr(encoder.encode(chunk));
+			encoder.clearValueReferences();
+			chunk.clear();
+		}
+		
+		@Override
+		public void writeTo(TraceOutputWriter writer) throws IOException {
+			if (!chunk.isEmpty()) {
+				writeChunk();
+			}
+			spool.close();
+			InputStream in = new BufferedInputStream(new FileInputStream(spoolFile));
+			try {
+				byte[] buffer = new byte[8192];
+				int len;
+				while ((len = in.read(buffer)) > 0) {
+					writer.write(buffer, 0, len);
+				}
+			} finally {
+				in.close();
+			}
+		}
+		
+		@Override
+		public void close() throws IOException {
+			try {
+				spool.close();
+			} finally {
+				spoolFile.delete();
+			}
+		}
+	}
+	
+	protected void writeLocation(BreakPoint location) throws IOException {
 		writeString(location.getClassCanonicalName()); // ClassCanonicalName
 		writeString(location.getMethodSign());
 		writeVarInt(location.getLineNumber());
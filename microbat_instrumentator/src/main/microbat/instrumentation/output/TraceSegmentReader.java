@@ -0,0 +1,110 @@
+package microbat.instrumentation.output;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import microbat.instrumentation.output.TraceSegmentWriter.SegmentIndex;
+import microbat.model.trace.Trace;
+import microbat.model.trace.TraceNode;
+
+/**
+ * Reads the steps of a segment file written by {@link TraceSegmentWriter} one
+ * by one in the execution order, only one segment is kept in memory at a time.
+ *
+ * The steps in place are read sequentially. A late step is skipped there and
+ * read with the other late steps of its segment from the offset of the segment
+ * when it is its turn.
+ */
+public class TraceSegmentReader {
+	private File segmentFile;
+	private SegmentIndex index;
+	private Trace trace;
+	private boolean withVariables;
+	private TraceOutputReader reader;
+	private LinkedList<TraceNode> currentSegment = new LinkedList<>();
+	private Map<Integer, TraceNode> lateSteps = new HashMap<>();
+	private int nextOrder = 1;
+
+	/**
+	 * @param trace
+	 *            the trace which the steps are created for, their locations are
+	 *            taken from its location registry.
+	 * @param withVariables
+	 *            whether to read the variables of the steps.
+	 */
+	public TraceSegmentReader(File segmentFile, SegmentIndex index, Trace trace, boolean withVariables)
+			throws IOException {
+		this.segmentFile = segmentFile;
+		this.index = index;
+		this.trace = trace;
+		this.withVariables = withVariables;
+		reader = new TraceOutputReader(new BufferedInputStream(new FileInputStream(segmentFile)));
+		reader.readSegmentFileHeader();
+	}
+
+	public boolean hasNext() {
+		return nextOrder <= index.getTotalSteps();
+	}
+
+	/**
+	 * @return the next step, its invocation parent is given as an order only.
+	 */
+	public TraceNode next() throws IOException {
+		int order = nextOrder++;
+		TraceNode step;
+		if (index.isLate(order)) {
+			step = lateSteps.remove(order);
+			if (step == null) {
+				readLateSteps(index.getSegmentOfLateStep(order));
+				step = lateSteps.remove(order);
+			}
+		} else {
+			step = nextStepInPlace();
+		}
+		if (step == null || step.getOrder() != order) {
+			throw new IOException("Missing step " + order + " in trace segment file " + segmentFile);
+		}
+		return step;
+	}
+
+	private TraceNode nextStepInPlace() throws IOException {
+		while (true) {
+			while (!currentSegment.isEmpty()) {
+				TraceNode step = currentSegment.removeFirst();
+				if (!index.isLate(step.getOrder())) {
+					return step;
+				}
+			}
+			List<TraceNode> steps = reader.readNextSegment(trace, withVariables);
+			if (steps == null) {
+				return null;
+			}
+			currentSegment.addAll(steps);
+		}
+	}
+
+	private void readLateSteps(int segmentIdx) throws IOException {
+		FileInputStream in = new FileInputStream(segmentFile);
+		try {
+			in.getChannel().position(index.getSegmentOffset(segmentIdx));
+			TraceOutputReader segmentReader = new TraceOutputReader(new BufferedInputStream(in));
+			for (TraceNode step : segmentReader.readNextSegment(trace, withVariables)) {
+				if (index.isLate(step.getOrder()) && step.getOrder() >= nextOrder - 1) {
+					lateSteps.put(step.getOrder(), step);
+				}
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	public void close() throws IOException {
+		reader.close();
+	}
+}
@@ -0,0 +1,229 @@
+package microbat.instrumentation.output;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import microbat.instrumentation.AgentLogger;
+import microbat.instrumentation.runtime.ExecutionTracer;
+import microbat.model.BreakPoint;
+import microbat.model.trace.TraceNode;
+import microbat.model.value.VarValue;
+
+/**
+ * Writes finished steps of a trace to an append-only segment file while the
+ * program is still running, so that the tracer only needs to keep a bounded
+ * window of steps in memory.
+ *
+ * The steps are serialized by a background thread, the tracer thread is only
+ * blocked if more than {@link #QUEUE_CAPACITY} segments are pending. All links
+ * between steps are stored as step orders, and every segment is encoded on its
+ * own so that it can be read without the ones before it.
+ *
+ * The steps of a segment are in the execution order, but a step kept in memory
+ * as a caller is written in a later segment than the steps after it. Such late
+ * steps are listed in the {@link SegmentIndex}, from which
+ * {@link TraceSegmentReader} reads all steps in the execution order.
+ *
+ * Format:
+ * HEADER VERSION
+ * (SEGMENT stepNum [step]* readVars writtenVars returnedVars)*
+ * END_OF_SEGMENTS threadName threadId totalSteps
+ */
+public class TraceSegmentWriter {
+	public static final String HEADER = "TraceSegments";
+	public static final int VERSION = 2;
+	public static final int END_OF_SEGMENTS = 0;
+	public static final int SEGMENT = 1;
+	private static final int QUEUE_CAPACITY = 4;
+	private static final List<TraceNode> EOF = new ArrayList<>(0);
+
+	private File segmentFile;
+	private FileOutputStream fileOut;
+	private OutputWriter writer;
+	private BlockingQueue<List<TraceNode>> pendingSegments = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+	private Thread writerThread;
+	private volatile IOException error;
+	private int totalSteps;
+	private VarValueEncoder varValueEncoder = new VarValueEncoder();
+	/* only accessed by the writer thread until it is joined */
+	private SegmentIndex index = new SegmentIndex();
+	private int maxWrittenOrder;
+
+	public TraceSegmentWriter(File segmentFile) throws IOException {
+		this.segmentFile = segmentFile;
+		fileOut = new FileOutputStream(segmentFile, false);
+		writer = new OutputWriter(new BufferedOutputStream(fileOut));
+		writer.writeString(HEADER);
+		writer.writeVarInt(VERSION);
+		writerThread = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				/* the writer thread must never be recorded */
+				ExecutionTracer.stopRecordingCurrendThread();
+				writeSegments();
+			}
+		}, "microbat-trace-segment-writer");
+		writerThread.setDaemon(true);
+		writerThread.start();
+	}
+
+	/**
+	 * steps must not be modified by the tracer after they are appended.
+	 */
+	public void append(List<TraceNode> steps) throws IOException {
+		if (steps.isEmpty()) {
+			return;
+		}
+		checkError();
+		totalSteps += steps.size();
+		try {
+			pendingSegments.put(steps);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for trace segment writer", e);
+		}
+	}
+
+	public void close(String threadName, long threadId) throws IOException {
+		try {
+			pendingSegments.put(EOF);
+			writerThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for trace segment writer", e);
+		}
+		try {
+			checkError();
+			writer.writeVarInt(END_OF_SEGMENTS);
+			writer.writeString(threadName);
+			writer.writeLong(threadId);
+			writer.writeVarInt(totalSteps);
+			writer.flush();
+		} finally {
+			writer.close();
+		}
+		index.totalSteps = totalSteps;
+		AgentLogger.debug("Trace segments saved to " + segmentFile.getAbsolutePath() + ", steps: " + totalSteps);
+	}
+
+	private void writeSegments() {
+		try {
+			while (true) {
+				List<TraceNode> steps = pendingSegments.take();
+				if (steps == EOF) {
+					return;
+				}
+				writeSegment(steps);
+			}
+		} catch (InterruptedException e) {
+			error = new IOException("Trace segment writer is interrupted", e);
+		} catch (IOException e) {
+			error = e;
+		} catch (Throwable t) {
+			error = new IOException(t);
+		}
+		/* keep draining so that the tracer is never blocked on a dead writer */
+		while (true) {
+			try {
+				if (pendingSegments.take() == EOF) {
+					return;
+				}
+			} catch (InterruptedException e) {
+				return;
+			}
+		}
+	}
+
+	private void writeSegment(List<TraceNode> steps) throws IOException {
+		writer.flush();
+		int segmentIdx = index.segmentOffsets.size();
+		index.segmentOffsets.add(fileOut.getChannel().position());
+		writer.writeVarInt(SEGMENT);
+		writer.writeVarInt(steps.size());
+		List<Collection<VarValue>> readVars = new ArrayList<>(steps.size());
+		List<Collection<VarValue>> writtenVars = new ArrayList<>(steps.size());
+		List<Collection<VarValue>> returnedVars = new ArrayList<>(steps.size());
+		for (TraceNode step : steps) {
+			if (step.getOrder() < maxWrittenOrder) {
+				index.lateSteps.put(step.getOrder(), segmentIdx);
+			} else {
+				maxWrittenOrder = step.getOrder();
+			}
+			writer.writeVarInt(step.getOrder());
+			BreakPoint location = step.getBreakPoint();
+			writer.writeString(location.getClassCanonicalName());
+			writer.writeString(location.getDeclaringCompilationUnitName());
+			writer.writeString(location.getMethodSign());
+			writer.writeVarInt(location.getLineNumber());
+			writer.writeLong(step.getTimestamp());
+			/* the parent may be spilled already */
+			writer.writeVarInt(step.getInvocationParentOrder());
+			writer.writeBoolean(step.isException());
+			writer.writeString(step.getBytecode());
+			readVars.add(step.getReadVariables());
+			writtenVars.add(step.getWrittenVariables());
+			returnedVars.add(step.getReturnedVariables());
+		}
+		/* values are only shared within a segment, older values must not be kept alive */
+		varValueEncoder.reset();
+		writer.writeByteArr(varValueEncoder.encode(readVars));
+		writer.writeByteArr(varValueEncoder.encode(writtenVars));
+		writer.writeByteArr(varValueEncoder.encode(returnedVars));
+	}
+
+	private void checkError() throws IOException {
+		if (error != null) {
+			throw error;
+		}
+	}
+
+	public File getSegmentFile() {
+		return segmentFile;
+	}
+
+	/**
+	 * available after the writer is closed.
+	 */
+	public SegmentIndex getIndex() {
+		return index;
+	}
+
+	/**
+	 * Where the segments start in the segment file, and which segment holds
+	 * each late step (i.e., a step written after a step of a higher order).
+	 */
+	public static class SegmentIndex {
+		private List<Long> segmentOffsets = new ArrayList<>();
+		private Map<Integer, Integer> lateSteps = new HashMap<>();
+		private int totalSteps;
+
+		public long getSegmentOffset(int segmentIdx) {
+			return segmentOffsets.get(segmentIdx);
+		}
+
+		public boolean isLate(int order) {
+			return lateSteps.containsKey(order);
+		}
+
+		/**
+		 * @return the index of the segment holding the late step.
+		 */
+		public int getSegmentOfLateStep(int order) {
+			return lateSteps.get(order);
+		}
+
+		public int getTotalSteps() {
+			return totalSteps;
+		}
+	}
+}
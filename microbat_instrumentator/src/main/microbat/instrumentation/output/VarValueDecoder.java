@@ -0,0 +1,204 @@
+package microbat.instrumentation.output;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import microbat.model.value.ArrayValue;
+import microbat.model.value.PrimitiveValue;
+import microbat.model.value.ReferenceValue;
+import microbat.model.value.StringValue;
+import microbat.model.value.VarValue;
+import microbat.model.value.VirtualValue;
+import microbat.model.variable.ArrayElementVar;
+import microbat.model.variable.ConstantVar;
+import microbat.model.variable.FieldVar;
+import microbat.model.variable.LocalVar;
+import microbat.model.variable.Variable;
+import microbat.model.variable.VirtualVar;
+
+/**
+ * Decoder of chunks produced by {@link VarValueEncoder}, chunks must be
+ * decoded in the order they are encoded. Chunks written by java serialization
+ * (older trace files) are still accepted.
+ */
+public class VarValueDecoder {
+	private List<String> dictionary = new ArrayList<>();
+	private List<VarValue> decodedValues = new ArrayList<>();
+	private OutputReader reader;
+
+	public static boolean isEncoded(byte[] bytes) {
+		return bytes != null && bytes.length > 0 && bytes[0] == VarValueEncoder.CODEC_MAGIC;
+	}
+
+	@SuppressWarnings("unchecked")
+	public List<List<VarValue>> decode(byte[] bytes) throws IOException {
+		if (bytes == null || bytes.length == 0) {
+			return new ArrayList<>(0);
+		}
+		if (!isEncoded(bytes)) {
+			try {
+				return (List<List<VarValue>>) ByteConverter.convertFromBytes(bytes);
+			} catch (ClassNotFoundException e) {
+				throw new IOException(e);
+			}
+		}
+		reader = new OutputReader(new ByteArrayInputStream(bytes));
+		try {
+			reader.readByte(); // CODEC_MAGIC
+			int chunkFlags = reader.readByte();
+			if ((chunkFlags & VarValueEncoder.CHUNK_VALUES_CLEARED) != 0) {
+				decodedValues.clear();
+			}
+			if ((chunkFlags & VarValueEncoder.CHUNK_DICTIONARY_CLEARED) != 0) {
+				dictionary.clear();
+			}
+			int size = reader.readVarInt();
+			List<List<VarValue>> stepVars = new ArrayList<>(size);
+			for (int i = 0; i < size; i++) {
+				int varsSize = reader.readVarInt();
+				List<VarValue> vars = new ArrayList<>(varsSize);
+				for (int j = 0; j < varsSize; j++) {
+					vars.add(readValue());
+				}
+				stepVars.add(vars);
+			}
+			return stepVars;
+		} finally {
+			reader.close();
+			reader = null;
+		}
+	}
+
+	private VarValue readValue() throws IOException {
+		int tag = reader.readVarInt();
+		if (tag == VarValueEncoder.VALUE_NULL) {
+			return null;
+		}
+		if (tag == VarValueEncoder.VALUE_BACK_REF) {
+			return decodedValues.get(reader.readVarInt());
+		}
+		int flags = reader.readByte();
+		boolean isRoot = (flags & VarValueEncoder.FLAG_ROOT) != 0;
+		boolean isNull = (flags & VarValueEncoder.FLAG_NULL) != 0;
+		Variable var = readVariable();
+		String stringValue = ((flags & VarValueEncoder.FLAG_NO_STRING_VALUE) != 0) ? null : readText();
+		VarValue value;
+		switch (tag) {
+		case VarValueEncoder.VALUE_PRIMITIVE:
+			value = new PrimitiveValue(stringValue, isRoot, var);
+			break;
+		case VarValueEncoder.VALUE_STRING:
+			value = new StringValue(stringValue, isRoot, var);
+			break;
+		case VarValueEncoder.VALUE_REFERENCE:
+			ReferenceValue refValue = new ReferenceValue(isNull, reader.readVarLong(), isRoot, var);
+			refValue.setNull(isNull);
+			value = refValue;
+			break;
+		case VarValueEncoder.VALUE_ARRAY:
+			ArrayValue arrValue = new ArrayValue(isNull, isRoot, var);
+			arrValue.setNull(isNull);
+			arrValue.setUniqueID(reader.readVarLong());
+			arrValue.setComponentType(readDictString());
+			value = arrValue;
+			break;
+		case VarValueEncoder.VALUE_VIRTUAL:
+			value = new VirtualValue(isRoot, var);
+			break;
+		default:
+			throw new IOException("Unknown value tag: " + tag);
+		}
+		value.setStringValue(stringValue);
+		/* register before reading children and parents, they may refer back to this value */
+		decodedValues.add(value);
+		List<VarValue> children = readValues();
+		if (children != null) {
+			value.setChildren(children);
+		}
+		List<VarValue> parents = readValues();
+		if (parents != null) {
+			value.setParents(parents);
+		}
+		return value;
+	}
+
+	private List<VarValue> readValues() throws IOException {
+		int size = reader.readVarInt();
+		if (size == 0) {
+			return null;
+		}
+		List<VarValue> values = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			values.add(readValue());
+		}
+		return values;
+	}
+
+	private Variable readVariable() throws IOException {
+		int tag = reader.readVarInt();
+		if (tag == 0) {
+			return null;
+		}
+		String name = readDictString();
+		String type = readDictString();
+		String rtType = readDictString();
+		String varID = readDictString();
+		String aliasVarID = readDictString();
+		Variable var;
+		switch (tag) {
+		case VarValueEncoder.VAR_LOCAL:
+			int lineNumber = reader.readVarInt();
+			LocalVar localVar = new LocalVar(name, type, readDictString(), lineNumber);
+			localVar.setByteCodeIndex(reader.readVarInt());
+			localVar.setParameter(reader.readBoolean());
+			var = localVar;
+			break;
+		case VarValueEncoder.VAR_FIELD:
+			boolean isStatic = reader.readBoolean();
+			var = new FieldVar(isStatic, name, type, readDictString());
+			break;
+		case VarValueEncoder.VAR_ARRAY_ELEMENT:
+			var = new ArrayElementVar(name, type, varID);
+			break;
+		case VarValueEncoder.VAR_VIRTUAL:
+			var = new VirtualVar(name, type);
+			break;
+		case VarValueEncoder.VAR_CONSTANT:
+			ConstantVar constVar = new ConstantVar(name, type);
+			constVar.setValue(readDictString());
+			var = constVar;
+			break;
+		default:
+			throw new IOException("Unknown variable tag: " + tag);
+		}
+		var.setRtType(rtType);
+		var.setVarID(varID);
+		var.setAliasVarID(aliasVarID);
+		return var;
+	}
+
+	private String readDictString() throws IOException {
+		int ref = reader.readVarInt();
+		if (ref == VarValueEncoder.STR_NULL) {
+			return null;
+		}
+		if (ref == VarValueEncoder.STR_NEW) {
+			String str = readText();
+			dictionary.add(str);
+			return str;
+		}
+		return dictionary.get(ref - VarValueEncoder.STR_REF_OFFSET);
+	}
+
+	private String readText() throws IOException {
+		int len = reader.readVarInt();
+		if (len < 0) {
+			return null;
+		}
+		byte[] bytes = new byte[len];
+		reader.readFully(bytes);
+		return new String(bytes, VarValueEncoder.UTF8);
+	}
+}
@@ -0,0 +1,274 @@
+package microbat.instrumentation.output;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import microbat.model.value.ArrayValue;
+import microbat.model.value.PrimitiveValue;
+import microbat.model.value.ReferenceValue;
+import microbat.model.value.StringValue;
+import microbat.model.value.VarValue;
+import microbat.model.value.VirtualValue;
+import microbat.model.variable.ArrayElementVar;
+import microbat.model.variable.ConstantVar;
+import microbat.model.variable.FieldVar;
+import microbat.model.variable.LocalVar;
+import microbat.model.variable.Variable;
+import microbat.model.variable.VirtualVar;
+
+/**
+ * A compact binary codec for {@link VarValue} to replace java serialization
+ * ({@link ByteConverter}) when writing the variables of trace steps.
+ *
+ * One encoder is used for a whole trace, it keeps
+ * <ul>
+ * <li>a string dictionary for var ids, types, names and class names: a string
+ * is written once, the following occurrences are written as its index.</li>
+ * <li>the already encoded values: a value shared by several parents/steps is
+ * written once, the following occurrences are written as back references.</li>
+ * </ul>
+ * Therefore chunks produced by an encoder must be decoded in the same order by
+ * a single {@link VarValueDecoder}.
+ */
+public class VarValueEncoder {
+	/* ObjectOutputStream always starts with 0xACED, so a chunk encoded by this codec can be told apart */
+	public static final byte CODEC_MAGIC = 0x4D;
+	static final Charset UTF8 = Charset.forName("UTF-8");
+
+	static final int VALUE_NULL = 0;
+	static final int VALUE_BACK_REF = 1;
+	static final int VALUE_PRIMITIVE = 2;
+	static final int VALUE_STRING = 3;
+	static final int VALUE_REFERENCE = 4;
+	static final int VALUE_ARRAY = 5;
+	static final int VALUE_VIRTUAL = 6;
+
+	static final int VAR_LOCAL = 1;
+	static final int VAR_FIELD = 2;
+	static final int VAR_ARRAY_ELEMENT = 3;
+	static final int VAR_VIRTUAL = 4;
+	static final int VAR_CONSTANT = 5;
+
+	static final int FLAG_ROOT = 1;
+	static final int FLAG_NULL = 2;
+	/* the string value is missing, it is not written */
+	static final int FLAG_NO_STRING_VALUE = 4;
+
+	/* chunk header flags, a chunk written with the former boolean header reads as VALUES_CLEARED or 0 */
+	static final int CHUNK_VALUES_CLEARED = 1;
+	static final int CHUNK_DICTIONARY_CLEARED = 2;
+
+	/*
+	 * beyond this size the dictionary is dropped with the value references, ids
+	 * which are unique per step (e.g., return values) would otherwise keep it growing.
+	 */
+	static final int MAX_DICTIONARY_SIZE = 4096;
+
+	/* dictionary reference: 0 = null string, 1 = new string which follows, n = the (n-2)th string */
+	static final int STR_NULL = 0;
+	static final int STR_NEW = 1;
+	static final int STR_REF_OFFSET = 2;
+
+	private Map<String, Integer> dictionary = new HashMap<>();
+	private Map<VarValue, Integer> encodedValues = new IdentityHashMap<>();
+	private OutputWriter writer;
+	private ByteArrayOutputStream buffer;
+	private boolean valueReferencesCleared = false;
+	private boolean dictionaryCleared = false;
+
+	public VarValueEncoder() {
+		buffer = new ByteArrayOutputStream();
+		writer = new OutputWriter(buffer);
+	}
+
+	/**
+	 * encode the variables of a list of steps as one chunk.
+	 */
+	public byte[] encode(List<? extends Collection<VarValue>> stepVars) throws IOException {
+		buffer.reset();
+		writer.writeByte(CODEC_MAGIC);
+		int chunkFlags = (valueReferencesCleared ? CHUNK_VALUES_CLEARED : 0)
+				| (dictionaryCleared ? CHUNK_DICTIONARY_CLEARED : 0);
+		writer.writeByte(chunkFlags);
+		valueReferencesCleared = false;
+		dictionaryCleared = false;
+		writer.writeVarInt(stepVars.size());
+		for (Collection<VarValue> vars : stepVars) {
+			if (vars == null) {
+				writer.writeVarInt(0);
+				continue;
+			}
+			writer.writeVarInt(vars.size());
+			for (VarValue value : vars) {
+				writeValue(value);
+			}
+		}
+		writer.flush();
+		return buffer.toByteArray();
+	}
+
+	/**
+	 * forget the values encoded so far, so that the encoder does not keep them
+	 * alive (e.g., when spilling a trace while recording). The values of the
+	 * following chunks can no longer refer back to them. The dictionary is
+	 * forgotten as well once it exceeds {@link #MAX_DICTIONARY_SIZE}.
+	 */
+	public void clearValueReferences() {
+		encodedValues.clear();
+		valueReferencesCleared = true;
+		if (dictionary.size() > MAX_DICTIONARY_SIZE) {
+			dictionary.clear();
+			dictionaryCleared = true;
+		}
+	}
+
+	/**
+	 * forget the dictionary and the encoded values, the next chunk tells the
+	 * decoder to forget them as well. Unlike {@link #reset()}, the chunks can then
+	 * be decoded by a decoder which has decoded the chunks of another encoder.
+	 */
+	public void clear() {
+		dictionary.clear();
+		encodedValues.clear();
+		valueReferencesCleared = true;
+		dictionaryCleared = true;
+	}
+
+	/**
+	 * start a new independent stream, i.e., forget the dictionary and the encoded
+	 * values. The following chunks must be decoded by a new {@link VarValueDecoder}.
+	 */
+	public void reset() {
+		dictionary.clear();
+		encodedValues.clear();
+		valueReferencesCleared = false;
+		dictionaryCleared = false;
+	}
+
+	private void writeValue(VarValue value) throws IOException {
+		if (value == null) {
+			writer.writeVarInt(VALUE_NULL);
+			return;
+		}
+		Integer idx = encodedValues.get(value);
+		if (idx != null) {
+			writer.writeVarInt(VALUE_BACK_REF);
+			writer.writeVarInt(idx);
+			return;
+		}
+		encodedValues.put(value, encodedValues.size());
+		int flags = value.isRoot() ? FLAG_ROOT : 0;
+		if (value instanceof ArrayValue) {
+			writer.writeVarInt(VALUE_ARRAY);
+		} else if (value instanceof ReferenceValue) {
+			writer.writeVarInt(VALUE_REFERENCE);
+		} else if (value instanceof StringValue) {
+			writer.writeVarInt(VALUE_STRING);
+		} else if (value instanceof PrimitiveValue) {
+			writer.writeVarInt(VALUE_PRIMITIVE);
+		} else if (value instanceof VirtualValue) {
+			writer.writeVarInt(VALUE_VIRTUAL);
+		} else {
+			throw new IOException("Unsupported value type: " + value.getClass().getName());
+		}
+		if (value instanceof ReferenceValue && ((ReferenceValue) value).isNull()) {
+			flags |= FLAG_NULL;
+		}
+		boolean hasStringValue = value.hasStringValue();
+		if (!hasStringValue) {
+			flags |= FLAG_NO_STRING_VALUE;
+		}
+		writer.writeByte(flags);
+		writeVariable(value.getVariable());
+		if (hasStringValue) {
+			writeText(value.getStringValue());
+		}
+		if (value instanceof ReferenceValue) {
+			writer.writeVarLong(((ReferenceValue) value).getUniqueID());
+		}
+		if (value instanceof ArrayValue) {
+			writeDictString(((ArrayValue) value).getComponentType());
+		}
+		writeValues(value.getChildren());
+		writeValues(value.getParents());
+	}
+
+	private void writeValues(List<VarValue> values) throws IOException {
+		writer.writeVarInt(values.size());
+		for (VarValue value : values) {
+			writeValue(value);
+		}
+	}
+
+	private void writeVariable(Variable var) throws IOException {
+		if (var == null) {
+			writer.writeVarInt(0);
+			return;
+		}
+		if (var instanceof LocalVar) {
+			writer.writeVarInt(VAR_LOCAL);
+		} else if (var instanceof FieldVar) {
+			writer.writeVarInt(VAR_FIELD);
+		} else if (var instanceof ArrayElementVar) {
+			writer.writeVarInt(VAR_ARRAY_ELEMENT);
+		} else if (var instanceof VirtualVar) {
+			writer.writeVarInt(VAR_VIRTUAL);
+		} else if (var instanceof ConstantVar) {
+			writer.writeVarInt(VAR_CONSTANT);
+		} else {
+			throw new IOException("Unsupported variable type: " + var.getClass().getName());
+		}
+		writeDictString(var.getName());
+		writeDictString(var.getType());
+		writeDictString(var.getRuntimeType());
+		writeDictString(var.getVarID());
+		writeDictString(var.getAliasVarID());
+		if (var instanceof LocalVar) {
+			LocalVar localVar = (LocalVar) var;
+			writer.writeVarInt(localVar.getLineNumber());
+			writeDictString(localVar.getLocationClass());
+			writer.writeVarInt(localVar.getByteCodeIndex());
+			writer.writeBoolean(localVar.isParameter());
+		} else if (var instanceof FieldVar) {
+			FieldVar fieldVar = (FieldVar) var;
+			writer.writeBoolean(fieldVar.isStatic());
+			writeDictString(fieldVar.getDeclaringType());
+		} else if (var instanceof ConstantVar) {
+			writeDictString(((ConstantVar) var).getValue());
+		}
+	}
+
+	private void writeDictString(String str) throws IOException {
+		if (str == null) {
+			writer.writeVarInt(STR_NULL);
+			return;
+		}
+		Integer idx = dictionary.get(str);
+		if (idx != null) {
+			writer.writeVarInt(idx + STR_REF_OFFSET);
+			return;
+		}
+		dictionary.put(str, dictionary.size());
+		writer.writeVarInt(STR_NEW);
+		writeText(str);
+	}
+
+	/**
+	 * -1 for null, otherwise the length of utf-8 bytes followed by the bytes.
+	 */
+	private void writeText(String str) throws IOException {
+		if (str == null) {
+			writer.writeVarInt(-1);
+			return;
+		}
+		byte[] bytes = str.getBytes(UTF8);
+		writer.writeVarInt(bytes.length);
+		writer.write(bytes, 0, bytes.length);
+	}
+}
@@ -1,5 +1,6 @@
 package microbat.instrumentation.output.tcp;
 
+import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.net.Socket;
 import java.net.UnknownHostException;
@@ -8,6 +9,8 @@ import microbat.instrumentation.output.TraceOutputWriter;
 import sav.common.core.SavRtException;
 
 public class TcpConnector {
+	/* time to wait for the reader to acknowledge the end of the trace stream */
+	public static final int ACK_TIMEOUT = 600000;
 	private int tcpPort;
 	private TraceOutputWriter inputWriter;
 	private Socket server;
@@ -17,6 +20,33 @@ public class TcpConnector {
 	}
 
 	public TraceOutputWriter connect() throws Exception {
+		openSocket();
+		try {
+			inputWriter = new TraceOutputWriter(server.getOutputStream());
+		} catch (IOException e) {
+			throw new SavRtException(e);
+		}
+		return inputWriter;
+	}
+
+	/**
+	 * the writer blocks when the reader falls behind (the socket buffer is
+	 * full), so the agent never holds more than one batch of encoded steps.
+	 */
+	public TraceStreamWriter connectStream() throws Exception {
+		openSocket();
+		try {
+			server.setSoTimeout(ACK_TIMEOUT);
+			TraceStreamWriter streamWriter = new TraceStreamWriter(new BufferedOutputStream(server.getOutputStream()),
+					server.getInputStream());
+			inputWriter = streamWriter;
+			return streamWriter;
+		} catch (IOException e) {
+			throw new SavRtException(e);
+		}
+	}
+
+	private void openSocket() {
 		while (true) {
 			try {
 				server = new Socket("localhost", tcpPort);
@@ -28,12 +58,6 @@ public class TcpConnector {
 				throw new SavRtException(e);
 			}
 		}
-		try {
-			inputWriter = new TraceOutputWriter(server.getOutputStream());
-		} catch (IOException e) {
-			throw new SavRtException(e);
-		}
-		return inputWriter;
 	}
 
 	public void close() {
@@ -0,0 +1,176 @@
+package microbat.instrumentation.output.tcp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import microbat.instrumentation.output.TraceOutputReader;
+import microbat.instrumentation.output.VarValueDecoder;
+import microbat.model.BreakPoint;
+import microbat.model.trace.Trace;
+import microbat.model.trace.TraceNode;
+import microbat.model.value.VarValue;
+
+/**
+ * Reads the traces streamed by {@link TraceStreamWriter}. Steps are linked as
+ * soon as their batch is read, so that a partially received trace can already be
+ * inspected by the {@link ProgressListener}.
+ */
+public class TraceStreamReader extends TraceOutputReader {
+	private OutputStream ackOut;
+	private String programMsg;
+
+	public TraceStreamReader(InputStream in, OutputStream ackOut) {
+		super(in);
+		this.ackOut = ackOut;
+	}
+
+	public String readHeader() throws IOException {
+		String header = readString();
+		if (!TraceStreamWriter.HEADER.equals(header)) {
+			throw new IOException("Invalid trace stream, header: " + header);
+		}
+		int version = readVarInt();
+		if (version != TraceStreamWriter.VERSION) {
+			throw new IOException("Unsupported trace stream version: " + version);
+		}
+		programMsg = readString();
+		return programMsg;
+	}
+
+	/**
+	 * read all traces until the end of the stream, and acknowledge it to the
+	 * writer.
+	 */
+	public List<Trace> readTraces(ProgressListener listener) throws IOException {
+		if (programMsg == null) {
+			readHeader();
+		}
+		List<Trace> traces = new ArrayList<>();
+		int frame;
+		while ((frame = readVarInt()) == TraceStreamWriter.TRACE_START) {
+			traces.add(readStreamedTrace(listener));
+		}
+		if (frame != TraceStreamWriter.END_OF_STREAM) {
+			throw new IOException("Unexpected frame in trace stream: " + frame);
+		}
+		int traceNum = readVarInt();
+		if (traceNum != traces.size()) {
+			throw new IOException(
+					String.format("Incomplete trace stream, expect %d traces, read %d", traceNum, traces.size()));
+		}
+		ackOut.write(TraceStreamWriter.ACK);
+		ackOut.flush();
+		return traces;
+	}
+
+	private Trace readStreamedTrace(ProgressListener listener) throws IOException {
+		Trace trace = new Trace(null);
+		trace.setMain(readBoolean());
+		trace.setThreadName(readString());
+		trace.setThreadId(readLong());
+		trace.setIncludedLibraryClasses(readFilterInfo());
+		trace.setExcludedLibraryClasses(readFilterInfo());
+		int totalSteps = readVarInt();
+		List<TraceNode> allSteps = new ArrayList<>(totalSteps);
+		trace.setExecutionList(allSteps);
+		List<BreakPoint> locations = new ArrayList<>();
+		VarValueDecoder decoder = new VarValueDecoder();
+		int frame;
+		while ((frame = readVarInt()) == TraceStreamWriter.STEPS) {
+			readSteps(trace, allSteps, locations, decoder);
+			if (listener != null) {
+				listener.onProgress(trace, allSteps.size(), totalSteps);
+			}
+		}
+		if (frame != TraceStreamWriter.TRACE_END) {
+			throw new IOException("Unexpected frame in trace stream: " + frame);
+		}
+		if (allSteps.size() != totalSteps) {
+			throw new IOException(String.format("Incomplete trace of thread %s, expect %d steps, read %d",
+					trace.getThreadName(), totalSteps, allSteps.size()));
+		}
+		return trace;
+	}
+
+	private void readSteps(Trace trace, List<TraceNode> allSteps, List<BreakPoint> locations,
+			VarValueDecoder decoder) throws IOException {
+		int size = readVarInt();
+		List<TraceNode> steps = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			int order = readVarInt();
+			if (order != allSteps.size() + 1) {
+				throw new IOException(String.format("Unexpected step order %d, expect %d", order, allSteps.size() + 1));
+			}
+			TraceNode step = new TraceNode(readStepLocation(locations), null, order, trace, null);
+			step.setTimestamp(readLong());
+			TraceNode controlDominator = readNode(allSteps);
+			step.setControlDominator(controlDominator);
+			if (controlDominator != null) {
+				controlDominator.addControlDominatee(step);
+			}
+			TraceNode stepOverPrevious = readNode(allSteps);
+			step.setStepOverPrevious(stepOverPrevious);
+			if (stepOverPrevious != null) {
+				stepOverPrevious.setStepOverNext(step);
+			}
+			TraceNode invocationParent = readNode(allSteps);
+			step.setInvocationParent(invocationParent);
+			if (invocationParent != null) {
+				invocationParent.addInvocationChild(step);
+			}
+			TraceNode loopParent = readNode(allSteps);
+			step.setLoopParent(loopParent);
+			if (loopParent != null) {
+				loopParent.addLoopChild(step);
+			}
+			step.setException(readBoolean());
+			step.setBytecode(readString());
+			if (!allSteps.isEmpty()) {
+				TraceNode prev = allSteps.get(allSteps.size() - 1);
+				prev.setStepInNext(step);
+				step.setStepInPrevious(prev);
+			}
+			allSteps.add(step);
+			steps.add(step);
+		}
+		List<List<VarValue>> readVars = decoder.decode(readByteArray());
+		List<List<VarValue>> writtenVars = decoder.decode(readByteArray());
+		for (int i = 0; i < size; i++) {
+			steps.get(i).setReadVariables(readVars.get(i));
+			steps.get(i).setWrittenVariables(writtenVars.get(i));
+		}
+	}
+
+	private BreakPoint readStepLocation(List<BreakPoint> locations) throws IOException {
+		int idx = readVarInt();
+		if (idx != TraceStreamWriter.NEW_LOCATION) {
+			return locations.get(idx - 1);
+		}
+		String declaringCompilationUnitName = readString();
+		BreakPoint location = readLocation(declaringCompilationUnitName);
+		locations.add(location);
+		return location;
+	}
+
+	private TraceNode readNode(List<TraceNode> allSteps) throws IOException {
+		int order = readVarInt();
+		if (order <= 0) {
+			return null;
+		}
+		return allSteps.get(order - 1);
+	}
+
+	public String getProgramMsg() {
+		return programMsg;
+	}
+
+	public static interface ProgressListener {
+		/**
+		 * called after each batch of steps, the trace contains all steps read so far.
+		 */
+		void onProgress(Trace trace, int readSteps, int totalSteps);
+	}
+}
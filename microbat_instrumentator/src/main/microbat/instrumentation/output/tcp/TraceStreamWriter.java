@@ -0,0 +1,209 @@
+package microbat.instrumentation.output.tcp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import microbat.instrumentation.output.TraceOutputWriter;
+import microbat.instrumentation.output.VarValueEncoder;
+import microbat.model.BreakPoint;
+import microbat.model.LocationRegistry;
+import microbat.model.trace.StepLinks;
+import microbat.model.trace.Trace;
+import microbat.model.trace.TraceNode;
+import microbat.model.trace.TraceStepSource.StepVisitor;
+import microbat.model.value.VarValue;
+
+/**
+ * Streams traces to the IDE as a sequence of frames, so that the IDE can build
+ * the traces incrementally (see {@link TraceStreamReader}) instead of waiting for
+ * a single dump of all traces.
+ *
+ * Steps are sent in batches of {@link #batchSize}, every link of a step refers to
+ * an earlier step so that the reader can resolve it as soon as the step is read.
+ * A location is written in full the first time it is used in a trace, and as an
+ * index afterwards (tracked by the ids of the location registry of the trace).
+ *
+ * Format:
+ * HEADER VERSION programMsg
+ * (TRACE_START isMain threadName threadId includes excludes totalSteps
+ * (STEPS stepNum [step]* readVars writtenVars)* TRACE_END)*
+ * END_OF_STREAM traceNum
+ *
+ * The reader answers END_OF_STREAM with {@link #ACK}, only after that the
+ * connection can be closed.
+ */
+public class TraceStreamWriter extends TraceOutputWriter {
+	public static final String HEADER = "TraceStream";
+	public static final int VERSION = 1;
+	public static final int TRACE_START = 1;
+	public static final int STEPS = 2;
+	public static final int TRACE_END = 3;
+	public static final int END_OF_STREAM = 4;
+	public static final int ACK = 0x06;
+	public static final int DEFAULT_BATCH_SIZE = 1000;
+	static final int NEW_LOCATION = 0;
+
+	private InputStream ackIn;
+	private int batchSize;
+	private int traceNum;
+	private LocationRegistry locationRegistry;
+	/* stream index + 1 of the locations already sent, by location id */
+	private int[] sentLocations;
+	private int sentLocationNum;
+	private VarValueEncoder varValueEncoder;
+
+	public TraceStreamWriter(OutputStream out, InputStream ackIn) {
+		this(out, ackIn, DEFAULT_BATCH_SIZE);
+	}
+
+	public TraceStreamWriter(OutputStream out, InputStream ackIn, int batchSize) {
+		super(out);
+		this.ackIn = ackIn;
+		this.batchSize = Math.max(1, batchSize);
+	}
+
+	public void writeHeader(String programMsg) throws IOException {
+		writeString(HEADER);
+		writeVarInt(VERSION);
+		writeString(programMsg);
+		flush();
+	}
+
+	public void writeTrace(Trace trace) throws IOException {
+		writeVarInt(TRACE_START);
+		writeBoolean(trace.isMain());
+		writeString(trace.getThreadName());
+		writeLong(trace.getThreadId());
+		writeFilterInfo(trace.getIncludedLibraryClasses(), true);
+		writeFilterInfo(trace.getExcludedLibraryClasses(), false);
+		writeVarInt(trace.size());
+		locationRegistry = trace.getLocationRegistry();
+		sentLocations = new int[locationRegistry.size()];
+		sentLocationNum = 0;
+		varValueEncoder = new VarValueEncoder();
+		final StepBatch batch = new StepBatch(trace.getStepSource() != null);
+		trace.visitSteps(new StepVisitor() {
+
+			@Override
+			public void visit(TraceNode step, StepLinks links) throws IOException {
+				batch.add(step, links);
+				if (batch.size() == batchSize) {
+					batch.write();
+				}
+			}
+		});
+		batch.write();
+		writeVarInt(TRACE_END);
+		flush();
+		traceNum++;
+	}
+
+	/**
+	 * The steps of a batch with the orders of their links, which are only valid
+	 * while the step is visited.
+	 */
+	private class StepBatch {
+		private List<TraceNode> steps = new ArrayList<>();
+		private List<int[]> links = new ArrayList<>();
+		private boolean releaseValues;
+
+		/**
+		 * @param releaseValues
+		 *            whether the encoder should forget the values of a batch once
+		 *            it is written, for the steps which are not kept in memory.
+		 */
+		StepBatch(boolean releaseValues) {
+			this.releaseValues = releaseValues;
+		}
+
+		public void add(TraceNode step, StepLinks stepLinks) {
+			steps.add(step);
+			links.add(new int[] { stepLinks.getControlDominator(), stepLinks.getStepOverPrevious(),
+					stepLinks.getInvocationParent(), stepLinks.getLoopParent() });
+		}
+
+		public int size() {
+			return steps.size();
+		}
+
+		public void write() throws IOException {
+			if (steps.isEmpty()) {
+				return;
+			}
+			writeSteps(steps, links);
+			if (releaseValues) {
+				varValueEncoder.clearValueReferences();
+			}
+			steps.clear();
+			links.clear();
+			/* let the reader build and report the steps received so far */
+			flush();
+		}
+	}
+
+	private void writeSteps(List<TraceNode> steps, List<int[]> links) throws IOException {
+		writeVarInt(STEPS);
+		writeVarInt(steps.size());
+		List<Collection<VarValue>> readVars = new ArrayList<>(steps.size());
+		List<Collection<VarValue>> writtenVars = new ArrayList<>(steps.size());
+		for (int i = 0; i < steps.size(); i++) {
+			TraceNode step = steps.get(i);
+			int[] stepLinks = links.get(i);
+			writeVarInt(step.getOrder());
+			writeStepLocation(step.getBreakPoint());
+			writeLong(step.getTimestamp());
+			for (int link : stepLinks) {
+				writeNodeOrder(link);
+			}
+			writeBoolean(step.isException());
+			writeString(step.getBytecode());
+			readVars.add(step.getReadVariables());
+			writtenVars.add(step.getWrittenVariables());
+		}
+		writeByteArr(varValueEncoder.encode(readVars));
+		writeByteArr(varValueEncoder.encode(writtenVars));
+	}
+
+	private void writeStepLocation(BreakPoint location) throws IOException {
+		int locationId = locationRegistry.register(location).getLocationId();
+		if (locationId >= sentLocations.length) {
+			sentLocations = Arrays.copyOf(sentLocations, Math.max(sentLocations.length * 2, locationId + 1));
+		}
+		if (sentLocations[locationId] != NEW_LOCATION) {
+			writeVarInt(sentLocations[locationId]);
+			return;
+		}
+		sentLocations[locationId] = ++sentLocationNum;
+		writeVarInt(NEW_LOCATION);
+		writeString(location.getDeclaringCompilationUnitName());
+		writeLocation(location);
+	}
+
+	/**
+	 * @param order
+	 *            -1 if there is no such step.
+	 */
+	private void writeNodeOrder(int order) throws IOException {
+		/* orders start from 1, 0 takes one byte while -1 takes five */
+		writeVarInt(order < 0 ? 0 : order);
+	}
+
+	/**
+	 * end the stream and wait until the reader acknowledges that all traces are
+	 * received.
+	 */
+	public void writeEndOfStream() throws IOException {
+		writeVarInt(END_OF_STREAM);
+		writeVarInt(traceNum);
+		flush();
+		int ack = ackIn.read();
+		if (ack != ACK) {
+			throw new IOException("Trace stream is not acknowledged by the reader, response: " + ack);
+		}
+	}
+}
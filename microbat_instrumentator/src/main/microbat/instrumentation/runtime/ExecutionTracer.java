@@ -1,17 +1,20 @@
 package microbat.instrumentation.runtime;
 
+import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.Array;
-import java.lang.reflect.Field;
-import java.lang.reflect.Modifier;
 import java.lang.reflect.Proxy;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
-import org.apache.bcel.Repository;
 import org.apache.bcel.classfile.LocalVariable;
 import org.apache.bcel.classfile.LocalVariableTable;
 import org.apache.bcel.classfile.Method;
@@ -24,6 +27,8 @@ import microbat.instrumentation.Agent;
 import microbat.instrumentation.AgentConstants;
 import microbat.instrumentation.AgentLogger;
 import microbat.instrumentation.filter.GlobalFilterChecker;
+import microbat.instrumentation.output.TraceSegmentWriter;
+import microbat.instrumentation.runtime.FieldCapturePlan.CapturedField;
 import microbat.model.BreakPoint;
 import microbat.model.trace.Trace;
 import microbat.model.trace.TraceNode;
@@ -57,6 +62,12 @@ public class ExecutionTracer implements IExecutionTracer, ITracer {
 	public static int expectedSteps = Integer.MAX_VALUE;
 //	private static int tolerantExpectedSteps = expectedSteps;
 	public static boolean avoidProxyToString = false;
+	/**
+	 * the number of steps kept in memory when spilling the trace to disk while recording,
+	 * spilling is disabled if unspecified.
+	 */
+	public static int spillWindowSize = AgentConstants.UNSPECIFIED_INT_VALUE;
+	public static String spillFolder;
 	private long threadId;
 
 	private Trace trace;
@@ -67,6 +78,10 @@ public class ExecutionTracer implements IExecutionTracer, ITracer {
 	 * indicate whether the execution of the thread should be recorded 
 	 */
 	private TrackingDelegate trackingDelegate;
+	
+	private TraceSegmentWriter segmentWriter;
+	
+	private ToStringCapturePolicy toStringPolicy = new ToStringCapturePolicy();
 
 	public static void setExpectedSteps(int expectedSteps) {
 		if (expectedSteps != AgentConstants.UNSPECIFIED_INT_VALUE) {
@@ -75,6 +90,13 @@ public class ExecutionTracer implements IExecutionTracer, ITracer {
 		}
 	}
 
+	public static void setSpillWindow(int spillWindowSize, String spillFolder) {
+		if (spillWindowSize != AgentConstants.UNSPECIFIED_INT_VALUE) {
+			ExecutionTracer.spillWindowSize = Math.max(spillWindowSize, MIN_SPILL_WINDOW_SIZE);
+			ExecutionTracer.spillFolder = spillFolder;
+		}
+	}
+
 	public static void setStepLimit(int stepLimit) {
 		if (stepLimit != AgentConstants.UNSPECIFIED_INT_VALUE) {
 			ExecutionTracer.stepLimit = stepLimit;
@@ -180,7 +202,12 @@ public class ExecutionTracer implements IExecutionTracer, ITracer {
 			ReferenceValue refVal = new ReferenceValue(value == null, TraceUtils.getUniqueId(value), isRoot, var);
 			varValue = refVal;
 			// varValue.setStringValue(getStringValue(value, var.getType()));
-			varValue.setStringValue(getStringValue(value, null));
+			if (value != null && ToStringCapturePolicy.isDeferred()
+					&& !(avoidProxyToString && isProxyClass(value.getClass()))) {
+				varValue.setDeferredStringValue(toStringPolicy.defer(value));
+			} else {
+				varValue.setStringValue(getStringValue(value, null));
+			}
 			if (value != null) {
 				Class<?> objClass = value.getClass();
 				var.setRtType(objClass.getName());
@@ -188,24 +215,28 @@ public class ExecutionTracer implements IExecutionTracer, ITracer {
 				boolean isCollectionOrHashMap = HeuristicIgnoringFieldRule.isCollectionClass(objClass)
 						|| HeuristicIgnoringFieldRule.isHashMapClass(objClass);
 				if (needParseFields) {
-					List<Field> validFields = HeuristicIgnoringFieldRule.getValidFields(objClass, value);
-					for (Field field : validFields) {
-						field.setAccessible(true);
+					for (CapturedField field : FieldCapturePlan.getPlan(objClass).getFields()) {
 						try {
-							Object fieldValue = field.get(value);
-							Class<?> fieldType = field.getType();
-							String fieldTypeStr = fieldType.getName();
-							if (fieldType.isArray()) {
-								fieldTypeStr = SignatureUtils.signatureToName(fieldTypeStr);
-							}
-							if (fieldType.isEnum()) {
+							String fieldTypeStr = field.getTypeName();
+							if (field.isEnum()) {
 								if (fieldTypeStr.equals(var.getType())) {
 									continue;
 								}
 							}
+							if (field.isPrimitive()) {
+								/* the same as appendVarValue for a primitive value, without boxing it */
+								if (retrieveLayer > 0) {
+									FieldVar fieldVar = new FieldVar(field.isStatic(), field.getName(), fieldTypeStr,
+											field.getDeclaringClassName());
+									fieldVar.setVarID(TraceUtils.getFieldVarId(var.getVarID(), field.getName(), fieldTypeStr, null));
+									refVal.linkAchild(new PrimitiveValue(field.getPrimitiveString(value), false, fieldVar));
+								}
+								continue;
+							}
+							Object fieldValue = field.get(value);
 							if (fieldValue != null) {
-								FieldVar fieldVar = new FieldVar(Modifier.isStatic(field.getModifiers()), field.getName(), fieldTypeStr,
-										field.getDeclaringClass().getName());
+								FieldVar fieldVar = new FieldVar(field.isStatic(), field.getName(), fieldTypeStr,
+										field.getDeclaringClassName());
 								fieldVar.setVarID(TraceUtils.getFieldVarId(var.getVarID(), field.getName(), fieldTypeStr, fieldValue));
 								if (isCollectionOrHashMap
 										&& HeuristicIgnoringFieldRule.isCollectionOrMapElement(var.getRuntimeType(), field.getName())) {
@@ -227,8 +258,6 @@ public class ExecutionTracer implements IExecutionTracer, ITracer {
 		return varValue;
 	}
 
-	private static Set<Class<?>> stringValueBlackList = new HashSet<>();
-	
 	private String getStringValue(final Object obj, String type) {
 		try {
 			if (obj == null) {
@@ -264,18 +293,7 @@ public class ExecutionTracer implements IExecutionTracer, ITracer {
 				return obj.getClass().getName();
 			}
 
-			if(stringValueBlackList.contains(obj.getClass())) {
-				return "$unknown (estimated as too cost to have its value)";
-			}
-			
-			long t1 = System.currentTimeMillis();
-			String value = String.valueOf(obj);// obj.toString();
-			long t2 = System.currentTimeMillis();
-			if(t2-t1 > 500) {
-				stringValueBlackList.add(obj.getClass());
-			}
-			
-			return value;
+			return toStringPolicy.toString(obj, trace.size());
 		} catch (Throwable t) {
 			return null;
 		}
@@ -351,9 +369,17 @@ public class ExecutionTracer implements IExecutionTracer, ITracer {
 		trackingDelegate.track();
 	}
 
-	private static Map<String, Integer> adjustVarMap = new HashMap<>();
+	private static Map<String, Integer> adjustVarMap = new ConcurrentHashMap<>();
 
 	private int adjustVariableStartScope(String fullSign, String className) {
+		Integer value = adjustVarMap.get(fullSign);
+		if (value != null) {
+			return value;
+		}
+		return computeVariableStartScope(fullSign, className);
+	}
+
+	private int computeVariableStartScope(String fullSign, String className) {
 		Integer value = adjustVarMap.get(fullSign);
 		if (value != null) {
 			return value;
@@ -382,7 +408,6 @@ public class ExecutionTracer implements IExecutionTracer, ITracer {
 			}
 		}
 		adjustVarMap.put(fullSign, start);
-		Repository.clearCache();
 		return start;
 	}
 
@@ -568,30 +593,6 @@ public class ExecutionTracer implements IExecutionTracer, ITracer {
 		trackingDelegate.track();
 	}
 
-	private TraceNode findInvokingMatchNode(TraceNode latestNode, String invokingMethodSig) {
-		List<TraceNode> candidates = new ArrayList<>();
-		if (latestNode.getInvocationParent() != null) {
-			candidates = latestNode.getInvocationParent().getInvocationChildren();
-		} else {
-			candidates = trace.getTopMethodLevelNodes();
-		}
-
-		for (int i = candidates.size() - 1; i >= 0; i--) {
-			TraceNode prevOver = candidates.get(i);
-			if (prevOver.getOrder() != latestNode.getOrder()) {
-				String prevOverInvocation = prevOver.getInvokingMethod();
-				if (prevOverInvocation != null && prevOverInvocation.equals(invokingMethodSig)) {
-
-					if (prevOver.getInvokingMatchNode() == null) {
-						return prevOver;
-					}
-				}
-			}
-		}
-		System.currentTimeMillis();
-		return null;
-	}
-
 	/**
 	 * @param line
 	 * @param returnObj
@@ -662,8 +663,8 @@ public class ExecutionTracer implements IExecutionTracer, ITracer {
 				return;
 			}
 			TraceNode latestNode = trace.getLatestNode();
-			if (latestNode != null && latestNode.getBreakPoint().getClassCanonicalName().equals(className)
-					&& latestNode.getBreakPoint().getLineNumber() == line) {
+			if (latestNode != null && latestNode.getBreakPoint().getLineNumber() == line
+					&& latestNode.getBreakPoint().getClassCanonicalName().equals(className)) {
 				trackingDelegate.track(isLocked);
 				return;
 			}
@@ -678,7 +679,7 @@ public class ExecutionTracer implements IExecutionTracer, ITracer {
 //				Agent._exitProgram("fail;Trace size exceeds expected_steps!");
 //			}
 
-			BreakPoint bkp = new BreakPoint(className, methodSignature, line);
+			BreakPoint bkp = trace.getLocationRegistry().getLocation(className, methodSignature, line);
 			long timestamp = System.currentTimeMillis();
 			TraceNode currentNode = new TraceNode(bkp, null, order, trace, numOfReadVars, numOfWrittenVars, timestamp, bytecode);
 
@@ -689,6 +690,9 @@ public class ExecutionTracer implements IExecutionTracer, ITracer {
 				caller.addInvocationChild(currentNode);
 				currentNode.setInvocationParent(caller);
 			}
+			if (spillWindowSize > 0 && trace.getExecutionList().size() > spillWindowSize) {
+				spillOldSteps();
+			}
 		} catch (Throwable t) {
 			handleException(t);
 		}
@@ -696,6 +700,131 @@ public class ExecutionTracer implements IExecutionTracer, ITracer {
 		trackingDelegate.track(isLocked);
 	}
 
+	private static final int MIN_SPILL_WINDOW_SIZE = 100;
+
+	/**
+	 * Hand the oldest half of the in-memory window over to the segment writer.
+	 * The latest step and the callers in the method call stack are kept because
+	 * they are still updated by the coming steps. After this, a spilled step is
+	 * only referred by its order: in the segment file, in the variable
+	 * definitions of the trace, and as the invocation parent of a kept step (see
+	 * {@link TraceNode#getInvocationParentOrder()}). The deferred string values
+	 * of the spilled steps are rendered before they are handed over, see
+	 * {@link #renderDeferredValues(List)}.
+	 */
+	private void spillOldSteps() throws IOException {
+		if (segmentWriter == null) {
+			File folder = new File(spillFolder == null ? System.getProperty("java.io.tmpdir") : spillFolder);
+			folder.mkdirs();
+			segmentWriter = new TraceSegmentWriter(new File(folder, "trace_" + threadId + ".seg"));
+			/* in case the trace is never loaded back */
+			segmentWriter.getSegmentFile().deleteOnExit();
+		}
+		List<TraceNode> window = trace.getExecutionList();
+		int spillSize = window.size() - spillWindowSize / 2;
+		Set<Integer> pinnedOrders = new HashSet<>();
+		for (TraceNode caller : methodCallStack.stack) {
+			pinnedOrders.add(caller.getOrder());
+		}
+		pinnedOrders.add(trace.getLatestNode().getOrder());
+
+		List<TraceNode> spilledSteps = new ArrayList<>(spillSize);
+		List<TraceNode> keptSteps = new ArrayList<>(spillWindowSize + 1);
+		Set<TraceNode> pinnedParents = new HashSet<>();
+		for (int i = 0; i < window.size(); i++) {
+			TraceNode node = window.get(i);
+			if (i < spillSize && !pinnedOrders.contains(node.getOrder())) {
+				spilledSteps.add(node);
+				TraceNode parent = node.getInvocationParent();
+				if (parent != null && pinnedOrders.contains(parent.getOrder())) {
+					pinnedParents.add(parent);
+				}
+			} else {
+				keptSteps.add(node);
+			}
+		}
+		if (spilledSteps.isEmpty()) {
+			return;
+		}
+		/* drop the references to spilled steps so that they can be collected after being written */
+		int spilledUntil = spilledSteps.get(spilledSteps.size() - 1).getOrder();
+		for (TraceNode parent : pinnedParents) {
+			List<TraceNode> children = new ArrayList<>();
+			for (TraceNode child : parent.getInvocationChildren()) {
+				if (child.getOrder() > spilledUntil || pinnedOrders.contains(child.getOrder())) {
+					children.add(child);
+				}
+			}
+			parent.setInvocationChildren(children);
+		}
+		for (TraceNode node : spilledSteps) {
+			node.setInvocationChildren(new ArrayList<TraceNode>(0));
+		}
+		Set<Integer> keptOrders = new HashSet<>();
+		for (TraceNode node : keptSteps) {
+			keptOrders.add(node.getOrder());
+		}
+		for (TraceNode node : keptSteps) {
+			TraceNode parent = node.getInvocationParent();
+			if (parent != null && !keptOrders.contains(parent.getOrder())) {
+				node.setInvocationParentOrder(parent.getOrder());
+			}
+		}
+		trace.spill(keptSteps, spilledSteps.size());
+		renderDeferredValues(spilledSteps);
+		segmentWriter.append(spilledSteps);
+	}
+
+	/**
+	 * render the deferred string values of the steps on the current thread, i.e.,
+	 * the traced thread while it is untracked, instead of the thread of the segment
+	 * writer, which would run toString() of the program concurrently with it. The
+	 * run budget and the class costs of {@link ToStringCapturePolicy} apply.
+	 */
+	private void renderDeferredValues(List<TraceNode> steps) {
+		if (!ToStringCapturePolicy.isDeferred()) {
+			return;
+		}
+		Set<VarValue> rendered = Collections.newSetFromMap(new IdentityHashMap<VarValue, Boolean>());
+		for (TraceNode step : steps) {
+			renderDeferredValues(step.getReadVariables(), rendered);
+			renderDeferredValues(step.getWrittenVariables(), rendered);
+			renderDeferredValues(step.getReturnedVariables(), rendered);
+		}
+	}
+
+	private void renderDeferredValues(Collection<VarValue> values, Set<VarValue> rendered) {
+		if (values == null) {
+			return;
+		}
+		for (VarValue value : values) {
+			if (value != null && rendered.add(value)) {
+				/* renders the deferred value */
+				value.hasStringValue();
+				renderDeferredValues(value.getChildren(), rendered);
+			}
+		}
+	}
+
+	public boolean isSpilling() {
+		return segmentWriter != null;
+	}
+
+	/**
+	 * write the steps remaining in memory to the segment file, after this the trace
+	 * keeps no step in memory. The steps are read back one segment at a time when
+	 * the trace is stored, see
+	 * {@link microbat.instrumentation.SpilledTraceConstructor}.
+	 */
+	public TraceSegmentWriter finishSpilling() throws IOException {
+		List<TraceNode> remainingSteps = trace.getExecutionList();
+		renderDeferredValues(remainingSteps);
+		segmentWriter.append(remainingSteps);
+		trace.spill(new ArrayList<TraceNode>(0), remainingSteps.size());
+		segmentWriter.close(getThreadName(), threadId);
+		return segmentWriter;
+	}
+
 	@Override
 	public void _hitExeptionTarget(int line, String className, String methodSignature) {
 		trackingDelegate.untrack();
@@ -1234,12 +1363,11 @@ public class ExecutionTracer implements IExecutionTracer, ITracer {
 	 * Thread.currentThread().getId() is exceptional used) IF NEED TO USE A LIST,MAP
 	 * -> USE AN ARRAY INSTEAD!
 	 */
-	public synchronized static IExecutionTracer _getTracer(boolean isAppClass, String className, String methodSig,
+	public static IExecutionTracer _getTracer(boolean isAppClass, String className, String methodSig,
 			int methodStartLine, int methodEndLine, String paramNamesCode, String paramTypeSignsCode, Object[] params) {
 		try {
 			if (state == TracingState.TEST_STARTED && isAppClass) {
-				state = TracingState.RECORDING;
-				rtStore.setMainThreadId(Thread.currentThread().getId());
+				startRecording();
 			}
 			if (state != TracingState.RECORDING) {
 				return EmptyExecutionTracer.getInstance();
@@ -1270,6 +1398,16 @@ public class ExecutionTracer implements IExecutionTracer, ITracer {
 		}
 	}
 
+	/**
+	 * the first thread which reaches an app class after the test is started is the main thread.
+	 */
+	private synchronized static void startRecording() {
+		if (state == TracingState.TEST_STARTED) {
+			rtStore.setMainThreadId(Thread.currentThread().getId());
+			state = TracingState.RECORDING;
+		}
+	}
+
 	public static IExecutionTracer getMainThreadStore() {
 		return rtStore.getMainThreadTracer();
 	}
@@ -1278,43 +1416,40 @@ public class ExecutionTracer implements IExecutionTracer, ITracer {
 		return rtStore.getAllThreadTracer();
 	}
 
-	public static synchronized IExecutionTracer getCurrentThreadStore() {
-		synchronized (rtStore) {
-			long threadId = Thread.currentThread().getId();
-			// String threadName = Thread.currentThread().getName();
-			if (lockedThreads.isUntracking(threadId)) {
-				return EmptyExecutionTracer.getInstance();
-			}
-			IExecutionTracer tracer = rtStore.get(threadId);
-			// store.setThreadName(threadName);
+	public static IExecutionTracer getCurrentThreadStore() {
+		long threadId = Thread.currentThread().getId();
+		// String threadName = Thread.currentThread().getName();
+		if (lockedThreads.isUntracking(threadId)) {
+			return EmptyExecutionTracer.getInstance();
+		}
+		IExecutionTracer tracer = rtStore.get(threadId);
+		// store.setThreadName(threadName);
 
-			if (tracer == null) {
-				tracer = EmptyExecutionTracer.getInstance();
-			}
-			return tracer;
+		if (tracer == null) {
+			tracer = EmptyExecutionTracer.getInstance();
 		}
+		return tracer;
 	}
 	
 	public static List<Long> stoppedThreads = new ArrayList<Long>();
 	
 	public static synchronized void stopRecordingCurrendThread() {
-		synchronized (rtStore) {
-			long threadId = Thread.currentThread().getId();
-			lockedThreads.untrack(threadId);
-			stoppedThreads.add(threadId);
-		}
+		long threadId = Thread.currentThread().getId();
+		lockedThreads.untrack(threadId);
+		stoppedThreads.add(threadId);
 	}
 
-	private static TracingState state = TracingState.INIT;
+	private static volatile TracingState state = TracingState.INIT;
 
 	public static void shutdown() {
 		state = TracingState.SHUTDOWN;
 	}
 
 	public static void dispose() {
-		adjustVarMap = new HashMap<>();
+		adjustVarMap = new ConcurrentHashMap<>();
 		lockedThreads = new LockedThreads();
 		HeuristicIgnoringFieldRule.clearCache();
+		FieldCapturePlan.clearCache();
 	}
 
 	public static void _start() {
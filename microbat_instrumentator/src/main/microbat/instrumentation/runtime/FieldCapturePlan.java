@@ -0,0 +1,165 @@
+package microbat.instrumentation.runtime;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import microbat.instrumentation.AgentLogger;
+import sav.common.core.utils.SignatureUtils;
+
+/**
+ * The fields to capture when recording the value of an object, computed once
+ * per class: the valid fields of {@link HeuristicIgnoringFieldRule}, their type
+ * names and a method handle to read each of them. The value of a primitive field
+ * is read as its string, without boxing.
+ */
+public class FieldCapturePlan {
+	private static Map<Class<?>, FieldCapturePlan> plans = new ConcurrentHashMap<>();
+
+	private CapturedField[] fields;
+
+	private FieldCapturePlan(CapturedField[] fields) {
+		this.fields = fields;
+	}
+
+	public static FieldCapturePlan getPlan(Class<?> objClass) {
+		FieldCapturePlan plan = plans.get(objClass);
+		if (plan == null) {
+			plan = createPlan(objClass);
+			plans.put(objClass, plan);
+		}
+		return plan;
+	}
+
+	private static FieldCapturePlan createPlan(Class<?> objClass) {
+		List<CapturedField> fields = new ArrayList<>();
+		MethodHandles.Lookup lookup = MethodHandles.lookup();
+		for (Field field : HeuristicIgnoringFieldRule.getValidFields(objClass, null)) {
+			try {
+				field.setAccessible(true);
+				fields.add(new CapturedField(field, lookup.unreflectGetter(field)));
+			} catch (Exception e) {
+				/* the field is not accessible, e.g., in a jdk module, it is not captured */
+				AgentLogger.info("Cannot capture field " + field + ": " + e.getMessage());
+			}
+		}
+		return new FieldCapturePlan(fields.toArray(new CapturedField[fields.size()]));
+	}
+
+	public CapturedField[] getFields() {
+		return fields;
+	}
+
+	public static void clearCache() {
+		plans = new ConcurrentHashMap<>();
+	}
+
+	public static class CapturedField {
+		private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+		private static final MethodType STRING_GETTER_TYPE = MethodType.methodType(String.class, Object.class);
+
+		private String name;
+		private String typeName;
+		private String declaringClassName;
+		private boolean isStatic;
+		private boolean isEnum;
+		private boolean isPrimitive;
+		/**
+		 * (Object)Object, or (Object)String for a primitive field.
+		 */
+		private MethodHandle getter;
+
+		CapturedField(Field field, MethodHandle getter) throws Exception {
+			Class<?> fieldType = field.getType();
+			this.name = field.getName();
+			this.typeName = fieldType.getName();
+			if (fieldType.isArray()) {
+				this.typeName = SignatureUtils.signatureToName(typeName);
+			}
+			this.declaringClassName = field.getDeclaringClass().getName();
+			this.isStatic = Modifier.isStatic(field.getModifiers());
+			this.isEnum = fieldType.isEnum();
+			this.isPrimitive = fieldType.isPrimitive();
+			if (isStatic) {
+				getter = MethodHandles.dropArguments(getter, 0, Object.class);
+			}
+			if (isPrimitive) {
+				this.getter = toStringGetter(getter, fieldType).asType(STRING_GETTER_TYPE);
+			} else {
+				this.getter = getter.asType(GETTER_TYPE);
+			}
+		}
+
+		/**
+		 * filter the value of the primitive field with String.valueOf of its type,
+		 * byte and short are widened to int.
+		 */
+		private static MethodHandle toStringGetter(MethodHandle getter, Class<?> fieldType) throws Exception {
+			Class<?> valueType = fieldType;
+			if (fieldType == byte.class || fieldType == short.class) {
+				valueType = int.class;
+				getter = getter.asType(MethodType.methodType(int.class, Object.class));
+			}
+			MethodHandle valueOf = MethodHandles.publicLookup().findStatic(String.class, "valueOf",
+					MethodType.methodType(String.class, valueType));
+			return MethodHandles.filterReturnValue(getter, valueOf);
+		}
+
+		/**
+		 * errors, e.g., an OutOfMemoryError, are thrown as they are, only the
+		 * failures of the getter itself are thrown as exceptions.
+		 */
+		public Object get(Object obj) throws Exception {
+			try {
+				return (Object) getter.invokeExact(obj);
+			} catch (Exception | Error e) {
+				throw e;
+			} catch (Throwable t) {
+				throw new Exception(t);
+			}
+		}
+
+		/**
+		 * @return the value of a primitive field, as String.valueOf of the value.
+		 */
+		public String getPrimitiveString(Object obj) throws Exception {
+			try {
+				return (String) getter.invokeExact(obj);
+			} catch (Exception | Error e) {
+				throw e;
+			} catch (Throwable t) {
+				throw new Exception(t);
+			}
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public String getTypeName() {
+			return typeName;
+		}
+
+		public String getDeclaringClassName() {
+			return declaringClassName;
+		}
+
+		public boolean isStatic() {
+			return isStatic;
+		}
+
+		public boolean isEnum() {
+			return isEnum;
+		}
+
+		public boolean isPrimitive() {
+			return isPrimitive;
+		}
+	}
+}
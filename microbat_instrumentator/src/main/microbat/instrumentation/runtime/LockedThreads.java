@@ -1,9 +1,9 @@
 package microbat.instrumentation.runtime;
 
 /**
- * 
+ *
  * @author Lin Yun and LLT
- * 
+ *
  * This class is supposed to keep at very basic, NOT use or trigger ANY other liberay function even in jdk,
  * only Array is allowed.
  * [TO AVOID RECURSIVE LOOP IN GET_TRACER!!]
@@ -11,114 +11,106 @@ package microbat.instrumentation.runtime;
 public class LockedThreads {
 	public static final long TRACKING = 0;
 	public static final long UNTRACKING = 1;
-	
+	private static final long EMPTY_SLOT = -1l;
+	private static final int INIT_CAPACITY = 16;
+
 	/**
-	 * The first dimension is for thread id (long type), and the second dimension is for its state (i.e., tracking or untracking)
-	 * 
-	 * the array length is initialized as 10, it can increase when the number of the threads grows. See {@link LockedThreads#increaseSize()}
-	 * 
+	 * An open addressing table which maps a thread id (long type) to its state (i.e., tracking or untracking).
+	 *
+	 * The table is never modified once it is published, a new thread is registered by copying the table (see
+	 * {@link LockedThreads#register(long)}), so lookup does not need any lock. The state of each thread is kept
+	 * in its own cell (a long[1]) which is shared between the copies, and only updated by its owner thread.
+	 *
 	 * If a thread is in the state of TRACKING, all the relevant steps will be recorded (by invoking {@code ExecutionTracer}).
 	 * Otherwise, no step will be recorded (by invoking {@code EmptyTracer})
 	 */
-	public volatile long[][] lockedThreadIds = new long[10][2];
-	
-	public LockedThreads() {
-		for (int i = 0; i < lockedThreadIds.length; i++) {
-			lockedThreadIds[i][0] = -1l;
-			lockedThreadIds[i][1] = TRACKING;
-		}
-	}
+	private volatile StateTable table = new StateTable(INIT_CAPACITY);
 
 	public boolean isUntracking(long threadId) {
-		for (int i = 0; i < lockedThreadIds.length; i++) {
-			if (lockedThreadIds[i][0] == threadId) {
-				return lockedThreadIds[i][1] == UNTRACKING;
-			}
-		}
-		
-		return false;
+		long[] state = table.find(threadId);
+		return state != null && state[0] == UNTRACKING;
 	}
 
 	public void track(long threadId) {
-		int i = 0;
-		int firstSlotIndex = -1;
-		for (; i < lockedThreadIds.length; i++) {
-			if (lockedThreadIds[i][0] == threadId) {
-				lockedThreadIds[i][1] = TRACKING;
-				return;
-			}
-			
-			if(firstSlotIndex == -1 && lockedThreadIds[i][0] == -1) {
-				firstSlotIndex = i;
-			}
+		getState(threadId)[0] = TRACKING;
+	}
+
+	public void untrack(long threadId) {
+		getState(threadId)[0] = UNTRACKING;
+	}
+
+	private long[] getState(long threadId) {
+		long[] state = table.find(threadId);
+		if (state == null) {
+			state = register(threadId);
 		}
-		
-		/**
-		 * all the slots are not -1
-		 */
-		if(firstSlotIndex == -1) {
-			increaseSize();
+		return state;
+	}
+
+	private synchronized long[] register(long threadId) {
+		StateTable curTable = table;
+		long[] state = curTable.find(threadId);
+		if (state != null) {
+			return state;
+		}
+		state = new long[] { TRACKING };
+		int capacity = curTable.threadIds.length;
+		if ((curTable.size + 1) * 2 > capacity) {
+			capacity *= 2;
 		}
-		/**
-		 * fill in an empty slot
-		 */
-		else {
-			i = firstSlotIndex;			
+		StateTable newTable = new StateTable(capacity);
+		for (int i = 0; i < curTable.threadIds.length; i++) {
+			if (curTable.threadIds[i] != EMPTY_SLOT) {
+				newTable.put(curTable.threadIds[i], curTable.states[i]);
+			}
 		}
-		lockedThreadIds[i][0] = threadId;
-		lockedThreadIds[i][1] = TRACKING;
+		newTable.put(threadId, state);
+		table = newTable;
+		return state;
 	}
-	
-	 private void increaseSize() {
-        int newCapacity = lockedThreadIds.length + 2;
-        long[][] temp = new long[newCapacity][2];
-        int i = 0;
-        for (; i < lockedThreadIds.length; i++) {
-        	temp[i] = lockedThreadIds[i];
-        }
-        for (; i < newCapacity; i++) {
-        	temp[i][0] = -1l;
-        	temp[i][1] = TRACKING;
-        }
-        lockedThreadIds = temp;
-	 }
 
-//	public void remove(long threadId) {
-//		for (int i = 0; i < lockedThreadIds.length; i++) {
-//			if (lockedThreadIds[i] == threadId) {
-//				lockedThreadIds[i] = -1l;
-//			}
-//		}
-//	}
-	
-	public void untrack(long threadId) {
-		int i = 0;
-		int firstSlotIndex = -1;
-		for (; i < lockedThreadIds.length; i++) {
-			if (lockedThreadIds[i][0] == threadId) {
-				lockedThreadIds[i][1] = UNTRACKING;
-				return;
-			}
-			
-			if(firstSlotIndex == -1 && lockedThreadIds[i][0] == -1) {
-				firstSlotIndex = i;
+	static int indexOf(long threadId, int mask) {
+		int hash = (int) (threadId ^ (threadId >>> 32));
+		hash ^= (hash >>> 16);
+		hash *= 0x85ebca6b;
+		hash ^= (hash >>> 13);
+		return hash & mask;
+	}
+
+	private static class StateTable {
+		private long[] threadIds;
+		private long[][] states;
+		private int size;
+
+		StateTable(int capacity) {
+			threadIds = new long[capacity];
+			states = new long[capacity][];
+			for (int i = 0; i < capacity; i++) {
+				threadIds[i] = EMPTY_SLOT;
 			}
 		}
-		
-		/**
-		 * all the slots are not -1
-		 */
-		if(firstSlotIndex == -1) {
-			increaseSize();
+
+		long[] find(long threadId) {
+			int mask = threadIds.length - 1;
+			int i = indexOf(threadId, mask);
+			while (threadIds[i] != EMPTY_SLOT) {
+				if (threadIds[i] == threadId) {
+					return states[i];
+				}
+				i = (i + 1) & mask;
+			}
+			return null;
 		}
-		/**
-		 * fill in an empty slot
-		 */
-		else {
-			i = firstSlotIndex;			
+
+		void put(long threadId, long[] state) {
+			int mask = threadIds.length - 1;
+			int i = indexOf(threadId, mask);
+			while (threadIds[i] != EMPTY_SLOT) {
+				i = (i + 1) & mask;
+			}
+			threadIds[i] = threadId;
+			states[i] = state;
+			size++;
 		}
-		lockedThreadIds[i][0] = threadId;
-		lockedThreadIds[i][1] = UNTRACKING;
 	}
-	
 }
@@ -0,0 +1,201 @@
+package microbat.instrumentation.runtime;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import microbat.instrumentation.AgentConstants;
+import microbat.model.value.DeferredStringValue;
+
+/**
+ * Decides how the string values of the objects are captured while tracing,
+ * i.e., whether to call their toString():
+ * <ul>
+ * <li>the cost of toString() is measured per class, a class whose average cost
+ * is over the threshold, or a single call of which takes more than 500ms, is not
+ * called any more;</li>
+ * <li>the time spent in toString() is bounded per step and per run, if the
+ * budgets are given;</li>
+ * <li>in the deferred mode, the objects are only weakly referenced with their
+ * identities, and rendered when the trace is written, see
+ * {@link #defer(Object)}. The objects collected by then are written as their
+ * identities, i.e., class@hash. When the trace is spilled to disk while
+ * recording, see {@link ExecutionTracer#setSpillWindow(int, String)}, the values
+ * of the spilled steps are rendered on the traced thread before they are handed
+ * to the segment writer, since the objects cannot be referred from the disk.</li>
+ * </ul>
+ * The class costs and the run budget are shared by the tracers of all threads,
+ * the step budget is kept by each tracer.
+ */
+public class ToStringCapturePolicy {
+	public static final String EXPENSIVE_VALUE = "$unknown (estimated as too cost to have its value)";
+	public static final String OUT_OF_BUDGET_VALUE = "$unknown (out of the time budget to have its value)";
+	private static final long BLACKLIST_CALL_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+	/* the number of calls before the average cost of a class is trusted */
+	private static final int MIN_SAMPLES = 4;
+
+	private static final int DEFAULT_CLASS_COST_MS = 10;
+
+	private static long classCostNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_CLASS_COST_MS);
+	private static long stepBudgetNanos = -1;
+	private static long runBudgetNanos = -1;
+	private static boolean deferred = false;
+
+	private static ConcurrentHashMap<Class<?>, ClassCost> classCosts = new ConcurrentHashMap<>();
+	private static AtomicLong runNanos = new AtomicLong();
+
+	private int currentStep = -1;
+	private long stepNanos;
+
+	/**
+	 * @param classCostMs
+	 *            the maximum average cost of toString() of a class, 10ms by default
+	 * @param stepBudgetMs
+	 *            the time for toString() in a step
+	 * @param runBudgetMs
+	 *            the time for toString() in the run
+	 * @param deferred
+	 *            whether to render the string values when the trace is written.
+	 *            The values are the states of the objects by then instead of
+	 *            when they are accessed, or when their steps are spilled.
+	 */
+	public static void setup(int classCostMs, int stepBudgetMs, int runBudgetMs, boolean deferred) {
+		if (classCostMs == AgentConstants.UNSPECIFIED_INT_VALUE) {
+			classCostMs = DEFAULT_CLASS_COST_MS;
+		}
+		classCostNanos = TimeUnit.MILLISECONDS.toNanos(classCostMs);
+		stepBudgetNanos = toNanos(stepBudgetMs);
+		runBudgetNanos = toNanos(runBudgetMs);
+		ToStringCapturePolicy.deferred = deferred;
+	}
+
+	private static long toNanos(int ms) {
+		return ms == AgentConstants.UNSPECIFIED_INT_VALUE ? -1 : TimeUnit.MILLISECONDS.toNanos(ms);
+	}
+
+	public static boolean isDeferred() {
+		return deferred;
+	}
+
+	/**
+	 * @param step
+	 *            the step the value is captured in, e.g., the current size of the
+	 *            trace.
+	 */
+	public String toString(Object obj, int step) {
+		if (step != currentStep) {
+			currentStep = step;
+			stepNanos = 0;
+		}
+		if (stepBudgetNanos >= 0 && stepNanos >= stepBudgetNanos) {
+			return OUT_OF_BUDGET_VALUE;
+		}
+		return render(obj, this);
+	}
+
+	/**
+	 * @param stepBudget
+	 *            the tracer whose step budget is used, null if no step budget
+	 *            applies.
+	 */
+	private static String render(Object obj, ToStringCapturePolicy stepBudget) {
+		ClassCost cost = getClassCost(obj.getClass());
+		if (cost.expensive) {
+			return EXPENSIVE_VALUE;
+		}
+		if (runBudgetNanos >= 0 && runNanos.get() >= runBudgetNanos) {
+			return OUT_OF_BUDGET_VALUE;
+		}
+		long t1 = System.nanoTime();
+		String value = String.valueOf(obj);
+		long nanos = System.nanoTime() - t1;
+		if (stepBudget != null) {
+			stepBudget.stepNanos += nanos;
+		}
+		runNanos.addAndGet(nanos);
+		cost.add(nanos);
+		return value;
+	}
+
+	private static ClassCost getClassCost(Class<?> clazz) {
+		ClassCost cost = classCosts.get(clazz);
+		if (cost == null) {
+			cost = new ClassCost();
+			ClassCost existing = classCosts.putIfAbsent(clazz, cost);
+			if (existing != null) {
+				cost = existing;
+			}
+		}
+		return cost;
+	}
+
+	/**
+	 * @return the string value of the object to render when the trace is written.
+	 */
+	public DeferredStringValue defer(Object obj) {
+		return new WeakStringValue(obj);
+	}
+
+	/**
+	 * forget the class costs and the time spent in toString(), and restore the
+	 * default settings. It is done after the traces are stored, so that the
+	 * deferred values are still rendered with the settings of the run.
+	 */
+	public static void reset() {
+		classCostNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_CLASS_COST_MS);
+		stepBudgetNanos = -1;
+		runBudgetNanos = -1;
+		deferred = false;
+		classCosts = new ConcurrentHashMap<>();
+		runNanos = new AtomicLong();
+	}
+
+	/**
+	 * the cost of toString() of a class, updated without locking, so the numbers
+	 * may be slightly off when the class is rendered by several threads at once.
+	 */
+	private static class ClassCost {
+		private long calls;
+		private long totalNanos;
+		private volatile boolean expensive;
+
+		void add(long nanos) {
+			calls++;
+			totalNanos += nanos;
+			if (nanos > BLACKLIST_CALL_NANOS || (calls >= MIN_SAMPLES && totalNanos / calls > classCostNanos)) {
+				expensive = true;
+			}
+		}
+	}
+
+	/**
+	 * renders the object if it is still reachable when the trace is written, the
+	 * run budget and the class costs still apply, not the step budget.
+	 */
+	private static class WeakStringValue implements DeferredStringValue {
+		private WeakReference<Object> ref;
+		private Class<?> clazz;
+		private int identityHashCode;
+
+		WeakStringValue(Object obj) {
+			ref = new WeakReference<Object>(obj);
+			clazz = obj.getClass();
+			identityHashCode = System.identityHashCode(obj);
+		}
+
+		@Override
+		public String render() {
+			Object obj = ref.get();
+			if (obj == null) {
+				/* the same as the default toString() */
+				return clazz.getName() + "@" + Integer.toHexString(identityHashCode);
+			}
+			try {
+				return ToStringCapturePolicy.render(obj, null);
+			} catch (Throwable t) {
+				return null;
+			}
+		}
+	}
+}
@@ -1,50 +1,61 @@
 package microbat.instrumentation.runtime;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 /**
  * @author LLT
  * This class is supposed to keep at very basic, NOT use or trigger ANY other liberay function even in jdk,
  * only Array is allowed.
  * [TO AVOID RECURSIVE LOOP IN GET_TRACER!!]
+ *
+ * Tracers are kept in an open addressing table keyed by thread id. The table is copied when a new thread
+ * is registered (which happens once per thread), so that {@link TracerStore#get(long)} of an existing thread
+ * does not need any lock.
  */
 public abstract class TracerStore<T extends ExecutionTracer> {
 	public static final int INVALID_THREAD_ID = -1;
-	private Map<Long, T> rtStore = new HashMap<>();
-//	protected ITracer[] rtStore = new ITracer[10];
+	private static final int INIT_CAPACITY = 16;
+	private volatile TracerTable rtStore = new TracerTable(INIT_CAPACITY);
 	protected long mainThreadId = INVALID_THREAD_ID;
-	protected transient int lastUsedIdx = INVALID_THREAD_ID;
-	
+
 	/* threadId must be valid */
 	@SuppressWarnings("unchecked")
-	public synchronized T get(long threadId) {
+	public T get(long threadId) {
 		// FIXME -mutithread LINYUN [2]
 		// LLT: this is where we disable recording other threads not the main one
 //		if (threadId != mainThreadId) {
 //			return null; // for now, only recording trace for main thread.
 //		}
-		
-//		int i = 0;
-//		while(i <= lastUsedIdx) {
-//			ITracer tracer = rtStore[i];
-//			if (tracer.getThreadId() == threadId) {
-//				return (T) tracer;
-//			}
-//			i++;
-//		}
-//		T tracer = initTracer(threadId);
-//		rtStore[++lastUsedIdx] = tracer;
-		if (rtStore.containsKey(threadId)) {
-			return rtStore.get(threadId);
+		Object tracer = rtStore.find(threadId);
+		if (tracer != null) {
+			return (T) tracer;
+		}
+		return register(threadId);
+	}
+
+	@SuppressWarnings("unchecked")
+	private synchronized T register(long threadId) {
+		TracerTable curTable = rtStore;
+		Object existing = curTable.find(threadId);
+		if (existing != null) {
+			return (T) existing;
 		}
 		T tracer = initTracer(threadId);
-		rtStore.put(threadId, tracer);
+		int capacity = curTable.threadIds.length;
+		if ((curTable.size + 1) * 2 > capacity) {
+			capacity *= 2;
+		}
+		TracerTable newTable = new TracerTable(capacity);
+		for (int i = 0; i < curTable.size; i++) {
+			Object registered = curTable.tracers[i];
+			newTable.put(((ExecutionTracer) registered).getThreadId(), registered);
+		}
+		newTable.put(threadId, tracer);
+		rtStore = newTable;
 		return tracer;
 	}
-	
+
 	protected abstract T initTracer(long threadId);
 
 	public void setMainThreadId(long mainThreadId) {
@@ -54,20 +65,54 @@ public abstract class TracerStore<T extends ExecutionTracer> {
 	public T getMainThreadTracer() {
 		return get(mainThreadId);
 	}
-	
+
 	public long getMainThreadId() {
 		return mainThreadId;
 	}
-	
+
 	public List<IExecutionTracer> getAllThreadTracer() {
-		return new ArrayList<IExecutionTracer>(rtStore.values());
-//		List<IExecutionTracer> traces = new ArrayList<>();
-//		for(int i=0; i<rtStore.length; i++) {
-//			if(rtStore[i] != null) {
-//				traces.add((IExecutionTracer) rtStore[i]);
-//			}
-//		}
-//		
-//		return traces;
+		TracerTable curTable = rtStore;
+		List<IExecutionTracer> traces = new ArrayList<>(curTable.size);
+		for (int i = 0; i < curTable.size; i++) {
+			traces.add((IExecutionTracer) curTable.tracers[i]);
+		}
+		return traces;
+	}
+
+	private static class TracerTable {
+		private long[] threadIds;
+		private Object[] slots;
+		/* tracers in the order of registration */
+		private Object[] tracers;
+		private int size;
+
+		TracerTable(int capacity) {
+			threadIds = new long[capacity];
+			slots = new Object[capacity];
+			tracers = new Object[capacity];
+		}
+
+		Object find(long threadId) {
+			int mask = threadIds.length - 1;
+			int i = LockedThreads.indexOf(threadId, mask);
+			while (slots[i] != null) {
+				if (threadIds[i] == threadId) {
+					return slots[i];
+				}
+				i = (i + 1) & mask;
+			}
+			return null;
+		}
+
+		void put(long threadId, Object tracer) {
+			int mask = threadIds.length - 1;
+			int i = LockedThreads.indexOf(threadId, mask);
+			while (slots[i] != null) {
+				i = (i + 1) & mask;
+			}
+			threadIds[i] = threadId;
+			slots[i] = tracer;
+			tracers[size++] = tracer;
+		}
 	}
 }
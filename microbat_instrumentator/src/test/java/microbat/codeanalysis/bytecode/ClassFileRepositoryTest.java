@@ -0,0 +1,88 @@
+package microbat.codeanalysis.bytecode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.classfile.Method;
+import org.junit.Test;
+
+import microbat.instrumentation.trace.testdata.Sample;
+import microbat.instrumentation.trace.testdata.Sample4;
+import sav.strategies.dto.AppJavaClassPath;
+
+public class ClassFileRepositoryTest {
+
+	private AppJavaClassPath createAppClassPath() throws Exception {
+		AppJavaClassPath appPath = new AppJavaClassPath();
+		appPath.setJavaHome(System.getProperty("java.home"));
+		appPath.addClasspath(new File(Sample.class.getProtectionDomain().getCodeSource().getLocation().toURI())
+				.getAbsolutePath());
+		return appPath;
+	}
+
+	@Test
+	public void testCachesClassesAndCfgs() throws Exception {
+		String systemClassPath = System.getProperty("java.class.path");
+		ClassFileRepository repository = ClassFileRepository.getInstance(createAppClassPath());
+		assertSame(repository, ClassFileRepository.getInstance(createAppClassPath()));
+
+		JavaClass clazz = repository.loadClass(Sample.class.getName());
+		assertSame(clazz, repository.loadClass(Sample.class.getName().replace(".", "/")));
+		assertSame(repository, clazz.getRepository());
+		assertNull(repository.lookupClass("microbat.NoSuchClass"));
+		assertEquals(systemClassPath, System.getProperty("java.class.path"));
+
+		Method method = findMethod(clazz, "testArr");
+		CFG cfg = repository.getCFG(clazz.getClassName(), method);
+		assertSame(cfg, repository.getCFG(clazz.getClassName(), method));
+		assertSame(method, cfg.getMethod());
+	}
+
+	@Test
+	public void testParseConcurrently() throws Exception {
+		final AppJavaClassPath appPath = createAppClassPath();
+		final String[] classNames = new String[] { Sample.class.getName(), Sample4.class.getName() };
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<Method>> futures = new ArrayList<>();
+			for (int i = 0; i < 16; i++) {
+				final String className = classNames[i % classNames.length];
+				futures.add(executor.submit(new Callable<Method>() {
+
+					@Override
+					public Method call() throws Exception {
+						MethodFinderBySignature finder = new MethodFinderBySignature(
+								className.equals(Sample.class.getName()) ? "testArr()V" : "foo([II)V");
+						ByteCodeParser.parse(className, finder, appPath);
+						return finder.getMethod();
+					}
+				}));
+			}
+			for (Future<Method> future : futures) {
+				assertNotNull(future.get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private Method findMethod(JavaClass clazz, String name) {
+		for (Method method : clazz.getMethods()) {
+			if (method.getName().equals(name)) {
+				return method;
+			}
+		}
+		return null;
+	}
+}
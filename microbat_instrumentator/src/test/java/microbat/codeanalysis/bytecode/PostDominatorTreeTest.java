@@ -0,0 +1,163 @@
+package microbat.codeanalysis.bytecode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.bcel.classfile.ClassParser;
+import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.classfile.Method;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import microbat.instrumentation.trace.testdata.Sample;
+import microbat.instrumentation.trace.testdata.Sample4;
+
+/**
+ * Checks {@link PostDominatorTree} and the control dependency derived from it
+ * against their definitions.
+ */
+public class PostDominatorTreeTest {
+	private static final int MAX_CHECKED_NODES = 400;
+	private static final Class<?>[] CORPUS = new Class<?>[] {
+		Sample.class,
+		Sample4.class,
+		org.apache.bcel.classfile.Utility.class,
+		org.apache.bcel.util.BCELifier.class,
+		org.apache.bcel.verifier.structurals.InstConstraintVisitor.class,
+		org.apache.bcel.generic.MethodGen.class,
+		org.apache.commons.lang.StringUtils.class,
+		org.apache.commons.lang.time.DateUtils.class
+	};
+
+	@Before
+	public void setUp() {
+		CFGConstructor.setPostDominatorControlDependency(true);
+	}
+
+	@After
+	public void tearDown() {
+		CFGConstructor.setPostDominatorControlDependency(false);
+	}
+
+	@Test
+	public void testControlDependencyMatchesDefinition() throws Exception {
+		int checked = 0;
+		for (Method method : getMethods()) {
+			CFG cfg = new CFGConstructor().buildCFGWithControlDomiance(method.getCode());
+			if (cfg.size() > MAX_CHECKED_NODES) {
+				continue;
+			}
+			PostDominatorTree tree = new PostDominatorTree(cfg);
+			boolean[][] postDominance = computePostDominance(cfg);
+			for (CFGNode postDominator : cfg.getNodeList()) {
+				for (CFGNode node : cfg.getNodeList()) {
+					assertEquals(method.getName() + ": " + postDominator + " post dominates " + node,
+							postDominance[postDominator.getIdx()][node.getIdx()],
+							tree.isPostDominator(postDominator, node));
+				}
+			}
+			for (CFGNode branch : cfg.getNodeList()) {
+				assertEquals(method.getName() + ": control dependentees of " + branch,
+						getControlDependentees(cfg, branch, postDominance),
+						new HashSet<>(branch.getControlDependentees()));
+			}
+			checked++;
+		}
+		assertTrue(checked > 0);
+	}
+
+	/**
+	 * y is control dependent on x if y post dominates a child of x, but does not
+	 * strictly post dominate x.
+	 */
+	private Set<CFGNode> getControlDependentees(CFG cfg, CFGNode branch, boolean[][] postDominance) {
+		Set<CFGNode> result = new HashSet<>();
+		if (!branch.isBranch()) {
+			return result;
+		}
+		for (CFGNode child : branch.getChildren()) {
+			for (CFGNode node : cfg.getNodeList()) {
+				boolean strictlyPostDominateBranch = node != branch && postDominance[node.getIdx()][branch.getIdx()];
+				if (postDominance[node.getIdx()][child.getIdx()] && !strictlyPostDominateBranch) {
+					result.add(node);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * [a][b] is true if every path from b to an exit goes through a, i.e. no exit
+	 * can be reached from b without a. Nodes which cannot reach an exit are only
+	 * post dominated by themselves.
+	 */
+	private boolean[][] computePostDominance(CFG cfg) {
+		int size = cfg.size();
+		boolean[][] result = new boolean[size][size];
+		for (CFGNode node : cfg.getNodeList()) {
+			boolean reachExit = canReachExit(cfg, node, null);
+			for (CFGNode postDominator : cfg.getNodeList()) {
+				if (postDominator == node) {
+					result[postDominator.getIdx()][node.getIdx()] = true;
+				} else if (reachExit) {
+					result[postDominator.getIdx()][node.getIdx()] = !canReachExit(cfg, node, postDominator);
+				}
+			}
+		}
+		return result;
+	}
+
+	private boolean canReachExit(CFG cfg, CFGNode from, CFGNode removed) {
+		Set<CFGNode> exits = new HashSet<>(cfg.getExitList());
+		Set<CFGNode> visited = new HashSet<>();
+		List<CFGNode> stack = new ArrayList<>();
+		stack.add(from);
+		visited.add(from);
+		while (!stack.isEmpty()) {
+			CFGNode node = stack.remove(stack.size() - 1);
+			if (exits.contains(node)) {
+				return true;
+			}
+			for (CFGNode child : node.getChildren()) {
+				if (!child.equals(removed) && visited.add(child)) {
+					stack.add(child);
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return the methods of the corpus, from the largest one.
+	 */
+	private List<Method> getMethods() throws Exception {
+		List<Method> methods = new ArrayList<>();
+		for (Class<?> clazz : CORPUS) {
+			String resource = "/" + clazz.getName().replace(".", "/") + ".class";
+			try (InputStream in = clazz.getResourceAsStream(resource)) {
+				JavaClass javaClass = new ClassParser(in, resource).parse();
+				for (Method method : javaClass.getMethods()) {
+					if (method.getCode() != null) {
+						methods.add(method);
+					}
+				}
+			}
+		}
+		Collections.sort(methods, new Comparator<Method>() {
+			@Override
+			public int compare(Method m1, Method m2) {
+				return m2.getCode().getCode().length - m1.getCode().getCode().length;
+			}
+		});
+		return methods;
+	}
+}
@@ -0,0 +1,192 @@
+package microbat.instrumentation.benchmark;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * A small JMH-style harness for the benchmarks of the instrumentation runtime:
+ * each benchmark runs warmup iterations, then measurement iterations of a fixed
+ * duration, and reports the average time per operation and, like the gc
+ * profiler of JMH, the bytes allocated per operation and the gc activity. The
+ * results are printed by the entry point, see {@link RuntimeBenchmarks}.
+ *
+ * Settings are read from system properties:
+ * <ul>
+ * <li>benchmark.warmup: warmup iterations (default 3)</li>
+ * <li>benchmark.iterations: measurement iterations (default 5)</li>
+ * <li>benchmark.time: duration of an iteration in ms (default 500)</li>
+ * <li>benchmark.filter: regex on the benchmark names</li>
+ * <li>benchmark.out: a csv file the results are appended to, to track regressions</li>
+ * </ul>
+ */
+public class BenchmarkRunner {
+	private int warmupIterations = Integer.getInteger("benchmark.warmup", 3);
+	private int measurementIterations = Integer.getInteger("benchmark.iterations", 5);
+	private long iterationNanos = Long.getLong("benchmark.time", 500) * 1000000;
+	private Pattern filter;
+	private String outFile = System.getProperty("benchmark.out");
+	private List<Result> results = new ArrayList<>();
+
+	public BenchmarkRunner() {
+		String filterRegex = System.getProperty("benchmark.filter");
+		if (filterRegex != null && !filterRegex.isEmpty()) {
+			filter = Pattern.compile(filterRegex);
+		}
+	}
+
+	public static interface Benchmark {
+		/**
+		 * run one operation, the returned value is consumed so that the JIT cannot
+		 * drop the operation.
+		 */
+		Object run() throws Exception;
+	}
+
+	public Result run(String name, Benchmark benchmark) throws Exception {
+		if (filter != null && !filter.matcher(name).find()) {
+			return null;
+		}
+		for (int i = 0; i < warmupIterations; i++) {
+			runIteration(benchmark);
+		}
+		long ops = 0;
+		long nanos = 0;
+		long allocatedBytes = 0;
+		long gcCount = getGcCount();
+		long gcTime = getGcTime();
+		for (int i = 0; i < measurementIterations; i++) {
+			long[] iteration = runIteration(benchmark);
+			ops += iteration[0];
+			nanos += iteration[1];
+			allocatedBytes += iteration[2];
+		}
+		Result result = new Result(name, ops, nanos, allocatedBytes, getGcCount() - gcCount, getGcTime() - gcTime);
+		results.add(result);
+		return result;
+	}
+
+	/**
+	 * @return [ops, nanos, allocated bytes]
+	 */
+	private long[] runIteration(Benchmark benchmark) throws Exception {
+		long ops = 0;
+		int sink = 0;
+		long allocated = getAllocatedBytes();
+		long start = System.nanoTime();
+		long end = start + iterationNanos;
+		long now;
+		do {
+			/* check the clock every 64 ops */
+			for (int i = 0; i < 64; i++) {
+				Object value = benchmark.run();
+				sink += (value == null) ? 0 : 1;
+			}
+			ops += 64;
+			now = System.nanoTime();
+		} while (now < end);
+		allocated = getAllocatedBytes() - allocated;
+		if (sink < 0) {
+			System.out.println(sink);
+		}
+		return new long[] { ops, now - start, allocated };
+	}
+
+	/**
+	 * bytes allocated by the current thread, -1 if the jvm does not support it.
+	 */
+	@SuppressWarnings("restriction")
+	private static long getAllocatedBytes() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+			if (sunBean.isThreadAllocatedMemorySupported() && sunBean.isThreadAllocatedMemoryEnabled()) {
+				return sunBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+			}
+		}
+		return -1;
+	}
+
+	private static long getGcCount() {
+		long count = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			count += Math.max(0, gc.getCollectionCount());
+		}
+		return count;
+	}
+
+	private static long getGcTime() {
+		long time = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			time += Math.max(0, gc.getCollectionTime());
+		}
+		return time;
+	}
+
+	public List<Result> getResults() {
+		return results;
+	}
+
+	/**
+	 * append the results to the csv file given by benchmark.out, if any.
+	 */
+	public void writeResults() throws IOException {
+		if (outFile == null || results.isEmpty()) {
+			return;
+		}
+		File file = new File(outFile);
+		boolean newFile = !file.exists();
+		try (Writer writer = new FileWriter(file, true)) {
+			if (newFile) {
+				writer.write("timestamp,benchmark,ops,ns_per_op,bytes_per_op,gc_count,gc_time_ms\n");
+			}
+			long timestamp = System.currentTimeMillis();
+			for (Result result : results) {
+				writer.write(String.format("%d,%s,%d,%.1f,%.1f,%d,%d\n", timestamp, result.name, result.ops,
+						result.getNanosPerOp(), result.getBytesPerOp(), result.gcCount, result.gcTime));
+			}
+		}
+	}
+
+	public static class Result {
+		private String name;
+		private long ops;
+		private long nanos;
+		private long allocatedBytes;
+		private long gcCount;
+		private long gcTime;
+
+		public Result(String name, long ops, long nanos, long allocatedBytes, long gcCount, long gcTime) {
+			this.name = name;
+			this.ops = ops;
+			this.nanos = nanos;
+			this.allocatedBytes = allocatedBytes;
+			this.gcCount = gcCount;
+			this.gcTime = gcTime;
+		}
+
+		public double getNanosPerOp() {
+			return (double) nanos / ops;
+		}
+
+		public double getBytesPerOp() {
+			return allocatedBytes < 0 ? -1 : (double) allocatedBytes / ops;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%-50s %12.1f ns/op %12.1f B/op   gc: %d (%dms)", name, getNanosPerOp(),
+					getBytesPerOp(), gcCount, gcTime);
+		}
+	}
+}
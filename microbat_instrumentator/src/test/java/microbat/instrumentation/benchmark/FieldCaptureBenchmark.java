@@ -0,0 +1,111 @@
+package microbat.instrumentation.benchmark;
+
+import static org.junit.Assert.assertEquals;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import microbat.instrumentation.benchmark.BenchmarkRunner.Benchmark;
+import microbat.instrumentation.runtime.FieldCapturePlan;
+import microbat.instrumentation.runtime.FieldCapturePlan.CapturedField;
+import microbat.instrumentation.runtime.HeuristicIgnoringFieldRule;
+import sav.common.core.utils.SignatureUtils;
+
+/**
+ * Measures the cost of capturing the fields of an object, as done by
+ * ExecutionTracer.appendVarValue, with the {@link FieldCapturePlan} of its class
+ * and with the former reflection on every capture, i.e., looking up the valid
+ * fields, making them accessible and computing their type names each time.
+ */
+public class FieldCaptureBenchmark {
+
+	@Test
+	public void testSameCaptureAsReflection() throws Exception {
+		Object[] targets = new Object[] { new Target(), new Shape() };
+		for (Object target : targets) {
+			assertEquals(captureByReflection(target), captureByPlan(target));
+		}
+	}
+
+	public void run(BenchmarkRunner runner) throws Exception {
+		final Target target = new Target();
+		runner.run("Field capture (reflection)", new Benchmark() {
+
+			@Override
+			public Object run() throws Exception {
+				return captureByReflection(target);
+			}
+		});
+		runner.run("Field capture (FieldCapturePlan)", new Benchmark() {
+
+			@Override
+			public Object run() throws Exception {
+				try {
+					return captureByPlan(target);
+				} catch (Throwable e) {
+					throw new Exception(e);
+				}
+			}
+		});
+	}
+
+	private static List<String> captureByReflection(Object value) throws Exception {
+		List<String> captured = new ArrayList<>();
+		for (Field field : HeuristicIgnoringFieldRule.getValidFields(value.getClass(), value)) {
+			field.setAccessible(true);
+			Object fieldValue = field.get(value);
+			Class<?> fieldType = field.getType();
+			String fieldTypeStr = fieldType.getName();
+			if (fieldType.isArray()) {
+				fieldTypeStr = SignatureUtils.signatureToName(fieldTypeStr);
+			}
+			captured.add(fieldTypeStr);
+			captured.add(field.getName());
+			captured.add(fieldType.isPrimitive() ? String.valueOf(fieldValue) : toString(fieldValue));
+		}
+		return captured;
+	}
+
+	private static List<String> captureByPlan(Object value) throws Exception {
+		List<String> captured = new ArrayList<>();
+		for (CapturedField field : FieldCapturePlan.getPlan(value.getClass()).getFields()) {
+			captured.add(field.getTypeName());
+			captured.add(field.getName());
+			captured.add(field.isPrimitive() ? field.getPrimitiveString(value) : toString(field.get(value)));
+		}
+		return captured;
+	}
+
+	/* the identity of a reference, its value is captured by the next layer */
+	private static String toString(Object value) {
+		return value == null ? "null" : value.getClass().getName() + "@" + System.identityHashCode(value);
+	}
+
+	static class Target {
+		static int instances = 0;
+		byte b = 1;
+		short s = 2;
+		int count = 3;
+		long l = 4L;
+		float f = 5.5f;
+		double d = 6.25;
+		char c = 'c';
+		boolean flag = true;
+		String name = "target";
+		int[] values = new int[] { 1, 2, 3, 4 };
+		String[][] names = new String[0][];
+		Map<String, Integer> map = new HashMap<>();
+		Target next = this;
+		Shape shape = Shape.CIRCLE;
+	}
+
+	static class Shape {
+		static final Shape CIRCLE = new Shape();
+		int sides = 0;
+	}
+}
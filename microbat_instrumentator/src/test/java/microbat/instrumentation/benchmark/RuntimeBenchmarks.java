@@ -0,0 +1,87 @@
+package microbat.instrumentation.benchmark;
+
+import java.io.File;
+import java.net.URISyntaxException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import microbat.instrumentation.benchmark.BenchmarkRunner.Result;
+import microbat.instrumentation.filter.GlobalFilterChecker;
+import sav.strategies.dto.AppJavaClassPath;
+
+/**
+ * Runs the benchmarks of the instrumentation runtime from the command line,
+ * without a test runner or network access, e.g.
+ *
+ * <pre>
+ * java -noverify -cp &lt;bin&gt;:&lt;lib/*&gt; -Dbenchmark.filter=hitLine -Dbenchmark.out=benchmarks.csv \
+ *     microbat.instrumentation.benchmark.RuntimeBenchmarks
+ * </pre>
+ *
+ * -noverify is needed by the end-to-end benchmarks, which load instrumented
+ * classes the same way as the traced vm does.
+ *
+ * See {@link BenchmarkRunner} for the settings. The benchmarks are not junit
+ * tests, so that the test runs only check the results.
+ */
+public class RuntimeBenchmarks {
+
+	public static void main(String[] args) throws Exception {
+		BenchmarkRunner runner = new BenchmarkRunner();
+		new TracerCallbackBenchmark().run(runner);
+		new FieldCaptureBenchmark().run(runner);
+		new TraceOutputBenchmark().run(runner);
+		new VarValueCodecBenchmark().run(runner);
+		try {
+			new TracingOverheadBenchmark().run(runner);
+		} catch (VerifyError e) {
+			System.out.println("Tracing overhead benchmarks are skipped, run them with -noverify: " + e.getMessage());
+		}
+		printResults(runner.getResults());
+		runner.writeResults();
+		/* the traced programs may leave non-daemon threads */
+		System.exit(0);
+	}
+
+	private static void printResults(List<Result> results) {
+		Map<String, Result> plainResults = new HashMap<>();
+		for (Result result : results) {
+			System.out.println(result);
+			String name = result.getName();
+			if (name.endsWith(TracingOverheadBenchmark.PLAIN)) {
+				plainResults.put(name.substring(0, name.length() - TracingOverheadBenchmark.PLAIN.length()), result);
+			}
+		}
+		for (Result result : results) {
+			String name = result.getName();
+			if (name.endsWith(TracingOverheadBenchmark.TRACED)) {
+				name = name.substring(0, name.length() - TracingOverheadBenchmark.TRACED.length());
+				Result plain = plainResults.get(name);
+				if (plain != null) {
+					System.out.println(String.format("%s: tracing slowdown %.1fx", name,
+							result.getNanosPerOp() / plain.getNanosPerOp()));
+				}
+			}
+		}
+	}
+
+	/**
+	 * let the filter treat the given classes as application classes, so that the
+	 * tracer records their steps.
+	 */
+	static void includeAppClasses(Class<?>... classes) throws URISyntaxException {
+		String binFolder = getBinFolder(classes[0]);
+		AppJavaClassPath appPath = new AppJavaClassPath();
+		appPath.setWorkingDirectory(binFolder);
+		appPath.addClasspath(binFolder);
+		GlobalFilterChecker.setup(appPath, null, null);
+		for (Class<?> clazz : classes) {
+			GlobalFilterChecker.getInstance().checkTransformable(clazz.getName().replace(".", "/"), binFolder, false);
+		}
+	}
+
+	static String getBinFolder(Class<?> clazz) throws URISyntaxException {
+		return new File(clazz.getProtectionDomain().getCodeSource().getLocation().toURI()).getAbsolutePath();
+	}
+}
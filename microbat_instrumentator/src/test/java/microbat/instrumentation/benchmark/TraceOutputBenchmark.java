@@ -0,0 +1,71 @@
+package microbat.instrumentation.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import microbat.instrumentation.benchmark.BenchmarkRunner.Benchmark;
+import microbat.instrumentation.benchmark.TracerCallbackBenchmark.Target;
+import microbat.instrumentation.output.TraceOutputWriter;
+import microbat.instrumentation.runtime.ExecutionTracer;
+import microbat.model.trace.Trace;
+
+/**
+ * Measures writing a recorded trace with {@link TraceOutputWriter}. An operation
+ * writes the whole trace of {@link #STEPS} steps. The codec of the variables is
+ * compared with java serialization by {@link VarValueCodecBenchmark}.
+ */
+public class TraceOutputBenchmark {
+	private static final int STEPS = 2000;
+
+	public void run(BenchmarkRunner runner) throws Exception {
+		RuntimeBenchmarks.includeAppClasses(Target.class);
+		final Trace trace = recordTrace(STEPS);
+		runner.run("TraceOutputWriter.writeTrace (" + STEPS + " steps)", new Benchmark() {
+
+			@Override
+			public Object run() throws Exception {
+				CountingOutputStream out = new CountingOutputStream();
+				TraceOutputWriter writer = new TraceOutputWriter(out);
+				writer.writeTrace(Arrays.asList(trace));
+				writer.flush();
+				return out.size;
+			}
+		});
+	}
+
+	/**
+	 * record a trace through the tracer callbacks, so that the steps and variables
+	 * are the ones of a real recording.
+	 */
+	static Trace recordTrace(int steps) {
+		String className = Target.class.getName();
+		String methodSig = className + "#run(I)V";
+		Target target = new Target();
+		ExecutionTracer tracer = new ExecutionTracer(Thread.currentThread().getId());
+		for (int i = 0; i < steps; i++) {
+			int line = 10 + (i & 7);
+			tracer._readLocalVar(i, "i", "int", line, 1, 10, 20, className, methodSig);
+			if ((i & 1) == 0) {
+				tracer._writeField(target, i, "count", "int", line, className, methodSig);
+			} else {
+				tracer._writeLocalVar(target, "target", className, line, 2, 10, 20, className, methodSig);
+			}
+		}
+		return tracer.getTrace();
+	}
+
+	private static class CountingOutputStream extends OutputStream {
+		private long size;
+
+		@Override
+		public void write(int b) throws IOException {
+			size++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			size += len;
+		}
+	}
+}
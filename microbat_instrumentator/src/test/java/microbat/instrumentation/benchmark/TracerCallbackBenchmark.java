@@ -0,0 +1,95 @@
+package microbat.instrumentation.benchmark;
+
+import microbat.instrumentation.benchmark.BenchmarkRunner.Benchmark;
+import microbat.instrumentation.runtime.ExecutionTracer;
+
+/**
+ * Measures the cost of the {@link ExecutionTracer} callbacks which are invoked
+ * by the instrumented code. Each operation hits a new line (a new step) and,
+ * except for the hitLine benchmark, accesses one variable, so the cost of a
+ * variable callback includes the cost of creating its step.
+ *
+ * The callbacks are invoked on a standalone tracer which is renewed every
+ * {@link #STEPS_PER_TRACER} steps to keep the trace in memory bounded.
+ */
+public class TracerCallbackBenchmark {
+	private static final int STEPS_PER_TRACER = 10000;
+	private static final String CLASS_NAME = Target.class.getName();
+	private static final String METHOD_SIG = CLASS_NAME + "#run(I)V";
+
+	private ExecutionTracer tracer;
+	private int steps;
+
+	public void run(BenchmarkRunner runner) throws Exception {
+		RuntimeBenchmarks.includeAppClasses(Target.class);
+		final Target target = new Target();
+		runner.run("ExecutionTracer._hitLine", new Benchmark() {
+
+			@Override
+			public Object run() throws Exception {
+				ExecutionTracer tracer = nextStep();
+				tracer._hitLine(nextLine(), CLASS_NAME, METHOD_SIG, 1, 1, null);
+				return tracer;
+			}
+		});
+		runner.run("ExecutionTracer._readLocalVar (int)", new Benchmark() {
+
+			@Override
+			public Object run() throws Exception {
+				ExecutionTracer tracer = nextStep();
+				tracer._readLocalVar(steps, "i", "int", nextLine(), 1, 10, 20, CLASS_NAME, METHOD_SIG);
+				return tracer;
+			}
+		});
+		/* appendVarValue is private, it is measured through a local variable holding an object graph */
+		runner.run("ExecutionTracer.appendVarValue (object graph)", new Benchmark() {
+
+			@Override
+			public Object run() throws Exception {
+				ExecutionTracer tracer = nextStep();
+				tracer._writeLocalVar(target, "target", CLASS_NAME, nextLine(), 2, 10, 20, CLASS_NAME, METHOD_SIG);
+				return tracer;
+			}
+		});
+		runner.run("ExecutionTracer._writeField (int)", new Benchmark() {
+
+			@Override
+			public Object run() throws Exception {
+				ExecutionTracer tracer = nextStep();
+				tracer._writeField(target, steps, "count", "int", nextLine(), CLASS_NAME, METHOD_SIG);
+				return tracer;
+			}
+		});
+		runner.run("ExecutionTracer._readArrayElementVar (int)", new Benchmark() {
+
+			@Override
+			public Object run() throws Exception {
+				ExecutionTracer tracer = nextStep();
+				int idx = steps & 3;
+				tracer._readArrayElementVar(target.values, idx, target.values[idx], "int", nextLine(), CLASS_NAME,
+						METHOD_SIG);
+				return tracer;
+			}
+		});
+	}
+
+	private ExecutionTracer nextStep() {
+		if (tracer == null || ++steps >= STEPS_PER_TRACER) {
+			tracer = new ExecutionTracer(Thread.currentThread().getId());
+			steps = 0;
+		}
+		return tracer;
+	}
+
+	/* consecutive steps at the same line are merged, so lines alternate */
+	private int nextLine() {
+		return 10 + (steps & 7);
+	}
+
+	static class Target {
+		int count = 1;
+		String name = "target";
+		int[] values = new int[] { 1, 2, 3, 4 };
+		Target next = this;
+	}
+}
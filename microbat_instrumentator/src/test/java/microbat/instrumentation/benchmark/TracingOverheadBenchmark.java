@@ -0,0 +1,94 @@
+package microbat.instrumentation.benchmark;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+
+import microbat.instrumentation.benchmark.BenchmarkRunner.Benchmark;
+import microbat.instrumentation.instr.TraceInstrumenter;
+import microbat.instrumentation.runtime.ExecutionTracer;
+import microbat.instrumentation.runtime.IExecutionTracer;
+import microbat.instrumentation.trace.InstrumentedClassLoader;
+import microbat.instrumentation.trace.testdata.Sample;
+import microbat.instrumentation.trace.testdata.Sample4;
+import microbat.model.trace.TraceNode;
+
+/**
+ * Measures the end-to-end overhead of tracing the sample programs in
+ * {@code microbat.instrumentation.trace.testdata}: the same method is run from
+ * the original class and from a class instrumented by {@link TraceInstrumenter},
+ * the slowdown is printed by {@link RuntimeBenchmarks}.
+ *
+ * The steps recorded by an operation are dropped after it, so the measurement
+ * does not include the growth of the trace in memory.
+ */
+public class TracingOverheadBenchmark {
+	static final String PLAIN = " (plain)";
+	static final String TRACED = " (traced)";
+	private static final Class<?>[] SAMPLES = new Class<?>[] { Sample.class, Sample4.class };
+
+	/**
+	 * @throws VerifyError
+	 *             if the vm is not started with -noverify, as the traced vm is,
+	 *             see VMRunner.
+	 */
+	public void run(BenchmarkRunner runner) throws Exception {
+		RuntimeBenchmarks.includeAppClasses(SAMPLES);
+		ClassLoader instrumentedLoader = new InstrumentedClassLoader(SAMPLES);
+		ExecutionTracer._start();
+		runSamples(runner, instrumentedLoader);
+	}
+
+	private void runSamples(BenchmarkRunner runner, ClassLoader instrumentedLoader) throws Exception {
+		compare(runner, "Sample.testArr", instrumentedLoader, new SampleCall() {
+
+			@Override
+			public Object call(Class<?> clazz) throws Exception {
+				Object sample = clazz.newInstance();
+				return clazz.getMethod("testArr").invoke(sample);
+			}
+		});
+		compare(runner, "Sample4.foo", instrumentedLoader, new SampleCall() {
+
+			@Override
+			public Object call(Class<?> clazz) throws Exception {
+				Object sample = clazz.newInstance();
+				Method foo = clazz.getMethod("foo", int[].class, int.class);
+				return foo.invoke(sample, new int[] { 1, 2, 3 }, 1);
+			}
+		});
+	}
+
+	private void compare(BenchmarkRunner runner, String name, ClassLoader instrumentedLoader,
+			final SampleCall sampleCall) throws Exception {
+		String className = Sample.class.getPackage().getName() + "." + name.substring(0, name.indexOf("."));
+		final Class<?> plainClass = Class.forName(className);
+		final Class<?> tracedClass = instrumentedLoader.loadClass(className);
+		runner.run(name + PLAIN, new Benchmark() {
+
+			@Override
+			public Object run() throws Exception {
+				return sampleCall.call(plainClass);
+			}
+		});
+		runner.run(name + TRACED, new Benchmark() {
+
+			@Override
+			public Object run() throws Exception {
+				Object result = sampleCall.call(tracedClass);
+				dropRecordedSteps();
+				return result;
+			}
+		});
+	}
+
+	private void dropRecordedSteps() {
+		IExecutionTracer tracer = ExecutionTracer.getCurrentThreadStore();
+		if (tracer instanceof ExecutionTracer) {
+			((ExecutionTracer) tracer).getTrace().setExecutionList(new ArrayList<TraceNode>());
+		}
+	}
+
+	private static interface SampleCall {
+		Object call(Class<?> clazz) throws Exception;
+	}
+}
@@ -0,0 +1,67 @@
+package microbat.instrumentation.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import microbat.instrumentation.benchmark.BenchmarkRunner.Benchmark;
+import microbat.instrumentation.benchmark.TracerCallbackBenchmark.Target;
+import microbat.instrumentation.output.ByteConverter;
+import microbat.instrumentation.output.VarValueDecoder;
+import microbat.instrumentation.output.VarValueEncoder;
+import microbat.model.trace.Trace;
+import microbat.model.trace.TraceNode;
+import microbat.model.value.VarValue;
+
+/**
+ * Compares {@link VarValueEncoder}/{@link VarValueDecoder} with the java
+ * serialization of {@link ByteConverter} on the same payload: the read and
+ * written variables of the steps of a recorded trace. An operation encodes or
+ * decodes the variables of all {@link #STEPS} steps as one chunk.
+ */
+public class VarValueCodecBenchmark {
+	private static final int STEPS = 20000;
+
+	public void run(BenchmarkRunner runner) throws Exception {
+		RuntimeBenchmarks.includeAppClasses(Target.class);
+		Trace trace = TraceOutputBenchmark.recordTrace(STEPS);
+		final List<Collection<VarValue>> stepVars = new ArrayList<>(STEPS * 2);
+		for (TraceNode step : trace.getExecutionList()) {
+			stepVars.add(new ArrayList<>(step.getReadVariables()));
+			stepVars.add(new ArrayList<>(step.getWrittenVariables()));
+		}
+		final byte[] encoded = new VarValueEncoder().encode(stepVars);
+		final byte[] serialized = ByteConverter.convertToBytes(stepVars);
+		System.out.println(String.format("%d steps: encoded %d bytes, serialized %d bytes", STEPS, encoded.length,
+				serialized.length));
+
+		runner.run("VarValueEncoder.encode (" + STEPS + " steps)", new Benchmark() {
+
+			@Override
+			public Object run() throws Exception {
+				return new VarValueEncoder().encode(stepVars);
+			}
+		});
+		runner.run("ByteConverter.convertToBytes (" + STEPS + " steps)", new Benchmark() {
+
+			@Override
+			public Object run() throws Exception {
+				return ByteConverter.convertToBytes(stepVars);
+			}
+		});
+		runner.run("VarValueDecoder.decode (" + STEPS + " steps)", new Benchmark() {
+
+			@Override
+			public Object run() throws Exception {
+				return new VarValueDecoder().decode(encoded);
+			}
+		});
+		runner.run("ByteConverter.convertFromBytes (" + STEPS + " steps)", new Benchmark() {
+
+			@Override
+			public Object run() throws Exception {
+				return ByteConverter.convertFromBytes(serialized);
+			}
+		});
+	}
+}
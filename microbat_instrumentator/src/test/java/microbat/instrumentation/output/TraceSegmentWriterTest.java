@@ -0,0 +1,68 @@
+package microbat.instrumentation.output;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import microbat.model.BreakPoint;
+import microbat.model.trace.Trace;
+import microbat.model.trace.TraceNode;
+import microbat.model.value.PrimitiveValue;
+import microbat.model.variable.LocalVar;
+
+public class TraceSegmentWriterTest {
+
+	@Test
+	public void writeAndReadSegments() throws Exception {
+		Trace trace = new Trace(null);
+		List<TraceNode> steps = new ArrayList<>();
+		for (int order = 1; order <= 10; order++) {
+			TraceNode node = new TraceNode(new BreakPoint("a.b.Sample", "a.b.Sample#main([Ljava/lang/String;)V", order),
+					null, order, trace, null);
+			LocalVar var = new LocalVar("x", "int", "a.b.Sample", order);
+			var.setVarID("x:" + order);
+			node.addWrittenVariable(new PrimitiveValue(String.valueOf(order), true, var));
+			if (order > 1) {
+				node.setInvocationParent(steps.get(0));
+			}
+			steps.add(node);
+		}
+		File segmentFile = File.createTempFile("trace", ".seg");
+		segmentFile.deleteOnExit();
+		TraceSegmentWriter writer = new TraceSegmentWriter(segmentFile);
+		/* the first step is pinned (as a caller) and spilled at the end */
+		writer.append(new ArrayList<>(steps.subList(1, 6)));
+		writer.append(new ArrayList<>(steps.subList(6, 10)));
+		writer.append(new ArrayList<>(steps.subList(0, 1)));
+		writer.close("main", 1l);
+
+		TraceOutputReader reader = new TraceOutputReader(new BufferedInputStream(new FileInputStream(segmentFile)));
+		Trace readTrace;
+		try {
+			readTrace = reader.readSegmentedTrace();
+		} finally {
+			reader.close();
+		}
+		assertEquals(10, readTrace.size());
+		assertEquals("main", readTrace.getThreadName());
+		TraceNode first = readTrace.getTraceNode(1);
+		assertNull(first.getInvocationParent());
+		assertEquals(9, first.getInvocationChildren().size());
+		for (int order = 2; order <= 10; order++) {
+			TraceNode node = readTrace.getTraceNode(order);
+			assertEquals(order, node.getOrder());
+			assertSame(first, node.getInvocationParent());
+			assertSame(readTrace.getTraceNode(order - 1), node.getStepInPrevious());
+			assertEquals(order, node.getLineNumber());
+			assertEquals(String.valueOf(order), node.getWrittenVariables().iterator().next().getStringValue());
+		}
+	}
+}
@@ -0,0 +1,144 @@
+package microbat.instrumentation.output;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.Test;
+
+import microbat.model.value.ArrayValue;
+import microbat.model.value.PrimitiveValue;
+import microbat.model.value.ReferenceValue;
+import microbat.model.value.VarValue;
+import microbat.model.variable.ArrayElementVar;
+import microbat.model.variable.FieldVar;
+import microbat.model.variable.LocalVar;
+
+public class VarValueCodecTest {
+	private static final int COMPARED_STEPS = 1000;
+
+	@Test
+	public void encodeAndDecode() throws Exception {
+		List<Collection<VarValue>> stepVars = createStepVars(3);
+		VarValueEncoder encoder = new VarValueEncoder();
+		VarValueDecoder decoder = new VarValueDecoder();
+		List<List<VarValue>> decoded = decoder.decode(encoder.encode(stepVars));
+		assertEquals(3, decoded.size());
+		for (int i = 0; i < decoded.size(); i++) {
+			assertSameValues(new ArrayList<>(stepVars.get(i)), decoded.get(i));
+		}
+		/* the shared array value is decoded once */
+		ReferenceValue obj = (ReferenceValue) decoded.get(0).get(0);
+		ArrayValue arr = (ArrayValue) decoded.get(0).get(1);
+		assertSame(arr, obj.getChildren().get(1));
+		assertSame(obj, arr.getParents().get(0));
+
+		/* the second chunk refers back to strings of the first one */
+		List<List<VarValue>> next = decoder.decode(encoder.encode(createStepVars(1)));
+		assertSameValues(new ArrayList<>(createStepVars(1).get(0)), next.get(0));
+	}
+
+	@Test
+	public void decodeIndependentChunks() throws Exception {
+		List<Collection<VarValue>> stepVars = createStepVars(2);
+		VarValueEncoder encoder = new VarValueEncoder();
+		encoder.encode(stepVars.subList(0, 1));
+		encoder.reset();
+		byte[] chunk = encoder.encode(stepVars.subList(1, 2));
+		/* decoded on its own, e.g., when loading a single step from the database */
+		List<List<VarValue>> decoded = new VarValueDecoder().decode(chunk);
+		assertSameValues(new ArrayList<>(stepVars.get(1)), decoded.get(0));
+	}
+
+	@Test
+	public void decodeSerializedChunk() throws Exception {
+		List<Collection<VarValue>> stepVars = createStepVars(2);
+		List<List<VarValue>> decoded = new VarValueDecoder().decode(ByteConverter.convertToBytes(stepVars));
+		assertEquals(2, decoded.size());
+		assertSameValues(new ArrayList<>(stepVars.get(1)), decoded.get(1));
+	}
+
+	@Test
+	public void keepNullStringValue() throws Exception {
+		LocalVar var = new LocalVar("obj", "a.b.Sample", "a.b.Sample", 1);
+		var.setVarID("obj:1");
+		ReferenceValue obj = new ReferenceValue(false, 1, true, var);
+		obj.setStringValue(null);
+		List<Collection<VarValue>> stepVars = new ArrayList<>();
+		List<VarValue> vars = new ArrayList<>();
+		vars.add(obj);
+		stepVars.add(vars);
+		VarValue decoded = new VarValueDecoder().decode(new VarValueEncoder().encode(stepVars)).get(0).get(0);
+		assertFalse(decoded.hasStringValue());
+		assertFalse(decoded.isDefinedToStringMethod());
+	}
+
+	/**
+	 * the codec is more compact than java serialization, their times are compared
+	 * by VarValueCodecBenchmark.
+	 */
+	@Test
+	public void smallerThanSerialization() throws Exception {
+		List<Collection<VarValue>> stepVars = createStepVars(COMPARED_STEPS);
+		byte[] serialized = ByteConverter.convertToBytes(stepVars);
+		byte[] encoded = new VarValueEncoder().encode(stepVars);
+		assertTrue(encoded.length < serialized.length);
+	}
+
+	private void assertSameValues(List<VarValue> expected, List<VarValue> actual) {
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			VarValue exp = expected.get(i);
+			VarValue act = actual.get(i);
+			assertEquals(exp.getClass(), act.getClass());
+			assertEquals(exp.getVarID(), act.getVarID());
+			assertEquals(exp.getVarName(), act.getVarName());
+			assertEquals(exp.hasStringValue(), act.hasStringValue());
+			assertEquals(exp.getStringValue(), act.getStringValue());
+			assertEquals(exp.isRoot(), act.isRoot());
+			assertEquals(exp.getChildren().size(), act.getChildren().size());
+		}
+	}
+
+	private List<Collection<VarValue>> createStepVars(int steps) {
+		List<Collection<VarValue>> stepVars = new ArrayList<>(steps);
+		for (int order = 1; order <= steps; order++) {
+			LocalVar objVar = new LocalVar("obj", "a.b.Sample", "a.b.Sample", order % 100);
+			objVar.setVarID("obj:" + order);
+			ReferenceValue obj = new ReferenceValue(false, order, true, objVar);
+			obj.setStringValue("a.b.Sample@" + order);
+
+			FieldVar countVar = new FieldVar(false, "count", "int", "a.b.Sample");
+			countVar.setVarID(order + ".count");
+			PrimitiveValue count = new PrimitiveValue(String.valueOf(order), false, countVar);
+			obj.addChild(count);
+			count.addParent(obj);
+
+			FieldVar arrVar = new FieldVar(false, "elements", "int[]", "a.b.Sample");
+			arrVar.setVarID(order + ".elements");
+			ArrayValue arr = new ArrayValue(false, false, arrVar);
+			arr.setUniqueID(order + 1000000l);
+			arr.setComponentType("int");
+			for (int i = 0; i < 3; i++) {
+				ArrayElementVar elementVar = new ArrayElementVar(arrVar.getVarID() + "[" + i + "]", "int",
+						arrVar.getVarID() + "[" + i + "]");
+				PrimitiveValue element = new PrimitiveValue(String.valueOf(i), false, elementVar);
+				arr.addChild(element);
+				element.addParent(arr);
+			}
+			obj.addChild(arr);
+			arr.addParent(obj);
+
+			List<VarValue> vars = new ArrayList<>();
+			vars.add(obj);
+			vars.add(arr);
+			stepVars.add(vars);
+		}
+		return stepVars;
+	}
+}
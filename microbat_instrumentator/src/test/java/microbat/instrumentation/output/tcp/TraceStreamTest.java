@@ -0,0 +1,144 @@
+package microbat.instrumentation.output.tcp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedInputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import microbat.instrumentation.output.tcp.TraceStreamReader.ProgressListener;
+import microbat.model.BreakPoint;
+import microbat.model.trace.Trace;
+import microbat.model.trace.TraceNode;
+import microbat.model.value.PrimitiveValue;
+import microbat.model.variable.LocalVar;
+
+public class TraceStreamTest {
+	private static final int STEPS = 250;
+	private static final int BATCH_SIZE = 40;
+
+	@Test
+	public void streamOverLoopbackSocket() throws Exception {
+		final List<Trace> traces = Arrays.asList(createTrace("main", 1l, STEPS), createTrace("worker", 2l, 3));
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try (ServerSocket serverSocket = new ServerSocket(0)) {
+			final int port = serverSocket.getLocalPort();
+			Future<Boolean> writerDone = executor.submit(new Callable<Boolean>() {
+
+				@Override
+				public Boolean call() throws Exception {
+					try (Socket socket = new Socket("localhost", port)) {
+						TraceStreamWriter writer = new TraceStreamWriter(socket.getOutputStream(),
+								socket.getInputStream(), BATCH_SIZE);
+						writer.writeHeader("msg");
+						for (Trace trace : traces) {
+							writer.writeTrace(trace);
+						}
+						/* blocks until the reader acknowledges */
+						writer.writeEndOfStream();
+						return true;
+					}
+				}
+			});
+			final List<Integer> progress = new ArrayList<>();
+			List<Trace> readTraces;
+			try (Socket client = serverSocket.accept()) {
+				TraceStreamReader reader = new TraceStreamReader(new BufferedInputStream(client.getInputStream()),
+						client.getOutputStream());
+				readTraces = reader.readTraces(new ProgressListener() {
+
+					@Override
+					public void onProgress(Trace trace, int readSteps, int totalSteps) {
+						assertEquals(readSteps, trace.size());
+						if (totalSteps == STEPS) {
+							progress.add(readSteps);
+						}
+					}
+				});
+				assertEquals("msg", reader.getProgramMsg());
+				assertTrue(writerDone.get());
+			}
+			assertEquals(Arrays.asList(40, 80, 120, 160, 200, 240, 250), progress);
+			assertEquals(2, readTraces.size());
+			assertSameTrace(traces.get(0), readTraces.get(0));
+			assertSameTrace(traces.get(1), readTraces.get(1));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private void assertSameTrace(Trace expected, Trace actual) {
+		assertEquals(expected.getThreadName(), actual.getThreadName());
+		assertEquals(expected.getThreadId(), actual.getThreadId());
+		assertEquals(expected.isMain(), actual.isMain());
+		assertEquals(expected.getIncludedLibraryClasses(), actual.getIncludedLibraryClasses());
+		assertEquals(expected.size(), actual.size());
+		for (int order = 1; order <= expected.size(); order++) {
+			TraceNode exp = expected.getTraceNode(order);
+			TraceNode act = actual.getTraceNode(order);
+			assertEquals(order, act.getOrder());
+			assertEquals(exp.getLineNumber(), act.getLineNumber());
+			assertEquals(exp.getMethodSign(), act.getMethodSign());
+			assertEquals(exp.getTimestamp(), act.getTimestamp());
+			assertEquals(getOrder(exp.getInvocationParent()), getOrder(act.getInvocationParent()));
+			assertEquals(getOrder(exp.getControlDominator()), getOrder(act.getControlDominator()));
+			assertEquals(getOrder(exp.getStepOverPrevious()), getOrder(act.getStepOverPrevious()));
+			assertEquals(exp.getInvocationChildren().size(), act.getInvocationChildren().size());
+			if (order > 1) {
+				assertSame(actual.getTraceNode(order - 1), act.getStepInPrevious());
+			} else {
+				assertNull(act.getStepInPrevious());
+			}
+			assertEquals(exp.getWrittenVariables().iterator().next().getStringValue(),
+					act.getWrittenVariables().iterator().next().getStringValue());
+			assertEquals(exp.getReadVariables().size(), act.getReadVariables().size());
+		}
+	}
+
+	private int getOrder(TraceNode node) {
+		return node == null ? 0 : node.getOrder();
+	}
+
+	private Trace createTrace(String threadName, long threadId, int size) {
+		Trace trace = new Trace(null);
+		trace.setThreadName(threadName);
+		trace.setThreadId(threadId);
+		trace.setMain(threadId == 1l);
+		trace.setIncludedLibraryClasses(Arrays.asList("java.util.ArrayList"));
+		trace.setExcludedLibraryClasses(new ArrayList<String>());
+		List<TraceNode> steps = new ArrayList<>();
+		for (int order = 1; order <= size; order++) {
+			/* locations repeat, so that most of them are written as references */
+			BreakPoint location = new BreakPoint("a.b.Sample", "a.b.Sample", "a.b.Sample#main([Ljava/lang/String;)V",
+					order % 7 + 1);
+			TraceNode node = new TraceNode(location, null, order, trace, null);
+			node.setTimestamp(1000l + order);
+			LocalVar var = new LocalVar("x", "int", "a.b.Sample", order);
+			var.setVarID("x:" + order);
+			node.addWrittenVariable(new PrimitiveValue(String.valueOf(order), true, var));
+			if (order > 1) {
+				TraceNode first = steps.get(0);
+				node.setInvocationParent(first);
+				first.addInvocationChild(node);
+				node.setControlDominator(steps.get(order - 2));
+				node.setStepOverPrevious(steps.get(order - 2));
+				node.addReadVariable(steps.get(order - 2).getWrittenVariables().iterator().next());
+			}
+			steps.add(node);
+		}
+		trace.setExecutionList(steps);
+		return trace;
+	}
+}
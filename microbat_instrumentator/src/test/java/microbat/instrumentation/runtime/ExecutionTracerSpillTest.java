@@ -0,0 +1,267 @@
+package microbat.instrumentation.runtime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import microbat.instrumentation.AgentConstants;
+import microbat.instrumentation.AgentParams;
+import microbat.instrumentation.CommandLine;
+import microbat.instrumentation.SpilledTraceConstructor;
+import microbat.instrumentation.TraceAgent;
+import microbat.instrumentation.filter.GlobalFilterChecker;
+import microbat.instrumentation.output.TraceSegmentReader;
+import microbat.instrumentation.output.TraceSegmentWriter;
+import microbat.model.trace.StepLinks;
+import microbat.model.trace.Trace;
+import microbat.model.trace.TraceNode;
+import microbat.model.trace.TraceStepSource.StepVisitor;
+import microbat.model.value.VarValue;
+import sav.strategies.dto.AppJavaClassPath;
+
+/**
+ * Checks that the steps spilled by the {@link ExecutionTracer} are no longer
+ * held in memory, and that the trace constructed from the segment file is the
+ * same as the one constructed in memory.
+ */
+public class ExecutionTracerSpillTest {
+	private static final int SPILL_WINDOW_SIZE = 200;
+	private static final String CLASS_NAME = Target.class.getName();
+	private static final String MAIN_SIG = CLASS_NAME + "#main([Ljava/lang/String;)V";
+	private static final String METHOD_SIG = CLASS_NAME + "#run(I)V";
+	private static final String CALLEE_SIG = CLASS_NAME + "#next()L" + CLASS_NAME.replace(".", "/") + ";";
+
+	private File spillFolder;
+	private ExecutionTracer tracer;
+
+	@Before
+	public void setup() throws Exception {
+		String binFolder = new File(Target.class.getProtectionDomain().getCodeSource().getLocation().toURI())
+				.getAbsolutePath();
+		AppJavaClassPath appPath = new AppJavaClassPath();
+		appPath.setWorkingDirectory(binFolder);
+		appPath.addClasspath(binFolder);
+		GlobalFilterChecker.setup(appPath, null, null);
+		ExecutionTracer.appJavaClassPath = appPath;
+		GlobalFilterChecker.getInstance().checkTransformable(CLASS_NAME.replace(".", "/"), binFolder, false);
+
+		spillFolder = Files.createTempDirectory("spill").toFile();
+		ExecutionTracer.setSpillWindow(SPILL_WINDOW_SIZE, spillFolder.getAbsolutePath());
+		tracer = new ExecutionTracer(Thread.currentThread().getId());
+	}
+
+	@After
+	public void tearDown() {
+		ExecutionTracer.spillWindowSize = AgentConstants.UNSPECIFIED_INT_VALUE;
+		ExecutionTracer.spillFolder = null;
+		ExecutionTracer.appJavaClassPath = null;
+		/* the toString() calls of the recorded steps count in the run budget */
+		ToStringCapturePolicy.reset();
+		File[] files = spillFolder.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		spillFolder.delete();
+	}
+
+	@Test
+	public void spilledStepsAreCollected() {
+		record(1);
+		/* the return step defines the returned value, the callee steps are invocation children */
+		List<WeakReference<TraceNode>> references = referStepsInMemory();
+		record(10 * SPILL_WINDOW_SIZE);
+		assertTrue(tracer.isSpilling());
+		collectGarbage();
+		for (WeakReference<TraceNode> reference : references) {
+			assertNull("a step is still reachable after being spilled", reference.get());
+		}
+
+		List<TraceNode> keptSteps = tracer.getTrace().getExecutionList();
+		assertTrue(keptSteps.size() <= SPILL_WINDOW_SIZE + 1);
+		Set<TraceNode> kept = new HashSet<>(keptSteps);
+		for (TraceNode step : keptSteps) {
+			TraceNode parent = step.getInvocationParent();
+			if (parent != null) {
+				assertTrue("a kept step refers to a spilled step", kept.contains(parent));
+			}
+			if (CALLEE_SIG.equals(step.getMethodSign())) {
+				/* the parent may be spilled, its order is kept */
+				assertTrue(step.getInvocationParentOrder() > 0);
+			}
+		}
+	}
+
+	@Test
+	public void onlyWindowIsKeptInMemory() throws Exception {
+		enterRun();
+		for (int i = 0; i < 20; i++) {
+			record(SPILL_WINDOW_SIZE);
+			assertTrue(tracer.getTrace().getExecutionList().size() <= SPILL_WINDOW_SIZE + 1);
+		}
+		Trace trace = tracer.getTrace();
+		/* five steps per iteration */
+		assertEquals(20 * SPILL_WINDOW_SIZE * 5 + 1, trace.size());
+
+		TraceSegmentWriter segmentWriter = tracer.finishSpilling();
+		assertTrue(trace.getExecutionList().isEmpty());
+		assertEquals(trace.size(), segmentWriter.getIndex().getTotalSteps());
+		TraceSegmentReader reader = new TraceSegmentReader(segmentWriter.getSegmentFile(), segmentWriter.getIndex(),
+				trace, false);
+		try {
+			int order = 0;
+			while (reader.hasNext()) {
+				assertEquals(++order, reader.next().getOrder());
+			}
+			assertEquals(trace.size(), order);
+			/* the callers kept while spilling are written after their callees */
+			assertTrue(segmentWriter.getIndex().isLate(1));
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void spilledTraceIsConstructedAsInMemory() throws Exception {
+		enterRun();
+		record(3 * SPILL_WINDOW_SIZE);
+		Trace spilledTrace = tracer.getTrace();
+		spilledTrace.setStepSource(new SpilledTraceConstructor(tracer.finishSpilling(), spilledTrace));
+		List<String> spilledSteps = describeSteps(spilledTrace);
+		assertEquals("spill files are not deleted", 0, spillFolder.listFiles().length);
+
+		ExecutionTracer.spillWindowSize = AgentConstants.UNSPECIFIED_INT_VALUE;
+		tracer = new ExecutionTracer(Thread.currentThread().getId());
+		enterRun();
+		record(3 * SPILL_WINDOW_SIZE);
+		Trace trace = tracer.getTrace();
+		new TraceAgent(CommandLine.parse(AgentParams.OPT_PRECHECK + "=false")).constructTrace(trace);
+		List<String> steps = describeSteps(trace);
+		assertEquals(steps.size(), spilledSteps.size());
+		for (int i = 0; i < steps.size(); i++) {
+			assertEquals(steps.get(i), spilledSteps.get(i));
+		}
+	}
+
+	@Test
+	public void deferredValuesAreRenderedOnTracedThread() throws Exception {
+		ToStringCapturePolicy.setup(AgentConstants.UNSPECIFIED_INT_VALUE, AgentConstants.UNSPECIFIED_INT_VALUE,
+				AgentConstants.UNSPECIFIED_INT_VALUE, true);
+		Target.toStringThreads.clear();
+		enterRun();
+		record(3 * SPILL_WINDOW_SIZE);
+		tracer.finishSpilling();
+		assertEquals(Collections.singleton(Thread.currentThread()), Target.toStringThreads);
+	}
+
+	private static List<String> describeSteps(Trace trace) throws IOException {
+		final List<String> steps = new ArrayList<>();
+		trace.visitSteps(new StepVisitor() {
+
+			@Override
+			public void visit(TraceNode step, StepLinks links) throws IOException {
+				steps.add(String.format("%d %s:%d parent=%d in=%d over=%d overPrev=%d dominator=%d read=%s written=%s",
+						step.getOrder(), step.getMethodSign(), step.getLineNumber(), links.getInvocationParent(),
+						links.getStepInNext(), links.getStepOverNext(), links.getStepOverPrevious(),
+						links.getControlDominator(), describe(step.getReadVariables()),
+						describe(step.getWrittenVariables())));
+			}
+		});
+		return steps;
+	}
+
+	private static List<String> describe(Collection<VarValue> values) {
+		List<String> descriptions = new ArrayList<>();
+		for (VarValue value : values) {
+			/* the values are different objects in the two runs */
+			descriptions.add(value.getVarName() + ":" + value.getType());
+		}
+		return descriptions;
+	}
+
+	/* in a separate frame, so that no local variable keeps the steps reachable */
+	private List<WeakReference<TraceNode>> referStepsInMemory() {
+		List<WeakReference<TraceNode>> references = new ArrayList<>();
+		for (TraceNode step : tracer.getTrace().getExecutionList()) {
+			references.add(new WeakReference<TraceNode>(step));
+		}
+		return references;
+	}
+
+	/**
+	 * the step calling the loop of {@link #record(int)} is kept in memory until
+	 * the loop ends.
+	 */
+	private void enterRun() {
+		tracer._hitLine(5, CLASS_NAME, MAIN_SIG, 0, 0, null);
+		tracer.enterMethod(CLASS_NAME, METHOD_SIG, 10, 12, "", "", new Object[0]);
+	}
+
+	/**
+	 * records the steps of a loop calling {@link Target#next()}, five steps for
+	 * each iteration.
+	 */
+	private void record(int iterations) {
+		Target target = new Target();
+		for (int i = 0; i < iterations; i++) {
+			tracer._writeLocalVar(target, "target", CLASS_NAME, 10, 2, 10, 20, CLASS_NAME, METHOD_SIG);
+			tracer.enterMethod(CLASS_NAME, CALLEE_SIG, 30, 32, "", "", new Object[0]);
+			tracer._hitLine(31, CLASS_NAME, CALLEE_SIG, 0, 0, null);
+			tracer._hitReturn(target.next(), "L" + CLASS_NAME.replace(".", "/") + ";", 32, CLASS_NAME, CALLEE_SIG);
+			tracer.exitMethod(32, CLASS_NAME, CALLEE_SIG);
+			tracer._hitLine(11, CLASS_NAME, METHOD_SIG, 1, 1, null);
+		}
+	}
+
+	private static long collectGarbage() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 5; i++) {
+			System.gc();
+			try {
+				Thread.sleep(20);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	static class Target {
+		static Set<Thread> toStringThreads = Collections.synchronizedSet(new HashSet<Thread>());
+		int count = 1;
+		String name = "target";
+		Target next = this;
+
+		Target next() {
+			return next;
+		}
+
+		@Override
+		public String toString() {
+			toStringThreads.add(Thread.currentThread());
+			return name;
+		}
+
+		void run(int iterations) {
+			for (int i = 0; i < iterations; i++) {
+				next = next.next();
+			}
+		}
+	}
+}
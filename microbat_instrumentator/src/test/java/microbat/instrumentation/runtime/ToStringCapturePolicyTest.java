@@ -0,0 +1,123 @@
+package microbat.instrumentation.runtime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.ref.WeakReference;
+
+import org.junit.After;
+import org.junit.Test;
+
+import microbat.instrumentation.AgentConstants;
+import microbat.model.value.ReferenceValue;
+import microbat.model.variable.LocalVar;
+
+public class ToStringCapturePolicyTest {
+	private static final int UNSPECIFIED = AgentConstants.UNSPECIFIED_INT_VALUE;
+
+	@After
+	public void tearDown() {
+		ToStringCapturePolicy.setup(UNSPECIFIED, UNSPECIFIED, UNSPECIFIED, false);
+		ToStringCapturePolicy.reset();
+	}
+
+	@Test
+	public void testExpensiveClass() {
+		ToStringCapturePolicy.setup(1, UNSPECIFIED, UNSPECIFIED, false);
+		ToStringCapturePolicy policy = new ToStringCapturePolicy();
+		for (int step = 0; step < 4; step++) {
+			assertEquals("slow", policy.toString(new Slow(2), step));
+		}
+		assertEquals(ToStringCapturePolicy.EXPENSIVE_VALUE, policy.toString(new Slow(2), 4));
+		/* the cost of the other classes is not affected */
+		assertEquals("fast", policy.toString(new Fast(), 4));
+	}
+
+	@Test
+	public void testStepBudget() {
+		ToStringCapturePolicy.setup(UNSPECIFIED, 5, UNSPECIFIED, false);
+		ToStringCapturePolicy policy = new ToStringCapturePolicy();
+		assertEquals("slow", policy.toString(new Slow(3), 1));
+		assertEquals("slow", policy.toString(new Slow(3), 1));
+		assertEquals(ToStringCapturePolicy.OUT_OF_BUDGET_VALUE, policy.toString(new Slow(3), 1));
+		assertEquals("slow", policy.toString(new Slow(3), 2));
+	}
+
+	@Test
+	public void testRunBudget() {
+		ToStringCapturePolicy.setup(UNSPECIFIED, UNSPECIFIED, 5, false);
+		ToStringCapturePolicy policy = new ToStringCapturePolicy();
+		ToStringCapturePolicy otherThreadPolicy = new ToStringCapturePolicy();
+		assertEquals("slow", policy.toString(new Slow(3), 1));
+		assertEquals("slow", otherThreadPolicy.toString(new Slow(3), 1));
+		assertEquals(ToStringCapturePolicy.OUT_OF_BUDGET_VALUE, policy.toString(new Fast(), 2));
+	}
+
+	@Test
+	public void testDeferredValueIsRenderedOnAccess() {
+		ToStringCapturePolicy.setup(UNSPECIFIED, UNSPECIFIED, UNSPECIFIED, true);
+		Fast obj = new Fast();
+		ReferenceValue value = new ReferenceValue(false, 1, true, new LocalVar("obj", Fast.class.getName(), "Test", 1));
+		value.setDeferredStringValue(new ToStringCapturePolicy().defer(obj));
+		obj.name = "changed";
+		assertEquals("changed", value.getStringValue());
+	}
+
+	@Test
+	public void testCollectedValueIsRenderedAsIdentity() {
+		ToStringCapturePolicy.setup(UNSPECIFIED, UNSPECIFIED, UNSPECIFIED, true);
+		Fast obj = new Fast();
+		String identity = Fast.class.getName() + "@" + Integer.toHexString(System.identityHashCode(obj));
+		ReferenceValue value = new ReferenceValue(false, 1, true, new LocalVar("obj", Fast.class.getName(), "Test", 1));
+		value.setDeferredStringValue(new ToStringCapturePolicy().defer(obj));
+		WeakReference<Fast> ref = new WeakReference<Fast>(obj);
+		obj = null;
+		for (int i = 0; i < 10 && ref.get() != null; i++) {
+			System.gc();
+		}
+		assertNull(ref.get());
+		assertEquals(identity, value.getStringValue());
+	}
+
+	@Test
+	public void testResetAfterStoring() {
+		ToStringCapturePolicy.setup(UNSPECIFIED, UNSPECIFIED, 5, true);
+		assertEquals("slow", new ToStringCapturePolicy().toString(new Slow(6), 1));
+		/* the tracers are disposed before the traces are stored, the run budget still applies */
+		ExecutionTracer.dispose();
+		assertTrue(ToStringCapturePolicy.isDeferred());
+		assertEquals(ToStringCapturePolicy.OUT_OF_BUDGET_VALUE, new ToStringCapturePolicy().toString(new Fast(), 2));
+		ToStringCapturePolicy.reset();
+		assertFalse(ToStringCapturePolicy.isDeferred());
+		assertEquals("fast", new ToStringCapturePolicy().toString(new Fast(), 2));
+	}
+
+	private static class Slow {
+		private long millis;
+
+		Slow(long millis) {
+			this.millis = millis;
+		}
+
+		@Override
+		public String toString() {
+			try {
+				Thread.sleep(millis);
+			} catch (InterruptedException e) {
+				// ignore
+			}
+			return "slow";
+		}
+	}
+
+	private static class Fast {
+		private String name = "fast";
+
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
+}
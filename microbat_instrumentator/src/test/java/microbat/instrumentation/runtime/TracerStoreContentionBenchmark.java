@@ -0,0 +1,70 @@
+package microbat.instrumentation.runtime;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Measures the throughput of the per-thread tracer lookup which is executed
+ * at every instrumented method entry (see {@link ExecutionTracer#_getTracer}),
+ * i.e. check tracking state -> untrack -> get tracer -> track. It is run from
+ * the command line, not as a test.
+ */
+public class TracerStoreContentionBenchmark {
+	private static final int[] THREAD_NUMS = new int[] {1, 4, 16, 64};
+	private static final int LOOKUPS_PER_THREAD = 2000000;
+	private static final int WARMUP_ROUNDS = 2;
+
+	public static void main(String[] args) throws Exception {
+		TracerStoreContentionBenchmark benchmark = new TracerStoreContentionBenchmark();
+		for (int i = 0; i < WARMUP_ROUNDS; i++) {
+			for (int threadNum : THREAD_NUMS) {
+				benchmark.measure(threadNum);
+			}
+		}
+		for (int threadNum : THREAD_NUMS) {
+			long nanos = benchmark.measure(threadNum);
+			long totalLookups = (long) threadNum * LOOKUPS_PER_THREAD;
+			System.out.println(String.format("threads=%d, lookups=%d, time=%dms, throughput=%.1f lookups/us",
+					threadNum, totalLookups, nanos / 1000000, totalLookups * 1000.0 / nanos));
+		}
+	}
+
+	private long measure(int threadNum) throws InterruptedException {
+		final ExecutionTracerStore store = new ExecutionTracerStore();
+		final LockedThreads lockedThreads = new LockedThreads();
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(threadNum);
+		final long[] sink = new long[threadNum];
+		for (int i = 0; i < threadNum; i++) {
+			final int idx = i;
+			Thread thread = new Thread(new Runnable() {
+
+				@Override
+				public void run() {
+					long threadId = Thread.currentThread().getId();
+					long found = 0;
+					try {
+						start.await();
+						for (int j = 0; j < LOOKUPS_PER_THREAD; j++) {
+							if (lockedThreads.isUntracking(threadId)) {
+								continue;
+							}
+							lockedThreads.untrack(threadId);
+							ExecutionTracer tracer = store.get(threadId);
+							found += tracer.getThreadId();
+							lockedThreads.track(threadId);
+						}
+					} catch (InterruptedException e) {
+						// ignore
+					}
+					sink[idx] = found;
+					done.countDown();
+				}
+			});
+			thread.start();
+		}
+		long t1 = System.nanoTime();
+		start.countDown();
+		done.await();
+		return System.nanoTime() - t1;
+	}
+}
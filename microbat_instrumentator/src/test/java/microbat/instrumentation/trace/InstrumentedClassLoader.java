@@ -0,0 +1,68 @@
+package microbat.instrumentation.trace;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashSet;
+import java.util.Set;
+
+import microbat.instrumentation.AgentParams;
+import microbat.instrumentation.CommandLine;
+import microbat.instrumentation.instr.TraceInstrumenter;
+import microbat.instrumentation.instr.instruction.info.EntryPoint;
+
+/**
+ * loads the instrumented version of the given classes, other classes are loaded
+ * by the parent loader. The instrumented classes are only accepted by a vm
+ * started with -noverify, like the traced vm.
+ */
+public class InstrumentedClassLoader extends ClassLoader {
+	private Set<String> classNames = new HashSet<>();
+	private TraceInstrumenter instrumenter;
+
+	public InstrumentedClassLoader(Class<?>[] classes) {
+		super(InstrumentedClassLoader.class.getClassLoader());
+		for (Class<?> clazz : classes) {
+			classNames.add(clazz.getName());
+		}
+		AgentParams params = new AgentParams(new CommandLine());
+		params.setEntryPoint(new EntryPoint("", ""));
+		instrumenter = new TraceInstrumenter(params);
+	}
+
+	@Override
+	protected synchronized Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+		if (!classNames.contains(name)) {
+			return super.loadClass(name, resolve);
+		}
+		Class<?> clazz = findLoadedClass(name);
+		if (clazz == null) {
+			try {
+				byte[] bytes = readClass(name);
+				byte[] instrumented = instrumenter.instrument(name.replace(".", "/"), bytes);
+				if (instrumented != null) {
+					bytes = instrumented;
+				}
+				clazz = defineClass(name, bytes, 0, bytes.length);
+			} catch (Exception e) {
+				throw new ClassNotFoundException(name, e);
+			}
+		}
+		if (resolve) {
+			resolveClass(clazz);
+		}
+		return clazz;
+	}
+
+	private byte[] readClass(String name) throws IOException {
+		try (InputStream in = getParent().getResourceAsStream(name.replace(".", "/") + ".class")) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4096];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				out.write(buffer, 0, read);
+			}
+			return out.toByteArray();
+		}
+	}
+}
@@ -0,0 +1,23 @@
+package microbat.instrumentation.trace.testdata;
+
+public class RecursionSample {
+
+	public static int sum(int[] values, int index) {
+		if (index >= values.length) {
+			return 0;
+		}
+		int value = values[index];
+		if (value % 2 == 0) {
+			value = value / 2;
+		}
+		return value + sum(values, index + 1);
+	}
+
+	public static void main(String[] args) {
+		int[] values = new int[50];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = i * 3;
+		}
+		System.out.println(sum(values, 0));
+	}
+}
@@ -0,0 +1,80 @@
+package microbat.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import microbat.instrumentation.output.TraceOutputReader;
+import microbat.instrumentation.output.TraceOutputWriter;
+import microbat.model.trace.Trace;
+import microbat.model.trace.TraceNode;
+
+public class LocationRegistryTest {
+	private static final String CLASS_NAME = "a.b.Sample";
+	private static final String MAIN = "a.b.Sample#main([Ljava/lang/String;)V";
+	private static final String RUN = "a.b.Sample#run()V";
+
+	@Test
+	public void getCanonicalLocations() {
+		LocationRegistry registry = new LocationRegistry();
+		BreakPoint main10 = registry.getLocation(CLASS_NAME, MAIN, 10);
+		BreakPoint main3 = registry.getLocation(CLASS_NAME, MAIN, 3);
+		BreakPoint main20 = registry.getLocation(CLASS_NAME, MAIN, 20);
+		BreakPoint run10 = registry.getLocation(CLASS_NAME, RUN, 10);
+		assertSame(main10, registry.getLocation(CLASS_NAME, MAIN, 10));
+		assertSame(main3, registry.getLocation(CLASS_NAME, MAIN, 3));
+		assertSame(main20, registry.getLocation(new String(CLASS_NAME), new String(MAIN), 20));
+		assertNotSame(main10, run10);
+		assertEquals(4, registry.size());
+		for (int i = 0; i < registry.size(); i++) {
+			assertEquals(i, registry.getLocation(i).getLocationId());
+		}
+		assertEquals(CLASS_NAME, main10.getDeclaringCompilationUnitName());
+
+		BreakPoint external = new BreakPoint(CLASS_NAME, MAIN, 3);
+		assertSame(main3, registry.register(external));
+		BreakPoint newExternal = new BreakPoint(CLASS_NAME, MAIN, 4);
+		assertSame(newExternal, registry.register(newExternal));
+		assertEquals(4, newExternal.getLocationId());
+	}
+
+	@Test
+	public void writeTraceWithRegistry() throws Exception {
+		Trace trace = new Trace(null);
+		trace.setThreadName("main");
+		List<TraceNode> steps = new ArrayList<>();
+		int[] lines = { 3, 4, 10, 4, 3, 10, 11 };
+		for (int i = 0; i < lines.length; i++) {
+			BreakPoint location = trace.getLocationRegistry().getLocation(CLASS_NAME, i < 5 ? MAIN : RUN, lines[i]);
+			steps.add(new TraceNode(location, null, i + 1, trace, null));
+		}
+		/* a step which is not created through the registry */
+		steps.add(new TraceNode(new BreakPoint(CLASS_NAME, MAIN, 4), null, steps.size() + 1, trace, null));
+		trace.setExecutionList(steps);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		TraceOutputWriter writer = new TraceOutputWriter(out);
+		writer.writeTrace(Arrays.asList(trace));
+		writer.close();
+		TraceOutputReader reader = new TraceOutputReader(new ByteArrayInputStream(out.toByteArray()));
+		Trace readTrace = reader.readTrace().get(0);
+		reader.close();
+		assertEquals(steps.size(), readTrace.size());
+		for (int i = 0; i < steps.size(); i++) {
+			BreakPoint expected = steps.get(i).getBreakPoint();
+			BreakPoint actual = readTrace.getTraceNode(i + 1).getBreakPoint();
+			assertEquals(expected.getLineNumber(), actual.getLineNumber());
+			assertEquals(expected.getMethodSign(), actual.getMethodSign());
+		}
+		assertSame(readTrace.getTraceNode(2).getBreakPoint(), readTrace.getTraceNode(4).getBreakPoint());
+		assertSame(readTrace.getTraceNode(2).getBreakPoint(), readTrace.getTraceNode(8).getBreakPoint());
+	}
+}
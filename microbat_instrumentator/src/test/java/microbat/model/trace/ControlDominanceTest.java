@@ -0,0 +1,143 @@
+package microbat.model.trace;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import microbat.instrumentation.filter.GlobalFilterChecker;
+import microbat.instrumentation.runtime.ExecutionTracer;
+import microbat.instrumentation.trace.InstrumentedClassLoader;
+import microbat.instrumentation.trace.testdata.RecursionSample;
+import microbat.instrumentation.trace.testdata.RefVar;
+import microbat.instrumentation.trace.testdata.Sample;
+import microbat.instrumentation.trace.testdata.Sample2;
+import microbat.instrumentation.trace.testdata.Sample4;
+import microbat.model.Scope;
+import sav.strategies.dto.AppJavaClassPath;
+
+/**
+ * Checks that {@link Trace#constructControlDomianceRelation()} links the steps
+ * of the traces of the testdata programs to the same control dominators as the
+ * former construction, which walked up the chain of control dominators and
+ * checked all the invocation parents of a step against each of them.
+ *
+ * The testdata programs are traced in this vm, which has to be started with
+ * -noverify, otherwise the test is skipped.
+ */
+public class ControlDominanceTest {
+	private static final Class<?>[] PROGRAMS = new Class<?>[] { Sample.class, Sample2.class, Sample4.class,
+			RecursionSample.class, RefVar.class };
+
+	@Test
+	public void testSameDominatorsAsChainWalk() throws Exception {
+		AppJavaClassPath appPath = includeAppClasses(PROGRAMS);
+		ClassLoader loader = new InstrumentedClassLoader(PROGRAMS);
+		ExecutionTracer._start();
+		/* the loop of Sample3.main does not terminate */
+		String[] mainClasses = new String[] { Sample.class.getName(), Sample4.class.getName(),
+				RecursionSample.class.getName() };
+		int dominatedSteps = 0;
+		for (String mainClass : mainClasses) {
+			Trace trace = record(appPath, loader, mainClass, "main");
+			dominatedSteps += checkDominators(mainClass, trace);
+		}
+		Trace trace = record(appPath, loader, Sample2.class.getName(), "testArr");
+		dominatedSteps += checkDominators(Sample2.class.getName(), trace);
+		assertTrue(dominatedSteps > 0);
+	}
+
+	private Trace record(AppJavaClassPath appPath, ClassLoader loader, String className, String methodName)
+			throws Exception {
+		ExecutionTracer tracer = (ExecutionTracer) ExecutionTracer.getCurrentThreadStore();
+		tracer.getTrace().setExecutionList(new ArrayList<TraceNode>());
+		Class<?> clazz;
+		try {
+			clazz = loader.loadClass(className);
+			if (methodName.equals("main")) {
+				clazz.getMethod(methodName, String[].class).invoke(null, (Object) new String[0]);
+			} else {
+				clazz.getMethod(methodName).invoke(clazz.newInstance());
+			}
+		} catch (VerifyError e) {
+			Assume.assumeNoException("run the test with -noverify", e);
+		}
+		Trace trace = tracer.getTrace();
+		trace.setAppJavaClassPath(appPath);
+		return trace;
+	}
+
+	/**
+	 * @return the number of steps with a control dominator.
+	 */
+	private int checkDominators(String program, Trace trace) {
+		trace.constructControlDomianceRelation();
+		Map<TraceNode, TraceNode> expectedDominators = new HashMap<>();
+		Map<TraceNode, List<TraceNode>> expectedDominatees = new HashMap<>();
+		TraceNode controlDominator = null;
+		for (TraceNode node : trace.getExecutionList()) {
+			while (controlDominator != null && !isContainedInScope(node, controlDominator.getControlScope())) {
+				controlDominator = expectedDominators.get(controlDominator);
+			}
+			if (controlDominator != null) {
+				expectedDominators.put(node, controlDominator);
+				getList(expectedDominatees, controlDominator).add(node);
+			}
+			if (node.isBranch()) {
+				controlDominator = node;
+			}
+		}
+		for (TraceNode node : trace.getExecutionList()) {
+			String msg = program + ": step " + node.getOrder();
+			assertSame(msg, expectedDominators.get(node), node.getControlDominator());
+			assertEquals(msg, getList(expectedDominatees, node), node.getControlDominatees());
+		}
+		return expectedDominators.size();
+	}
+
+	private boolean isContainedInScope(TraceNode node, Scope conditionScope) {
+		if (conditionScope == null) {
+			return false;
+		}
+		List<TraceNode> testingSet = new ArrayList<>();
+		testingSet.add(node);
+		testingSet.addAll(node.findAllInvocationParents());
+		for (TraceNode n : testingSet) {
+			if (conditionScope.containsNodeScope(n)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private List<TraceNode> getList(Map<TraceNode, List<TraceNode>> map, TraceNode key) {
+		List<TraceNode> list = map.get(key);
+		if (list == null) {
+			list = new ArrayList<>();
+			map.put(key, list);
+		}
+		return list;
+	}
+
+	private AppJavaClassPath includeAppClasses(Class<?>[] classes) throws Exception {
+		String binFolder = new File(classes[0].getProtectionDomain().getCodeSource().getLocation().toURI())
+				.getAbsolutePath();
+		AppJavaClassPath appPath = new AppJavaClassPath();
+		appPath.setJavaHome(System.getProperty("java.home"));
+		appPath.setWorkingDirectory(binFolder);
+		appPath.addClasspath(binFolder);
+		GlobalFilterChecker.setup(appPath, null, null);
+		for (Class<?> clazz : classes) {
+			GlobalFilterChecker.getInstance().checkTransformable(clazz.getName().replace(".", "/"), binFolder, false);
+		}
+		return appPath;
+	}
+}
@@ -0,0 +1,139 @@
+package microbat.model.trace;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.classfile.LineNumber;
+import org.apache.bcel.classfile.Method;
+import org.junit.Test;
+
+import microbat.codeanalysis.bytecode.CFG;
+import microbat.codeanalysis.bytecode.CFGNode;
+import microbat.codeanalysis.bytecode.ClassFileRepository;
+import microbat.instrumentation.trace.testdata.Sample4;
+import microbat.model.BreakPoint;
+import microbat.model.ClassLocation;
+import microbat.model.ControlScope;
+import microbat.model.trace.ControlScopeCache.ClassControlScopes;
+import microbat.model.trace.ControlScopeCache.MethodControlScopes;
+import sav.strategies.dto.AppJavaClassPath;
+
+public class ControlScopeCacheTest {
+	private static final String CLASS_NAME = Sample4.class.getName();
+
+	private AppJavaClassPath createAppClassPath() throws Exception {
+		AppJavaClassPath appPath = new AppJavaClassPath();
+		appPath.setJavaHome(System.getProperty("java.home"));
+		appPath.addClasspath(new File(Sample4.class.getProtectionDomain().getCodeSource().getLocation().toURI())
+				.getAbsolutePath());
+		return appPath;
+	}
+
+	@Test
+	public void testScopesMatchCfg() throws Exception {
+		AppJavaClassPath appPath = createAppClassPath();
+		ClassControlScopes classScopes = new ControlScopeCache(null).getClassScopes(CLASS_NAME, appPath);
+		ClassFileRepository repository = ClassFileRepository.getInstance(appPath);
+		JavaClass clazz = repository.loadClass(CLASS_NAME);
+		for (Method method : clazz.getMethods()) {
+			CFG cfg = repository.getCFG(CLASS_NAME, method);
+			for (LineNumber lineNumber : method.getLineNumberTable().getLineNumberTable()) {
+				int line = lineNumber.getLineNumber();
+				MethodControlScopes methodScopes = classScopes.findMethodByLine(line);
+				ControlScope scope = methodScopes.createControlScope(newBreakPoint(method, line));
+				assertEquals(method.getName() + " line " + line, getExpectedScope(cfg, method, line),
+						new HashSet<>(scope.getRangeList()));
+			}
+		}
+	}
+
+	@Test
+	public void testPersistedScopes() throws Exception {
+		AppJavaClassPath appPath = createAppClassPath();
+		File folder = Files.createTempDirectory("control_scope_cache").toFile();
+		ControlScopeCache cache = new ControlScopeCache(folder.getAbsolutePath());
+		ClassControlScopes analyzed = cache.getClassScopes(CLASS_NAME, appPath);
+		assertEquals(1, cache.getMisses());
+		assertEquals(1, folder.list().length);
+		cache.getClassScopes(CLASS_NAME, appPath);
+		assertEquals(1, cache.getMemoryHits());
+
+		ControlScopeCache warmCache = new ControlScopeCache(folder.getAbsolutePath());
+		ClassControlScopes loaded = warmCache.getClassScopes(CLASS_NAME, appPath);
+		assertEquals(1, warmCache.getDiskHits());
+		assertEquals(0, warmCache.getMisses());
+
+		JavaClass clazz = ClassFileRepository.getInstance(appPath).loadClass(CLASS_NAME);
+		for (Method method : clazz.getMethods()) {
+			for (LineNumber lineNumber : method.getLineNumberTable().getLineNumberTable()) {
+				int line = lineNumber.getLineNumber();
+				MethodControlScopes analyzedMethod = analyzed.findMethodByLine(line);
+				MethodControlScopes loadedMethod = loaded.findMethodByLine(line);
+				assertNotNull(loadedMethod);
+				assertEquals(analyzedMethod.getName() + analyzedMethod.getSignature(),
+						loadedMethod.getName() + loadedMethod.getSignature());
+				ControlScope expected = analyzedMethod.createControlScope(newBreakPoint(method, line));
+				ControlScope actual = loadedMethod.createControlScope(newBreakPoint(method, line));
+				assertEquals(expected.getRangeList(), actual.getRangeList());
+				assertEquals(expected.isCondition(), actual.isCondition());
+				assertEquals(expected.isBranch(), actual.isBranch());
+			}
+		}
+		for (File file : folder.listFiles()) {
+			file.delete();
+		}
+		folder.delete();
+	}
+
+	@Test
+	public void testStaleFilesDeleted() throws Exception {
+		AppJavaClassPath appPath = createAppClassPath();
+		File folder = Files.createTempDirectory("control_scope_cache").toFile();
+		File stale = new File(folder, CLASS_NAME + "-0123456789abcdef.scope");
+		File otherMode = new File(folder, CLASS_NAME + "-0123456789abcdef-pdom.scope");
+		File otherClass = new File(folder, CLASS_NAME + "$1-0123456789abcdef.scope");
+		for (File file : new File[] { stale, otherMode, otherClass }) {
+			assertTrue(file.createNewFile());
+		}
+		new ControlScopeCache(folder.getAbsolutePath()).getClassScopes(CLASS_NAME, appPath);
+		assertFalse(stale.exists());
+		assertTrue(otherMode.exists());
+		assertTrue(otherClass.exists());
+		assertEquals(3, folder.list().length);
+		for (File file : folder.listFiles()) {
+			file.delete();
+		}
+		folder.delete();
+	}
+
+	private BreakPoint newBreakPoint(Method method, int line) {
+		return new BreakPoint(CLASS_NAME, CLASS_NAME + "#" + method.getName() + method.getSignature(), line);
+	}
+
+	/**
+	 * the lines of the control dependentees of the instructions of the line, and
+	 * the line itself.
+	 */
+	private Set<ClassLocation> getExpectedScope(CFG cfg, Method method, int line) {
+		Set<ClassLocation> result = new HashSet<>();
+		result.add(new ClassLocation(CLASS_NAME, null, line));
+		for (CFGNode node : cfg.getNodeList()) {
+			if (method.getLineNumberTable().getSourceLine(node.getInstructionHandle().getPosition()) == line) {
+				for (CFGNode dependentee : node.getControlDependentees()) {
+					int controlledLine = method.getLineNumberTable()
+							.getSourceLine(dependentee.getInstructionHandle().getPosition());
+					result.add(new ClassLocation(CLASS_NAME, null, controlledLine));
+				}
+			}
+		}
+		return result;
+	}
+}